@@ -20,9 +20,16 @@ package com.walmartlabs.concord.agent;
  * =====
  */
 
+import com.squareup.okhttp.Call;
+import com.squareup.okhttp.Response;
+import com.walmartlabs.concord.ApiException;
 import com.walmartlabs.concord.client.ClientUtils;
 import com.walmartlabs.concord.client.ProcessApi;
+import com.walmartlabs.concord.client.StateManifestEntry;
 import com.walmartlabs.concord.common.IOUtils;
+import com.walmartlabs.concord.common.Posix;
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.commons.compress.archivers.zip.ZipArchiveInputStream;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -30,9 +37,19 @@ import javax.inject.Inject;
 import javax.inject.Named;
 import javax.inject.Singleton;
 import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.StandardCopyOption;
+import java.util.*;
 
+/**
+ * Downloads the process state using the state manifest: files already present
+ * in the {@link StateFileCache} are copied locally, the rest is streamed from
+ * the server. Falls back to the full state download if the server doesn't
+ * support manifests.
+ */
 @Named
 @Singleton
 public class DefaultStateFetcher implements StateFetcher {
@@ -40,14 +57,121 @@ public class DefaultStateFetcher implements StateFetcher {
     private static final Logger log = LoggerFactory.getLogger(DefaultStateFetcher.class);
 
     private final ProcessApi processApi;
+    private final StateFileCache cache;
 
     @Inject
-    public DefaultStateFetcher(ProcessApi processApi) {
+    public DefaultStateFetcher(ProcessApi processApi, StateFileCache cache) {
         this.processApi = processApi;
+        this.cache = cache;
     }
 
     @Override
     public void downloadState(JobRequest job) throws Exception {
+        UUID instanceId = job.getInstanceId();
+
+        List<StateManifestEntry> manifest;
+        try {
+            manifest = ClientUtils.withRetry(AgentConstants.API_CALL_MAX_RETRIES, AgentConstants.API_CALL_RETRY_DELAY, () -> processApi.stateManifest(instanceId, null));
+        } catch (ApiException e) {
+            if (e.getCode() != 404) {
+                throw e;
+            }
+
+            log.warn("downloadState ['{}'] -> state manifests are not supported by the server, downloading the full state", instanceId);
+            downloadFullState(job);
+            return;
+        }
+
+        Path dst = job.getPayloadDir();
+
+        Map<String, StateManifestEntry> entries = new HashMap<>();
+        Set<String> cached = new HashSet<>();
+        Set<String> missing = new HashSet<>();
+        for (StateManifestEntry e : manifest) {
+            entries.put(e.getName(), e);
+
+            String hash = e.getHash();
+            if (hash == null) {
+                continue;
+            }
+
+            Path p = resolve(dst, e.getName());
+            if (cache.copyTo(hash, e.getSize(), p)) {
+                setUnixMode(p, e);
+                cached.add(hash);
+            } else {
+                missing.add(hash);
+            }
+        }
+
+        // the same content can be used by multiple files, skip only the hashes that were copied for all of them
+        cached.removeAll(missing);
+
+        int cachedCount = (int) manifest.stream().filter(e -> e.getHash() != null && cached.contains(e.getHash())).count();
+        if (cachedCount == manifest.size()) {
+            log.info("downloadState ['{}'] -> all {} file(s) found in the cache", instanceId, cachedCount);
+            return;
+        }
+
+        List<String> skipHashes = new ArrayList<>(cached);
+        ClientUtils.withRetry(AgentConstants.API_CALL_MAX_RETRIES, AgentConstants.API_CALL_RETRY_DELAY, () -> {
+            Call call = processApi.downloadStateDeltaCall(instanceId, skipHashes, null, null);
+            Response resp = call.execute();
+            if (!resp.isSuccessful()) {
+                throw new ApiException(resp.code(), resp.message(), resp.headers().toMultimap(), resp.body().string());
+            }
+
+            try (InputStream in = resp.body().byteStream()) {
+                unzip(in, dst, entries);
+            }
+
+            return null;
+        });
+
+        log.info("downloadState ['{}'] -> {} file(s) found in the cache, {} file(s) downloaded", instanceId, cachedCount, manifest.size() - cachedCount);
+    }
+
+    /**
+     * Extracts the archive without using a temporary file. Streamed ZIP entries don't
+     * have the file permissions, the permissions are taken from the manifest instead.
+     */
+    private void unzip(InputStream in, Path dst, Map<String, StateManifestEntry> entries) throws IOException {
+        try (ZipArchiveInputStream zip = new ZipArchiveInputStream(in)) {
+            ZipArchiveEntry z;
+            while ((z = zip.getNextZipEntry()) != null) {
+                Path p = resolve(dst, z.getName());
+
+                if (z.isDirectory()) {
+                    Files.createDirectories(p);
+                    continue;
+                }
+
+                Path parent = p.getParent();
+                if (parent != null && !Files.exists(parent)) {
+                    Files.createDirectories(parent);
+                }
+
+                Files.copy(zip, p, StandardCopyOption.REPLACE_EXISTING);
+
+                StateManifestEntry e = entries.get(z.getName());
+                if (e == null) {
+                    continue;
+                }
+
+                setUnixMode(p, e);
+
+                if (e.getHash() != null) {
+                    try {
+                        cache.put(e.getHash(), p);
+                    } catch (IOException ex) {
+                        log.warn("unzip -> can't cache '{}': {}", p, ex.getMessage());
+                    }
+                }
+            }
+        }
+    }
+
+    private void downloadFullState(JobRequest job) throws Exception {
         File payload = null;
         try {
             payload = ClientUtils.withRetry(AgentConstants.API_CALL_MAX_RETRIES, AgentConstants.API_CALL_RETRY_DELAY, () -> processApi.downloadState(job.getInstanceId()));
@@ -59,6 +183,20 @@ public class DefaultStateFetcher implements StateFetcher {
         }
     }
 
+    private static void setUnixMode(Path p, StateManifestEntry e) throws IOException {
+        if (e.getUnixMode() != null) {
+            Files.setPosixFilePermissions(p, Posix.posix(e.getUnixMode()));
+        }
+    }
+
+    private static Path resolve(Path dir, String name) throws IOException {
+        Path p = dir.resolve(name).normalize();
+        if (!p.startsWith(dir)) {
+            throw new IOException("Invalid state file name: " + name);
+        }
+        return p;
+    }
+
     private static void delete(Path dir) {
         if (dir == null) {
             return;
@@ -43,14 +43,17 @@ public class RepositoryManager {
     private final SecretClient secretClient;
     private final RepositoryProviders providers;
     private final RepositoryCache repositoryCache;
+    private final RepositorySnapshotCache snapshotCache;
 
     @Inject
     public RepositoryManager(SecretClient secretClient,
                              GitConfiguration gitCfg,
                              RepositoryCacheConfiguration cacheCfg,
+                             RepositorySnapshotCache snapshotCache,
                              ObjectMapper objectMapper) throws IOException {
 
         this.secretClient = secretClient;
+        this.snapshotCache = snapshotCache;
 
         GitClientConfiguration clientCfg = GitClientConfiguration.builder()
                 .oauthToken(gitCfg.getToken())
@@ -79,10 +82,32 @@ public class RepositoryManager {
     }
 
     public void export(String repoUrl, String branch, String commitId, String repoPath, Path dest, SecretDefinition secretDefinition, List<String> ignorePatterns) throws ExecutionException {
+        // resolve the secret first, the snapshots are served only to the callers with the same credentials
         Secret secret = getSecret(secretDefinition);
 
+        if (snapshotCache.isEnabled(commitId) && exportSnapshot(repoUrl, secret, commitId, repoPath, dest, ignorePatterns)) {
+            return;
+        }
+
         Path cacheDir = repositoryCache.getPath(repoUrl);
 
+        if (snapshotCache.isEnabled(commitId)) {
+            // create the snapshot under the repository lock, export it after the lock is released
+            repositoryCache.withLock(repoUrl, () -> {
+                if (!snapshotCache.contains(repoUrl, secret, commitId)) {
+                    Repository repo = providers.fetch(repoUrl, branch, commitId, null, secret, cacheDir);
+                    snapshotCache.put(repoUrl, secret, commitId, repo.path());
+                }
+                return null;
+            });
+
+            if (exportSnapshot(repoUrl, secret, commitId, repoPath, dest, ignorePatterns)) {
+                return;
+            }
+
+            // the snapshot was removed in the meantime, fall back to the repository cache
+        }
+
         repositoryCache.withLock(repoUrl, () -> {
             Repository repo = providers.fetch(repoUrl, branch, commitId, repoPath, secret, cacheDir);
             repo.export(dest, ignorePatterns);
@@ -90,6 +115,14 @@ public class RepositoryManager {
         });
     }
 
+    private boolean exportSnapshot(String repoUrl, Secret secret, String commitId, String repoPath, Path dest, List<String> ignorePatterns) throws ExecutionException {
+        try {
+            return snapshotCache.export(repoUrl, secret, commitId, repoPath, dest, ignorePatterns);
+        } catch (IOException e) {
+            throw new ExecutionException("Error while exporting the repository '" + repoUrl + "' (" + commitId + "): " + e.getMessage(), e);
+        }
+    }
+
     private Secret getSecret(SecretDefinition secret) throws ExecutionException {
         if (secret == null) {
             return null;
@@ -0,0 +1,315 @@
+package com.walmartlabs.concord.agent;
+
+/*-
+ * *****
+ * Concord
+ * -----
+ * Copyright (C) 2017 - 2020 Walmart Inc.
+ * -----
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =====
+ */
+
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import com.google.common.util.concurrent.Striped;
+import com.walmartlabs.concord.agent.cfg.RepositoryCacheConfiguration;
+import com.walmartlabs.concord.common.IOUtils;
+import com.walmartlabs.concord.common.secret.KeyPair;
+import com.walmartlabs.concord.common.secret.UsernamePassword;
+import com.walmartlabs.concord.repository.RepositoryException;
+import com.walmartlabs.concord.sdk.Secret;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Read-only snapshots of repositories, one per repository URL, credentials
+ * and commit ID. The credentials are a part of the key, so a snapshot
+ * is only served to the callers that used the same credentials to fetch it.
+ * A snapshot is created once from the repository cache and then materialized
+ * into job workspaces without fetching the repository or holding
+ * the repository lock. Only full commit IDs are cached as branches and tags
+ * can change.
+ * <p/>
+ * The files of a snapshot are read-only and never modified after the snapshot
+ * is created. Workspaces always get writable copies of the files, so jobs
+ * can't change the snapshot. The least recently used snapshots are removed when the number of snapshots
+ * exceeds the configured limit.
+ */
+@Named
+@Singleton
+public class RepositorySnapshotCache {
+
+    private static final Logger log = LoggerFactory.getLogger(RepositorySnapshotCache.class);
+
+    private static final Pattern COMMIT_ID_PATTERN = Pattern.compile("^[0-9a-f]{40}$");
+
+    /**
+     * Same as in {@link com.walmartlabs.concord.repository.GitCliRepositoryProvider}.
+     */
+    private static final String GIT_FILES = "^(\\.git|\\.gitmodules|\\.gitignore)$";
+
+    private static final String TMP_SUFFIX = ".tmp";
+
+    private final Path snapshotDir;
+    private final int maxCount;
+    private final AtomicInteger count = new AtomicInteger();
+    private final Striped<ReadWriteLock> locks = Striped.readWriteLock(64);
+
+    @Inject
+    public RepositorySnapshotCache(RepositoryCacheConfiguration cfg) {
+        this(cfg.getSnapshotDir(), cfg.getSnapshotMaxCount());
+    }
+
+    public RepositorySnapshotCache(Path snapshotDir, int maxCount) {
+        this.snapshotDir = snapshotDir;
+        this.maxCount = maxCount;
+
+        try (Stream<Path> dirs = Files.list(snapshotDir)) {
+            for (Path p : dirs.collect(Collectors.toList())) {
+                if (p.getFileName().toString().endsWith(TMP_SUFFIX)) {
+                    // leftovers of an interrupted snapshot
+                    IOUtils.deleteRecursively(p);
+                } else {
+                    count.incrementAndGet();
+                }
+            }
+        } catch (IOException e) {
+            log.warn("init -> can't read the snapshot directory '{}': {}", snapshotDir, e.getMessage());
+        }
+    }
+
+    /**
+     * @return {@code true} if the commit can be stored as a snapshot
+     */
+    public boolean isEnabled(String commitId) {
+        return maxCount > 0 && commitId != null && COMMIT_ID_PATTERN.matcher(commitId).matches();
+    }
+
+    public boolean contains(String repoUrl, Secret secret, String commitId) {
+        return Files.exists(snapshotDir.resolve(key(repoUrl, secret, commitId)));
+    }
+
+    /**
+     * Copies the specified repository's working tree (without the {@code .git} directory)
+     * into a new snapshot. Must be called while the repository can't be modified,
+     * i.e. while holding the repository's lock.
+     *
+     * @param secret the credentials used to fetch the repository, optional
+     */
+    public void put(String repoUrl, Secret secret, String commitId, Path src) throws IOException {
+        String key = key(repoUrl, secret, commitId);
+
+        Path dst = snapshotDir.resolve(key);
+        if (Files.exists(dst)) {
+            return;
+        }
+
+        Path tmp = snapshotDir.resolve(key + TMP_SUFFIX);
+        IOUtils.deleteRecursively(tmp);
+        try {
+            Files.createDirectories(tmp);
+            IOUtils.copy(src, tmp, "^\\.git$", (a, b) -> b.toFile().setWritable(false, false), StandardCopyOption.REPLACE_EXISTING);
+            Files.move(tmp, dst, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            IOUtils.deleteRecursively(tmp);
+        }
+
+        log.info("put ['{}', '{}'] -> created {}", repoUrl, commitId, dst);
+
+        if (count.incrementAndGet() > maxCount) {
+            evict();
+        }
+    }
+
+    /**
+     * Materializes the snapshot's content into the specified directory.
+     * Works the same way as {@link com.walmartlabs.concord.repository.Repository#export(Path, List)}.
+     *
+     * @param secret         the credentials to access the repository, optional
+     * @param repoPath       path to a subdirectory of the repository to export, optional
+     * @param ignorePatterns patterns of paths (relative to {@code repoPath}) to skip
+     * @return {@code false} if there's no such snapshot
+     */
+    public boolean export(String repoUrl, Secret secret, String commitId, String repoPath, Path dst, List<String> ignorePatterns) throws IOException {
+        String key = key(repoUrl, secret, commitId);
+
+        Lock l = locks.get(key).readLock();
+        l.lock();
+        try {
+            Path snapshot = snapshotDir.resolve(key);
+            if (!Files.exists(snapshot)) {
+                return false;
+            }
+
+            Files.setLastModifiedTime(snapshot, FileTime.fromMillis(System.currentTimeMillis()));
+
+            Path src = resolve(snapshot, repoPath);
+
+            List<String> patterns = new ArrayList<>();
+            patterns.add(GIT_FILES);
+            patterns.addAll(ignorePatterns);
+
+            materialize(src, dst, patterns);
+            return true;
+        } finally {
+            l.unlock();
+        }
+    }
+
+    private void materialize(Path src, Path dst, List<String> ignorePatterns) throws IOException {
+        Files.walkFileTree(src, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+                if (dir != src && anyMatch(src.relativize(dir).toString(), ignorePatterns)) {
+                    return FileVisitResult.SKIP_SUBTREE;
+                }
+
+                Files.createDirectories(dst.resolve(src.relativize(dir).toString()));
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                String rel = src.relativize(file).toString();
+                if (anyMatch(rel, ignorePatterns)) {
+                    return FileVisitResult.CONTINUE;
+                }
+
+                Path target = dst.resolve(rel);
+                Files.deleteIfExists(target);
+
+                if (attrs.isSymbolicLink()) {
+                    // the links were validated when the snapshot was created
+                    Files.createSymbolicLink(target, Files.readSymbolicLink(file));
+                } else {
+                    copy(file, target);
+                }
+
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    private static void copy(Path src, Path dst) throws IOException {
+        // the snapshot's files are read-only, the copies must be writable
+        Files.copy(src, dst);
+        dst.toFile().setWritable(true);
+    }
+
+    private synchronized void evict() {
+        if (count.get() <= maxCount) {
+            return;
+        }
+
+        List<Path> snapshots;
+        try (Stream<Path> s = Files.list(snapshotDir)) {
+            snapshots = s.filter(p -> !p.getFileName().toString().endsWith(TMP_SUFFIX))
+                    .sorted(Comparator.comparingLong(RepositorySnapshotCache::lastModified))
+                    .collect(Collectors.toList());
+        } catch (IOException e) {
+            log.warn("evict -> can't read the snapshot directory '{}': {}", snapshotDir, e.getMessage());
+            return;
+        }
+
+        for (Path p : snapshots) {
+            if (count.get() <= maxCount) {
+                break;
+            }
+
+            // skip the snapshots that are being exported right now
+            Lock l = locks.get(p.getFileName().toString()).writeLock();
+            if (!l.tryLock()) {
+                continue;
+            }
+
+            try {
+                if (IOUtils.deleteRecursively(p)) {
+                    count.decrementAndGet();
+                }
+            } catch (IOException e) {
+                log.warn("evict -> can't remove '{}': {}", p, e.getMessage());
+            } finally {
+                l.unlock();
+            }
+        }
+    }
+
+    private static Path resolve(Path snapshot, String repoPath) {
+        if (repoPath == null || repoPath.trim().isEmpty() || repoPath.trim().equals("/")) {
+            return snapshot;
+        }
+
+        String p = repoPath.trim();
+        while (p.startsWith("/")) {
+            p = p.substring(1);
+        }
+
+        Path dir = snapshot.resolve(p).normalize();
+        if (!dir.startsWith(snapshot) || !Files.exists(dir)) {
+            throw new RepositoryException("Invalid repository path: '" + repoPath + "' doesn't exist");
+        } else if (!Files.isDirectory(dir)) {
+            throw new RepositoryException("Invalid repository path: '" + repoPath + "' must be a valid directory");
+        }
+
+        return dir;
+    }
+
+    private static boolean anyMatch(String what, List<String> patterns) {
+        return patterns.stream().anyMatch(what::matches);
+    }
+
+    private static String key(String repoUrl, Secret secret, String commitId) {
+        Hasher h = Hashing.sha256().newHasher()
+                .putString(repoUrl, StandardCharsets.UTF_8);
+
+        if (secret instanceof KeyPair) {
+            h.putString("\nkeyPair\n", StandardCharsets.UTF_8)
+                    .putBytes(((KeyPair) secret).getPrivateKey());
+        } else if (secret instanceof UsernamePassword) {
+            UsernamePassword up = (UsernamePassword) secret;
+            h.putString("\nusernamePassword\n", StandardCharsets.UTF_8)
+                    .putString(up.getUsername(), StandardCharsets.UTF_8)
+                    .putString("\n", StandardCharsets.UTF_8)
+                    .putString(new String(up.getPassword()), StandardCharsets.UTF_8);
+        }
+
+        return h.hash().toString() + "_" + commitId;
+    }
+
+    private static long lastModified(Path p) {
+        try {
+            return Files.getLastModifiedTime(p).toMillis();
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+}
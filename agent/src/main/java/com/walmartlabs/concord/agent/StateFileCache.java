@@ -0,0 +1,177 @@
+package com.walmartlabs.concord.agent;
+
+/*-
+ * *****
+ * Concord
+ * -----
+ * Copyright (C) 2017 - 2020 Walmart Inc.
+ * -----
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =====
+ */
+
+import com.google.common.hash.Hashing;
+import com.google.common.io.MoreFiles;
+import com.walmartlabs.concord.agent.cfg.AgentConfiguration;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Content-addressed cache of process state files. Files are stored by their SHA-256,
+ * the same hash is used by the server for the deduplicated process state.
+ * The least recently used files are removed when the cache exceeds the configured size.
+ */
+@Named
+@Singleton
+public class StateFileCache {
+
+    private static final Logger log = LoggerFactory.getLogger(StateFileCache.class);
+
+    private final Path cacheDir;
+    private final long maxSize;
+    private final AtomicLong size = new AtomicLong();
+
+    @Inject
+    public StateFileCache(AgentConfiguration cfg) {
+        this(cfg.getStateCacheDir(), cfg.getStateCacheMaxSize());
+    }
+
+    public StateFileCache(Path cacheDir, long maxSize) {
+        this.cacheDir = cacheDir;
+        this.maxSize = maxSize;
+
+        try (Stream<Path> files = Files.list(cacheDir)) {
+            files.forEach(p -> size.addAndGet(sizeOf(p)));
+        } catch (IOException e) {
+            log.warn("init -> can't read the cache directory '{}': {}", cacheDir, e.getMessage());
+        }
+    }
+
+    public static String hash(Path file) throws IOException {
+        return MoreFiles.asByteSource(file)
+                .hash(Hashing.sha256())
+                .toString();
+    }
+
+    /**
+     * Copies a cached file into the specified destination.
+     *
+     * @return {@code true} if the file was found in the cache
+     */
+    public boolean copyTo(String hash, long expectedSize, Path dst) throws IOException {
+        Path src = cacheDir.resolve(hash);
+        if (!Files.exists(src) || sizeOf(src) != expectedSize) {
+            return false;
+        }
+
+        Path parent = dst.getParent();
+        if (parent != null && !Files.exists(parent)) {
+            Files.createDirectories(parent);
+        }
+
+        try {
+            Files.setLastModifiedTime(src, FileTime.fromMillis(System.currentTimeMillis()));
+            Files.copy(src, dst, StandardCopyOption.REPLACE_EXISTING);
+        } catch (NoSuchFileException e) {
+            // evicted concurrently
+            return false;
+        }
+
+        return true;
+    }
+
+    /**
+     * Adds a file into the cache. The file must not be modified while it's being copied.
+     */
+    public void put(String hash, Path src) throws IOException {
+        Path dst = cacheDir.resolve(hash);
+        if (Files.exists(dst)) {
+            return;
+        }
+
+        Path tmp = Files.createTempFile(cacheDir, hash, ".tmp");
+        try {
+            Files.copy(src, tmp, StandardCopyOption.REPLACE_EXISTING);
+            Files.move(tmp, dst, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+
+        if (size.addAndGet(sizeOf(dst)) > maxSize) {
+            evict();
+        }
+    }
+
+    private synchronized void evict() {
+        if (size.get() <= maxSize) {
+            return;
+        }
+
+        List<Path> files;
+        try (Stream<Path> s = Files.list(cacheDir)) {
+            files = s.filter(p -> !p.getFileName().toString().endsWith(".tmp"))
+                    .sorted(Comparator.comparingLong(StateFileCache::lastModified))
+                    .collect(Collectors.toCollection(ArrayList::new));
+        } catch (IOException e) {
+            log.warn("evict -> can't read the cache directory '{}': {}", cacheDir, e.getMessage());
+            return;
+        }
+
+        for (Path p : files) {
+            if (size.get() <= maxSize) {
+                break;
+            }
+
+            long s = sizeOf(p);
+            try {
+                if (Files.deleteIfExists(p)) {
+                    size.addAndGet(-s);
+                }
+            } catch (IOException e) {
+                log.warn("evict -> can't remove '{}': {}", p, e.getMessage());
+            }
+        }
+    }
+
+    private static long sizeOf(Path p) {
+        try {
+            return Files.size(p);
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+    private static long lastModified(Path p) {
+        try {
+            return Files.getLastModifiedTime(p).toMillis();
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+}
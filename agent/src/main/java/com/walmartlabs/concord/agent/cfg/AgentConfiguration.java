@@ -48,8 +48,13 @@ public class AgentConfiguration {
     private final Path dependencyListsDir;
     private final Path payloadDir;
 
+    private final Path stateCacheDir;
+    private final long stateCacheMaxSize;
+
     private final Path logDir;
     private final long logMaxDelay;
+    private final long logBatchWindow;
+    private final int logBatchMaxSize;
 
     private final int workersCount;
     private final long pollInterval;
@@ -67,8 +72,13 @@ public class AgentConfiguration {
         this.dependencyListsDir = getDir(cfg, "dependencyListsDir");
         this.payloadDir = getDir(cfg, "payloadDir");
 
+        this.stateCacheDir = getDir(cfg, "stateCacheDir");
+        this.stateCacheMaxSize = cfg.getBytes("stateCacheMaxSize");
+
         this.logDir = getDir(cfg, "logDir");
         this.logMaxDelay = cfg.getDuration("logMaxDelay", TimeUnit.MILLISECONDS);
+        this.logBatchWindow = cfg.getDuration("logBatchWindow", TimeUnit.MILLISECONDS);
+        this.logBatchMaxSize = cfg.getInt("logBatchMaxSize");
 
         this.workersCount = cfg.getInt("workersCount");
         this.maintenanceModeListenerPort = cfg.getInt("maintenanceModeListenerPort");
@@ -96,6 +106,14 @@ public class AgentConfiguration {
         return payloadDir;
     }
 
+    public Path getStateCacheDir() {
+        return stateCacheDir;
+    }
+
+    public long getStateCacheMaxSize() {
+        return stateCacheMaxSize;
+    }
+
     public Path getLogDir() {
         return logDir;
     }
@@ -104,6 +122,14 @@ public class AgentConfiguration {
         return logMaxDelay;
     }
 
+    public long getLogBatchWindow() {
+        return logBatchWindow;
+    }
+
+    public int getLogBatchMaxSize() {
+        return logBatchMaxSize;
+    }
+
     public int getWorkersCount() {
         return workersCount;
     }
@@ -39,6 +39,8 @@ public class RepositoryCacheConfiguration {
     private final int lockCount;
     private final long maxAge;
     private final Path infoDir;
+    private final Path snapshotDir;
+    private final int snapshotMaxCount;
 
     @Inject
     public RepositoryCacheConfiguration(Config cfg) {
@@ -47,6 +49,8 @@ public class RepositoryCacheConfiguration {
         this.lockCount = cfg.getInt("repositoryCache.lockCount");
         this.maxAge = cfg.getDuration("repositoryCache.maxAge", TimeUnit.MILLISECONDS);
         this.infoDir = getDir(cfg, "repositoryCache.cacheInfoDir");
+        this.snapshotDir = getDir(cfg, "repositoryCache.snapshotDir");
+        this.snapshotMaxCount = cfg.getInt("repositoryCache.snapshotMaxCount");
     }
 
     public Path getCacheDir() {
@@ -68,4 +72,12 @@ public class RepositoryCacheConfiguration {
     public Path getInfoDir() {
         return infoDir;
     }
+
+    public Path getSnapshotDir() {
+        return snapshotDir;
+    }
+
+    public int getSnapshotMaxCount() {
+        return snapshotMaxCount;
+    }
 }
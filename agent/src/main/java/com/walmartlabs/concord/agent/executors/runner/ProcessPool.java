@@ -35,7 +35,17 @@ import java.nio.file.Path;
 import java.util.*;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
-
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps a number of "warm" (pre-forked) JVMs for each distinct command
+ * (identified by the command's hash).
+ * <p/>
+ * The JVMs are always started outside of the pool's lock, so a slow JVM
+ * start doesn't block other jobs. If the total number of JVMs exceeds
+ * {@link PreForkConfiguration#getMaxCount()}, the JVMs of the least
+ * recently used commands are removed first.
+ */
 @Named
 @Singleton
 public class ProcessPool {
@@ -46,19 +56,25 @@ public class ProcessPool {
 
     private final long maxEntryAge;
     private final int maxEntryCount;
-    private final Map<HashCode, Queue<ProcessEntry>> pool = new HashMap<>();
+    private final int warmCount;
+    private final Map<HashCode, Slot> pool = new HashMap<>();
     private final ExecutorService executor = Executors.newCachedThreadPool();
 
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong acquireTime = new AtomicLong();
+
     @Inject
     public ProcessPool(PreForkConfiguration cfg) {
         this.maxEntryAge = cfg.getMaxAge();
         this.maxEntryCount = cfg.getMaxCount();
+        this.warmCount = cfg.getWarmCount();
         init();
     }
 
     public void init() {
         Thread t = new Thread(() -> {
-            log.info("run -> starting cleanup thread, max entry age {}ms, max entry count {}", maxEntryAge, maxEntryCount);
+            log.info("run -> starting cleanup thread, max entry age {}ms, max entry count {}, warm count {}", maxEntryAge, maxEntryCount, warmCount);
 
             while (!Thread.currentThread().isInterrupted()) {
                 Utils.sleep(CLEANUP_PERIOD);
@@ -71,84 +87,136 @@ public class ProcessPool {
             }
         }, "process-pool-cleanup");
 
+        t.setDaemon(true);
         t.start();
     }
 
     public ProcessEntry take(HashCode hc, ProcessLauncher launcher) throws ExecutionException {
+        long t1 = System.currentTimeMillis();
+
+        ProcessEntry entry;
         synchronized (pool) {
-            Queue<ProcessEntry> q = pool.computeIfAbsent(hc, k -> new LinkedList<>());
+            Slot slot = pool.computeIfAbsent(hc, k -> new Slot());
+            slot.lastUsedAt = t1;
+            entry = slot.poll();
+        }
 
-            ProcessEntry entry = q.poll();
-            if (entry == null) {
-                try {
-                    entry = launcher.start();
-                } catch (IOException e) {
-                    throw new ExecutionException("Error while starting a new process", e);
-                }
+        if (entry == null) {
+            misses.incrementAndGet();
 
-                log.info("take -> started a new process: {}", entry.procDir);
-            } else {
-                log.info("take -> using a pre-forked instance: {}", entry.procDir);
+            try {
+                entry = launcher.start();
+            } catch (IOException e) {
+                throw new ExecutionException("Error while starting a new process", e);
             }
 
-            executor.submit(() -> populate(hc, launcher));
+            log.info("take -> started a new process: {}", entry.procDir);
+        } else {
+            hits.incrementAndGet();
+            log.info("take -> using a pre-forked instance: {}", entry.procDir);
+        }
+
+        acquireTime.addAndGet(System.currentTimeMillis() - t1);
+
+        executor.submit(() -> populate(hc, launcher));
 
-            return entry;
+        return entry;
+    }
+
+    /**
+     * @return hit/miss counters, average time to acquire a process and
+     * the number of warm processes per command.
+     */
+    public Stats getStats() {
+        Map<HashCode, Integer> warm = new HashMap<>();
+        synchronized (pool) {
+            pool.forEach((hc, slot) -> warm.put(hc, slot.entries.size()));
         }
+
+        long h = hits.get();
+        long m = misses.get();
+        long avgAcquireTime = h + m > 0 ? acquireTime.get() / (h + m) : 0;
+        return new Stats(h, m, avgAcquireTime, warm);
     }
 
     private void populate(HashCode hc, ProcessLauncher launcher) {
+        // reserve a spot, so concurrent calls don't start more processes than needed
         synchronized (pool) {
-            // calculate the total number of processes in the pool
-            int total = 0;
-            for (Map.Entry<HashCode, Queue<ProcessEntry>> e : pool.entrySet()) {
-                total += e.getValue().size();
+            Slot slot = pool.computeIfAbsent(hc, k -> new Slot());
+            if (slot.entries.size() + slot.starting >= warmCount) {
+                return;
             }
+            slot.starting++;
+        }
 
-            if (total >= maxEntryCount) {
-                // mark the oldest entry for removal
-                ProcessEntry oldest = null;
-                for (Map.Entry<HashCode, Queue<ProcessEntry>> q : pool.entrySet()) {
-                    for (ProcessEntry e : q.getValue()) {
-                        if (oldest == null || oldest.timestamp > e.timestamp) {
-                            oldest = e;
-                        }
-                    }
-                }
+        ProcessEntry entry = null;
+        try {
+            entry = launcher.start();
+        } catch (IOException e) {
+            log.error("populate -> error while starting a new process", e);
+        }
 
-                // it's never null
-                assert oldest != null;
+        List<ProcessEntry> evicted = new ArrayList<>();
+        synchronized (pool) {
+            Slot slot = pool.computeIfAbsent(hc, k -> new Slot());
+            slot.starting--;
 
-                oldest.remove = true;
+            if (entry != null) {
+                slot.entries.add(entry);
+                evict(evicted);
             }
+        }
 
-            // add a new pool entry
-            Queue<ProcessEntry> q = pool.computeIfAbsent(hc, k -> new LinkedList<>());
-            try {
-                q.add(launcher.start());
-            } catch (IOException e) {
-                log.error("populate -> error while starting a new process", e);
+        kill(evicted);
+    }
+
+    /**
+     * Removes the oldest entries of the least recently used commands
+     * until the total number of entries is within the limit.
+     * Must be called while holding the pool's lock.
+     */
+    private void evict(List<ProcessEntry> evicted) {
+        int total = 0;
+        for (Slot s : pool.values()) {
+            total += s.entries.size();
+        }
+
+        while (total > maxEntryCount) {
+            Slot lru = null;
+            for (Slot s : pool.values()) {
+                if (s.entries.isEmpty()) {
+                    continue;
+                }
+                if (lru == null || lru.lastUsedAt > s.lastUsedAt) {
+                    lru = s;
+                }
             }
+
+            // it's never null
+            assert lru != null;
+
+            evicted.add(lru.entries.poll());
+            total--;
         }
     }
 
     private void maintenance() {
         List<HashCode> queuesToRemove = new ArrayList<>();
-        List<Process> processesToKill = new ArrayList<>();
+        List<ProcessEntry> processesToKill = new ArrayList<>();
 
         long t = System.currentTimeMillis();
 
         synchronized (pool) {
-            pool.forEach((hc, q) -> {
-                q.removeIf(e -> {
-                    if (e.remove || t - e.timestamp >= maxEntryAge) {
-                        processesToKill.add(e.process);
+            pool.forEach((hc, slot) -> {
+                slot.entries.removeIf(e -> {
+                    if (t - e.timestamp >= maxEntryAge || !e.process.isAlive()) {
+                        processesToKill.add(e);
                         return true;
                     }
                     return false;
                 });
 
-                if (q.isEmpty()) {
+                if (slot.entries.isEmpty() && slot.starting == 0 && t - slot.lastUsedAt >= maxEntryAge) {
                     queuesToRemove.add(hc);
                 }
             });
@@ -160,10 +228,16 @@ public class ProcessPool {
 
         log.info("maintenance -> removed {} queues", queuesToRemove.size());
 
-        for (Process p : processesToKill) {
-            Utils.kill(p);
-        }
+        kill(processesToKill);
         log.info("maintenance -> killed {} processes", processesToKill.size());
+
+        log.info("maintenance -> {}", getStats());
+    }
+
+    private static void kill(List<ProcessEntry> entries) {
+        for (ProcessEntry e : entries) {
+            Utils.kill(e.process);
+        }
     }
 
     public interface ProcessLauncher {
@@ -171,14 +245,34 @@ public class ProcessPool {
         ProcessEntry start() throws IOException;
     }
 
+    private static final class Slot {
+
+        private final Deque<ProcessEntry> entries = new ArrayDeque<>();
+
+        /**
+         * Number of processes being started for the slot.
+         */
+        private int starting;
+
+        private long lastUsedAt = System.currentTimeMillis();
+
+        private ProcessEntry poll() {
+            ProcessEntry e;
+            while ((e = entries.poll()) != null) {
+                if (e.process.isAlive()) {
+                    return e;
+                }
+            }
+            return null;
+        }
+    }
+
     public static final class ProcessEntry {
 
         private final long timestamp;
         private final Process process;
         private final Path procDir;
 
-        private boolean remove = false;
-
         public ProcessEntry(Process process, Path procDir) {
             this.timestamp = System.currentTimeMillis();
             this.process = process;
@@ -193,4 +287,46 @@ public class ProcessPool {
             return procDir;
         }
     }
+
+    public static final class Stats {
+
+        private final long hits;
+        private final long misses;
+        private final long avgAcquireTime;
+        private final Map<HashCode, Integer> warm;
+
+        private Stats(long hits, long misses, long avgAcquireTime, Map<HashCode, Integer> warm) {
+            this.hits = hits;
+            this.misses = misses;
+            this.avgAcquireTime = avgAcquireTime;
+            this.warm = warm;
+        }
+
+        public long getHits() {
+            return hits;
+        }
+
+        public long getMisses() {
+            return misses;
+        }
+
+        public double getHitRatio() {
+            long total = hits + misses;
+            return total > 0 ? (double) hits / total : 0;
+        }
+
+        public long getAvgAcquireTime() {
+            return avgAcquireTime;
+        }
+
+        public Map<HashCode, Integer> getWarm() {
+            return warm;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("hits: %d, misses: %d, hit ratio: %.2f, avg time to acquire: %dms, warm: %s",
+                    hits, misses, getHitRatio(), avgAcquireTime, warm);
+        }
+    }
 }
@@ -31,17 +31,27 @@ import org.slf4j.LoggerFactory;
 import java.io.Closeable;
 import java.io.IOException;
 import java.io.RandomAccessFile;
-import java.nio.file.FileVisitResult;
-import java.nio.file.Files;
-import java.nio.file.Path;
-import java.nio.file.SimpleFileVisitor;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
 import java.nio.file.attribute.BasicFileAttributes;
-import java.util.HashMap;
-import java.util.HashSet;
-import java.util.Map;
-import java.util.Set;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Supplier;
 
+import static java.nio.file.StandardWatchEventKinds.*;
+
+/**
+ * Watches for new files and changes in the specified directory.
+ * <p/>
+ * Uses {@link WatchService} to get notified about changes. Only the files
+ * mentioned in the watch events are checked. The whole directory is
+ * re-scanned periodically (every {@link #FULL_SCAN_INTERVAL}ms), when
+ * the events are lost (overflow) and before the watcher stops.
+ * <p/>
+ * If the platform's {@link WatchService} is polling-based (e.g. on macOS)
+ * or not available, the directory is scanned every {@code maxDelay}ms.
+ */
 public final class FileWatcher<T> implements Closeable {
 
     public static <T> void watch(Path path, Supplier<Boolean> stopCondition, long maxDelay, FileNameParser<T> fileNameParser, FileListener<T> listener) throws IOException {
@@ -52,7 +62,9 @@ public final class FileWatcher<T> implements Closeable {
 
     private static final Logger log = LoggerFactory.getLogger(FileWatcher.class);
 
-    private static final int MAX_OPEN_FILES = 10;
+    private static final int MAX_OPEN_FILES = 128;
+
+    private static final long FULL_SCAN_INTERVAL = 5000;
 
     private final Path watchDir;
     private final long maxDelay;
@@ -76,8 +88,82 @@ public final class FileWatcher<T> implements Closeable {
     }
 
     private void run(Supplier<Boolean> stopCondition) throws IOException {
+        WatchService watchService = createWatchService(watchDir);
+        if (watchService == null) {
+            poll(stopCondition);
+            return;
+        }
+
+        try {
+            watch(watchService, stopCondition);
+        } finally {
+            watchService.close();
+        }
+    }
+
+    private void watch(WatchService watchService, Supplier<Boolean> stopCondition) throws IOException {
+        long lastFullScanAt = 0;
+
+        while (!Thread.currentThread().isInterrupted()) {
+            long now = System.currentTimeMillis();
+            if (now - lastFullScanAt >= FULL_SCAN_INTERVAL) {
+                processFiles();
+                lastFullScanAt = now;
+            }
+
+            listener.afterProcessing();
+
+            if (stopCondition.get()) {
+                processFiles();
+                break;
+            }
+
+            WatchKey key;
+            try {
+                key = watchService.poll(maxDelay, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+
+            if (key == null) {
+                continue;
+            }
+
+            // collect the changed files, the same file can be mentioned multiple times
+            Set<Path> changed = new LinkedHashSet<>();
+            boolean overflow = false;
+            for (WatchEvent<?> e : key.pollEvents()) {
+                if (e.kind() == OVERFLOW) {
+                    overflow = true;
+                } else {
+                    changed.add(watchDir.resolve((Path) e.context()));
+                }
+            }
+
+            if (!key.reset()) {
+                log.warn("watch ['{}'] -> the directory is no longer accessible, switching to polling", watchDir);
+                poll(stopCondition);
+                return;
+            }
+
+            if (overflow) {
+                processFiles();
+                lastFullScanAt = System.currentTimeMillis();
+            } else {
+                for (Path p : changed) {
+                    if (Files.isRegularFile(p)) {
+                        processFile(p);
+                    }
+                }
+            }
+        }
+    }
+
+    private void poll(Supplier<Boolean> stopCondition) throws IOException {
         while (!Thread.currentThread().isInterrupted()) {
             processFiles();
+            listener.afterProcessing();
 
             if (stopCondition.get()) {
                 processFiles();
@@ -103,41 +189,44 @@ public final class FileWatcher<T> implements Closeable {
                 return FileVisitResult.SKIP_SUBTREE;
             }
 
+            @Override
             public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
-                if (ignoreFiles.contains(file)) {
-                    return FileVisitResult.CONTINUE;
-                }
+                processFile(file);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
 
-                FileEntry<T> filePointer = filePointers.get(file);
-                if (filePointer == null) {
-                    T fileName = fileNameParser.parse(file);
-                    if (fileName == null) {
-                        ignoreFiles.add(file);
-                        return FileVisitResult.CONTINUE;
-                    }
+    private void processFile(Path file) {
+        if (ignoreFiles.contains(file)) {
+            return;
+        }
 
-                    boolean success = listener.onNewFile(fileName);
-                    if (!success) {
-                        return FileVisitResult.CONTINUE;
-                    }
-                    filePointer = FileEntry.of(fileName, 0L);
-                    filePointers.put(file, filePointer);
-                }
+        FileEntry<T> filePointer = filePointers.get(file);
+        if (filePointer == null) {
+            T fileName = fileNameParser.parse(file);
+            if (fileName == null) {
+                ignoreFiles.add(file);
+                return;
+            }
 
-                if (isChanged(file, filePointer.pointer())) {
-                    long newPos = notifyChanged(file, filePointer);
-                    if (newPos == -1) {
-                        deleteFile(file);
-                        filePointers.remove(file);
-                        return FileVisitResult.CONTINUE;
-                    } else if (newPos > 0) {
-                        filePointers.put(file, FileEntry.of(filePointer.name(), newPos));
-                    }
-                }
+            boolean success = listener.onNewFile(fileName);
+            if (!success) {
+                return;
+            }
+            filePointer = FileEntry.of(fileName, 0L);
+            filePointers.put(file, filePointer);
+        }
 
-                return FileVisitResult.CONTINUE;
+        if (isChanged(file, filePointer.pointer())) {
+            long newPos = notifyChanged(file, filePointer);
+            if (newPos == -1) {
+                deleteFile(file);
+                filePointers.remove(file);
+            } else if (newPos > 0) {
+                filePointers.put(file, FileEntry.of(filePointer.name(), newPos));
             }
-        });
+        }
     }
 
     public boolean isChanged(Path path, long totalRead) {
@@ -164,6 +253,38 @@ public final class FileWatcher<T> implements Closeable {
         return 0L;
     }
 
+    private static WatchService createWatchService(Path dir) {
+        WatchService watchService = null;
+        try {
+            watchService = dir.getFileSystem().newWatchService();
+
+            // polling-based implementations are no better than our own polling
+            if (watchService.getClass().getName().endsWith("PollingWatchService")) {
+                watchService.close();
+                return null;
+            }
+
+            dir.register(watchService, ENTRY_CREATE, ENTRY_MODIFY);
+            return watchService;
+        } catch (IOException | UnsupportedOperationException e) {
+            log.warn("createWatchService ['{}'] -> not available, using polling: {}", dir, e.getMessage());
+            closeSilently(watchService);
+            return null;
+        }
+    }
+
+    private static void closeSilently(Closeable c) {
+        if (c == null) {
+            return;
+        }
+
+        try {
+            c.close();
+        } catch (IOException e) {
+            log.warn("close error: {}", e.getMessage());
+        }
+    }
+
     private static void deleteFile(Path path) {
         try {
             Files.delete(path);
@@ -180,6 +301,13 @@ public final class FileWatcher<T> implements Closeable {
          * @return new file offset or -1 if file no longer tracked (e.g. all file read)
          */
         long onChanged(T fileName, RandomAccessFile in) throws IOException;
+
+        /**
+         * Called after each round of file processing, including the rounds
+         * without any changes.
+         */
+        default void afterProcessing() {
+        }
     }
 
     public interface FileNameParser<T> {
@@ -198,17 +326,24 @@ public final class FileWatcher<T> implements Closeable {
         long read(RandomAccessFile in, ChunkConsumer consumer) throws IOException;
     }
 
+    /**
+     * Reads the file using its {@link FileChannel} into a reusable buffer.
+     * The file's position is updated to the returned offset.
+     */
     public static class ByteArrayFileReader implements FileReader {
 
         private final byte[] dataBuffer = new byte[8192];
+        private final ByteBuffer buffer = ByteBuffer.wrap(dataBuffer);
 
         @Override
         public long read(RandomAccessFile in, ChunkConsumer consumer) throws IOException {
-            long result = in.getFilePointer();
+            FileChannel ch = in.getChannel();
+            long result = ch.position();
 
             try {
                 while (!Thread.currentThread().isInterrupted()) {
-                    int read = in.read(dataBuffer, 0, dataBuffer.length);
+                    buffer.clear();
+                    int read = ch.read(buffer, result);
                     if (read <= 0) {
                         break;
                     }
@@ -218,8 +353,13 @@ public final class FileWatcher<T> implements Closeable {
                         return -1;
                     }
                     result += consumed;
-                    in.seek(result);
+
+                    if (consumed == 0) {
+                        // nothing was consumed, try again later
+                        break;
+                    }
                 }
+                ch.position(result);
             } catch (IOException e) {
                 log.warn("read error: {}", e.getMessage());
             }
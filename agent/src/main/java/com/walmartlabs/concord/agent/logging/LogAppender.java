@@ -29,6 +29,13 @@ public interface LogAppender {
 
     boolean appendLog(UUID instanceId, long segmentId, byte[] ab);
 
+    /**
+     * Sends data and status updates of multiple segments at once.
+     * @param batch data in {@link com.walmartlabs.concord.common.LogSegmentBatch} format
+     * @return the number of frames sent, counting from the start of the batch
+     */
+    int appendBatch(UUID instanceId, byte[] batch);
+
     Long createSegment(UUID instanceId, UUID correlationId, String segmentName, Date createdAt);
 
     boolean updateSegment(UUID instanceId, long segmentId, LogSegmentStats stats);
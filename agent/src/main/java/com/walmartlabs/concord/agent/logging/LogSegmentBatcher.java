@@ -0,0 +1,114 @@
+package com.walmartlabs.concord.agent.logging;
+
+/*-
+ * *****
+ * Concord
+ * -----
+ * Copyright (C) 2017 - 2020 Walmart Inc.
+ * -----
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =====
+ */
+
+import com.walmartlabs.concord.common.LogSegmentBatch;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.UUID;
+
+/**
+ * Collects data and status updates of multiple log segments of a single
+ * process and sends them using {@link LogAppender#appendBatch(UUID, byte[])}.
+ * <p/>
+ * Unsent data is kept in memory and sent again on the next flush.
+ * Not thread-safe.
+ */
+public class LogSegmentBatcher {
+
+    private static final Logger log = LoggerFactory.getLogger(LogSegmentBatcher.class);
+
+    private final UUID instanceId;
+    private final LogAppender appender;
+    private final long window;
+    private final int maxSize;
+
+    private final LogSegmentBatch.Writer batch = new LogSegmentBatch.Writer();
+    private long firstAddedAt;
+
+    public LogSegmentBatcher(UUID instanceId, LogAppender appender, long window, int maxSize) {
+        this.instanceId = instanceId;
+        this.appender = appender;
+        this.window = window;
+        this.maxSize = maxSize;
+    }
+
+    public void data(long segmentId, byte[] ab) {
+        onAdd();
+        batch.data(segmentId, ab);
+    }
+
+    public void update(long segmentId, LogSegmentStats stats) {
+        onAdd();
+        batch.update(segmentId, stats.status() != null ? stats.status().name() : null, stats.warnings(), stats.errors());
+    }
+
+    /**
+     * @return {@code true} if the batch reached its maximum size and must
+     * be sent before adding more data.
+     */
+    public boolean isFull() {
+        return batch.size() >= maxSize;
+    }
+
+    /**
+     * Sends the batch if it is full or if the batching window is elapsed.
+     */
+    public boolean flushIfNeeded() {
+        if (batch.isEmpty()) {
+            return true;
+        }
+
+        if (isFull() || System.currentTimeMillis() - firstAddedAt >= window) {
+            return flush();
+        }
+
+        return true;
+    }
+
+    /**
+     * Sends the batch.
+     * @return {@code false} if the batch wasn't sent completely, the unsent
+     * data is kept for the next attempt.
+     */
+    public boolean flush() {
+        if (batch.isEmpty()) {
+            return true;
+        }
+
+        int sent = appender.appendBatch(instanceId, batch.toByteArray());
+        batch.discard(sent);
+
+        if (!batch.isEmpty()) {
+            log.warn("flush ['{}'] -> failed to send {} frame(s), will retry later", instanceId, batch.frameCount());
+            return false;
+        }
+
+        return true;
+    }
+
+    private void onAdd() {
+        if (batch.isEmpty()) {
+            firstAddedAt = System.currentTimeMillis();
+        }
+    }
+}
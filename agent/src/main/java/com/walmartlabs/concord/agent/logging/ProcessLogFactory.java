@@ -36,12 +36,16 @@ public class ProcessLogFactory {
 
     private final Path logDir;
     private final long logStreamMaxDelay;
+    private final long logBatchWindow;
+    private final int logBatchMaxSize;
     private final LogAppender logAppender;
 
     @Inject
     public ProcessLogFactory(AgentConfiguration cfg, LogAppender logAppender) {
         this.logDir = cfg.getLogDir();
         this.logStreamMaxDelay = cfg.getLogMaxDelay();
+        this.logBatchWindow = cfg.getLogBatchWindow();
+        this.logBatchMaxSize = cfg.getLogBatchMaxSize();
         this.logAppender = logAppender;
     }
 
@@ -52,7 +56,7 @@ public class ProcessLogFactory {
         }
 
         if (segmented) {
-            return new SegmentedProcessLog(dst, instanceId, logAppender, logStreamMaxDelay);
+            return new SegmentedProcessLog(dst, instanceId, logAppender, logStreamMaxDelay, logBatchWindow, logBatchMaxSize);
         } else {
             return new RedirectedProcessLog(dst, instanceId, logAppender, logStreamMaxDelay);
         }
@@ -23,23 +23,41 @@ package com.walmartlabs.concord.agent.logging;
 import com.walmartlabs.concord.ApiException;
 import com.walmartlabs.concord.agent.AgentConstants;
 import com.walmartlabs.concord.client.*;
+import com.walmartlabs.concord.common.LogSegmentBatch;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.inject.Inject;
 import javax.inject.Named;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
 import java.time.ZoneOffset;
 import java.util.Date;
 import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 @Named
 public class RemoteLogAppender implements LogAppender {
 
     private static final Logger log = LoggerFactory.getLogger(RemoteLogAppender.class);
 
+    /**
+     * How long to use the per-segment endpoints before trying the batch endpoint again.
+     */
+    private static final long BATCH_RECHECK_INTERVAL = TimeUnit.MINUTES.toMillis(5);
+
+    /**
+     * The batch endpoint's error message for unknown processes
+     * (see {@code ProcessLogResourceV2#batch}).
+     */
+    private static final String PROCESS_NOT_FOUND_MESSAGE = "Process instance not found";
+
     private final ProcessApi processApi;
     private final ProcessLogV2Api processLogV2Api;
 
+    private volatile long batchUnsupportedAt;
+
     @Inject
     public RemoteLogAppender(ProcessApi processApi) {
         this.processApi = processApi;
@@ -77,6 +95,88 @@ public class RemoteLogAppender implements LogAppender {
         }
     }
 
+    @Override
+    public int appendBatch(UUID instanceId, byte[] batch) {
+        if (System.currentTimeMillis() - batchUnsupportedAt < BATCH_RECHECK_INTERVAL) {
+            return appendFrames(instanceId, batch);
+        }
+
+        String path = "/api/v2/process/" + instanceId + "/log/batch";
+
+        try {
+            ClientUtils.withRetry(AgentConstants.API_CALL_MAX_RETRIES, AgentConstants.API_CALL_RETRY_DELAY, () -> {
+                ClientUtils.postData(processApi.getApiClient(), path, batch);
+                return null;
+            });
+            return LogSegmentBatch.frameCount(batch);
+        } catch (ApiException e) {
+            if (isBatchUnsupported(e)) {
+                // older servers don't have the batch endpoint
+                log.warn("appendBatch ['{}'] -> batches are not supported by the server, sending the segments one by one", instanceId);
+                batchUnsupportedAt = System.currentTimeMillis();
+                return appendFrames(instanceId, batch);
+            }
+
+            log.warn("appendBatch ['{}'] -> error: {}", instanceId, e.getMessage());
+            return 0;
+        } catch (IOException e) {
+            log.warn("appendBatch ['{}'] -> invalid batch: {}", instanceId, e.getMessage());
+            return 0;
+        }
+    }
+
+    private static boolean isBatchUnsupported(ApiException e) {
+        if (e.getCode() == 405) {
+            return true;
+        }
+
+        // 404 is also returned for unknown processes, which is a real error
+        if (e.getCode() == 404) {
+            String body = e.getResponseBody();
+            return body == null || !body.contains(PROCESS_NOT_FOUND_MESSAGE);
+        }
+
+        return false;
+    }
+
+    /**
+     * Sends the batch's frames using the per-segment endpoints.
+     * Stops at the first frame that can't be sent.
+     */
+    private int appendFrames(UUID instanceId, byte[] batch) {
+        AtomicInteger sent = new AtomicInteger();
+
+        try {
+            LogSegmentBatch.read(new ByteArrayInputStream(batch), new LogSegmentBatch.Visitor() {
+                @Override
+                public void onData(long segmentId, byte[] data) throws IOException {
+                    if (!appendLog(instanceId, segmentId, data)) {
+                        throw new IOException("Can't append the data of segment " + segmentId);
+                    }
+                    sent.incrementAndGet();
+                }
+
+                @Override
+                public void onUpdate(long segmentId, String status, Integer warnings, Integer errors) throws IOException {
+                    LogSegmentStats stats = ImmutableLogSegmentStats.builder()
+                            .status(status != null ? LogSegmentUpdateRequest.StatusEnum.valueOf(status) : null)
+                            .warnings(warnings)
+                            .errors(errors)
+                            .build();
+
+                    if (!updateSegment(instanceId, segmentId, stats)) {
+                        throw new IOException("Can't update segment " + segmentId);
+                    }
+                    sent.incrementAndGet();
+                }
+            });
+        } catch (IOException e) {
+            log.warn("appendFrames ['{}'] -> error: {}", instanceId, e.getMessage());
+        }
+
+        return sent.get();
+    }
+
     @Override
     public Long createSegment(UUID instanceId, UUID correlationId, String segmentName, Date createdAt) {
         LogSegmentRequest request = new LogSegmentRequest()
@@ -39,11 +39,15 @@ public class SegmentedProcessLog extends RedirectedProcessLog {
 
     private final Path logsDir;
     private final Map<LogSegment, Long> segmentIds;
+    private final LogSegmentBatcher batcher;
+
+    public SegmentedProcessLog(Path logsDir, UUID instanceId, LogAppender appender, long logSteamMaxDelay,
+                               long logBatchWindow, int logBatchMaxSize) throws IOException {
 
-    public SegmentedProcessLog(Path logsDir, UUID instanceId, LogAppender appender, long logSteamMaxDelay) throws IOException {
         super(logsDir, instanceId, appender, logSteamMaxDelay);
         this.logsDir = logsDir;
         this.segmentIds = new ConcurrentHashMap<>();
+        this.batcher = new LogSegmentBatcher(instanceId, appender, logBatchWindow, logBatchMaxSize);
     }
 
     @Override
@@ -69,16 +73,18 @@ public class SegmentedProcessLog extends RedirectedProcessLog {
                 }
 
                 return fileReader.read(in, chunk -> {
+                    // don't read any more data until the current batch is sent
+                    if (batcher.isFull() && !batcher.flush()) {
+                        return 0;
+                    }
+
                     LogStatsParser.Result result = LogStatsParser.parse(chunk.bytes(), chunk.len());
                     if (result.chunk() != null) {
-                        boolean success = appender.appendLog(instanceId, id, result.chunk());
-                        if (!success) {
-                            return 0;
-                        }
+                        batcher.data(id, result.chunk());
                     }
                     LogSegmentStats stats = result.stats();
                     if (stats != null) {
-                        appender.updateSegment(instanceId, id, result.stats());
+                        batcher.update(id, stats);
                         if (isFinal(stats.status())) {
                             segmentIds.remove(fileName);
                             return -1;
@@ -87,7 +93,17 @@ public class SegmentedProcessLog extends RedirectedProcessLog {
                     return result.readPos();
                 });
             }
+
+            @Override
+            public void afterProcessing() {
+                batcher.flushIfNeeded();
+            }
         });
+
+        // send the remaining data
+        if (!batcher.flush()) {
+            log.warn("run -> failed to send the remaining log data");
+        }
     }
 
     @Override
@@ -20,21 +20,44 @@ package com.walmartlabs.concord.agent.postprocessing;
  * =====
  */
 
+import com.walmartlabs.concord.ApiException;
 import com.walmartlabs.concord.agent.AgentConstants;
+import com.walmartlabs.concord.agent.ExecutionException;
+import com.walmartlabs.concord.agent.StateFileCache;
 import com.walmartlabs.concord.client.ClientUtils;
 import com.walmartlabs.concord.client.ProcessApi;
+import com.walmartlabs.concord.client.StateManifestEntry;
+import com.walmartlabs.concord.common.IOUtils;
+import com.walmartlabs.concord.common.Posix;
+import com.walmartlabs.concord.common.TemporaryPath;
 import com.walmartlabs.concord.sdk.Constants;
+import org.apache.commons.compress.archivers.zip.ZipArchiveOutputStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import javax.inject.Inject;
 import javax.inject.Named;
 import javax.inject.Singleton;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 @Named
 @Singleton
 public class AttachmentsPostProcessor extends JobFileUploadPostProcessor {
 
+    private static final Logger log = LoggerFactory.getLogger(AttachmentsPostProcessor.class);
+
+    private static final String PREFIX = Constants.Files.JOB_ATTACHMENTS_DIR_NAME + "/";
+
+    private final ProcessApi processApi;
+    private final StateFileCache cache;
+
     @Inject
-    public AttachmentsPostProcessor(ProcessApi processApi) {
+    public AttachmentsPostProcessor(ProcessApi processApi, StateFileCache cache) {
         super(Constants.Files.JOB_ATTACHMENTS_DIR_NAME,
                 "attachments", (instanceId, data) -> {
                     String path = "/api/v1/process/" + instanceId + "/attachment";
@@ -44,5 +67,100 @@ public class AttachmentsPostProcessor extends JobFileUploadPostProcessor {
                         return null;
                     });
                 });
+
+        this.processApi = processApi;
+        this.cache = cache;
+    }
+
+    @Override
+    public void process(UUID instanceId, Path payloadDir) throws ExecutionException {
+        Path src = payloadDir.resolve(Constants.Files.JOB_ATTACHMENTS_DIR_NAME);
+        if (!Files.exists(src)) {
+            return;
+        }
+
+        try {
+            if (uploadChanges(instanceId, src)) {
+                return;
+            }
+        } catch (IOException | ApiException e) {
+            log.warn("process ['{}'] -> incremental upload error, uploading all attachments: {}", instanceId, e.getMessage());
+        }
+
+        super.process(instanceId, payloadDir);
+    }
+
+    /**
+     * Uploads only the files that are new or changed compared to the current process state.
+     *
+     * @return {@code false} if the server doesn't support incremental uploads
+     */
+    private boolean uploadChanges(UUID instanceId, Path src) throws IOException, ApiException {
+        List<StateManifestEntry> remote;
+        try {
+            remote = ClientUtils.withRetry(AgentConstants.API_CALL_MAX_RETRIES, AgentConstants.API_CALL_RETRY_DELAY, () -> processApi.stateManifest(instanceId, PREFIX));
+        } catch (ApiException e) {
+            if (e.getCode() == 404) {
+                return false;
+            }
+            throw e;
+        }
+
+        Map<String, StateManifestEntry> remoteEntries = new HashMap<>();
+        for (StateManifestEntry e : remote) {
+            remoteEntries.put(e.getName().substring(PREFIX.length()), e);
+        }
+
+        List<Path> files;
+        try (Stream<Path> s = Files.walk(src)) {
+            files = s.filter(Files::isRegularFile).collect(Collectors.toList());
+        }
+
+        Map<String, Object> manifest = new HashMap<>();
+        Map<String, Path> changed = new HashMap<>();
+        for (Path f : files) {
+            String n = src.relativize(f).toString();
+            String hash = StateFileCache.hash(f);
+            manifest.put(n, hash);
+
+            StateManifestEntry e = remoteEntries.get(n);
+            int unixMode = Posix.unixMode(Files.getPosixFilePermissions(f));
+            if (e == null || !hash.equals(e.getHash()) || e.getUnixMode() == null || e.getUnixMode() != unixMode) {
+                changed.put(n, f);
+            }
+        }
+
+        try (TemporaryPath tmp = IOUtils.tempFile("attachments", ".zip")) {
+            Map<String, Object> data = new HashMap<>();
+            data.put("manifest", manifest);
+
+            if (!changed.isEmpty()) {
+                try (ZipArchiveOutputStream zip = new ZipArchiveOutputStream(Files.newOutputStream(tmp.path()))) {
+                    for (Map.Entry<String, Path> e : changed.entrySet()) {
+                        IOUtils.zipFile(zip, e.getValue(), e.getKey());
+                    }
+                }
+                data.put("data", tmp.path());
+            }
+
+            String path = "/api/v1/process/" + instanceId + "/attachment/delta";
+            ClientUtils.withRetry(AgentConstants.API_CALL_MAX_RETRIES, AgentConstants.API_CALL_RETRY_DELAY, () -> {
+                ClientUtils.postData(processApi.getApiClient(), path, data, null);
+                return null;
+            });
+        }
+
+        log.info("uploadChanges ['{}'] -> {} file(s) uploaded, {} file(s) unchanged", instanceId, changed.size(), files.size() - changed.size());
+
+        // the same files are likely to be downloaded again when the process resumes
+        for (Path f : changed.values()) {
+            try {
+                cache.put((String) manifest.get(src.relativize(f).toString()), f);
+            } catch (IOException e) {
+                log.warn("uploadChanges ['{}'] -> can't cache '{}': {}", instanceId, f, e.getMessage());
+            }
+        }
+
+        return true;
     }
 }
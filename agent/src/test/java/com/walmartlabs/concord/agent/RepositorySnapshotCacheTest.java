@@ -0,0 +1,149 @@
+package com.walmartlabs.concord.agent;
+
+/*-
+ * *****
+ * Concord
+ * -----
+ * Copyright (C) 2017 - 2020 Walmart Inc.
+ * -----
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =====
+ */
+
+import com.walmartlabs.concord.common.secret.UsernamePassword;
+import org.junit.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermission;
+import java.util.Collections;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.*;
+
+public class RepositorySnapshotCacheTest {
+
+    private static final String REPO_URL = "https://example.com/repo.git";
+    private static final String COMMIT_A = "0123456789abcdef0123456789abcdef01234567";
+    private static final String COMMIT_B = "89abcdef0123456789abcdef0123456789abcdef";
+
+    @Test
+    public void testExport() throws Exception {
+        Path snapshotDir = Files.createTempDirectory("snapshots");
+        Path repoDir = createRepo();
+
+        RepositorySnapshotCache cache = new RepositorySnapshotCache(snapshotDir, 10);
+        assertTrue(cache.isEnabled(COMMIT_A));
+        assertFalse(cache.isEnabled("master"));
+        assertFalse(cache.isEnabled(null));
+
+        Path dst = Files.createTempDirectory("workspace");
+        assertFalse(cache.export(REPO_URL, null, COMMIT_A, null, dst, Collections.emptyList()));
+
+        cache.put(REPO_URL, null, COMMIT_A, repoDir);
+        assertTrue(cache.contains(REPO_URL, null, COMMIT_A));
+        assertFalse(cache.contains(REPO_URL, null, COMMIT_B));
+
+        // the snapshot doesn't depend on the repository's working tree
+        Files.write(repoDir.resolve("concord.yml"), "changed".getBytes());
+
+        assertTrue(cache.export(REPO_URL, null, COMMIT_A, null, dst, Collections.singletonList("^skip\\.txt$")));
+        assertArrayEquals("flows:".getBytes(), Files.readAllBytes(dst.resolve("concord.yml")));
+        assertArrayEquals("hello".getBytes(), Files.readAllBytes(dst.resolve("sub/a.txt")));
+        assertFalse(Files.exists(dst.resolve(".git")));
+        assertFalse(Files.exists(dst.resolve(".gitignore")));
+        assertFalse(Files.exists(dst.resolve("skip.txt")));
+
+        // copied and writable
+        assertEquals(1, Files.getAttribute(dst.resolve("sub/a.txt"), "unix:nlink"));
+        assertTrue(Files.getPosixFilePermissions(dst.resolve("sub/a.txt")).contains(PosixFilePermission.OWNER_WRITE));
+
+        Path subDst = Files.createTempDirectory("workspace");
+        assertTrue(cache.export(REPO_URL, null, COMMIT_A, "/sub", subDst, Collections.emptyList()));
+        assertTrue(Files.exists(subDst.resolve("a.txt")));
+        assertFalse(Files.exists(subDst.resolve("concord.yml")));
+    }
+
+    @Test
+    public void testWorkspaceWrite() throws Exception {
+        Path snapshotDir = Files.createTempDirectory("snapshots");
+
+        RepositorySnapshotCache cache = new RepositorySnapshotCache(snapshotDir, 10);
+        cache.put(REPO_URL, null, COMMIT_A, createRepo());
+
+        Path dst = Files.createTempDirectory("workspace");
+        assertTrue(cache.export(REPO_URL, null, COMMIT_A, null, dst, Collections.emptyList()));
+
+        // a job modifies the workspace
+        Path f = dst.resolve("sub/a.txt");
+        Files.write(f, "changed".getBytes());
+        f.toFile().setWritable(false, false);
+
+        // the snapshot is not affected
+        Path anotherDst = Files.createTempDirectory("workspace");
+        assertTrue(cache.export(REPO_URL, null, COMMIT_A, null, anotherDst, Collections.emptyList()));
+        assertArrayEquals("hello".getBytes(), Files.readAllBytes(anotherDst.resolve("sub/a.txt")));
+    }
+
+    @Test
+    public void testCredentials() throws Exception {
+        Path snapshotDir = Files.createTempDirectory("snapshots");
+
+        UsernamePassword secretA = new UsernamePassword("a", "a".toCharArray());
+        UsernamePassword secretB = new UsernamePassword("b", "b".toCharArray());
+
+        RepositorySnapshotCache cache = new RepositorySnapshotCache(snapshotDir, 10);
+        cache.put(REPO_URL, secretA, COMMIT_A, createRepo());
+
+        // the snapshot is served only with the same credentials
+        assertTrue(cache.contains(REPO_URL, new UsernamePassword("a", "a".toCharArray()), COMMIT_A));
+        assertFalse(cache.contains(REPO_URL, secretB, COMMIT_A));
+        assertFalse(cache.contains(REPO_URL, null, COMMIT_A));
+
+        Path dst = Files.createTempDirectory("workspace");
+        assertFalse(cache.export(REPO_URL, null, COMMIT_A, null, dst, Collections.emptyList()));
+        assertTrue(cache.export(REPO_URL, secretA, COMMIT_A, null, dst, Collections.emptyList()));
+    }
+
+    @Test
+    public void testEviction() throws Exception {
+        Path snapshotDir = Files.createTempDirectory("snapshots");
+        Path repoDir = createRepo();
+
+        RepositorySnapshotCache cache = new RepositorySnapshotCache(snapshotDir, 1);
+        cache.put(REPO_URL, null, COMMIT_A, repoDir);
+
+        // make sure the snapshots have different mtime
+        try (Stream<Path> s = Files.list(snapshotDir)) {
+            s.forEach(p -> p.toFile().setLastModified(1000));
+        }
+
+        cache.put(REPO_URL, null, COMMIT_B, repoDir);
+
+        // the oldest snapshot is removed
+        assertFalse(cache.contains(REPO_URL, null, COMMIT_A));
+        assertTrue(cache.contains(REPO_URL, null, COMMIT_B));
+    }
+
+    private static Path createRepo() throws Exception {
+        Path repoDir = Files.createTempDirectory("repo");
+        Files.createDirectories(repoDir.resolve(".git"));
+        Files.write(repoDir.resolve(".git/HEAD"), "ref: refs/heads/master".getBytes());
+        Files.write(repoDir.resolve(".gitignore"), "*.tmp".getBytes());
+        Files.write(repoDir.resolve("concord.yml"), "flows:".getBytes());
+        Files.write(repoDir.resolve("skip.txt"), "skip".getBytes());
+        Files.createDirectories(repoDir.resolve("sub"));
+        Files.write(repoDir.resolve("sub/a.txt"), "hello".getBytes());
+        return repoDir;
+    }
+}
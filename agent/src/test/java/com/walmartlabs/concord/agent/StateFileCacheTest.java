@@ -0,0 +1,82 @@
+package com.walmartlabs.concord.agent;
+
+/*-
+ * *****
+ * Concord
+ * -----
+ * Copyright (C) 2017 - 2020 Walmart Inc.
+ * -----
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =====
+ */
+
+import org.junit.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+
+import static org.junit.Assert.*;
+
+public class StateFileCacheTest {
+
+    @Test
+    public void testCopy() throws Exception {
+        Path cacheDir = Files.createTempDirectory("cache");
+        Path workDir = Files.createTempDirectory("work");
+
+        Path src = workDir.resolve("src.txt");
+        Files.write(src, "hello".getBytes());
+        String hash = StateFileCache.hash(src);
+
+        StateFileCache cache = new StateFileCache(cacheDir, 1024);
+
+        Path dst = workDir.resolve("a/b/dst.txt");
+        assertFalse(cache.copyTo(hash, 5, dst));
+
+        cache.put(hash, src);
+        assertTrue(cache.copyTo(hash, 5, dst));
+        assertArrayEquals("hello".getBytes(), Files.readAllBytes(dst));
+
+        // size mismatch
+        assertFalse(cache.copyTo(hash, 6, dst));
+    }
+
+    @Test
+    public void testEviction() throws Exception {
+        Path cacheDir = Files.createTempDirectory("cache");
+        Path workDir = Files.createTempDirectory("work");
+
+        StateFileCache cache = new StateFileCache(cacheDir, 250);
+
+        String[] hashes = new String[3];
+        for (int i = 0; i < hashes.length; i++) {
+            Path p = workDir.resolve("file" + i);
+            byte[] ab = new byte[100];
+            ab[0] = (byte) i;
+            Files.write(p, ab);
+
+            hashes[i] = StateFileCache.hash(p);
+            cache.put(hashes[i], p);
+
+            // make sure the files have different mtime
+            Files.setLastModifiedTime(cacheDir.resolve(hashes[i]), FileTime.fromMillis(1000L * (i + 1)));
+        }
+
+        // the oldest file is removed
+        Path dst = workDir.resolve("dst");
+        assertFalse(cache.copyTo(hashes[0], 100, dst));
+        assertTrue(cache.copyTo(hashes[1], 100, dst));
+        assertTrue(cache.copyTo(hashes[2], 100, dst));
+    }
+}
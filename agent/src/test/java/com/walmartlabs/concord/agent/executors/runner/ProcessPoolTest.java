@@ -0,0 +1,161 @@
+package com.walmartlabs.concord.agent.executors.runner;
+
+/*-
+ * *****
+ * Concord
+ * -----
+ * Copyright (C) 2017 - 2020 Walmart Inc.
+ * -----
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =====
+ */
+
+import com.google.common.hash.HashCode;
+import com.typesafe.config.ConfigFactory;
+import com.walmartlabs.concord.agent.cfg.PreForkConfiguration;
+import com.walmartlabs.concord.agent.executors.runner.ProcessPool.ProcessEntry;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.*;
+
+import static org.junit.Assert.*;
+
+public class ProcessPoolTest {
+
+    private static final HashCode A = HashCode.fromInt(1);
+    private static final HashCode B = HashCode.fromInt(2);
+
+    @Test(timeout = 10000)
+    public void testWarm() throws Exception {
+        ProcessPool pool = new ProcessPool(cfg(3, 1));
+
+        pool.take(A, ProcessPoolTest::start);
+        assertEquals(1, pool.getStats().getMisses());
+
+        waitForWarm(pool, A, 1);
+
+        pool.take(A, ProcessPoolTest::start);
+        assertEquals(1, pool.getStats().getHits());
+    }
+
+    @Test(timeout = 10000)
+    public void testSlowStart() throws Exception {
+        ProcessPool pool = new ProcessPool(cfg(3, 1));
+
+        CountDownLatch slow = new CountDownLatch(1);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<ProcessEntry> f = executor.submit(() -> pool.take(A, () -> {
+                try {
+                    slow.await();
+                } catch (InterruptedException e) {
+                    throw new RuntimeException(e);
+                }
+                return start();
+            }));
+
+            // a slow start of one command must not block other commands
+            ProcessEntry e = pool.take(B, ProcessPoolTest::start);
+            assertNotNull(e);
+            assertFalse(f.isDone());
+
+            slow.countDown();
+            assertNotNull(f.get());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test(timeout = 10000)
+    public void testEviction() throws Exception {
+        ProcessPool pool = new ProcessPool(cfg(1, 1));
+
+        pool.take(A, ProcessPoolTest::start);
+        waitForWarm(pool, A, 1);
+
+        // B is the most recently used command, A's process must be evicted
+        pool.take(B, ProcessPoolTest::start);
+        waitForWarm(pool, B, 1);
+
+        assertEquals(0, (int) pool.getStats().getWarm().getOrDefault(A, 0));
+    }
+
+    private static void waitForWarm(ProcessPool pool, HashCode hc, int count) throws InterruptedException {
+        while (pool.getStats().getWarm().getOrDefault(hc, 0) != count) {
+            Thread.sleep(10);
+        }
+    }
+
+    private static PreForkConfiguration cfg(int maxCount, int warmCount) {
+        Map<String, Object> m = new HashMap<>();
+        m.put("prefork.maxAge", "1 minute");
+        m.put("prefork.maxCount", maxCount);
+        m.put("prefork.warmCount", warmCount);
+        return new PreForkConfiguration(ConfigFactory.parseMap(m));
+    }
+
+    private static ProcessEntry start() {
+        return new ProcessEntry(new TestProcess(), Paths.get("/tmp"));
+    }
+
+    private static class TestProcess extends Process {
+
+        private final CountDownLatch done = new CountDownLatch(1);
+
+        @Override
+        public OutputStream getOutputStream() {
+            return new ByteArrayOutputStream();
+        }
+
+        @Override
+        public InputStream getInputStream() {
+            return new ByteArrayInputStream(new byte[0]);
+        }
+
+        @Override
+        public InputStream getErrorStream() {
+            return new ByteArrayInputStream(new byte[0]);
+        }
+
+        @Override
+        public int waitFor() throws InterruptedException {
+            done.await();
+            return 0;
+        }
+
+        @Override
+        public int exitValue() {
+            if (done.getCount() > 0) {
+                throw new IllegalThreadStateException();
+            }
+            return 0;
+        }
+
+        @Override
+        public void destroy() {
+            done.countDown();
+        }
+
+        @Override
+        public boolean isAlive() {
+            return done.getCount() > 0;
+        }
+    }
+}
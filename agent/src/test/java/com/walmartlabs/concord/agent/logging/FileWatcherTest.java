@@ -0,0 +1,110 @@
+package com.walmartlabs.concord.agent.logging;
+
+/*-
+ * *****
+ * Concord
+ * -----
+ * Copyright (C) 2017 - 2020 Walmart Inc.
+ * -----
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =====
+ */
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.*;
+
+public class FileWatcherTest {
+
+    private static final String END = "END";
+
+    @Test(timeout = 30000)
+    public void testMultipleFiles() throws Exception {
+        Path dir = Files.createTempDirectory("test");
+
+        Map<String, ByteArrayOutputStream> data = new ConcurrentHashMap<>();
+        AtomicBoolean stop = new AtomicBoolean(false);
+
+        FileWatcher.FileListener<String> listener = new FileWatcher.FileListener<String>() {
+
+            private final FileWatcher.FileReader reader = new FileWatcher.ByteArrayFileReader();
+
+            @Override
+            public boolean onNewFile(String fileName) {
+                data.put(fileName, new ByteArrayOutputStream());
+                return true;
+            }
+
+            @Override
+            public long onChanged(String fileName, RandomAccessFile in) throws IOException {
+                ByteArrayOutputStream out = data.get(fileName);
+                long pos = reader.read(in, chunk -> {
+                    out.write(chunk.bytes(), 0, chunk.len());
+                    return chunk.len();
+                });
+                return new String(out.toByteArray(), StandardCharsets.UTF_8).endsWith(END) ? -1 : pos;
+            }
+        };
+
+        Thread t = new Thread(() -> {
+            try {
+                FileWatcher.watch(dir, stop::get, 100, p -> p.getFileName().toString(), listener);
+            } catch (Exception e) {
+                throw new RuntimeException(e);
+            }
+        });
+        t.start();
+
+        int fileCount = 20;
+        for (int i = 0; i < 3; i++) {
+            for (int j = 0; j < fileCount; j++) {
+                append(dir.resolve(j + ".log"), "line " + i + "\n");
+            }
+            Thread.sleep(50);
+        }
+
+        for (int j = 0; j < fileCount; j++) {
+            append(dir.resolve(j + ".log"), END);
+        }
+
+        // wait for all files to be consumed and removed
+        while (Files.list(dir).count() > 0) {
+            Thread.sleep(50);
+        }
+
+        stop.set(true);
+        t.join();
+
+        assertEquals(fileCount, data.size());
+        for (ByteArrayOutputStream out : data.values()) {
+            assertEquals("line 0\nline 1\nline 2\n" + END, new String(out.toByteArray(), StandardCharsets.UTF_8));
+        }
+
+        Files.delete(dir);
+    }
+
+    private static void append(Path p, String s) throws Exception {
+        Files.write(p, s.getBytes(StandardCharsets.UTF_8), StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+    }
+}
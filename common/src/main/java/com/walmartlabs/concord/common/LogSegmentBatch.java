@@ -0,0 +1,214 @@
+package com.walmartlabs.concord.common;
+
+/*-
+ * *****
+ * Concord
+ * -----
+ * Copyright (C) 2017 - 2020 Walmart Inc.
+ * -----
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =====
+ */
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Binary format used to send data and status updates of multiple
+ * log segments in a single request.
+ * <pre>
+ * batch   := frame*
+ * frame   := segmentId (int64) type (int8) length (int32) payload
+ * </pre>
+ * The payload of {@link #DATA} frames is the raw log data. The payload of
+ * {@link #UPDATE} frames is the segment's status (UTF), the number of
+ * warnings and errors (int32, -1 if not specified).
+ * <p/>
+ * Frames of unknown types are skipped. Frames must be applied in order.
+ */
+public final class LogSegmentBatch {
+
+    public static final byte DATA = 0;
+    public static final byte UPDATE = 1;
+
+    /**
+     * Reads the batch, calls the visitor for each frame.
+     */
+    public static void read(InputStream in, Visitor visitor) throws IOException {
+        DataInputStream data = new DataInputStream(in);
+
+        while (true) {
+            long segmentId;
+            try {
+                segmentId = data.readLong();
+            } catch (EOFException e) {
+                return;
+            }
+
+            byte type = data.readByte();
+            int len = data.readInt();
+            if (len < 0) {
+                throw new IOException("Invalid frame length: " + len);
+            }
+
+            byte[] payload = new byte[len];
+            data.readFully(payload);
+
+            switch (type) {
+                case DATA: {
+                    visitor.onData(segmentId, payload);
+                    break;
+                }
+                case UPDATE: {
+                    DataInputStream u = new DataInputStream(new ByteArrayInputStream(payload));
+                    String status = u.readUTF();
+                    int warnings = u.readInt();
+                    int errors = u.readInt();
+                    visitor.onUpdate(segmentId, status.isEmpty() ? null : status, warnings >= 0 ? warnings : null, errors >= 0 ? errors : null);
+                    break;
+                }
+                default: {
+                    // skip unknown frames
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the number of frames in the batch.
+     */
+    public static int frameCount(byte[] batch) throws IOException {
+        DataInputStream data = new DataInputStream(new ByteArrayInputStream(batch));
+
+        int result = 0;
+        while (data.available() > 0) {
+            data.readLong();
+            data.readByte();
+            int len = data.readInt();
+            if (len < 0 || data.skipBytes(len) != len) {
+                throw new IOException("Invalid frame length: " + len);
+            }
+            result++;
+        }
+        return result;
+    }
+
+    /**
+     * Accumulates frames in memory. Not thread-safe.
+     */
+    public static final class Writer {
+
+        private final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        private final DataOutputStream out = new DataOutputStream(buffer);
+        private final List<Integer> frameOffsets = new ArrayList<>();
+
+        public Writer data(long segmentId, byte[] ab) {
+            return data(segmentId, ab, 0, ab.length);
+        }
+
+        public Writer data(long segmentId, byte[] ab, int off, int len) {
+            try {
+                writeHeader(segmentId, DATA, len);
+                out.write(ab, off, len);
+            } catch (IOException e) {
+                // ByteArrayOutputStream doesn't throw IOExceptions
+                throw new UncheckedIOException(e);
+            }
+            return this;
+        }
+
+        public Writer update(long segmentId, String status, Integer warnings, Integer errors) {
+            try {
+                ByteArrayOutputStream payload = new ByteArrayOutputStream();
+                DataOutputStream u = new DataOutputStream(payload);
+                u.writeUTF(status != null ? status : "");
+                u.writeInt(warnings != null ? warnings : -1);
+                u.writeInt(errors != null ? errors : -1);
+
+                writeHeader(segmentId, UPDATE, payload.size());
+                payload.writeTo(out);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            return this;
+        }
+
+        public boolean isEmpty() {
+            return frameOffsets.isEmpty();
+        }
+
+        public int frameCount() {
+            return frameOffsets.size();
+        }
+
+        /**
+         * @return the size of the batch in bytes.
+         */
+        public int size() {
+            return buffer.size();
+        }
+
+        public byte[] toByteArray() {
+            return buffer.toByteArray();
+        }
+
+        public void reset() {
+            buffer.reset();
+            frameOffsets.clear();
+        }
+
+        /**
+         * Removes the specified number of frames from the start of the batch,
+         * e.g. the frames that were already sent.
+         */
+        public void discard(int frames) {
+            if (frames <= 0) {
+                return;
+            }
+
+            if (frames >= frameOffsets.size()) {
+                reset();
+                return;
+            }
+
+            int offset = frameOffsets.get(frames);
+            byte[] ab = buffer.toByteArray();
+            buffer.reset();
+            buffer.write(ab, offset, ab.length - offset);
+
+            List<Integer> remaining = new ArrayList<>(frameOffsets.subList(frames, frameOffsets.size()));
+            frameOffsets.clear();
+            for (int o : remaining) {
+                frameOffsets.add(o - offset);
+            }
+        }
+
+        private void writeHeader(long segmentId, byte type, int len) throws IOException {
+            frameOffsets.add(buffer.size());
+            out.writeLong(segmentId);
+            out.writeByte(type);
+            out.writeInt(len);
+        }
+    }
+
+    public interface Visitor {
+
+        void onData(long segmentId, byte[] data) throws IOException;
+
+        void onUpdate(long segmentId, String status, Integer warnings, Integer errors) throws IOException;
+    }
+
+    private LogSegmentBatch() {
+    }
+}
@@ -21,7 +21,11 @@ package com.walmartlabs.concord.common;
  */
 
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.Map;
+import java.util.function.Function;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
 
 public final class MapMatcher {
 
@@ -30,37 +34,98 @@ public final class MapMatcher {
             return true;
         }
 
-        return compareNodes(data, conditions);
+        return compareNodes(Pattern::compile, data, conditions);
+    }
+
+    /**
+     * Compiles the specified conditions. Useful when the same conditions
+     * are matched against multiple data maps: the regular expressions
+     * are compiled only once.
+     */
+    public static Compiled compile(Map<String, Object> conditions) {
+        Map<String, Pattern> patterns = new HashMap<>();
+        collectPatterns(conditions, patterns);
+        return new Compiled(conditions, patterns);
+    }
+
+    public static final class Compiled {
+
+        private final Map<String, Object> conditions;
+        private final Map<String, Pattern> patterns;
+
+        private Compiled(Map<String, Object> conditions, Map<String, Pattern> patterns) {
+            this.conditions = conditions;
+            this.patterns = patterns;
+        }
+
+        public boolean matches(Map<String, Object> data) {
+            if (conditions == null || conditions.isEmpty()) {
+                return true;
+            }
+
+            return compareNodes(this::pattern, data, conditions);
+        }
+
+        private Pattern pattern(String regex) {
+            Pattern p = patterns.get(regex);
+            if (p != null) {
+                return p;
+            }
+
+            // not a condition value (see matchAny) or an invalid pattern
+            return Pattern.compile(regex);
+        }
+    }
+
+    private static void collectPatterns(Object conditions, Map<String, Pattern> result) {
+        if (conditions instanceof String) {
+            String s = (String) conditions;
+            if (!result.containsKey(s)) {
+                try {
+                    result.put(s, Pattern.compile(s));
+                } catch (PatternSyntaxException e) {
+                    // will be thrown again when (and if) the pattern is used
+                }
+            }
+        } else if (conditions instanceof Map) {
+            for (Object v : ((Map<?, ?>) conditions).values()) {
+                collectPatterns(v, result);
+            }
+        } else if (conditions instanceof Collection) {
+            for (Object v : (Collection<?>) conditions) {
+                collectPatterns(v, result);
+            }
+        }
     }
 
     @SuppressWarnings({"unchecked", "rawtypes"})
-    private static boolean compareNodes(Object data, Object conditions) {
+    private static boolean compareNodes(Function<String, Pattern> patterns, Object data, Object conditions) {
         if (data == null && conditions == null) {
             return true;
         } else if (data == null && conditions instanceof String) {
-            return compareStringValues("", (String) conditions);
+            return compareStringValues(patterns, "", (String) conditions);
         } else if (data == null || conditions == null) {
             return false;
         }
 
         if (conditions instanceof Map && data instanceof Map) {
-            return compareObjectNodes((Map<String, Object>) data, (Map<String, Object>) conditions);
+            return compareObjectNodes(patterns, (Map<String, Object>) data, (Map<String, Object>) conditions);
         } else if (conditions instanceof String && data instanceof String) {
-            return compareStringValues((String) data, (String) conditions);
+            return compareStringValues(patterns, (String) data, (String) conditions);
         } else if (conditions instanceof Collection && data instanceof Collection) {
-            return compareArrayNodes((Collection) data, (Collection) conditions);
+            return compareArrayNodes(patterns, (Collection) data, (Collection) conditions);
         } else if (conditions instanceof Collection) {
-            return matchAny(data, (Collection) conditions);
+            return matchAny(patterns, data, (Collection) conditions);
         } else {
             return compareValues(data, conditions);
         }
     }
 
-    private static boolean compareObjectNodes(Map<String, Object> data, Map<String, Object> conditions) {
-        for (String fieldName : conditions.keySet()) {
-            Object dataItem = data.get(fieldName);
-            Object conditionItem = conditions.get(fieldName);
-            if (!compareNodes(dataItem, conditionItem)) {
+    private static boolean compareObjectNodes(Function<String, Pattern> patterns, Map<String, Object> data, Map<String, Object> conditions) {
+        for (Map.Entry<String, Object> e : conditions.entrySet()) {
+            Object dataItem = data.get(e.getKey());
+            Object conditionItem = e.getValue();
+            if (!compareNodes(patterns, dataItem, conditionItem)) {
                 return false;
             }
         }
@@ -68,13 +133,13 @@ public final class MapMatcher {
         return true;
     }
 
-    private static boolean compareArrayNodes(Collection<Object> dataElements, Collection<Object> conditionElements) {
+    private static boolean compareArrayNodes(Function<String, Pattern> patterns, Collection<Object> dataElements, Collection<Object> conditionElements) {
         if (conditionElements.size() > dataElements.size()) {
             return false;
         }
 
         for (Object c : conditionElements) {
-            boolean matched = matchAny(c, dataElements);
+            boolean matched = matchAny(patterns, c, dataElements);
             if (!matched) {
                 return false;
             }
@@ -83,9 +148,9 @@ public final class MapMatcher {
         return true;
     }
 
-    private static boolean matchAny(Object condition, Collection<Object> nodes) {
+    private static boolean matchAny(Function<String, Pattern> patterns, Object condition, Collection<Object> nodes) {
         for (Object n : nodes) {
-            boolean result = compareNodes(n, condition);
+            boolean result = compareNodes(patterns, n, condition);
             if (result) {
                 return true;
             }
@@ -94,8 +159,8 @@ public final class MapMatcher {
         return false;
     }
 
-    private static boolean compareStringValues(String dataValue, String conditionValue) {
-        return dataValue.matches(conditionValue);
+    private static boolean compareStringValues(Function<String, Pattern> patterns, String dataValue, String conditionValue) {
+        return patterns.apply(conditionValue).matcher(dataValue).matches();
     }
 
     private static boolean compareValues(Object dataValue, Object conditionValue) {
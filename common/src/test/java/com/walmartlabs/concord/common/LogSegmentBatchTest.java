@@ -0,0 +1,105 @@
+package com.walmartlabs.concord.common;
+
+/*-
+ * *****
+ * Concord
+ * -----
+ * Copyright (C) 2017 - 2020 Walmart Inc.
+ * -----
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =====
+ */
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class LogSegmentBatchTest {
+
+    @Test
+    public void testRoundTrip() throws Exception {
+        byte[] ab = "xhello".getBytes();
+
+        LogSegmentBatch.Writer w = new LogSegmentBatch.Writer()
+                .data(1, ab, 1, 5)
+                .data(2, "world".getBytes())
+                .update(1, "OK", 1, null)
+                .update(2, null, null, null);
+
+        assertEquals(4, w.frameCount());
+
+        List<String> result = new ArrayList<>();
+        LogSegmentBatch.read(new ByteArrayInputStream(w.toByteArray()), new LogSegmentBatch.Visitor() {
+            @Override
+            public void onData(long segmentId, byte[] data) {
+                result.add(segmentId + ":" + new String(data));
+            }
+
+            @Override
+            public void onUpdate(long segmentId, String status, Integer warnings, Integer errors) {
+                result.add(segmentId + ":" + status + "/" + warnings + "/" + errors);
+            }
+        });
+
+        assertEquals(4, result.size());
+        assertEquals("1:hello", result.get(0));
+        assertEquals("2:world", result.get(1));
+        assertEquals("1:OK/1/null", result.get(2));
+        assertEquals("2:null/null/null", result.get(3));
+
+        w.reset();
+        assertTrue(w.isEmpty());
+        assertEquals(0, w.size());
+    }
+
+    @Test
+    public void testDiscard() throws Exception {
+        LogSegmentBatch.Writer w = new LogSegmentBatch.Writer()
+                .data(1, "a".getBytes())
+                .update(1, "OK", null, null)
+                .data(2, "bc".getBytes());
+
+        assertEquals(3, LogSegmentBatch.frameCount(w.toByteArray()));
+
+        w.discard(2);
+        assertEquals(1, w.frameCount());
+        assertEquals(1, LogSegmentBatch.frameCount(w.toByteArray()));
+
+        // new frames are added after the remaining ones
+        w.data(3, "d".getBytes());
+        w.discard(1);
+
+        List<String> result = new ArrayList<>();
+        LogSegmentBatch.read(new ByteArrayInputStream(w.toByteArray()), new LogSegmentBatch.Visitor() {
+            @Override
+            public void onData(long segmentId, byte[] data) {
+                result.add(segmentId + ":" + new String(data));
+            }
+
+            @Override
+            public void onUpdate(long segmentId, String status, Integer warnings, Integer errors) {
+                result.add(segmentId + ":" + status);
+            }
+        });
+        assertEquals(1, result.size());
+        assertEquals("3:d", result.get(0));
+
+        w.discard(5);
+        assertTrue(w.isEmpty());
+        assertEquals(0, w.size());
+    }
+}
@@ -30,6 +30,7 @@ import org.eclipse.aether.collection.CollectRequest;
 import org.eclipse.aether.connector.basic.BasicRepositoryConnectorFactory;
 import org.eclipse.aether.graph.Dependency;
 import org.eclipse.aether.impl.DefaultServiceLocator;
+import org.eclipse.aether.impl.SyncContextFactory;
 import org.eclipse.aether.repository.LocalRepository;
 import org.eclipse.aether.repository.RemoteRepository;
 import org.eclipse.aether.repository.RepositoryPolicy;
@@ -56,7 +57,9 @@ import java.net.URLDecoder;
 import java.nio.file.*;
 import java.security.MessageDigest;
 import java.util.*;
-import java.util.concurrent.Callable;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.stream.Collectors;
 
 public class DependencyManager {
@@ -68,6 +71,10 @@ public class DependencyManager {
     private static final int RETRY_COUNT = 3;
     private static final long RETRY_INTERVAL = 5000;
 
+    private static final int RESOLVER_THREADS = 8;
+    private static final int LOCK_STRIPES = 64;
+    private static final int GRAPH_CACHE_SIZE = 256;
+
     private static final String FILES_CACHE_DIR = "files";
     public static final String MAVEN_SCHEME = "mvn";
 
@@ -85,8 +92,25 @@ public class DependencyManager {
     private final Path cacheDir;
     private final Path localCacheDir;
     private final List<RemoteRepository> repositories;
-    private final Object mutex = new Object();
     private final RepositorySystem maven = newMavenRepositorySystem();
+    private final Object[] locks = new Object[LOCK_STRIPES];
+    private final ExecutorService executor = newResolverExecutor();
+
+    /**
+     * Resolved transitive dependencies by the list of requested dependencies.
+     * Access must be synchronized.
+     */
+    private final Map<String, Collection<Artifact>> graphCache = new LinkedHashMap<String, Collection<Artifact>>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Collection<Artifact>> eldest) {
+            return size() > GRAPH_CACHE_SIZE;
+        }
+    };
+
+    private final AtomicLong graphCacheHits = new AtomicLong();
+    private final AtomicLong graphCacheMisses = new AtomicLong();
+    private final AtomicLong resolveCount = new AtomicLong();
+    private final AtomicLong resolveTime = new AtomicLong();
 
     public DependencyManager(Path cacheDir) throws IOException {
         this(cacheDir, getRepositories());
@@ -105,6 +129,38 @@ public class DependencyManager {
 
         log.info("init -> using repositories: {}", repositories);
         this.repositories = toRemote(repositories);
+
+        for (int i = 0; i < locks.length; i++) {
+            locks[i] = new Object();
+        }
+    }
+
+    /**
+     * @return number of the transitive dependency lists resolved using the in-memory cache
+     */
+    public long getGraphCacheHits() {
+        return graphCacheHits.get();
+    }
+
+    /**
+     * @return number of the transitive dependency lists resolved using Maven
+     */
+    public long getGraphCacheMisses() {
+        return graphCacheMisses.get();
+    }
+
+    /**
+     * @return number of successful {@code resolve} calls
+     */
+    public long getResolveCount() {
+        return resolveCount.get();
+    }
+
+    /**
+     * @return total time spent in successful {@code resolve} calls, ms
+     */
+    public long getResolveTime() {
+        return resolveTime.get();
     }
 
     public Collection<DependencyEntity> resolve(Collection<URI> items) throws IOException {
@@ -113,7 +169,16 @@ public class DependencyManager {
 
     public Collection<DependencyEntity> resolve(Collection<URI> items, ProgressListener listener) throws IOException {
         ResolveExceptionConverter exceptionConverter = new ResolveExceptionConverter(items);
-        return withRetry(RETRY_COUNT, RETRY_INTERVAL, () -> tryResolve(items), exceptionConverter, new ProgressNotifier(listener, exceptionConverter));
+
+        long t1 = System.currentTimeMillis();
+        Collection<DependencyEntity> result = withRetry(RETRY_COUNT, RETRY_INTERVAL, () -> tryResolve(items), exceptionConverter, new ProgressNotifier(listener, exceptionConverter));
+        long t2 = System.currentTimeMillis();
+
+        resolveCount.incrementAndGet();
+        resolveTime.addAndGet(t2 - t1);
+        log.info("resolve -> {} dependencies resolved in {}ms", result.size(), t2 - t1);
+
+        return result;
     }
 
     public DependencyEntity resolveSingle(URI item) throws IOException {
@@ -136,21 +201,74 @@ public class DependencyManager {
 
         DependencyList deps = categorize(uris);
 
-        Collection<DependencyEntity> result = new HashSet<>();
+        // independent downloads and the transitive resolution are performed in parallel
+        List<Callable<Collection<DependencyEntity>>> tasks = new ArrayList<>();
 
-        result.addAll(resolveDirectLinks(deps.directLinks));
+        for (URI item : deps.directLinks) {
+            tasks.add(() -> Collections.singleton(new DependencyEntity(resolveFile(item), item)));
+        }
 
-        result.addAll(resolveMavenTransitiveDependencies(deps.mavenTransitiveDependencies).stream()
-                .map(DependencyManager::toDependency)
-                .collect(Collectors.toList()));
+        if (!deps.mavenTransitiveDependencies.isEmpty()) {
+            tasks.add(() -> resolveMavenTransitiveDependencies(deps.mavenTransitiveDependencies).stream()
+                    .map(DependencyManager::toDependency)
+                    .collect(Collectors.toList()));
+        }
 
-        result.addAll(resolveMavenSingleDependencies(deps.mavenSingleDependencies).stream()
-                .map(DependencyManager::toDependency)
-                .collect(Collectors.toList()));
+        for (MavenDependency dep : deps.mavenSingleDependencies) {
+            tasks.add(() -> Collections.singleton(toDependency(resolveMavenSingle(dep))));
+        }
 
+        Collection<DependencyEntity> result = new HashSet<>();
+        for (Collection<DependencyEntity> r : invokeAll(tasks)) {
+            result.addAll(r);
+        }
         return result;
     }
 
+    private <T> List<T> invokeAll(List<Callable<T>> tasks) throws IOException {
+        if (tasks.size() == 1) {
+            return Collections.singletonList(call(tasks.get(0)));
+        }
+
+        List<Future<T>> futures = new ArrayList<>(tasks.size());
+        try {
+            for (Callable<T> t : tasks) {
+                futures.add(executor.submit(t));
+            }
+
+            List<T> result = new ArrayList<>(tasks.size());
+            for (Future<T> f : futures) {
+                result.add(f.get());
+            }
+            return result;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while resolving dependencies", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IOException(cause);
+        } finally {
+            for (Future<T> f : futures) {
+                f.cancel(true);
+            }
+        }
+    }
+
+    private static <T> T call(Callable<T> c) throws IOException {
+        try {
+            return c.call();
+        } catch (IOException | RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IOException(e);
+        }
+    }
+
     private DependencyEntity tryResolveSingle(URI item) throws IOException {
         String scheme = item.getScheme();
         if (MAVEN_SCHEME.equalsIgnoreCase(scheme)) {
@@ -191,14 +309,6 @@ public class DependencyManager {
         return new DependencyList(mavenTransitiveDependencies, mavenSingleDependencies, directLinks);
     }
 
-    private Collection<DependencyEntity> resolveDirectLinks(Collection<URI> items) throws IOException {
-        Collection<DependencyEntity> paths = new HashSet<>();
-        for (URI item : items) {
-            paths.add(new DependencyEntity(resolveFile(item), item));
-        }
-        return paths;
-    }
-
     private Path resolveFile(URI uri) throws IOException {
         boolean skipCache = shouldSkipCache(uri);
         String name = getLastPart(uri);
@@ -210,7 +320,7 @@ public class DependencyManager {
 
         Path dst = baseDir.resolve(name);
 
-        synchronized (mutex) {
+        synchronized (lockFor(dst.toString())) {
             if (!skipCache && Files.exists(dst)) {
                 log.info("resolveFile -> using a cached copy of {}...", uri);
                 return dst;
@@ -266,26 +376,51 @@ public class DependencyManager {
         req.setArtifact(dep.artifact);
         req.setRepositories(repositories);
 
-        synchronized (mutex) {
-            try {
-                ArtifactResult r = maven.resolveArtifact(session, req);
-                return r.getArtifact();
-            } catch (ArtifactResolutionException e) {
-                throw new IOException(e);
-            }
+        try {
+            ArtifactResult r = maven.resolveArtifact(session, req);
+            return r.getArtifact();
+        } catch (ArtifactResolutionException e) {
+            throw new IOException(e);
         }
     }
 
-    private Collection<Artifact> resolveMavenSingleDependencies(Collection<MavenDependency> deps) throws IOException {
-        Collection<Artifact> paths = new HashSet<>();
-        for (MavenDependency dep : deps) {
-            paths.add(resolveMavenSingle(dep));
+    private Collection<Artifact> resolveMavenTransitiveDependencies(Collection<MavenDependency> deps) throws IOException {
+        String key = deps.stream()
+                .map(d -> d.artifact + ":" + d.scope)
+                .collect(Collectors.joining(","));
+
+        boolean cacheable = deps.stream().allMatch(d -> isFixedVersion(d.artifact));
+
+        // the same list is resolved only once at a time, the other callers get the cached result
+        synchronized (lockFor(key)) {
+            if (cacheable) {
+                Collection<Artifact> cached;
+                synchronized (graphCache) {
+                    cached = graphCache.get(key);
+                }
+
+                // the local repository might be cleaned up externally
+                if (cached != null && cached.stream().allMatch(a -> a.getFile() != null && a.getFile().exists())) {
+                    graphCacheHits.incrementAndGet();
+                    return cached;
+                }
+            }
+
+            graphCacheMisses.incrementAndGet();
+
+            Collection<Artifact> result = doResolveMavenTransitiveDependencies(deps);
+            if (cacheable) {
+                synchronized (graphCache) {
+                    graphCache.put(key, result);
+                }
+            }
+
+            return result;
         }
-        return paths;
     }
 
-    private Collection<Artifact> resolveMavenTransitiveDependencies(Collection<MavenDependency> deps) throws IOException {
-        RepositorySystem system = newMavenRepositorySystem();
+    private Collection<Artifact> doResolveMavenTransitiveDependencies(Collection<MavenDependency> deps) throws IOException {
+        RepositorySystem system = maven;
         RepositorySystemSession session = newRepositorySystemSession(system);
 
         CollectRequest req = new CollectRequest();
@@ -296,18 +431,32 @@ public class DependencyManager {
 
         DependencyRequest dependencyRequest = new DependencyRequest(req, null);
 
-        synchronized (mutex) {
-            try {
-                return system.resolveDependencies(session, dependencyRequest)
-                        .getArtifactResults().stream()
-                        .map(ArtifactResult::getArtifact)
-                        .collect(Collectors.toSet());
-            } catch (DependencyResolutionException e) {
-                throw new IOException(e);
-            }
+        try {
+            return Collections.unmodifiableSet(system.resolveDependencies(session, dependencyRequest)
+                    .getArtifactResults().stream()
+                    .map(ArtifactResult::getArtifact)
+                    .collect(Collectors.toSet()));
+        } catch (DependencyResolutionException e) {
+            throw new IOException(e);
         }
     }
 
+    private Object lockFor(String key) {
+        return locks[Math.floorMod(key.hashCode(), locks.length)];
+    }
+
+    /**
+     * @return {@code true} if the resolution result for the artifact can't change over time
+     */
+    private static boolean isFixedVersion(Artifact a) {
+        if (a.isSnapshot()) {
+            return false;
+        }
+
+        String v = a.getVersion();
+        return !(v.startsWith("[") || v.startsWith("(") || v.equals("LATEST") || v.equals("RELEASE"));
+    }
+
     private DefaultRepositorySystemSession newRepositorySystemSession(RepositorySystem system) {
         DefaultRepositorySystemSession session = MavenRepositorySystemUtils.newSession();
         session.setChecksumPolicy(RepositoryPolicy.CHECKSUM_POLICY_IGNORE);
@@ -366,11 +515,25 @@ public class DependencyManager {
         return "file".equalsIgnoreCase(u.getScheme()) || u.getPath().contains("SNAPSHOT");
     }
 
+    private static ExecutorService newResolverExecutor() {
+        AtomicInteger counter = new AtomicInteger();
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(RESOLVER_THREADS, RESOLVER_THREADS,
+                60, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), r -> {
+            Thread t = new Thread(r, "dependency-resolver-" + counter.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
     private static RepositorySystem newMavenRepositorySystem() {
         DefaultServiceLocator locator = MavenRepositorySystemUtils.newServiceLocator();
         locator.addService(RepositoryConnectorFactory.class, BasicRepositoryConnectorFactory.class);
         locator.addService(TransporterFactory.class, FileTransporterFactory.class);
         locator.addService(TransporterFactory.class, HttpTransporterFactory.class);
+        // the default implementation doesn't synchronize the access to the local repository
+        locator.setServices(SyncContextFactory.class, new LocalRepositorySyncContextFactory(LOCK_STRIPES));
 
         locator.setErrorHandler(new DefaultServiceLocator.ErrorHandler() {
             @Override
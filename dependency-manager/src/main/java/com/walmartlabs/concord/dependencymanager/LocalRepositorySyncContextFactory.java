@@ -0,0 +1,118 @@
+package com.walmartlabs.concord.dependencymanager;
+
+/*-
+ * *****
+ * Concord
+ * -----
+ * Copyright (C) 2017 - 2020 Walmart Inc.
+ * -----
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =====
+ */
+
+import org.eclipse.aether.RepositorySystemSession;
+import org.eclipse.aether.SyncContext;
+import org.eclipse.aether.artifact.Artifact;
+import org.eclipse.aether.impl.SyncContextFactory;
+import org.eclipse.aether.metadata.Metadata;
+
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.TreeSet;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Synchronizes the access to the local repository. maven-resolver's default
+ * {@link SyncContextFactory} is a no-op, so concurrent resolutions that share
+ * artifacts could write the same files (including {@code _remote.repositories}
+ * and {@code *.lastUpdated}).
+ * <p/>
+ * The locks are striped by the artifact's or the metadata's directory, i.e.
+ * {@code groupId:artifactId:version}. Only the resolutions that touch the same
+ * directories wait for each other.
+ * <p/>
+ * All locks are exclusive: the resolver can acquire an exclusive context for
+ * the metadata while holding a shared one in the same thread. Artifacts and
+ * metadata use separate stripes, because the resolver acquires the metadata
+ * while holding the artifacts, but never the other way around. Within each
+ * {@link SyncContext#acquire(Collection, Collection)} call the stripes are
+ * locked in the same order.
+ */
+class LocalRepositorySyncContextFactory implements SyncContextFactory {
+
+    private final Lock[] artifactLocks;
+    private final Lock[] metadataLocks;
+
+    LocalRepositorySyncContextFactory(int stripes) {
+        this.artifactLocks = newLocks(stripes);
+        this.metadataLocks = newLocks(stripes);
+    }
+
+    @Override
+    public SyncContext newInstance(RepositorySystemSession session, boolean shared) {
+        return new LocalRepositorySyncContext();
+    }
+
+    private class LocalRepositorySyncContext implements SyncContext {
+
+        private final Deque<Lock> acquired = new ArrayDeque<>();
+
+        @Override
+        public void acquire(Collection<? extends Artifact> artifacts, Collection<? extends Metadata> metadatas) {
+            if (artifacts != null) {
+                TreeSet<Integer> stripes = new TreeSet<>();
+                for (Artifact a : artifacts) {
+                    stripes.add(stripe(a.getGroupId() + ":" + a.getArtifactId() + ":" + a.getBaseVersion()));
+                }
+                lock(artifactLocks, stripes);
+            }
+
+            if (metadatas != null) {
+                TreeSet<Integer> stripes = new TreeSet<>();
+                for (Metadata m : metadatas) {
+                    stripes.add(stripe(m.getGroupId() + ":" + m.getArtifactId() + ":" + m.getVersion()));
+                }
+                lock(metadataLocks, stripes);
+            }
+        }
+
+        @Override
+        public void close() {
+            while (!acquired.isEmpty()) {
+                acquired.pop().unlock();
+            }
+        }
+
+        private void lock(Lock[] locks, Collection<Integer> stripes) {
+            for (int i : stripes) {
+                Lock l = locks[i];
+                l.lock();
+                acquired.push(l);
+            }
+        }
+
+        private int stripe(String key) {
+            return Math.floorMod(key.hashCode(), artifactLocks.length);
+        }
+    }
+
+    private static Lock[] newLocks(int count) {
+        Lock[] locks = new Lock[count];
+        for (int i = 0; i < count; i++) {
+            locks[i] = new ReentrantLock();
+        }
+        return locks;
+    }
+}
@@ -0,0 +1,133 @@
+package com.walmartlabs.concord.dependencymanager;
+
+/*-
+ * *****
+ * Concord
+ * -----
+ * Copyright (C) 2017 - 2020 Walmart Inc.
+ * -----
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =====
+ */
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertEquals;
+
+public class DependencyManagerCacheTest {
+
+    private String userHome;
+    private Path repoDir;
+    private DependencyManager m;
+
+    @Before
+    public void init() throws Exception {
+        // use an empty local repository
+        userHome = System.getProperty("user.home");
+        System.setProperty("user.home", Files.createTempDirectory("home").toString());
+
+        repoDir = Files.createTempDirectory("repo");
+        deploy("a", "<dependency><groupId>com.example</groupId><artifactId>b</artifactId><version>1.0</version></dependency>");
+        deploy("b", "");
+        deploy("c", "");
+
+        MavenRepository repo = MavenRepository.builder()
+                .id("test")
+                .contentType("default")
+                .url(repoDir.toUri().toString())
+                .build();
+
+        m = new DependencyManager(Files.createTempDirectory("cache"), Collections.singletonList(repo));
+    }
+
+    @After
+    public void tearDown() {
+        System.setProperty("user.home", userHome);
+    }
+
+    @Test(timeout = 30000)
+    public void testGraphCache() throws Exception {
+        Path file = Files.createTempFile("test", ".txt");
+
+        Collection<URI> items = Arrays.asList(
+                new URI("mvn://com.example:a:1.0"),
+                new URI("mvn://com.example:c:1.0?transitive=false"),
+                file.toUri());
+
+        assertEquals(names("a", "b", "c", file.getFileName().toString()), names(m.resolve(items)));
+        assertEquals(0, m.getGraphCacheHits());
+        assertEquals(1, m.getGraphCacheMisses());
+
+        assertEquals(names("a", "b", "c", file.getFileName().toString()), names(m.resolve(items)));
+        assertEquals(1, m.getGraphCacheHits());
+        assertEquals(1, m.getGraphCacheMisses());
+        assertEquals(2, m.getResolveCount());
+    }
+
+    @Test(timeout = 30000)
+    public void testConcurrentResolve() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            // overlapping lists, resolved in parallel using the same local repository
+            List<Future<Collection<DependencyEntity>>> futures = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                Collection<URI> items = i % 2 == 0 ?
+                        Collections.singletonList(new URI("mvn://com.example:a:1.0")) :
+                        Arrays.asList(new URI("mvn://com.example:b:1.0"), new URI("mvn://com.example:c:1.0"));
+
+                futures.add(executor.submit(() -> m.resolve(items)));
+            }
+
+            for (int i = 0; i < futures.size(); i++) {
+                Set<String> expected = i % 2 == 0 ? names("a", "b") : names("b", "c");
+                assertEquals(expected, names(futures.get(i).get()));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private void deploy(String artifactId, String dependencies) throws Exception {
+        Path dir = repoDir.resolve("com/example/" + artifactId + "/1.0");
+        Files.createDirectories(dir);
+
+        String pom = "<project><modelVersion>4.0.0</modelVersion>" +
+                "<groupId>com.example</groupId><artifactId>" + artifactId + "</artifactId><version>1.0</version>" +
+                "<dependencies>" + dependencies + "</dependencies></project>";
+
+        Files.write(dir.resolve(artifactId + "-1.0.pom"), pom.getBytes());
+        Files.write(dir.resolve(artifactId + "-1.0.jar"), artifactId.getBytes());
+    }
+
+    private static Set<String> names(Collection<DependencyEntity> deps) {
+        return deps.stream()
+                .map(d -> d.getPath().getFileName().toString())
+                .map(n -> n.replace("-1.0.jar", ""))
+                .collect(Collectors.toSet());
+    }
+
+    private static Set<String> names(String... names) {
+        return Arrays.stream(names).collect(Collectors.toSet());
+    }
+}
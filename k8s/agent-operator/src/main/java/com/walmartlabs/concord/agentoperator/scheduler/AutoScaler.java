@@ -210,10 +210,11 @@ public class AutoScaler {
     }
 
     private int getProcessCount(AgentPoolConfiguration cfg, List<ProcessQueueEntry> processQueueEntries) {
+        MapMatcher.Compiled queueSelector = MapMatcher.compile(cfg.getQueueSelector());
         return (int) processQueueEntries.stream()
                 .map(ProcessQueueEntry::getRequirements)
                 .filter(Objects::nonNull)
-                .filter(a -> MapMatcher.matches(a, cfg.getQueueSelector()))
+                .filter(queueSelector::matches)
                 .count();
     }
 }
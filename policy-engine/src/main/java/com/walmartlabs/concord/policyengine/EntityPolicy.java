@@ -25,11 +25,10 @@ import java.util.List;
 import java.util.Map;
 import java.util.function.Supplier;
 
-import static com.walmartlabs.concord.policyengine.Utils.matches;
-
 public class EntityPolicy {
 
     private final PolicyRules<EntityRule> rules;
+    private final Patterns patterns = Patterns.caseInsensitive();
 
     public EntityPolicy(PolicyRules<EntityRule> rules) {
         this.rules = rules;
@@ -74,15 +73,15 @@ public class EntityPolicy {
     }
 
     private boolean matchRule(EntityRule r, String entity, String action, Map<String, Object> attrs) {
-        if (r.getEntity() != null && !matches(r.getEntity(), entity)) {
+        if (r.getEntity() != null && !patterns.matches(r.getEntity(), entity)) {
             return false;
         }
 
-        if (r.getAction() != null && !matches(r.getAction(), action)) {
+        if (r.getAction() != null && !patterns.matches(r.getAction(), action)) {
             return false;
         }
 
-        if (r.getConditions() != null && !matches(r.getConditions(), attrs)) {
+        if (r.getConditions() != null && !patterns.matches(r.getConditions(), attrs)) {
             return false;
         }
 
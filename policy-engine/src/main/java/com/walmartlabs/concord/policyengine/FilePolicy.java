@@ -29,11 +29,10 @@ import java.nio.file.attribute.BasicFileAttributes;
 import java.util.ArrayList;
 import java.util.List;
 
-import static com.walmartlabs.concord.policyengine.Utils.matchAny;
-
 public class FilePolicy {
 
     private final PolicyRules<FileRule> rules;
+    private final Patterns patterns = Patterns.caseInsensitive();
 
     public FilePolicy(PolicyRules<FileRule> rules) {
         this.rules = rules;
@@ -94,7 +93,7 @@ public class FilePolicy {
             return false;
         }
 
-        if (!ri.getNames().isEmpty() && !matchAny(ri.getNames(), file.getFileName().toString())) {
+        if (!ri.getNames().isEmpty() && !patterns.matchAny(ri.getNames(), file.getFileName().toString())) {
             return false;
         }
 
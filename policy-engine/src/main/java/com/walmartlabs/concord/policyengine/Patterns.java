@@ -0,0 +1,97 @@
+package com.walmartlabs.concord.policyengine;
+
+/*-
+ * *****
+ * Concord
+ * -----
+ * Copyright (C) 2017 - 2020 Walmart Inc.
+ * -----
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =====
+ */
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * Regular expressions used by the policy rules. The compiled patterns
+ * are cached and reused for the lifetime of the policy.
+ */
+final class Patterns {
+
+    /**
+     * Some of the matching rules use data values as patterns, the limit
+     * prevents those from growing the cache indefinitely. The least
+     * recently used patterns are removed first.
+     */
+    private static final int MAX_SIZE = 1024;
+
+    static Patterns caseInsensitive() {
+        return new Patterns(Pattern.CASE_INSENSITIVE);
+    }
+
+    static Patterns caseSensitive() {
+        return new Patterns(0);
+    }
+
+    private final int flags;
+
+    /**
+     * Access must be synchronized.
+     */
+    private final Map<String, Pattern> patterns = new LinkedHashMap<String, Pattern>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Pattern> eldest) {
+            return size() > MAX_SIZE;
+        }
+    };
+
+    private Patterns(int flags) {
+        this.flags = flags;
+    }
+
+    Pattern get(String pattern) {
+        Pattern p;
+        synchronized (patterns) {
+            p = patterns.get(pattern);
+        }
+
+        if (p == null) {
+            p = Pattern.compile(pattern, flags);
+            synchronized (patterns) {
+                patterns.put(pattern, p);
+            }
+        }
+
+        return p;
+    }
+
+    boolean matches(String pattern, String value) {
+        return get(pattern).matcher(value).matches();
+    }
+
+    boolean matchAny(Collection<String> patterns, String value) {
+        for (String p : patterns) {
+            if (matches(p, value)) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    boolean matches(Map<String, Object> conditions, Map<String, Object> data) {
+        return Utils.matches(this::get, conditions, data);
+    }
+}
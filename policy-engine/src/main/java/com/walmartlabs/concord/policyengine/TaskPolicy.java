@@ -25,13 +25,11 @@ import com.walmartlabs.concord.sdk.Context;
 
 import java.io.Serializable;
 import java.util.*;
-import java.util.stream.Collectors;
-
-import static com.walmartlabs.concord.policyengine.Utils.matches;
 
 public class TaskPolicy {
 
     private final PolicyRules<TaskRule> rules;
+    private final Patterns patterns = Patterns.caseInsensitive();
 
     public TaskPolicy(PolicyRules<TaskRule> rules) {
         this.rules = rules;
@@ -82,11 +80,11 @@ public class TaskPolicy {
     }
 
     private boolean matchRule(String taskName, String methodName, Object[] params, Map<String, List<Serializable>> taskResults, TaskRule r) {
-        if (!matches(r.getTaskName(), taskName)) {
+        if (!patterns.matches(r.getTaskName(), taskName)) {
             return false;
         }
 
-        if (r.getMethod() != null && !matches(r.getMethod(), methodName)) {
+        if (r.getMethod() != null && !patterns.matches(r.getMethod(), methodName)) {
             return false;
         }
 
@@ -101,7 +99,7 @@ public class TaskPolicy {
         return false;
     }
 
-    private static boolean paramsMatches(List<TaskRule.Param> r, Object[] params) {
+    private boolean paramsMatches(List<TaskRule.Param> r, Object[] params) {
         if (params == null) {
             return r.isEmpty();
         }
@@ -124,7 +122,7 @@ public class TaskPolicy {
     }
 
     @SuppressWarnings("unchecked")
-    private static boolean paramMatches(String[] names, int nameIndex, List<Object> values, Object param, boolean isProtected) {
+    private boolean paramMatches(String[] names, int nameIndex, List<Object> values, Object param, boolean isProtected) {
         if (param == null) {
             return values.contains(null);
         }
@@ -159,7 +157,11 @@ public class TaskPolicy {
             Object v = ctx.variables().get(name);
             return paramMatches(names, nameIndex, values, v, isProtected);
         } else if (param instanceof String) {
-            return Utils.matchAny(values.stream().map(Object::toString).collect(Collectors.toList()), param.toString());
+            for (Object v : values) {
+                if (patterns.matches(v.toString(), (String) param)) {
+                    return true;
+                }
+            }
         } else {
             for (Object v : values) {
                 if (v != null && v.equals(param)) {
@@ -171,7 +173,7 @@ public class TaskPolicy {
         return false;
     }
 
-    private static boolean taskResultsMatches(List<TaskRule.TaskResult> rule, Map<String, List<Serializable>> taskResults) {
+    private boolean taskResultsMatches(List<TaskRule.TaskResult> rule, Map<String, List<Serializable>> taskResults) {
         if (rule.isEmpty() || taskResults == null) {
             return false;
         }
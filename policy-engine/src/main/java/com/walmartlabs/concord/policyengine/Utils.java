@@ -27,6 +27,7 @@ import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 import java.util.UUID;
+import java.util.function.Function;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -47,19 +48,31 @@ public final class Utils {
     }
 
     public static boolean matches(String pattern, String value) {
-        return Pattern.compile(pattern, Pattern.CASE_INSENSITIVE).matcher(value).matches();
+        return compile(pattern).matcher(value).matches();
     }
 
     public static boolean matches(Map<String, Object> conditions, Map<String, Object> data) {
+        return matches(Utils::compile, conditions, data);
+    }
+
+    /**
+     * Same as {@link #matches(Map, Map)}, but uses the specified function
+     * to obtain compiled patterns, e.g. to reuse previously compiled patterns.
+     */
+    static boolean matches(Function<String, Pattern> patterns, Map<String, Object> conditions, Map<String, Object> data) {
         if (conditions == null || conditions.isEmpty()) {
             return true;
         }
 
-        return compareNodes(data, conditions);
+        return compareNodes(patterns, data, conditions);
+    }
+
+    static Pattern compile(String pattern) {
+        return Pattern.compile(pattern, Pattern.CASE_INSENSITIVE);
     }
 
     @SuppressWarnings("unchecked")
-    private static boolean compareNodes(Object data, Object conditions) {
+    private static boolean compareNodes(Function<String, Pattern> patterns, Object data, Object conditions) {
         if (data == null && conditions == null) {
             return true;
         } else if (data == null || conditions == null) {
@@ -67,24 +80,24 @@ public final class Utils {
         }
 
         if (conditions instanceof Map && data instanceof Map) {
-            return compareObjectNodes((Map<String, Object>) data, (Map<String, Object>) conditions);
+            return compareObjectNodes(patterns, (Map<String, Object>) data, (Map<String, Object>) conditions);
         } else if (conditions instanceof String && data instanceof UUID) {
-            return matches((String)conditions, data.toString());
+            return patterns.apply((String) conditions).matcher(data.toString()).matches();
         } else if (conditions instanceof String && data instanceof String) {
-            return matches((String)conditions, (String)data);
+            return patterns.apply((String) conditions).matcher((String) data).matches();
         } else if (conditions instanceof Collection && data instanceof Collection) {
-            return compareArrayNodes((Collection) data, (Collection) conditions);
+            return compareArrayNodes(patterns, (Collection) data, (Collection) conditions);
         } else if (conditions instanceof Collection) {
-            return matchAny(data, (Collection)conditions);
+            return matchAny(patterns, data, (Collection)conditions);
         } else {
             return data.equals(conditions);
         }
     }
 
-    private static boolean compareObjectNodes(Map<String, Object> data, Map<String, Object> conditions) {
+    private static boolean compareObjectNodes(Function<String, Pattern> patterns, Map<String, Object> data, Map<String, Object> conditions) {
         for (Map.Entry<String, Object> e : conditions.entrySet()) {
             Object dataItem = data.get(e.getKey());
-            if (!compareNodes(dataItem, e.getValue())) {
+            if (!compareNodes(patterns, dataItem, e.getValue())) {
                 return false;
             }
         }
@@ -92,13 +105,13 @@ public final class Utils {
         return true;
     }
 
-    private static boolean compareArrayNodes(Collection<Object> dataElements, Collection<Object> conditionElements) {
+    private static boolean compareArrayNodes(Function<String, Pattern> patterns, Collection<Object> dataElements, Collection<Object> conditionElements) {
         if (conditionElements.size() > dataElements.size()) {
             return false;
         }
 
         for (Object c : conditionElements) {
-            boolean matched = matchAny(c, dataElements);
+            boolean matched = matchAny(patterns, c, dataElements);
             if (!matched) {
                 return false;
             }
@@ -107,9 +120,9 @@ public final class Utils {
         return true;
     }
 
-    private static boolean matchAny(Object condition, Collection<Object> nodes) {
+    private static boolean matchAny(Function<String, Pattern> patterns, Object condition, Collection<Object> nodes) {
         for (Object n : nodes) {
-            boolean result = compareNodes(n, condition);
+            boolean result = compareNodes(patterns, n, condition);
             if (result) {
                 return true;
             }
@@ -36,6 +36,7 @@ import java.util.Set;
 public class WorkspacePolicy {
 
     private final WorkspaceRule rule;
+    private final Patterns patterns = Patterns.caseSensitive();
 
     public WorkspacePolicy(WorkspaceRule rule) {
         this.rule = rule;
@@ -76,13 +77,13 @@ public class WorkspacePolicy {
         return new CheckResult<>(Collections.emptyList(), deny);
     }
 
-    private static boolean isIgnored(Path p, Set<String> patterns) {
-        if (patterns == null) {
+    private boolean isIgnored(Path p, Set<String> ignoredFiles) {
+        if (ignoredFiles == null) {
             return false;
         }
 
-        for (String s : patterns) {
-            if (p.toString().matches(s)) {
+        for (String s : ignoredFiles) {
+            if (patterns.matches(s, p.toString())) {
                 return true;
             }
         }
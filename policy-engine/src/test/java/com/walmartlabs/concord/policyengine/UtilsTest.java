@@ -22,7 +22,10 @@ package com.walmartlabs.concord.policyengine;
 
 import org.junit.Test;
 
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.Map;
+import java.util.regex.Pattern;
 
 import static org.junit.Assert.*;
 
@@ -37,6 +40,36 @@ public class UtilsTest {
         assertFalse(result);
     }
 
+    @Test
+    public void testPatterns() {
+        Patterns patterns = Patterns.caseInsensitive();
+        assertTrue(patterns.matches("abc.*", "ABCD"));
+        assertSame(patterns.get("abc.*"), patterns.get("abc.*"));
+        assertTrue(patterns.matchAny(Arrays.asList("x", "\\.concord"), ".concord"));
+
+        Map<String, Object> conditions = Collections.singletonMap("entity", "secret.*");
+        assertTrue(patterns.matches(conditions, Collections.singletonMap("entity", "SECRET-1")));
+        assertFalse(patterns.matches(conditions, Collections.singletonMap("entity", "repository")));
+
+        assertFalse(Patterns.caseSensitive().matches("abc.*", "ABCD"));
+    }
+
+    @Test
+    public void testPatternsEviction() {
+        Patterns patterns = Patterns.caseSensitive();
+        Pattern hot = patterns.get("hot.*");
+        Pattern cold = patterns.get("cold-0");
+
+        // the recently used patterns stay cached
+        for (int i = 1; i < 5000; i++) {
+            patterns.get("cold-" + i);
+            assertSame(hot, patterns.get("hot.*"));
+        }
+
+        // the least recently used ones are removed
+        assertNotSame(cold, patterns.get("cold-0"));
+    }
+
     @Test
     public void testSimple() {
         String s = "100KB";
@@ -92,8 +92,16 @@ public class GitClient {
 
         launchCommand(dest, defaultTimeout, "config", "remote.origin.url", uri);
 
-        List<RefSpec> refspecs = Collections.singletonList(new RefSpec("+refs/heads/*:refs/remotes/origin/*"));
-        fetchCommand(uri, refspecs, secret, shallow, dest);
+        // commits are immutable, no need to fetch if we already have the requested one.
+        // The local clone is shared by all users of the repository, so the caller's
+        // credentials must still be checked against the remote
+        if (isCommitId(commitId) && hasCommit(commitId, dest)) {
+            lsRemoteCommand(uri, secret, dest);
+            log.info("Commit '{}' is already present locally, skipping the fetch from '{}'", commitId, hideSensitiveData(uri));
+        } else {
+            List<RefSpec> refspecs = Collections.singletonList(new RefSpec("+refs/heads/*:refs/remotes/origin/*"));
+            fetchCommand(uri, refspecs, secret, shallow, dest);
+        }
 
         String rev;
         if (commitId != null) {
@@ -140,6 +148,17 @@ public class GitClient {
         launchCommandWithCredentials(dest, cfg.fetchTimeout().toMillis(), args, secret);
     }
 
+    private void lsRemoteCommand(String url, Secret secret, Path dest) {
+        log.info("Checking access to '{}'", hideSensitiveData(url));
+
+        List<String> args = new ArrayList<>();
+        args.add("ls-remote");
+        args.add(processUrl(url, secret));
+        args.add("HEAD");
+
+        launchCommandWithCredentials(dest, cfg.fetchTimeout().toMillis(), args, secret);
+    }
+
     private void fetchSubmodules(Secret secret, Path dest) {
         launchCommand(dest, defaultTimeout, "submodule", "init");
         launchCommand(dest, defaultTimeout, "submodule", "sync");
@@ -200,6 +219,15 @@ public class GitClient {
         return s != null ? s.trim() : null;
     }
 
+    private boolean hasCommit(String commitId, Path dest) {
+        try {
+            launchCommand(dest, defaultTimeout, "cat-file", "-e", commitId + "^{commit}");
+            return true;
+        } catch (RepositoryException e) {
+            return false;
+        }
+    }
+
     private ObjectId getCommitRevision(String commitId, Path dest) {
         try {
             return revParse(commitId, dest);
@@ -294,6 +322,10 @@ public class GitClient {
         return line;
     }
 
+    private static boolean isCommitId(String s) {
+        return s != null && ObjectId.isId(s);
+    }
+
     private boolean hasGitRepo(Path dest) {
         return Files.exists(dest.resolve(".git"));
     }
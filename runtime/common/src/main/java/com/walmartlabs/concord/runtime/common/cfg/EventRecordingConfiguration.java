@@ -0,0 +1,67 @@
+package com.walmartlabs.concord.runtime.common.cfg;
+
+/*-
+ * *****
+ * Concord
+ * -----
+ * Copyright (C) 2017 - 2020 Walmart Inc.
+ * -----
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =====
+ */
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import org.immutables.value.Value;
+
+@Value.Immutable
+@Value.Style(jdkOnly = true)
+@JsonInclude(JsonInclude.Include.NON_EMPTY)
+@JsonSerialize(as = ImmutableEventRecordingConfiguration.class)
+@JsonDeserialize(as = ImmutableEventRecordingConfiguration.class)
+public interface EventRecordingConfiguration {
+
+    /**
+     * Max number of events sent to the server in a single request.
+     * @apiNote only for the runtime v2.
+     */
+    @Value.Default
+    default int batchSize() {
+        return 100;
+    }
+
+    /**
+     * Max interval (in ms) between the moment an event is recorded and
+     * the moment it is sent to the server.
+     * @apiNote only for the runtime v2.
+     */
+    @Value.Default
+    default long flushInterval() {
+        return 1000;
+    }
+
+    /**
+     * Max number of events waiting to be sent. New events are dropped
+     * if the limit is reached.
+     * @apiNote only for the runtime v2.
+     */
+    @Value.Default
+    default int maxQueueSize() {
+        return 10000;
+    }
+
+    static ImmutableEventRecordingConfiguration.Builder builder() {
+        return ImmutableEventRecordingConfiguration.builder();
+    }
+}
@@ -86,6 +86,14 @@ public interface RunnerConfiguration {
         return ApiConfiguration.builder().build();
     }
 
+    /**
+     * Process event recording parameters.
+     */
+    @Value.Default
+    default EventRecordingConfiguration events() {
+        return EventRecordingConfiguration.builder().build();
+    }
+
     /**
      * List of the process' dependencies (JAR file paths).
      */
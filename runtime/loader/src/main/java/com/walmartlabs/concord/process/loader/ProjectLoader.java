@@ -48,6 +48,9 @@ public class ProjectLoader {
 
     private static final Logger log = LoggerFactory.getLogger(ProjectLoader.class);
 
+    public static final String CONCORD_V1_RUNTIME_TYPE = "concord-v1";
+    public static final String CONCORD_V2_RUNTIME_TYPE = "concord-v2";
+
     private final com.walmartlabs.concord.project.ProjectLoader v1;
     private final com.walmartlabs.concord.runtime.v2.ProjectLoaderV2 v2;
 
@@ -58,12 +61,12 @@ public class ProjectLoader {
     }
 
     public Result loadProject(Path workDir, ImportsNormalizer importsNormalizer) throws Exception {
-        String runtime = getRuntimeType(workDir, "concord-v1"); // TODO constants
+        String runtime = getRuntimeType(workDir, CONCORD_V1_RUNTIME_TYPE);
         return loadProject(workDir, runtime, importsNormalizer);
     }
 
     public Result loadProject(Path workDir, String runtime, ImportsNormalizer importsNormalizer) throws Exception {
-        if ("concord-v2".equals(runtime)) { // TODO constants
+        if (CONCORD_V2_RUNTIME_TYPE.equals(runtime)) {
             return toResult(v2.load(workDir, importsNormalizer::normalize));
         }
 
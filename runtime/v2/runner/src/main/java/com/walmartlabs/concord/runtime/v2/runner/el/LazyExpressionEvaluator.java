@@ -20,6 +20,8 @@ package com.walmartlabs.concord.runtime.v2.runner.el;
  * =====
  */
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import com.walmartlabs.concord.runtime.v2.runner.el.functions.AllVariablesFunction;
 import com.walmartlabs.concord.runtime.v2.runner.el.functions.HasVariableFunction;
 import com.walmartlabs.concord.runtime.v2.runner.el.resolvers.BeanELResolver;
@@ -39,13 +41,33 @@ import static com.walmartlabs.concord.runtime.v2.runner.el.ThreadLocalEvalContex
  */
 public class LazyExpressionEvaluator implements ExpressionEvaluator {
 
+    private static final int MAX_CACHE_SIZE = 1024;
+
     private final ExpressionFactory expressionFactory = ExpressionFactory.newInstance();
     private final TaskProviders taskProviders;
     private final FunctionMapper functionMapper;
 
+    /**
+     * Parsed expressions. The expressions don't hold any references to
+     * the variables or the context they were created with, so they can be
+     * evaluated using any {@link ELContext}.
+     */
+    private final Cache<ExpressionKey, ValueExpression> expressionCache;
+
+    /**
+     * Resolvers that don't depend on the evaluation context.
+     */
+    private final ELResolver commonResolvers;
+    private final ELResolver beanResolver;
+
     public LazyExpressionEvaluator(TaskProviders taskProviders) {
         this.taskProviders = taskProviders;
         this.functionMapper = createFunctionMapper();
+        this.expressionCache = CacheBuilder.newBuilder()
+                .maximumSize(MAX_CACHE_SIZE)
+                .build();
+        this.commonResolvers = createCommonResolvers(expressionFactory);
+        this.beanResolver = new BeanELResolver();
     }
 
     @Override
@@ -122,7 +144,7 @@ public class LazyExpressionEvaluator implements ExpressionEvaluator {
     }
 
     private <T> T evalExpr(LazyEvalContext ctx, String expr, Class<T> type) {
-        ELResolver resolver = createResolver(ctx, expressionFactory);
+        ELResolver resolver = createResolver(ctx);
 
         StandardELContext sc = new StandardELContext(expressionFactory) {
             @Override
@@ -137,7 +159,7 @@ public class LazyExpressionEvaluator implements ExpressionEvaluator {
         };
         sc.putContext(ExpressionFactory.class, expressionFactory);
 
-        ValueExpression x = expressionFactory.createValueExpression(sc, expr, type);
+        ValueExpression x = getExpression(sc, expr, type);
         try {
             Object v = withEvalContext(ctx, () -> x.getValue(sc));
             return type.cast(v);
@@ -150,12 +172,23 @@ public class LazyExpressionEvaluator implements ExpressionEvaluator {
         }
     }
 
+    private ValueExpression getExpression(ELContext ctx, String expr, Class<?> type) {
+        ExpressionKey k = new ExpressionKey(expr, type);
+
+        ValueExpression x = expressionCache.getIfPresent(k);
+        if (x == null) {
+            x = expressionFactory.createValueExpression(ctx, expr, type);
+            expressionCache.put(k, x);
+        }
+
+        return x;
+    }
+
     /**
      * Based on the original code from {@link StandardELContext#getELResolver()}.
      * Creates a {@link ELResolver} instance with "sub-resolvers" in the original order.
      */
-    private ELResolver createResolver(LazyEvalContext evalContext,
-                                      ExpressionFactory expressionFactory) {
+    private ELResolver createResolver(LazyEvalContext evalContext) {
 
         CompositeELResolver r = new CompositeELResolver();
         if (evalContext.scope() != null) {
@@ -165,16 +198,22 @@ public class LazyExpressionEvaluator implements ExpressionEvaluator {
         if (evalContext.context() != null) {
             r.add(new TaskResolver(evalContext.context(), taskProviders));
         }
+        r.add(commonResolvers);
+        if (evalContext.context() != null) {
+            r.add(new TaskMethodResolver(evalContext.context()));
+        }
+        r.add(beanResolver);
+        return r;
+    }
+
+    private static ELResolver createCommonResolvers(ExpressionFactory expressionFactory) {
+        CompositeELResolver r = new CompositeELResolver();
         r.add(expressionFactory.getStreamELResolver());
         r.add(new StaticFieldELResolver());
         r.add(new MapELResolver());
         r.add(new ResourceBundleELResolver());
         r.add(new ListELResolver());
         r.add(new ArrayELResolver());
-        if (evalContext.context() != null) {
-            r.add(new TaskMethodResolver(evalContext.context()));
-        }
-        r.add(new BeanELResolver());
         return r;
     }
 
@@ -188,4 +227,32 @@ public class LazyExpressionEvaluator implements ExpressionEvaluator {
     private static boolean hasExpression(String s) {
         return s.contains("${");
     }
+
+    private static final class ExpressionKey {
+
+        private final String expr;
+        private final Class<?> type;
+
+        private ExpressionKey(String expr, Class<?> type) {
+            this.expr = expr;
+            this.type = type;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            ExpressionKey that = (ExpressionKey) o;
+            return expr.equals(that.expr) && type.equals(that.type);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(expr, type);
+        }
+    }
 }
@@ -20,18 +20,12 @@ package com.walmartlabs.concord.runtime.v2.runner.remote;
  * =====
  */
 
-import com.walmartlabs.concord.ApiClient;
-import com.walmartlabs.concord.ApiException;
 import com.walmartlabs.concord.client.ProcessEventRequest;
-import com.walmartlabs.concord.client.ProcessEventsApi;
-import com.walmartlabs.concord.runtime.common.injector.InstanceId;
 import com.walmartlabs.concord.runtime.v2.ProcessDefinitionUtils;
 import com.walmartlabs.concord.runtime.v2.model.*;
 import com.walmartlabs.concord.runtime.v2.runner.vm.StepCommand;
 import com.walmartlabs.concord.svm.Runtime;
 import com.walmartlabs.concord.svm.*;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
 
 import javax.inject.Inject;
 import java.time.Instant;
@@ -41,15 +35,11 @@ import java.util.Map;
 
 public class EventRecordingExecutionListener implements ExecutionListener {
 
-    private static final Logger log = LoggerFactory.getLogger(EventRecordingExecutionListener.class);
-
-    private final ProcessEventsApi eventsApi;
-    private final InstanceId processInstanceId;
+    private final ProcessEventWriter eventWriter;
 
     @Inject
-    public EventRecordingExecutionListener(ApiClient apiClient, InstanceId processInstanceId) {
-        this.eventsApi = new ProcessEventsApi(apiClient);
-        this.processInstanceId = processInstanceId;
+    public EventRecordingExecutionListener(ProcessEventWriter eventWriter) {
+        this.eventWriter = eventWriter;
     }
 
     @Override
@@ -80,15 +70,17 @@ public class EventRecordingExecutionListener implements ExecutionListener {
         req.setData(m);
         req.setEventDate(Instant.now().atOffset(ZoneOffset.UTC));
 
-        try {
-            eventsApi.event(processInstanceId.getValue(), req);
-        } catch (ApiException e) {
-            log.warn("afterCommand [{}] -> error while sending an event to the server: {}", cmd, e.getMessage());
-        }
+        eventWriter.write(req);
 
         return Result.CONTINUE;
     }
 
+    @Override
+    public void afterProcessEnds(Runtime runtime, State state, Frame lastFrame) {
+        // the process is finished or suspended, send the remaining events
+        eventWriter.flush();
+    }
+
     private static String getDescription(Step step) {
         // TODO: add 'description' into step? so we will not miss description for new steps...
         if (step instanceof FlowCall) {
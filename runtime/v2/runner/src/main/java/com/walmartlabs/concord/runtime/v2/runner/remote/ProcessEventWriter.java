@@ -0,0 +1,204 @@
+package com.walmartlabs.concord.runtime.v2.runner.remote;
+
+/*-
+ * *****
+ * Concord
+ * -----
+ * Copyright (C) 2017 - 2020 Walmart Inc.
+ * -----
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =====
+ */
+
+import com.walmartlabs.concord.ApiClient;
+import com.walmartlabs.concord.ApiException;
+import com.walmartlabs.concord.client.ClientUtils;
+import com.walmartlabs.concord.client.ProcessEventRequest;
+import com.walmartlabs.concord.client.ProcessEventsApi;
+import com.walmartlabs.concord.runtime.common.cfg.ApiConfiguration;
+import com.walmartlabs.concord.runtime.common.cfg.EventRecordingConfiguration;
+import com.walmartlabs.concord.runtime.common.cfg.RunnerConfiguration;
+import com.walmartlabs.concord.runtime.common.injector.InstanceId;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Sends process events to the server in batches. The events are buffered
+ * in a bounded queue and sent by a background thread when either
+ * {@link EventRecordingConfiguration#batchSize()} events are accumulated
+ * or {@link EventRecordingConfiguration#flushInterval()} is elapsed.
+ * <p/>
+ * The remaining events are sent when the process ends or suspends
+ * (see {@link EventRecordingExecutionListener}) or when the JVM exits.
+ */
+@Singleton
+public class ProcessEventWriter {
+
+    private static final Logger log = LoggerFactory.getLogger(ProcessEventWriter.class);
+
+    private final ProcessEventsApi eventsApi;
+    private final UUID instanceId;
+    private final ApiConfiguration apiCfg;
+    private final EventRecordingConfiguration cfg;
+
+    private final BlockingQueue<ProcessEventRequest> queue;
+    private final Object queueMutex = new Object();
+    private final Object sendMutex = new Object();
+
+    private final AtomicLong flushedCount = new AtomicLong();
+    private final AtomicLong droppedCount = new AtomicLong();
+
+    private Thread worker;
+    private volatile boolean stopped;
+
+    @Inject
+    public ProcessEventWriter(ApiClient apiClient, InstanceId instanceId, RunnerConfiguration runnerCfg) {
+        this(new ProcessEventsApi(apiClient), instanceId.getValue(), runnerCfg);
+    }
+
+    ProcessEventWriter(ProcessEventsApi eventsApi, UUID instanceId, RunnerConfiguration runnerCfg) {
+        this.eventsApi = eventsApi;
+        this.instanceId = instanceId;
+        this.apiCfg = runnerCfg.api();
+        this.cfg = runnerCfg.events();
+        this.queue = new ArrayBlockingQueue<>(cfg.maxQueueSize());
+    }
+
+    /**
+     * Adds the event to the queue. Doesn't block, if the queue is full
+     * the event is dropped.
+     */
+    public void write(ProcessEventRequest req) {
+        startIfNeeded();
+
+        if (!queue.offer(req)) {
+            long n = droppedCount.incrementAndGet();
+            if (n == 1 || n % 1000 == 0) {
+                log.warn("write -> the event queue is full, {} event(s) dropped so far", n);
+            }
+            return;
+        }
+
+        if (queue.size() >= cfg.batchSize()) {
+            synchronized (queueMutex) {
+                queueMutex.notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Sends all queued events. Blocks until the events are sent.
+     */
+    public void flush() {
+        synchronized (sendMutex) {
+            while (!queue.isEmpty()) {
+                sendNext();
+            }
+        }
+    }
+
+    /**
+     * Stops the background thread and sends the remaining events.
+     */
+    public void close() {
+        stopped = true;
+
+        synchronized (queueMutex) {
+            queueMutex.notifyAll();
+        }
+
+        flush();
+
+        if (flushedCount.get() > 0 || droppedCount.get() > 0) {
+            log.debug("close -> sent: {}, dropped: {}", flushedCount.get(), droppedCount.get());
+        }
+    }
+
+    /**
+     * @return the number of events successfully sent to the server.
+     */
+    public long getFlushedCount() {
+        return flushedCount.get();
+    }
+
+    /**
+     * @return the number of events dropped due to queue overflow or send errors.
+     */
+    public long getDroppedCount() {
+        return droppedCount.get();
+    }
+
+    private synchronized void startIfNeeded() {
+        if (worker != null || stopped) {
+            return;
+        }
+
+        worker = new Thread(this::run, "process-event-writer");
+        worker.setDaemon(true);
+        worker.start();
+
+        Runtime.getRuntime().addShutdownHook(new Thread(this::close, "process-event-writer-shutdown"));
+    }
+
+    private void run() {
+        while (!stopped) {
+            try {
+                synchronized (queueMutex) {
+                    if (queue.size() < cfg.batchSize()) {
+                        queueMutex.wait(cfg.flushInterval());
+                    }
+                }
+
+                synchronized (sendMutex) {
+                    // send full batches first, the last one might be incomplete
+                    do {
+                        sendNext();
+                    } while (queue.size() >= cfg.batchSize());
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            } catch (Exception e) {
+                log.warn("run -> error while sending events: {}", e.getMessage());
+            }
+        }
+    }
+
+    private void sendNext() {
+        List<ProcessEventRequest> batch = new ArrayList<>(cfg.batchSize());
+        queue.drainTo(batch, cfg.batchSize());
+        if (batch.isEmpty()) {
+            return;
+        }
+
+        try {
+            ClientUtils.withRetry(apiCfg.retryCount(), apiCfg.retryInterval(), () -> {
+                eventsApi.batchEvent(instanceId, batch);
+                return null;
+            });
+            flushedCount.addAndGet(batch.size());
+        } catch (ApiException e) {
+            droppedCount.addAndGet(batch.size());
+            log.warn("sendNext -> error while sending {} event(s) to the server: {}", batch.size(), e.getMessage());
+        }
+    }
+}
@@ -20,12 +20,8 @@ package com.walmartlabs.concord.runtime.v2.runner.remote;
  * =====
  */
 
-import com.walmartlabs.concord.ApiClient;
-import com.walmartlabs.concord.ApiException;
 import com.walmartlabs.concord.client.ProcessEventRequest;
-import com.walmartlabs.concord.client.ProcessEventsApi;
 import com.walmartlabs.concord.runtime.common.ObjectTruncater;
-import com.walmartlabs.concord.runtime.common.injector.InstanceId;
 import com.walmartlabs.concord.runtime.v2.ProcessDefinitionUtils;
 import com.walmartlabs.concord.runtime.v2.model.EventConfiguration;
 import com.walmartlabs.concord.runtime.v2.model.Location;
@@ -35,8 +31,6 @@ import com.walmartlabs.concord.runtime.v2.runner.tasks.TaskCallEvent;
 import com.walmartlabs.concord.runtime.v2.runner.tasks.TaskCallListener;
 import com.walmartlabs.concord.runtime.v2.sdk.Context;
 import com.walmartlabs.concord.runtime.v2.sdk.Variables;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
 
 import javax.inject.Inject;
 import java.time.Instant;
@@ -45,16 +39,12 @@ import java.util.*;
 
 public class TaskCallEventRecordingListener implements TaskCallListener {
 
-    private static final Logger log = LoggerFactory.getLogger(TaskCallEventRecordingListener.class);
-
-    private final ProcessEventsApi eventsApi;
-    private final InstanceId processInstanceId;
+    private final ProcessEventWriter eventWriter;
     private final EventConfiguration eventConfiguration;
 
     @Inject
-    public TaskCallEventRecordingListener(ApiClient apiClient, InstanceId processInstanceId, ProcessConfiguration processConfiguration) {
-        this.eventsApi = new ProcessEventsApi(apiClient);
-        this.processInstanceId = processInstanceId;
+    public TaskCallEventRecordingListener(ProcessEventWriter eventWriter, ProcessConfiguration processConfiguration) {
+        this.eventWriter = eventWriter;
         this.eventConfiguration = processConfiguration.events();
     }
 
@@ -119,11 +109,7 @@ public class TaskCallEventRecordingListener implements TaskCallListener {
         req.setData(event);
         req.setEventDate(Instant.now().atOffset(ZoneOffset.UTC));
 
-        try {
-            eventsApi.event(processInstanceId.getValue(), req);
-        } catch (ApiException e) {
-            log.warn("send [{}] -> error while sending an event to the server: {}", event, e.getMessage());
-        }
+        eventWriter.write(req);
     }
 
     @SuppressWarnings("unchecked")
@@ -82,6 +82,22 @@ public class ExpressionEvaluatorTest {
         assertNull(str);
     }
 
+    @Test
+    public void testReuseExpression() {
+        ExpressionEvaluator ee = new DefaultExpressionEvaluator(new TaskProviders());
+
+        // the same expressions evaluated with different variables
+        for (int i = 0; i < 10; i++) {
+            Map<String, Object> vars = Collections.singletonMap("item", i);
+
+            String str = ee.eval(global(vars), "item: ${item}", String.class);
+            assertEquals("item: " + i, str);
+
+            Object o = ee.eval(global(vars), "${item}", Object.class);
+            assertEquals(i, o);
+        }
+    }
+
     @Test
     public void testEvalScope() {
         ExpressionEvaluator ee = new DefaultExpressionEvaluator(new TaskProviders());
@@ -0,0 +1,146 @@
+package com.walmartlabs.concord.runtime.v2.runner.remote;
+
+/*-
+ * *****
+ * Concord
+ * -----
+ * Copyright (C) 2017 - 2020 Walmart Inc.
+ * -----
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =====
+ */
+
+import com.walmartlabs.concord.ApiException;
+import com.walmartlabs.concord.client.ProcessEventRequest;
+import com.walmartlabs.concord.client.ProcessEventsApi;
+import com.walmartlabs.concord.runtime.common.cfg.ApiConfiguration;
+import com.walmartlabs.concord.runtime.common.cfg.EventRecordingConfiguration;
+import com.walmartlabs.concord.runtime.common.cfg.RunnerConfiguration;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ProcessEventWriterTest {
+
+    @Test
+    public void testBatches() throws Exception {
+        RecordingEventsApi api = new RecordingEventsApi();
+        ProcessEventWriter writer = new ProcessEventWriter(api, UUID.randomUUID(), cfg(10, 60000, 1000));
+
+        for (int i = 0; i < 25; i++) {
+            writer.write(event(i));
+        }
+
+        writer.flush();
+
+        assertEquals(25, writer.getFlushedCount());
+        assertEquals(0, writer.getDroppedCount());
+
+        // events must be sent in the original order and in batches of at most batchSize
+        List<Integer> received = new ArrayList<>();
+        for (List<ProcessEventRequest> batch : api.batches) {
+            assertTrue(batch.size() <= 10);
+            for (ProcessEventRequest e : batch) {
+                received.add((Integer) e.getData().get("n"));
+            }
+        }
+
+        for (int i = 0; i < 25; i++) {
+            assertEquals(i, (int) received.get(i));
+        }
+    }
+
+    @Test(timeout = 10000)
+    public void testFlushInterval() throws Exception {
+        RecordingEventsApi api = new RecordingEventsApi();
+        api.expected = new CountDownLatch(1);
+
+        ProcessEventWriter writer = new ProcessEventWriter(api, UUID.randomUUID(), cfg(100, 100, 1000));
+        writer.write(event(0));
+
+        // an incomplete batch must be sent by the background thread
+        api.expected.await();
+        assertEquals(1, api.batches.size());
+        assertEquals(1, api.batches.get(0).size());
+    }
+
+    @Test
+    public void testOverflow() throws Exception {
+        CountDownLatch unblock = new CountDownLatch(1);
+        RecordingEventsApi api = new RecordingEventsApi() {
+            @Override
+            public void batchEvent(UUID processInstanceId, List<ProcessEventRequest> body) throws ApiException {
+                try {
+                    unblock.await();
+                } catch (InterruptedException e) {
+                    throw new ApiException(e);
+                }
+                super.batchEvent(processInstanceId, body);
+            }
+        };
+
+        ProcessEventWriter writer = new ProcessEventWriter(api, UUID.randomUUID(), cfg(10, 60000, 10));
+
+        // writes must not block even if the server is slow
+        for (int i = 0; i < 100; i++) {
+            writer.write(event(i));
+        }
+
+        unblock.countDown();
+        writer.flush();
+
+        assertEquals(100, writer.getFlushedCount() + writer.getDroppedCount());
+        assertTrue(writer.getDroppedCount() > 0);
+    }
+
+    private static RunnerConfiguration cfg(int batchSize, long flushInterval, int maxQueueSize) {
+        return RunnerConfiguration.builder()
+                .api(ApiConfiguration.builder()
+                        .retryCount(0)
+                        .build())
+                .events(EventRecordingConfiguration.builder()
+                        .batchSize(batchSize)
+                        .flushInterval(flushInterval)
+                        .maxQueueSize(maxQueueSize)
+                        .build())
+                .build();
+    }
+
+    private static ProcessEventRequest event(int n) {
+        ProcessEventRequest req = new ProcessEventRequest();
+        req.setEventType("ELEMENT");
+        req.setData(Collections.singletonMap("n", n));
+        return req;
+    }
+
+    private static class RecordingEventsApi extends ProcessEventsApi {
+
+        private final List<List<ProcessEventRequest>> batches = Collections.synchronizedList(new ArrayList<>());
+        private volatile CountDownLatch expected;
+
+        @Override
+        public void batchEvent(UUID processInstanceId, List<ProcessEventRequest> body) throws ApiException {
+            batches.add(new ArrayList<>(body));
+            if (expected != null) {
+                expected.countDown();
+            }
+        }
+    }
+}
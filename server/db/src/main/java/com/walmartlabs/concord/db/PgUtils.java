@@ -67,6 +67,10 @@ public final class PgUtils {
         return DSL.field("upper({0})", Integer.class, field);
     }
 
+    public static Field<Integer> lowerRange(Field<Object> field) {
+        return DSL.field("lower({0})", Integer.class, field);
+    }
+
     public static boolean isUniqueViolationError(DataAccessException e) {
         Throwable cause = e.getCause();
         // see https://www.postgresql.org/docs/10/errcodes-appendix.html
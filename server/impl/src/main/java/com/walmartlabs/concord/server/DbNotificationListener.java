@@ -0,0 +1,181 @@
+package com.walmartlabs.concord.server;
+
+/*-
+ * *****
+ * Concord
+ * -----
+ * Copyright (C) 2017 - 2020 Walmart Inc.
+ * -----
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =====
+ */
+
+import com.walmartlabs.concord.db.DatabaseConfiguration;
+import com.walmartlabs.concord.db.MainDB;
+import com.walmartlabs.concord.server.sdk.BackgroundTask;
+import org.postgresql.PGConnection;
+import org.postgresql.PGNotification;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.Statement;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Receives DB notifications ({@code LISTEN/NOTIFY}) and passes them to
+ * the {@link Handler}s of the notification channels.
+ * Uses a single dedicated DB connection for all channels to avoid holding
+ * a connection from the pool.
+ */
+@Named
+@Singleton
+public class DbNotificationListener implements BackgroundTask {
+
+    private static final Logger log = LoggerFactory.getLogger(DbNotificationListener.class);
+
+    private static final int POLL_TIMEOUT = 1000;
+    private static final long ERROR_DELAY = TimeUnit.SECONDS.toMillis(10);
+
+    private final DatabaseConfiguration dbCfg;
+    private final Collection<Handler> handlers;
+    private final Map<String, List<Handler>> handlersByChannel;
+
+    private Thread worker;
+
+    @Inject
+    public DbNotificationListener(@MainDB DatabaseConfiguration dbCfg, Collection<Handler> handlers) {
+        this.dbCfg = dbCfg;
+        this.handlers = handlers;
+
+        this.handlersByChannel = new HashMap<>();
+        for (Handler h : handlers) {
+            log.info("Using DB notification handler: {} ({})", h, h.channel());
+            handlersByChannel.computeIfAbsent(h.channel(), k -> new ArrayList<>()).add(h);
+        }
+    }
+
+    @Override
+    public void start() {
+        if (handlers.isEmpty()) {
+            return;
+        }
+
+        this.worker = new Thread(this::run, "db-notification-listener");
+        this.worker.start();
+        log.info("start -> done");
+    }
+
+    @Override
+    public void stop() {
+        if (worker != null) {
+            worker.interrupt();
+            worker = null;
+        }
+        log.info("stop -> done");
+    }
+
+    private void run() {
+        while (!Thread.currentThread().isInterrupted()) {
+            try (Connection conn = DriverManager.getConnection(dbCfg.url(), dbCfg.username(), dbCfg.password())) {
+                try (Statement st = conn.createStatement()) {
+                    for (String channel : handlersByChannel.keySet()) {
+                        st.execute("LISTEN " + channel);
+                    }
+                }
+
+                // anything could've happened while we weren't listening
+                handlers.forEach(h -> call(h, Handler::onConnect));
+
+                PGConnection pg = conn.unwrap(PGConnection.class);
+                while (!Thread.currentThread().isInterrupted()) {
+                    PGNotification[] notifications = pg.getNotifications(POLL_TIMEOUT);
+                    if (notifications != null && notifications.length > 0) {
+                        dispatch(notifications);
+                    }
+
+                    handlers.forEach(h -> call(h, Handler::onPoll));
+                }
+            } catch (Exception e) {
+                log.warn("run -> error while listening for notifications: {}. Will retry in {}ms...", e.getMessage(), ERROR_DELAY);
+
+                try {
+                    Thread.sleep(ERROR_DELAY);
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+    }
+
+    private void dispatch(PGNotification[] notifications) {
+        Map<String, List<String>> payloads = new HashMap<>();
+        for (PGNotification n : notifications) {
+            payloads.computeIfAbsent(n.getName(), k -> new ArrayList<>()).add(n.getParameter());
+        }
+
+        payloads.forEach((channel, p) -> {
+            List<Handler> l = handlersByChannel.get(channel);
+            if (l == null) {
+                log.warn("dispatch -> unexpected notification channel: {}", channel);
+                return;
+            }
+
+            l.forEach(h -> call(h, x -> x.onNotifications(p)));
+        });
+    }
+
+    private static void call(Handler h, Consumer<Handler> c) {
+        try {
+            c.accept(h);
+        } catch (Exception e) {
+            log.error("call ['{}'] -> error", h.channel(), e);
+        }
+    }
+
+    /**
+     * Handles the notifications of a single channel. The handlers are
+     * called sequentially in the listener's thread.
+     */
+    public interface Handler {
+
+        /**
+         * @return the name of the notification channel (in lower case).
+         */
+        String channel();
+
+        /**
+         * Called after the listener is (re)connected. The notifications sent
+         * while the listener wasn't connected are lost.
+         */
+        default void onConnect() {
+        }
+
+        /**
+         * Called with the payloads of the received notifications, in order.
+         */
+        void onNotifications(List<String> payloads);
+
+        /**
+         * Called after each poll of the connection, roughly once per second.
+         */
+        default void onPoll() {
+        }
+    }
+}
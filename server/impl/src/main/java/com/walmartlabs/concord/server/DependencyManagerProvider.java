@@ -20,6 +20,8 @@ package com.walmartlabs.concord.server;
  * =====
  */
 
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
 import com.walmartlabs.concord.dependencymanager.DependencyManager;
 import com.walmartlabs.concord.server.cfg.DependenciesConfiguration;
 
@@ -34,18 +36,28 @@ import java.io.IOException;
 public class DependencyManagerProvider implements Provider<DependencyManager> {
 
     private final DependenciesConfiguration cfg;
+    private final MetricRegistry metricRegistry;
 
     @Inject
-    public DependencyManagerProvider(DependenciesConfiguration cfg) {
+    public DependencyManagerProvider(DependenciesConfiguration cfg, MetricRegistry metricRegistry) {
         this.cfg = cfg;
+        this.metricRegistry = metricRegistry;
     }
 
     @Override
     public DependencyManager get() {
+        DependencyManager m;
         try {
-            return new DependencyManager(cfg.getCacheDir());
+            m = new DependencyManager(cfg.getCacheDir());
         } catch (IOException e) {
             throw new RuntimeException(e);
         }
+
+        metricRegistry.register("dependency-manager-graph-cache-hits", (Gauge<Long>) m::getGraphCacheHits);
+        metricRegistry.register("dependency-manager-graph-cache-misses", (Gauge<Long>) m::getGraphCacheMisses);
+        metricRegistry.register("dependency-manager-resolve-count", (Gauge<Long>) m::getResolveCount);
+        metricRegistry.register("dependency-manager-resolve-time", (Gauge<Long>) m::getResolveTime);
+
+        return m;
     }
 }
@@ -64,7 +64,7 @@ public abstract class PeriodicTask implements BackgroundTask {
             try {
                 boolean isContinue = performTask();
                 if (!isContinue) {
-                    sleep(interval);
+                    await(interval);
                 }
             } catch (Exception e) {
                 log.warn("run -> task {} error: {}. Will retry in {}ms...", taskName(), e.getMessage(), errorDelay, e);
@@ -79,6 +79,14 @@ public abstract class PeriodicTask implements BackgroundTask {
 
     protected abstract boolean performTask() throws Exception;
 
+    /**
+     * Waits before the next {@link #performTask()} call. Subclasses can
+     * override it to wake up earlier, e.g. when a new work item is available.
+     */
+    protected void await(long interval) {
+        sleep(interval);
+    }
+
     protected static void sleep(long ms) {
         try {
             Thread.sleep(ms);
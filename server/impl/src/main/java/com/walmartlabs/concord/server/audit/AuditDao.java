@@ -28,7 +28,9 @@ import com.walmartlabs.concord.server.jooq.tables.AuditLog;
 import com.walmartlabs.concord.server.jooq.tables.Users;
 import com.walmartlabs.concord.server.org.EntityOwner;
 import com.walmartlabs.concord.server.user.UserType;
+import com.walmartlabs.concord.server.jooq.tables.records.AuditLogRecord;
 import org.jooq.Configuration;
+import org.jooq.InsertValuesStep5;
 import org.jooq.JSONB;
 import org.jooq.Record9;
 import org.jooq.SelectOnConditionStep;
@@ -56,17 +58,29 @@ public class AuditDao extends AbstractDao {
         this.objectMapper = objectMapper;
     }
 
-    public void insert(UUID userId, AuditObject object, AuditAction action, Object details) {
-        tx(tx -> tx.insertInto(AUDIT_LOG)
-                .columns(AUDIT_LOG.USER_ID,
-                        AUDIT_LOG.ENTRY_OBJECT,
-                        AUDIT_LOG.ENTRY_ACTION,
-                        AUDIT_LOG.ENTRY_DETAILS)
-                .values(userId,
-                        object.toString(),
-                        action.toString(),
-                        objectMapper.toJSONB(details))
-                .execute());
+    public void insert(List<QueuedAuditLogEntry> entries) {
+        if (entries.isEmpty()) {
+            return;
+        }
+
+        tx(tx -> {
+            InsertValuesStep5<AuditLogRecord, Timestamp, UUID, String, String, JSONB> q = tx.insertInto(AUDIT_LOG)
+                    .columns(AUDIT_LOG.ENTRY_DATE,
+                            AUDIT_LOG.USER_ID,
+                            AUDIT_LOG.ENTRY_OBJECT,
+                            AUDIT_LOG.ENTRY_ACTION,
+                            AUDIT_LOG.ENTRY_DETAILS);
+
+            for (QueuedAuditLogEntry e : entries) {
+                q.values(new Timestamp(e.entryDate()),
+                        e.userId(),
+                        e.object().toString(),
+                        e.action().toString(),
+                        objectMapper.jsonStringToJSONB(e.details()));
+            }
+
+            q.execute();
+        });
     }
 
     public List<AuditLogEntry> list(AuditLogFilter filter) {
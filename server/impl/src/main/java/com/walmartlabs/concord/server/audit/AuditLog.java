@@ -20,6 +20,7 @@ package com.walmartlabs.concord.server.audit;
  * =====
  */
 
+import com.walmartlabs.concord.server.ConcordObjectMapper;
 import com.walmartlabs.concord.server.Listeners;
 import com.walmartlabs.concord.server.RequestUtils;
 import com.walmartlabs.concord.server.cfg.AuditConfiguration;
@@ -59,13 +60,19 @@ public class AuditLog {
     }
 
     private final AuditConfiguration cfg;
-    private final AuditDao auditDao;
+    private final AuditLogWriter writer;
+    private final ConcordObjectMapper objectMapper;
     private final Listeners listeners;
 
     @Inject
-    public AuditLog(AuditConfiguration cfg, AuditDao auditDao, Listeners listeners) {
+    public AuditLog(AuditConfiguration cfg,
+                    AuditLogWriter writer,
+                    ConcordObjectMapper objectMapper,
+                    Listeners listeners) {
+
         this.cfg = cfg;
-        this.auditDao = auditDao;
+        this.writer = writer;
+        this.objectMapper = objectMapper;
         this.listeners = listeners;
     }
 
@@ -131,7 +138,7 @@ public class AuditLog {
             try {
                 doLog();
             } catch (Exception e) {
-                log.error("log -> error while inserting an audit log entry: {}", e.getMessage(), e);
+                log.error("log -> error while adding an audit log entry: {}", e.getMessage(), e);
                 throw e;
             }
         }
@@ -170,7 +177,14 @@ public class AuditLog {
                 details.put("changes", changes);
             }
 
-            auditDao.insert(userId, object, action, details);
+            // the entry is written asynchronously, serialize the details while they can't change
+            writer.add(QueuedAuditLogEntry.builder()
+                    .entryDate(System.currentTimeMillis())
+                    .userId(userId)
+                    .object(object)
+                    .action(action)
+                    .details(objectMapper.toString(details))
+                    .build());
 
             listeners.onAuditEvent(new AuditEvent(userId, object.name(), action.name(), details));
         }
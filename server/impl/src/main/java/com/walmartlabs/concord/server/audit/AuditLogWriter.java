@@ -0,0 +1,305 @@
+package com.walmartlabs.concord.server.audit;
+
+/*-
+ * *****
+ * Concord
+ * -----
+ * Copyright (C) 2017 - 2020 Walmart Inc.
+ * -----
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =====
+ */
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.walmartlabs.concord.server.cfg.AuditConfiguration;
+import com.walmartlabs.concord.server.sdk.BackgroundTask;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static java.util.Collections.singletonList;
+
+/**
+ * Writes audit log entries into the DB in batches, using a background thread.
+ * <p/>
+ * The entries are kept in a bounded in-memory queue. When the queue is full
+ * the configured {@link OverflowPolicy} is applied. The remaining entries
+ * are written when the server stops.
+ */
+@Named
+@Singleton
+public class AuditLogWriter implements BackgroundTask {
+
+    private static final Logger log = LoggerFactory.getLogger(AuditLogWriter.class);
+
+    private static final long POLL_TIMEOUT = TimeUnit.SECONDS.toMillis(1);
+    private static final long STOP_TIMEOUT = TimeUnit.SECONDS.toMillis(30);
+
+    private static final String SPILL_FILE_NAME = "audit.spill";
+    private static final String REPLAY_FILE_NAME = "audit.spill.replay";
+
+    private final AuditDao auditDao;
+    private final ObjectMapper objectMapper;
+    private final int batchSize;
+    private final OverflowPolicy overflowPolicy;
+    private final Path spillFile;
+    private final Path replayFile;
+    private final BlockingQueue<QueuedAuditLogEntry> queue;
+    private final Object spillMutex = new Object();
+
+    private final Timer writeTimer;
+    private final Meter droppedMeter;
+    private final Meter spilledMeter;
+
+    private volatile boolean stopped;
+    private Thread worker;
+
+    @Inject
+    public AuditLogWriter(AuditConfiguration cfg,
+                          AuditDao auditDao,
+                          ObjectMapper objectMapper,
+                          MetricRegistry metricRegistry) {
+
+        this.auditDao = auditDao;
+        this.objectMapper = objectMapper;
+        this.batchSize = cfg.getBatchSize();
+        this.overflowPolicy = OverflowPolicy.valueOf(cfg.getOverflowPolicy().trim().toUpperCase());
+        this.spillFile = cfg.getSpillDir().resolve(SPILL_FILE_NAME);
+        this.replayFile = cfg.getSpillDir().resolve(REPLAY_FILE_NAME);
+        this.queue = new ArrayBlockingQueue<>(cfg.getQueueSize());
+
+        this.writeTimer = metricRegistry.timer("audit-log-write");
+        this.droppedMeter = metricRegistry.meter("audit-log-dropped");
+        this.spilledMeter = metricRegistry.meter("audit-log-spilled");
+        metricRegistry.register("audit-log-queue-size", (Gauge<Integer>) queue::size);
+    }
+
+    @Override
+    public void start() {
+        stopped = false;
+
+        worker = new Thread(this::run, "audit-log-writer");
+        worker.setDaemon(true);
+        worker.start();
+
+        log.info("start -> done, overflow policy: {}", overflowPolicy);
+    }
+
+    @Override
+    public void stop() {
+        stopped = true;
+
+        if (worker != null) {
+            try {
+                worker.join(STOP_TIMEOUT);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            worker = null;
+        }
+
+        // flush the remaining entries
+        int count = 0;
+        List<QueuedAuditLogEntry> batch;
+        while (!(batch = nextBatch(null)).isEmpty()) {
+            write(batch);
+            count += batch.size();
+        }
+
+        log.info("stop -> done, {} entries flushed", count);
+    }
+
+    /**
+     * Adds an entry to the queue.
+     */
+    public void add(QueuedAuditLogEntry entry) {
+        if (queue.offer(entry)) {
+            return;
+        }
+
+        switch (overflowPolicy) {
+            case BLOCK: {
+                try {
+                    queue.put(entry);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    log.warn("add -> interrupted, the entry is dropped: {}", entry);
+                    droppedMeter.mark();
+                }
+                break;
+            }
+            case DROP: {
+                log.warn("add -> the queue is full, the entry is dropped: {}", entry);
+                droppedMeter.mark();
+                break;
+            }
+            case SPILL: {
+                spill(singletonList(entry));
+                break;
+            }
+            default:
+                throw new IllegalArgumentException("Unknown overflow policy: " + overflowPolicy);
+        }
+    }
+
+    private void run() {
+        while (!stopped) {
+            try {
+                List<QueuedAuditLogEntry> batch = nextBatch(POLL_TIMEOUT);
+                if (batch.isEmpty()) {
+                    replay();
+                    continue;
+                }
+
+                write(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            } catch (Exception e) {
+                log.error("run -> error: {}", e.getMessage(), e);
+            }
+        }
+    }
+
+    /**
+     * Returns the next batch of entries.
+     *
+     * @param timeout how long to wait for the first entry (ms), {@code null} to return immediately
+     */
+    private List<QueuedAuditLogEntry> nextBatch(Long timeout) {
+        List<QueuedAuditLogEntry> batch = new ArrayList<>(batchSize);
+
+        if (timeout != null) {
+            QueuedAuditLogEntry e;
+            try {
+                e = queue.poll(timeout, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                return batch;
+            }
+
+            if (e == null) {
+                return batch;
+            }
+
+            batch.add(e);
+        }
+
+        queue.drainTo(batch, batchSize - batch.size());
+        return batch;
+    }
+
+    private void write(List<QueuedAuditLogEntry> batch) {
+        try (Timer.Context ignored = writeTimer.time()) {
+            auditDao.insert(batch);
+        } catch (Exception e) {
+            if (overflowPolicy == OverflowPolicy.SPILL) {
+                log.warn("write -> error while inserting {} audit log entries, spilling: {}", batch.size(), e.getMessage());
+                spill(batch);
+            } else {
+                log.error("write -> error while inserting {} audit log entries, the entries are dropped: {}", batch.size(), e.getMessage(), e);
+                droppedMeter.mark(batch.size());
+            }
+        }
+    }
+
+    private void spill(List<QueuedAuditLogEntry> entries) {
+        synchronized (spillMutex) {
+            try (BufferedWriter w = Files.newBufferedWriter(spillFile, StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+                for (QueuedAuditLogEntry e : entries) {
+                    w.write(objectMapper.writeValueAsString(e));
+                    w.newLine();
+                }
+                spilledMeter.mark(entries.size());
+            } catch (IOException e) {
+                log.error("spill -> error while saving {} audit log entries into {}, the entries are dropped: {}", entries.size(), spillFile, e.getMessage());
+                droppedMeter.mark(entries.size());
+            }
+        }
+    }
+
+    /**
+     * Writes the previously spilled entries into the DB.
+     */
+    private void replay() throws IOException, InterruptedException {
+        synchronized (spillMutex) {
+            if (Files.notExists(replayFile)) {
+                if (Files.notExists(spillFile)) {
+                    return;
+                }
+                Files.move(spillFile, replayFile);
+            }
+        }
+
+        List<String> lines = Files.readAllLines(replayFile, StandardCharsets.UTF_8);
+        log.info("replay -> writing {} spilled audit log entries", lines.size());
+
+        for (int i = 0; i < lines.size(); i += batchSize) {
+            List<QueuedAuditLogEntry> batch = new ArrayList<>(batchSize);
+            for (String l : lines.subList(i, Math.min(i + batchSize, lines.size()))) {
+                if (!l.trim().isEmpty()) {
+                    batch.add(objectMapper.readValue(l, QueuedAuditLogEntry.class));
+                }
+            }
+
+            try (Timer.Context ignored = writeTimer.time()) {
+                auditDao.insert(batch);
+            } catch (Exception e) {
+                // keep the remaining entries for the next attempt
+                log.warn("replay -> error while inserting the spilled audit log entries, will retry later: {}", e.getMessage());
+                Files.write(replayFile, lines.subList(i, lines.size()), StandardCharsets.UTF_8);
+                Thread.sleep(POLL_TIMEOUT);
+                return;
+            }
+        }
+
+        Files.delete(replayFile);
+    }
+
+    public enum OverflowPolicy {
+
+        /**
+         * Wait for a free slot in the queue.
+         */
+        BLOCK,
+
+        /**
+         * Discard the entry.
+         */
+        DROP,
+
+        /**
+         * Save the entry into a local file. The spilled entries are written
+         * into the DB when the queue is empty.
+         */
+        SPILL
+    }
+}
@@ -0,0 +1,59 @@
+package com.walmartlabs.concord.server.audit;
+
+/*-
+ * *****
+ * Concord
+ * -----
+ * Copyright (C) 2017 - 2020 Walmart Inc.
+ * -----
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =====
+ */
+
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import org.immutables.value.Value;
+
+import javax.annotation.Nullable;
+import java.util.UUID;
+
+/**
+ * An audit log entry waiting to be written into the DB.
+ */
+@Value.Immutable
+@Value.Style(jdkOnly = true)
+@JsonSerialize(as = ImmutableQueuedAuditLogEntry.class)
+@JsonDeserialize(as = ImmutableQueuedAuditLogEntry.class)
+public interface QueuedAuditLogEntry {
+
+    /**
+     * Time of the event, ms.
+     */
+    long entryDate();
+
+    @Nullable
+    UUID userId();
+
+    AuditObject object();
+
+    AuditAction action();
+
+    /**
+     * The entry's details as a JSON string.
+     */
+    String details();
+
+    static ImmutableQueuedAuditLogEntry.Builder builder() {
+        return ImmutableQueuedAuditLogEntry.builder();
+    }
+}
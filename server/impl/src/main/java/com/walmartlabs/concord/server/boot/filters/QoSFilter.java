@@ -20,9 +20,29 @@ package com.walmartlabs.concord.server.boot.filters;
  * =====
  */
 
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import com.walmartlabs.concord.sdk.Constants;
 import com.walmartlabs.concord.server.cfg.QosConfiguration;
+import com.walmartlabs.concord.server.cfg.SecretStoreConfiguration;
+import com.walmartlabs.concord.server.org.OrganizationDao;
+import com.walmartlabs.concord.server.org.project.ProjectDao;
+import com.walmartlabs.concord.server.org.project.ProjectEntry;
+import com.walmartlabs.concord.server.org.secret.SecretUtils;
+import com.walmartlabs.concord.server.process.queue.ProcessQueueDao;
+import com.walmartlabs.concord.server.qos.FairQueue;
+import com.walmartlabs.concord.server.qos.TokenBuckets;
+import com.walmartlabs.concord.server.security.AuthenticationCache;
+import com.walmartlabs.concord.server.security.apikey.ApiKeyDao;
+import com.walmartlabs.concord.server.security.apikey.ApiKeyEntry;
 import org.apache.shiro.web.util.WebUtils;
 import org.immutables.value.Value;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import javax.annotation.Nullable;
 import javax.inject.Inject;
@@ -32,66 +52,167 @@ import javax.servlet.*;
 import javax.servlet.annotation.WebFilter;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
-import javax.servlet.http.HttpSession;
+import javax.ws.rs.core.HttpHeaders;
 import java.io.IOException;
-import java.util.Queue;
-import java.util.concurrent.ConcurrentLinkedQueue;
-import java.util.concurrent.Semaphore;
-import java.util.concurrent.TimeUnit;
+import java.io.UnsupportedEncodingException;
+import java.net.URLDecoder;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 /**
- * copy from {@link org.eclipse.jetty.servlets.QoSFilter} but with custom error code
+ * Admission control for process start requests.
+ * <p/>
+ * Each request is attributed to a tenant. The filter runs before the request
+ * is authenticated, so the tenant is determined using only the data that
+ * can be verified on the server:
+ * <ul>
+ *     <li>the organization and the project in the URL of the repository start
+ *     endpoint (if they exist);</li>
+ *     <li>the project of the process that issued the session token;</li>
+ *     <li>the user of the API key. The key is looked up the same way as during
+ *     the authentication, using {@link AuthenticationCache}.</li>
+ * </ul>
+ * All other requests (e.g. with invalid keys) share a single "unknown" tenant.
+ * The filter then applies:
+ * <ul>
+ *     <li>per-organization, per-project and per-user token buckets, optionally
+ *     shared by all server instances (see {@link QosConfiguration#getRateLimitStore()}).
+ *     The "unknown" tenant is not rate limited;</li>
+ *     <li>a concurrency limit. Requests above the limit are suspended and
+ *     resumed in weighted fair order, so a single tenant can't monopolize
+ *     the queue. The number of the queued requests of the "unknown" tenant
+ *     is not limited.</li>
+ * </ul>
+ * Rejected requests get {@code 429 Too Many Requests} with a {@code Retry-After} header.
+ * <p/>
+ * The suspend/resume logic is based on {@link org.eclipse.jetty.servlets.QoSFilter}.
  */
 @Named
 @Singleton
 @WebFilter(value = {"/api/v1/process/*", "/api/v1/org/*"})
 public class QoSFilter implements Filter {
 
+    private static final Logger log = LoggerFactory.getLogger(QoSFilter.class);
+
     private static final int TOO_MANY_REQUESTS_CODE = 429;
 
-    private static final int DEFAULT_MAX_PRIORITY = 2;
+    private static final double DEFAULT_WEIGHT = 1.0;
+
+    /**
+     * Max number of tenants with individual metrics. The rest are reported as {@link #OTHER_TENANTS}.
+     */
+    private static final int MAX_TENANT_METRICS = 1000;
+    private static final String OTHER_TENANTS = "_other";
+
+    private static final Tenant UNKNOWN_TENANT = Tenant.of("unknown", null, null, null, null);
+
+    /**
+     * Resolved org and project names and session tokens. Unknown names
+     * are cached too, so they can't be used to put more load on the DB.
+     */
+    private static final int TENANT_CACHE_SIZE = 10000;
+    private static final long TENANT_CACHE_TTL = 60;
+
+    private static final String BASIC_AUTH_PREFIX = "Basic ";
+    private static final String BEARER_AUTH_PREFIX = "Bearer ";
 
     // currently we only care about `POST /api/v1/process`
     // and `GET /api/v1/org/{orgName}/project/{projectName}/repo/{repoName}/start/{entryPoint}`
     // requests (i.e. process start requests)
+    private static final Pattern REPO_START_PATTERN = Pattern.compile("^/api/v1/org/([^/]*)/project/([^/]*)/repo/[^/]*/start/[^/]+$");
+
     private static UrlPattern[] PATTERNS = {
             UrlPattern.prefix("/api/v1/process", "POST"),
-            UrlPattern.regexp("^/api/v1/org/[^/]*/project/[^/]*/repo/[^/]*/start/[^/]+$", "GET")
+            UrlPattern.regexp(REPO_START_PATTERN, "GET")
     };
 
     private final String _suspended = "QoSFilter@" + Integer.toHexString(hashCode()) + ".SUSPENDED";
     private final String _resumed = "QoSFilter@" + Integer.toHexString(hashCode()) + ".RESUMED";
+    private final String _tenant = "QoSFilter@" + Integer.toHexString(hashCode()) + ".TENANT";
 
     private final long waitMs;
     private final long suspendMs;
     private final int maxRequests;
-
-    private final Queue<AsyncContext>[] queues;
-    private final AsyncListener[] listeners;
+    private final int maxQueuedPerTenant;
+    private final Map<String, Double> weights;
+
+    private final double orgRate;
+    private final int orgBurst;
+    private final double projectRate;
+    private final int projectBurst;
+    private final double userRate;
+    private final int userBurst;
+
+    private final OrganizationDao orgDao;
+    private final ProjectDao projectDao;
+    private final ProcessQueueDao queueDao;
+    private final ApiKeyDao apiKeyDao;
+    private final AuthenticationCache authCache;
+    private final SecretStoreConfiguration secretCfg;
+    private final Cache<Object, Tenant> tenants;
+    private final TokenBuckets buckets;
+    private final FairQueue<AsyncContext> queue;
+    private final AsyncListener listener;
     private final Semaphore passes;
 
+    private final MetricRegistry metricRegistry;
+    private final TenantMeters totalMeters;
+    private final Map<String, TenantMeters> tenantMeters = new ConcurrentHashMap<>();
+
+    /**
+     * Moving average of the request's processing time, used to estimate
+     * the {@code Retry-After} value for the queued requests.
+     */
+    private volatile double avgServiceMs;
+
     @Inject
-    public QoSFilter(QosConfiguration qosConfiguration) {
+    public QoSFilter(QosConfiguration qosConfiguration,
+                     SecretStoreConfiguration secretCfg,
+                     OrganizationDao orgDao,
+                     ProjectDao projectDao,
+                     ProcessQueueDao queueDao,
+                     ApiKeyDao apiKeyDao,
+                     AuthenticationCache authCache,
+                     TokenBuckets buckets,
+                     MetricRegistry metricRegistry) {
         this.maxRequests = qosConfiguration.getMaxRequests();
         this.waitMs = qosConfiguration.getMaxWaitMs();
         this.suspendMs = qosConfiguration.getSuspendMs();
-
-        this.queues = new AsyncContextQueue[DEFAULT_MAX_PRIORITY + 1];
-        this.listeners = new AsyncListener[this.queues.length];
-        this.passes = new Semaphore(this.maxRequests, true);
+        this.maxQueuedPerTenant = qosConfiguration.getMaxQueuedPerTenant();
+        this.weights = parseWeights(qosConfiguration.getWeights());
+
+        this.orgRate = qosConfiguration.getOrgRate();
+        this.orgBurst = qosConfiguration.getOrgBurst();
+        this.projectRate = qosConfiguration.getProjectRate();
+        this.projectBurst = qosConfiguration.getProjectBurst();
+        this.userRate = qosConfiguration.getUserRate();
+        this.userBurst = qosConfiguration.getUserBurst();
+
+        this.orgDao = orgDao;
+        this.projectDao = projectDao;
+        this.queueDao = queueDao;
+        this.apiKeyDao = apiKeyDao;
+        this.authCache = authCache;
+        this.secretCfg = secretCfg;
+        this.tenants = CacheBuilder.newBuilder()
+                .maximumSize(TENANT_CACHE_SIZE)
+                .expireAfterWrite(TENANT_CACHE_TTL, TimeUnit.SECONDS)
+                .build();
+        this.buckets = buckets;
+        this.queue = new FairQueue<>();
+        this.listener = new QoSAsyncListener();
+        this.passes = new Semaphore(Math.max(0, this.maxRequests), true);
+
+        this.metricRegistry = metricRegistry;
+        this.totalMeters = new TenantMeters(metricRegistry, null);
+        metricRegistry.register("qos-queue-size", (Gauge<Integer>) queue::size);
     }
 
     @Override
     public void init(FilterConfig filterConfig) {
-        if (isDisabled()) {
-            return;
-        }
-
-        for (int p = 0; p < this.queues.length; ++p) {
-            this.queues[p] = new AsyncContextQueue();
-            this.listeners[p] = new QoSAsyncListener(p);
-        }
+        // do nothing
     }
 
     @Override
@@ -137,29 +258,54 @@ public class QoSFilter implements Filter {
     }
 
     private boolean isDisabled() {
-        return maxRequests < 0;
+        return maxRequests < 0 && orgRate < 0 && projectRate < 0 && userRate < 0;
     }
 
     private void filter(ServletRequest request, ServletResponse response, FilterChain chain) throws IOException, ServletException {
         boolean accepted = false;
+        boolean admitted = false;
         try {
             Boolean suspended = (Boolean) request.getAttribute(_suspended);
+            Tenant tenant;
             if (suspended == null) {
+                tenant = getTenant(request);
+                request.setAttribute(_tenant, tenant);
+
+                long retryAfterMs = takeTokens(tenant);
+                if (retryAfterMs > 0) {
+                    reject(tenant, response, retryAfterMs);
+                    return;
+                }
+
+                if (maxRequests < 0) {
+                    meters(tenant).admitted();
+                    chain.doFilter(request, response);
+                    return;
+                }
+
                 accepted = passes.tryAcquire(waitMs, TimeUnit.MILLISECONDS);
                 if (accepted) {
                     request.setAttribute(_suspended, Boolean.FALSE);
+                    admitted = true;
                 } else {
+                    if (tenant != UNKNOWN_TENANT && queue.size(tenant.key()) >= maxQueuedPerTenant) {
+                        refundTokens(tenant);
+                        reject(tenant, response, estimateWaitMs());
+                        return;
+                    }
+
                     request.setAttribute(_suspended, Boolean.TRUE);
-                    int priority = getPriority(request);
                     AsyncContext asyncContext = request.startAsync();
                     if (suspendMs > 0) {
                         asyncContext.setTimeout(suspendMs);
                     }
-                    asyncContext.addListener(listeners[priority]);
-                    queues[priority].add(asyncContext);
+                    asyncContext.addListener(listener);
+                    queue.add(tenant.key(), weight(tenant), asyncContext);
+                    meters(tenant).queued();
                     return;
                 }
             } else {
+                tenant = (Tenant) request.getAttribute(_tenant);
                 if (suspended) {
                     request.setAttribute(_suspended, Boolean.FALSE);
                     Boolean resumed = (Boolean) request.getAttribute(_resumed);
@@ -170,6 +316,7 @@ public class QoSFilter implements Filter {
                         // Timeout! try 1 more time.
                         accepted = passes.tryAcquire(waitMs, TimeUnit.MILLISECONDS);
                     }
+                    admitted = accepted;
                 } else {
                     // Pass through resume of previously accepted request.
                     passes.acquire();
@@ -178,25 +325,30 @@ public class QoSFilter implements Filter {
             }
 
             if (accepted) {
+                if (admitted) {
+                    meters(tenant).admitted();
+                }
+
+                long t1 = System.currentTimeMillis();
                 chain.doFilter(request, response);
+                updateServiceTime(System.currentTimeMillis() - t1);
             } else {
-                ((HttpServletResponse) response).sendError(TOO_MANY_REQUESTS_CODE);
+                refundTokens(tenant);
+                reject(tenant, response, estimateWaitMs());
             }
         } catch (InterruptedException e) {
             ((HttpServletResponse) response).sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
             Thread.currentThread().interrupt();
         } finally {
             if (accepted) {
-                for (int p = queues.length - 1; p >= 0; --p) {
-                    AsyncContext asyncContext = queues[p].poll();
-                    if (asyncContext != null) {
-                        ServletRequest candidate = asyncContext.getRequest();
-                        Boolean suspended = (Boolean) candidate.getAttribute(_suspended);
-                        if (Boolean.TRUE.equals(suspended)) {
-                            candidate.setAttribute(_resumed, Boolean.TRUE);
-                            asyncContext.dispatch();
-                            break;
-                        }
+                AsyncContext asyncContext;
+                while ((asyncContext = queue.poll()) != null) {
+                    ServletRequest candidate = asyncContext.getRequest();
+                    Boolean suspended = (Boolean) candidate.getAttribute(_suspended);
+                    if (Boolean.TRUE.equals(suspended)) {
+                        candidate.setAttribute(_resumed, Boolean.TRUE);
+                        asyncContext.dispatch();
+                        break;
                     }
                 }
                 passes.release();
@@ -204,30 +356,271 @@ public class QoSFilter implements Filter {
         }
     }
 
-    private int getPriority(ServletRequest request) {
-        HttpServletRequest baseRequest = (HttpServletRequest) request;
-        if (baseRequest.getUserPrincipal() != null) {
-            return 2;
-        } else {
-            HttpSession session = baseRequest.getSession(false);
-            if (session != null && !session.isNew())
-                return 1;
-            else
-                return 0;
+    /**
+     * Takes a token from each of the tenant's buckets. Either all tokens
+     * are taken or none.
+     *
+     * @return 0 if the request is within the tenant's rate limits or
+     * the number of milliseconds the client should wait before retrying.
+     */
+    private long takeTokens(Tenant tenant) {
+        boolean orgTaken = false;
+        if (orgRate >= 0 && tenant.orgBucket() != null) {
+            long ms = take(tenant.orgBucket(), orgRate, orgBurst);
+            if (ms > 0) {
+                return ms;
+            }
+            orgTaken = true;
         }
+
+        boolean projectTaken = false;
+        if (projectRate >= 0 && tenant.projectBucket() != null) {
+            long ms = take(tenant.projectBucket(), projectRate, projectBurst);
+            if (ms > 0) {
+                if (orgTaken) {
+                    refund(tenant.orgBucket(), orgBurst);
+                }
+                return ms;
+            }
+            projectTaken = true;
+        }
+
+        if (userRate >= 0 && tenant.userBucket() != null) {
+            long ms = take(tenant.userBucket(), userRate, userBurst);
+            if (ms > 0) {
+                if (orgTaken) {
+                    refund(tenant.orgBucket(), orgBurst);
+                }
+                if (projectTaken) {
+                    refund(tenant.projectBucket(), projectBurst);
+                }
+                return ms;
+            }
+        }
+
+        return 0;
     }
 
-    private static class AsyncContextQueue extends ConcurrentLinkedQueue<AsyncContext> {
+    /**
+     * Returns the tokens taken by {@link #takeTokens(Tenant)}, e.g. when
+     * the request is rejected by the concurrency limit.
+     */
+    private void refundTokens(Tenant tenant) {
+        if (orgRate >= 0 && tenant.orgBucket() != null) {
+            refund(tenant.orgBucket(), orgBurst);
+        }
+
+        if (projectRate >= 0 && tenant.projectBucket() != null) {
+            refund(tenant.projectBucket(), projectBurst);
+        }
+
+        if (userRate >= 0 && tenant.userBucket() != null) {
+            refund(tenant.userBucket(), userBurst);
+        }
     }
 
-    private class QoSAsyncListener implements AsyncListener {
+    /**
+     * Lets the request through if the buckets are unavailable (e.g. the DB is down):
+     * the rate limits shouldn't make the server less available than it already is.
+     */
+    private long take(String key, double rate, int burst) {
+        try {
+            return buckets.take(key, rate, burst);
+        } catch (Exception e) {
+            log.warn("take ['{}'] -> error, skipping the rate limit: {}", key, e.getMessage());
+            return 0;
+        }
+    }
+
+    private void refund(String key, int burst) {
+        try {
+            buckets.refund(key, burst);
+        } catch (Exception e) {
+            log.warn("refund ['{}'] -> error: {}", key, e.getMessage());
+        }
+    }
+
+    private void reject(Tenant tenant, ServletResponse response, long retryAfterMs) throws IOException {
+        meters(tenant).rejected();
+
+        HttpServletResponse resp = (HttpServletResponse) response;
+        resp.setHeader("Retry-After", String.valueOf(Math.max(1, (retryAfterMs + 999) / 1000)));
+        resp.sendError(TOO_MANY_REQUESTS_CODE);
+    }
+
+    /**
+     * Estimates how long a new request would wait for a free slot,
+     * based on the current queue depth and the average processing time.
+     */
+    private long estimateWaitMs() {
+        if (maxRequests <= 0) {
+            return suspendMs;
+        }
+        return (long) ((queue.size() + 1) * avgServiceMs / maxRequests);
+    }
 
-        private final int priority;
+    private void updateServiceTime(long ms) {
+        double avg = avgServiceMs;
+        avgServiceMs = avg == 0 ? ms : avg * 0.9 + ms * 0.1;
+    }
+
+    private double weight(Tenant tenant) {
+        if (tenant.orgName() == null) {
+            return DEFAULT_WEIGHT;
+        }
+        return weights.getOrDefault(tenant.orgName(), DEFAULT_WEIGHT);
+    }
+
+    private TenantMeters meters(Tenant tenant) {
+        if (tenant == null) {
+            return totalMeters;
+        }
 
-        QoSAsyncListener(int priority) {
-            this.priority = priority;
+        TenantMeters result = tenantMeters.get(tenant.key());
+        if (result != null) {
+            return result;
         }
 
+        String name = tenantMeters.size() < MAX_TENANT_METRICS ? tenant.key() : OTHER_TENANTS;
+        return tenantMeters.computeIfAbsent(name, k -> new TenantMeters(metricRegistry, k));
+    }
+
+    private Tenant getTenant(ServletRequest request) {
+        HttpServletRequest req = WebUtils.toHttp(request);
+
+        // the request is not authenticated yet, so anything in the headers or
+        // in the query parameters can be forged. Only the actual target of
+        // the request (the org and the project in the URL) and the keys
+        // verified on the server can be trusted
+        Matcher m = REPO_START_PATTERN.matcher(req.getRequestURI());
+        if (m.matches()) {
+            return getRepoTenant(decode(m.group(1)), decode(m.group(2)));
+        }
+
+        String sessionToken = req.getHeader(Constants.Headers.SESSION_TOKEN);
+        if (sessionToken != null) {
+            return getSessionTenant(sessionToken);
+        }
+
+        String auth = req.getHeader(HttpHeaders.AUTHORIZATION);
+        if (auth != null && !auth.startsWith(BASIC_AUTH_PREFIX)) {
+            return getApiKeyTenant(auth);
+        }
+
+        return UNKNOWN_TENANT;
+    }
+
+    private Tenant getRepoTenant(String orgName, String projectName) {
+        if (orgName == null || orgName.isEmpty() || projectName == null || projectName.isEmpty()) {
+            return UNKNOWN_TENANT;
+        }
+
+        // use only existing orgs and projects, otherwise each random name would get its own bucket
+        return cachedTenant(Arrays.asList(orgName, projectName), () -> {
+            UUID orgId = orgDao.getId(orgName);
+            UUID projectId = orgId != null ? projectDao.getId(orgId, projectName) : null;
+            if (projectId == null) {
+                return UNKNOWN_TENANT;
+            }
+
+            return projectTenant(orgId, orgName, projectId);
+        });
+    }
+
+    private Tenant getSessionTenant(String sessionToken) {
+        // session tokens are encrypted by the server, the process ID can be trusted
+        UUID instanceId;
+        try {
+            byte[] ab = SecretUtils.decrypt(Base64.getDecoder().decode(sessionToken), secretCfg.getServerPwd(), secretCfg.getSecretStoreSalt());
+            instanceId = UUID.fromString(new String(ab));
+        } catch (Exception e) {
+            return UNKNOWN_TENANT;
+        }
+
+        return cachedTenant(instanceId, () -> {
+            UUID projectId = queueDao.getProjectId(instanceId);
+            ProjectEntry project = projectId != null ? projectDao.get(projectId) : null;
+            if (project == null) {
+                return UNKNOWN_TENANT;
+            }
+
+            return projectTenant(project.getOrgId(), project.getOrgName(), project.getId());
+        });
+    }
+
+    private Tenant getApiKeyTenant(String auth) {
+        String key = auth.startsWith(BEARER_AUTH_PREFIX) ? auth.substring(BEARER_AUTH_PREFIX.length()) : auth;
+
+        // same lookup as in ConcordAuthenticationHandler, the result is reused by the authentication
+        ApiKeyEntry apiKey;
+        try {
+            Base64.getDecoder().decode(key);
+            apiKey = authCache.getApiKey(key, () -> apiKeyDao.find(key));
+        } catch (Exception e) {
+            return UNKNOWN_TENANT;
+        }
+
+        if (apiKey == null) {
+            return UNKNOWN_TENANT;
+        }
+
+        String userKey = "user:" + apiKey.getUserId();
+        return Tenant.of(userKey, null, null, null, userKey);
+    }
+
+    private Tenant cachedTenant(Object key, Callable<Tenant> loader) {
+        try {
+            return tenants.get(key, loader);
+        } catch (ExecutionException | UncheckedExecutionException e) {
+            log.warn("getTenant ['{}'] -> error: {}", key, e.getMessage());
+            return UNKNOWN_TENANT;
+        }
+    }
+
+    private static Tenant projectTenant(UUID orgId, String orgName, UUID projectId) {
+        return Tenant.of("org:" + orgName, orgName, "org:" + orgId, "project:" + projectId, null);
+    }
+
+    private static String decode(String s) {
+        try {
+            return URLDecoder.decode(s, "UTF-8");
+        } catch (UnsupportedEncodingException | IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    private static Map<String, Double> parseWeights(Map<String, Object> m) {
+        Map<String, Double> result = new HashMap<>();
+        if (m == null) {
+            return result;
+        }
+
+        for (Map.Entry<String, Object> e : m.entrySet()) {
+            Object v = e.getValue();
+            double w;
+            if (v instanceof Number) {
+                w = ((Number) v).doubleValue();
+            } else {
+                try {
+                    w = Double.parseDouble(String.valueOf(v));
+                } catch (NumberFormatException ex) {
+                    throw new IllegalArgumentException("Invalid qos.weights value for '" + e.getKey() + "': " + v);
+                }
+            }
+
+            if (w <= 0) {
+                throw new IllegalArgumentException("Invalid qos.weights value for '" + e.getKey() + "': " + v + ". Expected a positive number");
+            }
+
+            result.put(e.getKey(), w);
+        }
+
+        log.info("init -> using QoS weights: {}", result);
+        return result;
+    }
+
+    private class QoSAsyncListener implements AsyncListener {
+
         @Override
         public void onStartAsync(AsyncEvent event) {
         }
@@ -241,7 +634,10 @@ public class QoSFilter implements Filter {
             // Remove before it's redispatched, so it won't be
             // redispatched again at the end of the filtering.
             AsyncContext asyncContext = event.getAsyncContext();
-            queues[priority].remove(asyncContext);
+            Tenant tenant = (Tenant) asyncContext.getRequest().getAttribute(_tenant);
+            if (tenant != null) {
+                queue.remove(tenant.key(), asyncContext);
+            }
             asyncContext.dispatch();
         }
 
@@ -250,6 +646,74 @@ public class QoSFilter implements Filter {
         }
     }
 
+    private class TenantMeters {
+
+        private final Meter admitted;
+        private final Meter queued;
+        private final Meter rejected;
+
+        private TenantMeters(MetricRegistry registry, String tenant) {
+            this.admitted = registry.meter(metricName("qos-admitted", tenant));
+            this.queued = registry.meter(metricName("qos-queued", tenant));
+            this.rejected = registry.meter(metricName("qos-rejected", tenant));
+        }
+
+        private void admitted() {
+            admitted.mark();
+            if (this != totalMeters) {
+                totalMeters.admitted.mark();
+            }
+        }
+
+        private void queued() {
+            queued.mark();
+            if (this != totalMeters) {
+                totalMeters.queued.mark();
+            }
+        }
+
+        private void rejected() {
+            rejected.mark();
+            if (this != totalMeters) {
+                totalMeters.rejected.mark();
+            }
+        }
+
+        private String metricName(String name, String tenant) {
+            if (tenant == null) {
+                return name;
+            }
+            return MetricRegistry.name(name, tenant);
+        }
+    }
+
+    @Value.Immutable
+    interface Tenant {
+
+        @Value.Parameter
+        String key();
+
+        @Value.Parameter
+        @Nullable
+        String orgName();
+
+        @Value.Parameter
+        @Nullable
+        String orgBucket();
+
+        @Value.Parameter
+        @Nullable
+        String projectBucket();
+
+        @Value.Parameter
+        @Nullable
+        String userBucket();
+
+        static Tenant of(String key, String orgName, String orgBucket, String projectBucket, String userBucket) {
+            return ImmutableTenant.of(key, orgName, orgBucket, projectBucket, userBucket);
+        }
+    }
+
     @Value.Immutable
     interface UrlPattern {
 
@@ -268,9 +732,9 @@ public class QoSFilter implements Filter {
                     .build();
         }
 
-        static UrlPattern regexp(String regexp, String method) {
+        static UrlPattern regexp(Pattern regexp, String method) {
             return ImmutableUrlPattern.builder()
-                    .regexp(Pattern.compile(regexp))
+                    .regexp(regexp)
                     .method(method)
                     .build();
         }
@@ -21,11 +21,17 @@ package com.walmartlabs.concord.server.cfg;
  */
 
 import com.walmartlabs.ollie.config.Config;
+import org.eclipse.sisu.Nullable;
 
 import javax.inject.Inject;
 import javax.inject.Named;
 import javax.inject.Singleton;
+import java.io.IOException;
 import java.io.Serializable;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import static com.walmartlabs.concord.server.cfg.Utils.getPath;
 
 @Named
 @Singleton
@@ -43,6 +49,25 @@ public class AuditConfiguration implements Serializable {
     @Config("audit.maxLogAge")
     private long maxLogAge;
 
+    @Inject
+    @Config("audit.queueSize")
+    private int queueSize;
+
+    @Inject
+    @Config("audit.batchSize")
+    private int batchSize;
+
+    @Inject
+    @Config("audit.overflowPolicy")
+    private String overflowPolicy;
+
+    private final String spillDir;
+
+    @Inject
+    public AuditConfiguration(@Config("audit.spillDir") @Nullable String spillDir) throws IOException {
+        this.spillDir = getPath(spillDir, "auditSpill").toString();
+    }
+
     public boolean isEnabled() {
         return enabled;
     }
@@ -54,4 +79,20 @@ public class AuditConfiguration implements Serializable {
     public long getMaxLogAge() {
         return maxLogAge;
     }
+
+    public int getQueueSize() {
+        return queueSize;
+    }
+
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    public String getOverflowPolicy() {
+        return overflowPolicy;
+    }
+
+    public Path getSpillDir() {
+        return Paths.get(spillDir);
+    }
 }
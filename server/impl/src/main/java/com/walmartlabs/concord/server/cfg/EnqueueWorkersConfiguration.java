@@ -46,6 +46,10 @@ public class EnqueueWorkersConfiguration {
     @Config("queue.enqueuePollInterval")
     private long interval;
 
+    @Inject
+    @Config("queue.enqueueBatchParallelism")
+    private int batchParallelism;
+
     public int getWorkersCount() {
         return workersCount;
     }
@@ -61,4 +65,8 @@ public class EnqueueWorkersConfiguration {
     public int getBatchSize() {
         return batchSize;
     }
+
+    public int getBatchParallelism() {
+        return batchParallelism;
+    }
 }
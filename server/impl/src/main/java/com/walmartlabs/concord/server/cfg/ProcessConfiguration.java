@@ -61,6 +61,18 @@ public class ProcessConfiguration implements Serializable {
     @Config("process.checkpointCleanup")
     private boolean checkpointCleanup;
 
+    @Inject
+    @Config("process.cleanupBatchSize")
+    private int cleanupBatchSize;
+
+    @Inject
+    @Config("process.cleanupBatchDelay")
+    private long cleanupBatchDelay;
+
+    @Inject
+    @Config("process.cleanupDropPartitions")
+    private boolean cleanupDropPartitions;
+
     @Inject
     @Config("process.maxStateAge")
     private long maxStateAge;
@@ -88,6 +100,34 @@ public class ProcessConfiguration implements Serializable {
     @Config("process.checkLogPermissions")
     private boolean checkLogPermissions;
 
+    @Inject
+    @Config("process.definitionCacheMaxSize")
+    private int definitionCacheMaxSize;
+
+    @Inject
+    @Config("process.logTailBufferSize")
+    private int logTailBufferSize;
+
+    @Inject
+    @Config("process.logTailPollInterval")
+    private long logTailPollInterval;
+
+    @Inject
+    @Config("process.logCompactionInterval")
+    private long logCompactionInterval;
+
+    @Inject
+    @Config("process.logCompactionDelay")
+    private long logCompactionDelay;
+
+    @Inject
+    @Config("process.logCompactionBlockSize")
+    private int logCompactionBlockSize;
+
+    @Inject
+    @Config("process.logCompactionBatchSize")
+    private int logCompactionBatchSize;
+
     private Instant newLogsActivationDate;
 
     @Inject
@@ -126,6 +166,18 @@ public class ProcessConfiguration implements Serializable {
         return checkpointCleanup;
     }
 
+    public int getCleanupBatchSize() {
+        return cleanupBatchSize;
+    }
+
+    public long getCleanupBatchDelay() {
+        return cleanupBatchDelay;
+    }
+
+    public boolean isCleanupDropPartitions() {
+        return cleanupDropPartitions;
+    }
+
     public long getMaxStateAge() {
         return maxStateAge;
     }
@@ -154,6 +206,34 @@ public class ProcessConfiguration implements Serializable {
         return checkLogPermissions;
     }
 
+    public int getDefinitionCacheMaxSize() {
+        return definitionCacheMaxSize;
+    }
+
+    public int getLogTailBufferSize() {
+        return logTailBufferSize;
+    }
+
+    public long getLogTailPollInterval() {
+        return logTailPollInterval;
+    }
+
+    public long getLogCompactionInterval() {
+        return logCompactionInterval;
+    }
+
+    public long getLogCompactionDelay() {
+        return logCompactionDelay;
+    }
+
+    public int getLogCompactionBlockSize() {
+        return logCompactionBlockSize;
+    }
+
+    public int getLogCompactionBatchSize() {
+        return logCompactionBatchSize;
+    }
+
     public Instant getNewLogsActivationDate() {
         return newLogsActivationDate;
     }
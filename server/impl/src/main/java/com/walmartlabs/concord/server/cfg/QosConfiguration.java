@@ -24,6 +24,7 @@ import com.walmartlabs.ollie.config.Config;
 
 import javax.inject.Inject;
 import java.io.Serializable;
+import java.util.Map;
 
 public class QosConfiguration implements Serializable {
 
@@ -39,6 +40,42 @@ public class QosConfiguration implements Serializable {
     @Config("qos.suspendMs")
     public int suspendMs;
 
+    @Inject
+    @Config("qos.maxQueuedPerTenant")
+    public int maxQueuedPerTenant;
+
+    @Inject
+    @Config("qos.weights")
+    public Map<String, Object> weights;
+
+    @Inject
+    @Config("qos.orgRate")
+    public double orgRate;
+
+    @Inject
+    @Config("qos.orgBurst")
+    public int orgBurst;
+
+    @Inject
+    @Config("qos.projectRate")
+    public double projectRate;
+
+    @Inject
+    @Config("qos.projectBurst")
+    public int projectBurst;
+
+    @Inject
+    @Config("qos.userRate")
+    public double userRate;
+
+    @Inject
+    @Config("qos.userBurst")
+    public int userBurst;
+
+    @Inject
+    @Config("qos.rateLimitStore")
+    public String rateLimitStore;
+
     public int getMaxRequests() {
         return maxRequests;
     }
@@ -50,4 +87,40 @@ public class QosConfiguration implements Serializable {
     public int getSuspendMs() {
         return suspendMs;
     }
+
+    public int getMaxQueuedPerTenant() {
+        return maxQueuedPerTenant;
+    }
+
+    public Map<String, Object> getWeights() {
+        return weights;
+    }
+
+    public double getOrgRate() {
+        return orgRate;
+    }
+
+    public int getOrgBurst() {
+        return orgBurst;
+    }
+
+    public double getProjectRate() {
+        return projectRate;
+    }
+
+    public int getProjectBurst() {
+        return projectBurst;
+    }
+
+    public double getUserRate() {
+        return userRate;
+    }
+
+    public int getUserBurst() {
+        return userBurst;
+    }
+
+    public String getRateLimitStore() {
+        return rateLimitStore;
+    }
 }
@@ -25,6 +25,7 @@ import com.walmartlabs.ollie.config.Config;
 import javax.inject.Inject;
 import javax.inject.Named;
 import javax.inject.Singleton;
+import java.time.Duration;
 import java.util.List;
 import java.util.Map;
 
@@ -48,6 +49,10 @@ public class TriggersConfiguration {
     @Config("triggers.defaultConfiguration")
     private Map<String, Object> defaultConfiguration;
 
+    @Inject
+    @Config("triggers.githubIndexMaxAge")
+    private Duration githubIndexMaxAge;
+
     public boolean isDisableAll() {
         return disableAll;
     }
@@ -64,4 +69,8 @@ public class TriggersConfiguration {
         return defaultConfiguration;
     }
 
+    public Duration getGithubIndexMaxAge() {
+        return githubIndexMaxAge;
+    }
+
 }
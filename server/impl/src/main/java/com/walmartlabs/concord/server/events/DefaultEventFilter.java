@@ -40,6 +40,19 @@ public final class DefaultEventFilter {
         }
     }
 
+    /**
+     * Same as {@link #filter(Map, TriggerEntry)}, but uses the trigger's
+     * pre-compiled conditions.
+     */
+    public static boolean filter(Map<String, Object> conditions, TriggerEntry t, MapMatcher.Compiled triggerConditions) {
+        try {
+            return triggerConditions.matches(conditions);
+        } catch (Exception e) {
+            log.warn("filter [{}, {}] -> error while matching events: {}", conditions, t, e.getMessage());
+            return false;
+        }
+    }
+
     private DefaultEventFilter() {
     }
 }
@@ -0,0 +1,316 @@
+package com.walmartlabs.concord.server.events.github;
+
+/*-
+ * *****
+ * Concord
+ * -----
+ * Copyright (C) 2017 - 2020 Walmart Inc.
+ * -----
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =====
+ */
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import com.walmartlabs.concord.common.MapMatcher;
+import com.walmartlabs.concord.server.cfg.TriggersConfiguration;
+import com.walmartlabs.concord.server.org.triggers.TriggerEntry;
+import com.walmartlabs.concord.server.org.triggers.TriggersDao;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+import static com.walmartlabs.concord.server.events.github.Constants.*;
+
+/**
+ * In-memory index of GitHub v2 triggers. Triggers are grouped by project
+ * and by their {@code githubOrg}/{@code githubRepo} conditions, regular
+ * expressions in the org, repo and event type conditions are compiled once.
+ * <p/>
+ * The index is updated when the triggers of a project change. Changes made
+ * on any server instance are delivered using Postgres' LISTEN/NOTIFY
+ * (see {@link GithubTriggerIndexListener}). The whole index is reloaded
+ * periodically to pick up anything that might've been missed.
+ */
+@Named
+@Singleton
+public class GithubTriggerIndex {
+
+    private static final Logger log = LoggerFactory.getLogger(GithubTriggerIndex.class);
+
+    static final String CHANNEL = "concord_github_triggers";
+
+    private static final int VERSION_ID = 2;
+
+    private final TriggersDao dao;
+    private final long maxAge;
+
+    private final Set<UUID> staleProjects = ConcurrentHashMap.newKeySet();
+    private final Counter reloads;
+
+    private volatile Map<UUID, ProjectTriggers> projects = Collections.emptyMap();
+    private volatile long loadedAt = -1;
+
+    @Inject
+    public GithubTriggerIndex(TriggersDao dao,
+                              TriggersConfiguration cfg,
+                              MetricRegistry metricRegistry) {
+
+        this.dao = dao;
+        this.maxAge = cfg.getGithubIndexMaxAge().toMillis();
+
+        this.reloads = metricRegistry.counter("github-trigger-index-reloads");
+        metricRegistry.register("github-trigger-index-size", (Gauge<Integer>) this::size);
+    }
+
+    /**
+     * Returns the triggers which can match an event with the specified
+     * org, repo and type. The remaining trigger conditions must be checked
+     * by the caller, see {@link IndexedTrigger#getConditions()}.
+     *
+     * @param projectId if specified, only triggers of this project are returned
+     */
+    public List<IndexedTrigger> find(UUID projectId, String org, String repo, String eventType) {
+        Map<UUID, ProjectTriggers> m = refresh();
+
+        String o = org != null ? org : "";
+        String r = repo != null ? repo : "";
+        String t = eventType != null ? eventType : "";
+
+        List<IndexedTrigger> result = new ArrayList<>();
+        if (projectId != null) {
+            ProjectTriggers p = m.get(projectId);
+            if (p != null) {
+                p.find(o, r, t, result);
+            }
+        } else {
+            for (ProjectTriggers p : m.values()) {
+                p.find(o, r, t, result);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Marks the project's triggers as stale. They will be reloaded on the next lookup.
+     */
+    public void invalidate(UUID projectId) {
+        staleProjects.add(projectId);
+    }
+
+    /**
+     * Marks the whole index as stale.
+     */
+    public void invalidateAll() {
+        loadedAt = -1;
+    }
+
+    public int size() {
+        int result = 0;
+        for (ProjectTriggers p : projects.values()) {
+            result += p.size;
+        }
+        return result;
+    }
+
+    private Map<UUID, ProjectTriggers> refresh() {
+        if (loadedAt >= 0 && System.currentTimeMillis() - loadedAt < maxAge && staleProjects.isEmpty()) {
+            return projects;
+        }
+
+        synchronized (this) {
+            if (loadedAt < 0 || System.currentTimeMillis() - loadedAt >= maxAge) {
+                // clear the stale projects before loading, so any changes
+                // made while we're loading are picked up on the next lookup
+                staleProjects.clear();
+                long t = System.currentTimeMillis();
+                projects = index(dao.list(null, EVENT_SOURCE, VERSION_ID, null));
+                loadedAt = t;
+                reloads.inc();
+                log.info("refresh -> loaded {} trigger(s) in {}ms", size(), System.currentTimeMillis() - t);
+            } else if (!staleProjects.isEmpty()) {
+                Map<UUID, ProjectTriggers> m = new HashMap<>(projects);
+                for (Iterator<UUID> i = staleProjects.iterator(); i.hasNext(); ) {
+                    UUID projectId = i.next();
+                    i.remove();
+
+                    List<TriggerEntry> triggers = dao.list(projectId, EVENT_SOURCE, VERSION_ID, null);
+                    if (triggers.isEmpty()) {
+                        m.remove(projectId);
+                    } else {
+                        m.put(projectId, new ProjectTriggers(triggers));
+                    }
+                }
+                projects = Collections.unmodifiableMap(m);
+            }
+
+            return projects;
+        }
+    }
+
+    private static Map<UUID, ProjectTriggers> index(List<TriggerEntry> triggers) {
+        Map<UUID, List<TriggerEntry>> byProject = new HashMap<>();
+        for (TriggerEntry t : triggers) {
+            byProject.computeIfAbsent(t.getProjectId(), k -> new ArrayList<>()).add(t);
+        }
+
+        Map<UUID, ProjectTriggers> result = new HashMap<>(byProject.size());
+        byProject.forEach((k, v) -> result.put(k, new ProjectTriggers(v)));
+        return Collections.unmodifiableMap(result);
+    }
+
+    private static final class ProjectTriggers {
+
+        /**
+         * Triggers with literal org and repo conditions, keyed by "org/repo".
+         */
+        private final Map<String, List<IndexedTrigger>> exact = new HashMap<>();
+
+        /**
+         * Triggers with regex or missing org/repo conditions.
+         */
+        private final List<IndexedTrigger> residual = new ArrayList<>();
+
+        private final int size;
+
+        private ProjectTriggers(List<TriggerEntry> triggers) {
+            for (TriggerEntry t : triggers) {
+                IndexedTrigger it = new IndexedTrigger(t);
+
+                String org = it.org.literal;
+                String repo = it.repo.literal;
+                if (org != null && repo != null) {
+                    exact.computeIfAbsent(key(org, repo), k -> new ArrayList<>()).add(it);
+                } else {
+                    residual.add(it);
+                }
+            }
+            this.size = triggers.size();
+        }
+
+        private void find(String org, String repo, String eventType, List<IndexedTrigger> result) {
+            List<IndexedTrigger> l = exact.get(key(org, repo));
+            if (l != null) {
+                for (IndexedTrigger t : l) {
+                    if (t.type.matches(eventType)) {
+                        result.add(t);
+                    }
+                }
+            }
+
+            for (IndexedTrigger t : residual) {
+                if (t.org.matches(org) && t.repo.matches(repo) && t.type.matches(eventType)) {
+                    result.add(t);
+                }
+            }
+        }
+
+        private static String key(String org, String repo) {
+            return org + "/" + repo;
+        }
+    }
+
+    public static final class IndexedTrigger {
+
+        private final TriggerEntry entry;
+        private final MapMatcher.Compiled conditions;
+        private final ValueMatcher org;
+        private final ValueMatcher repo;
+        private final ValueMatcher type;
+
+        private IndexedTrigger(TriggerEntry entry) {
+            this.entry = entry;
+            this.conditions = MapMatcher.compile(entry.getConditions());
+
+            Map<String, Object> conditions = entry.getConditions() != null ? entry.getConditions() : Collections.emptyMap();
+            this.org = ValueMatcher.of(conditions.get(GITHUB_ORG_KEY));
+            this.repo = ValueMatcher.of(conditions.get(GITHUB_REPO_KEY));
+            this.type = ValueMatcher.of(conditions.get(TYPE_KEY));
+        }
+
+        public TriggerEntry getEntry() {
+            return entry;
+        }
+
+        public MapMatcher.Compiled getConditions() {
+            return conditions;
+        }
+    }
+
+    /**
+     * Matches a single string value using the same rules as
+     * {@link com.walmartlabs.concord.common.MapMatcher}.
+     */
+    static final class ValueMatcher {
+
+        private static final ValueMatcher ANY = new ValueMatcher(null, null, true);
+        private static final ValueMatcher NONE = new ValueMatcher(null, null, false);
+
+        static ValueMatcher of(Object condition) {
+            if (condition instanceof String) {
+                String s = (String) condition;
+                if (isLiteral(s)) {
+                    return new ValueMatcher(s, null, false);
+                }
+
+                try {
+                    return new ValueMatcher(null, Pattern.compile(s), false);
+                } catch (PatternSyntaxException e) {
+                    // MapMatcher fails on invalid patterns, such triggers never match
+                    return NONE;
+                }
+            }
+
+            // no condition or a non-string condition (e.g. a list of values), let the event filter decide
+            return ANY;
+        }
+
+        private final String literal;
+        private final Pattern pattern;
+        private final boolean any;
+
+        private ValueMatcher(String literal, Pattern pattern, boolean any) {
+            this.literal = literal;
+            this.pattern = pattern;
+            this.any = any;
+        }
+
+        boolean matches(String value) {
+            if (any) {
+                return true;
+            }
+
+            if (literal != null) {
+                return literal.equals(value);
+            }
+
+            return pattern != null && pattern.matcher(value).matches();
+        }
+
+        private static boolean isLiteral(String s) {
+            for (int i = 0; i < s.length(); i++) {
+                if ("\\.[]{}()*+?^$|".indexOf(s.charAt(i)) >= 0) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
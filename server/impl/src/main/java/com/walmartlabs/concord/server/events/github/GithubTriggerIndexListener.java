@@ -0,0 +1,78 @@
+package com.walmartlabs.concord.server.events.github;
+
+/*-
+ * *****
+ * Concord
+ * -----
+ * Copyright (C) 2017 - 2020 Walmart Inc.
+ * -----
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =====
+ */
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.walmartlabs.concord.server.DbNotificationListener;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Invalidates {@link GithubTriggerIndex} entries when GitHub triggers change.
+ * The notifications are sent by the database on every change in the TRIGGERS
+ * table, including the changes made by other server instances and cascade deletes.
+ */
+@Named
+@Singleton
+public class GithubTriggerIndexListener implements DbNotificationListener.Handler {
+
+    private static final Logger log = LoggerFactory.getLogger(GithubTriggerIndexListener.class);
+
+    private final GithubTriggerIndex index;
+    private final Meter notificationsMeter;
+
+    @Inject
+    public GithubTriggerIndexListener(GithubTriggerIndex index, MetricRegistry metricRegistry) {
+        this.index = index;
+        this.notificationsMeter = metricRegistry.meter("github-trigger-index-notifications");
+    }
+
+    @Override
+    public String channel() {
+        return GithubTriggerIndex.CHANNEL;
+    }
+
+    @Override
+    public void onConnect() {
+        // anything could've happened while we weren't listening
+        index.invalidateAll();
+    }
+
+    @Override
+    public void onNotifications(List<String> payloads) {
+        notificationsMeter.mark(payloads.size());
+
+        for (String p : payloads) {
+            try {
+                index.invalidate(UUID.fromString(p));
+            } catch (IllegalArgumentException e) {
+                log.warn("onNotifications -> invalid notification: {}", p);
+                index.invalidateAll();
+            }
+        }
+    }
+}
@@ -26,7 +26,6 @@ import com.walmartlabs.concord.server.events.DefaultEventFilter;
 import com.walmartlabs.concord.server.org.project.RepositoryDao;
 import com.walmartlabs.concord.server.org.project.RepositoryEntry;
 import com.walmartlabs.concord.server.org.triggers.TriggerEntry;
-import com.walmartlabs.concord.server.org.triggers.TriggersDao;
 import com.walmartlabs.concord.server.sdk.metrics.WithTimer;
 import com.walmartlabs.concord.server.security.github.GithubKey;
 
@@ -44,12 +43,12 @@ public class GithubTriggerV2Processor implements GithubTriggerProcessor {
 
     private static final int VERSION_ID = 2;
 
-    private final TriggersDao dao;
+    private final GithubTriggerIndex index;
     private final List<EventEnricher> eventEnrichers;
 
     @Inject
-    public GithubTriggerV2Processor(TriggersDao dao, List<EventEnricher> eventEnrichers) {
-        this.dao = dao;
+    public GithubTriggerV2Processor(GithubTriggerIndex index, List<EventEnricher> eventEnrichers) {
+        this.index = index;
         this.eventEnrichers = eventEnrichers;
     }
 
@@ -59,8 +58,10 @@ public class GithubTriggerV2Processor implements GithubTriggerProcessor {
         GithubKey githubKey = GithubKey.getCurrent();
         UUID projectId = githubKey.getProjectId();
 
-        List<TriggerEntry> triggers = listTriggers(projectId, payload.getOrg(), payload.getRepo());
-        for (TriggerEntry t : triggers) {
+        List<GithubTriggerIndex.IndexedTrigger> triggers = listTriggers(projectId, payload.getOrg(), payload.getRepo(), eventName);
+        for (GithubTriggerIndex.IndexedTrigger it : triggers) {
+            TriggerEntry t = it.getEntry();
+
             // skip empty push events if the trigger's configuration says so
             if (GithubUtils.ignoreEmptyPush(t) && GithubUtils.isEmptyPush(eventName, payload)) {
                 continue;
@@ -69,7 +70,7 @@ public class GithubTriggerV2Processor implements GithubTriggerProcessor {
             Map<String, Object> event = buildEvent(eventName, payload);
             enrichEventConditions(payload, t, event);
 
-            if (DefaultEventFilter.filter(event, t)) {
+            if (DefaultEventFilter.filter(event, t, it.getConditions())) {
                 result.add(Result.from(event, t));
             }
         }
@@ -82,18 +83,8 @@ public class GithubTriggerV2Processor implements GithubTriggerProcessor {
     }
 
     @WithTimer
-    List<TriggerEntry> listTriggers(UUID projectId, String org, String repo) {
-        Map<String, String> conditions = new HashMap<>();
-
-        if (org != null) {
-            conditions.put(GITHUB_ORG_KEY, org);
-        }
-
-        if (repo != null) {
-            conditions.put(GITHUB_REPO_KEY, repo);
-        }
-
-        return dao.list(projectId, EVENT_SOURCE, VERSION_ID, conditions);
+    List<GithubTriggerIndex.IndexedTrigger> listTriggers(UUID projectId, String org, String repo, String eventName) {
+        return index.find(projectId, org, repo, eventName);
     }
 
     private Map<String, Object> buildEvent(String eventName, Payload payload) {
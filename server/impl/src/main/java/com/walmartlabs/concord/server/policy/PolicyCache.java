@@ -39,14 +39,19 @@ import javax.inject.Inject;
 import javax.inject.Named;
 import javax.inject.Singleton;
 import java.util.*;
-import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReadWriteLock;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Collectors;
 
 import static com.walmartlabs.concord.server.jooq.Tables.POLICIES;
 import static com.walmartlabs.concord.server.jooq.Tables.POLICY_LINKS;
 
+/**
+ * Keeps all policies in memory. The policies are stored in an immutable
+ * snapshot which is replaced on reload, so the lookups don't require any locking.
+ * <p/>
+ * The policies are reloaded when they are changed on any server instance
+ * (see {@link PolicyCacheListener}) and periodically.
+ */
 @Named
 @Singleton
 public class PolicyCache implements BackgroundTask {
@@ -54,18 +59,15 @@ public class PolicyCache implements BackgroundTask {
     private static final Logger log = LoggerFactory.getLogger(PolicyCache.class);
     private static final long ERROR_DELAY = 10000;
 
+    static final String CHANNEL = "concord_policies";
+
     private final ObjectMapper objectMapper;
-    private final ReadWriteLock rwLock = new ReentrantReadWriteLock();
     private final Object refreshMutex = new Object();
 
     private final PolicyCacheConfiguration cacheCfg;
     private final Dao dao;
 
-    private PolicyEngine defaultPolicy;
-    private Map<UUID, PolicyEngine> byOrg = Collections.emptyMap();
-    private Map<UUID, PolicyEngine> byProject = Collections.emptyMap();
-    private Map<UUID, PolicyEngine> byUser = Collections.emptyMap();
-    private List<PolicyItem> otherUserPolicies = Collections.emptyList();
+    private volatile Snapshot snapshot = new Snapshot();
 
     private volatile long lastRefreshRequestAt = -1;
     private Thread loader;
@@ -95,72 +97,22 @@ public class PolicyCache implements BackgroundTask {
         try {
             reloadPolicies();
         } catch (Exception e) {
-            synchronized (refreshMutex) {
-                lastRefreshRequestAt = System.currentTimeMillis();
-                refreshMutex.notifyAll();
-            }
+            requestRefresh();
         }
     }
 
-    public PolicyEngine get(UUID orgId, UUID projectId, UUID userId) {
-        Lock l = rwLock.readLock();
-        l.lock();
-        try {
-            return getUnsafe(orgId, projectId, userId);
-        } finally {
-            l.unlock();
+    /**
+     * Asynchronously reloads the policies.
+     */
+    void requestRefresh() {
+        synchronized (refreshMutex) {
+            lastRefreshRequestAt = System.currentTimeMillis();
+            refreshMutex.notifyAll();
         }
     }
 
-    private PolicyEngine getUnsafe(UUID orgId, UUID projectId, UUID userId) {
-        if (userId != null) {
-            if (projectId != null) {
-                PolicyEngine result = otherUserPolicies.stream()
-                        .filter(p -> userId.equals(p.link().userId()))
-                        .filter(p -> projectId.equals(p.link().projectId()))
-                        .findAny()
-                        .map(PolicyItem::engine)
-                        .orElse(null);
-
-                if (result != null) {
-                    return result;
-                }
-            }
-
-            if (orgId != null) {
-                PolicyEngine result = otherUserPolicies.stream()
-                        .filter(p -> userId.equals(p.link().userId()))
-                        .filter(p -> orgId.equals(p.link().orgId()))
-                        .findAny()
-                        .map(PolicyItem::engine)
-                        .orElse(null);
-
-                if (result != null) {
-                    return result;
-                }
-            }
-
-            PolicyEngine result = byUser.get(userId);
-            if (result != null) {
-                return result;
-            }
-        }
-
-        if (projectId != null) {
-            PolicyEngine result = byProject.get(projectId);
-            if (result != null) {
-                return result;
-            }
-        }
-
-        if (orgId != null) {
-            PolicyEngine result = byOrg.get(orgId);
-            if (result != null) {
-                return result;
-            }
-        }
-
-        return defaultPolicy;
+    public PolicyEngine get(UUID orgId, UUID projectId, UUID userId) {
+        return snapshot.get(orgId, projectId, userId);
     }
 
     private void run() {
@@ -191,60 +143,45 @@ public class PolicyCache implements BackgroundTask {
     }
 
     private void reloadPolicies() {
-        PolicyEngine defaultPolicy = null;
-        Map<UUID, PolicyEngine> byOrg = new HashMap<>();
-        Map<UUID, PolicyEngine> byProject = new HashMap<>();
-        Map<UUID, PolicyEngine> byUser = new HashMap<>();
-        List<PolicyItem> otherUserPolicies = new ArrayList<>();
-
         List<PolicyLink> links = dao.listLinks();
         if (links.isEmpty()) {
-            setPolicies(defaultPolicy, byOrg, byProject, byUser, otherUserPolicies);
+            this.snapshot = new Snapshot();
             return;
         }
 
         Map<UUID, Policy> policies = mergePolicies(dao.listPolicies());
+
+        // links to the same policy share the engine
+        Map<UUID, PolicyEngine> engines = new HashMap<>();
+
+        Snapshot snapshot = new Snapshot();
         for (PolicyLink l : links) {
             Policy policy = policies.get(l.policyId());
             if (policy == null) {
                 continue;
             }
-            PolicyEngine pe = new PolicyEngine(policy.policyNames(), policy.rules());
+            PolicyEngine pe = engines.computeIfAbsent(policy.id(), id -> new PolicyEngine(policy.policyNames(), policy.rules()));
             if (l.orgId() == null && l.projectId() == null && l.userId() == null) {
-                defaultPolicy = pe;
+                snapshot.defaultPolicy = pe;
             } else if (l.orgId() != null && l.projectId() == null && l.userId() == null) {
-                byOrg.put(l.orgId(), pe);
+                snapshot.byOrg.put(l.orgId(), pe);
             } else if (l.orgId() == null && l.projectId() != null && l.userId() == null) {
-                byProject.put(l.projectId(), pe);
+                snapshot.byProject.put(l.projectId(), pe);
             } else if (l.orgId() == null && l.projectId() == null && l.userId() != null) {
-                byUser.put(l.userId(), pe);
+                snapshot.byUser.put(l.userId(), pe);
             } else if (l.userId() != null) {
-                otherUserPolicies.add(PolicyItem.of(l, pe));
+                if (l.projectId() != null) {
+                    snapshot.byUserAndProject.putIfAbsent(new Key(null, l.projectId(), l.userId()), pe);
+                }
+                if (l.orgId() != null) {
+                    snapshot.byUserAndOrg.putIfAbsent(new Key(l.orgId(), null, l.userId()), pe);
+                }
             } else {
                 log.warn("Unexpected policy link: {}", l);
             }
         }
 
-        setPolicies(defaultPolicy, byOrg, byProject, byUser, otherUserPolicies);
-    }
-
-    private void setPolicies(PolicyEngine defaultPolicy,
-                             Map<UUID, PolicyEngine> byOrg,
-                             Map<UUID, PolicyEngine> byProject,
-                             Map<UUID, PolicyEngine> byUser,
-                             List<PolicyItem> otherUserPolicies) {
-
-        Lock l = rwLock.writeLock();
-        l.lock();
-        try {
-            this.defaultPolicy = defaultPolicy;
-            this.byOrg = byOrg;
-            this.byProject = byProject;
-            this.byUser = byUser;
-            this.otherUserPolicies = otherUserPolicies;
-        } finally {
-            l.unlock();
-        }
+        this.snapshot = snapshot;
     }
 
     private Map<UUID, Policy> mergePolicies(List<PolicyRules> policies) {
@@ -353,17 +290,108 @@ public class PolicyCache implements BackgroundTask {
         Map<String, Object> rules();
     }
 
-    @Value.Immutable
-    interface PolicyItem {
+    /**
+     * Policies loaded at some point in time. Never modified after being published.
+     */
+    private static final class Snapshot {
+
+        /**
+         * The max number of memoized (org, project, user) lookups.
+         */
+        private static final int MAX_RESOLVED = 10000;
+
+        private PolicyEngine defaultPolicy;
+        private final Map<UUID, PolicyEngine> byOrg = new HashMap<>();
+        private final Map<UUID, PolicyEngine> byProject = new HashMap<>();
+        private final Map<UUID, PolicyEngine> byUser = new HashMap<>();
+        private final Map<Key, PolicyEngine> byUserAndProject = new HashMap<>();
+        private final Map<Key, PolicyEngine> byUserAndOrg = new HashMap<>();
+
+        private final Map<Key, Optional<PolicyEngine>> resolved = new ConcurrentHashMap<>();
+
+        PolicyEngine get(UUID orgId, UUID projectId, UUID userId) {
+            Key k = new Key(orgId, projectId, userId);
+
+            Optional<PolicyEngine> result = resolved.get(k);
+            if (result == null) {
+                result = Optional.ofNullable(resolve(orgId, projectId, userId));
+                if (resolved.size() < MAX_RESOLVED) {
+                    resolved.put(k, result);
+                }
+            }
+
+            return result.orElse(null);
+        }
+
+        private PolicyEngine resolve(UUID orgId, UUID projectId, UUID userId) {
+            if (userId != null) {
+                if (projectId != null) {
+                    PolicyEngine result = byUserAndProject.get(new Key(null, projectId, userId));
+                    if (result != null) {
+                        return result;
+                    }
+                }
 
-        @Value.Parameter
-        PolicyLink link();
+                if (orgId != null) {
+                    PolicyEngine result = byUserAndOrg.get(new Key(orgId, null, userId));
+                    if (result != null) {
+                        return result;
+                    }
+                }
+
+                PolicyEngine result = byUser.get(userId);
+                if (result != null) {
+                    return result;
+                }
+            }
 
-        @Value.Parameter
-        PolicyEngine engine();
+            if (projectId != null) {
+                PolicyEngine result = byProject.get(projectId);
+                if (result != null) {
+                    return result;
+                }
+            }
+
+            if (orgId != null) {
+                PolicyEngine result = byOrg.get(orgId);
+                if (result != null) {
+                    return result;
+                }
+            }
+
+            return defaultPolicy;
+        }
+    }
+
+    private static final class Key {
+
+        private final UUID orgId;
+        private final UUID projectId;
+        private final UUID userId;
+
+        private Key(UUID orgId, UUID projectId, UUID userId) {
+            this.orgId = orgId;
+            this.projectId = projectId;
+            this.userId = userId;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            Key key = (Key) o;
+            return Objects.equals(orgId, key.orgId) &&
+                    Objects.equals(projectId, key.projectId) &&
+                    Objects.equals(userId, key.userId);
+        }
 
-        static PolicyItem of(PolicyLink link, PolicyEngine engine) {
-            return ImmutablePolicyItem.of(link, engine);
+        @Override
+        public int hashCode() {
+            return Objects.hash(orgId, projectId, userId);
         }
     }
 
@@ -0,0 +1,70 @@
+package com.walmartlabs.concord.server.policy;
+
+/*-
+ * *****
+ * Concord
+ * -----
+ * Copyright (C) 2017 - 2020 Walmart Inc.
+ * -----
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =====
+ */
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.walmartlabs.concord.server.DbNotificationListener;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+import java.util.List;
+
+/**
+ * Reloads the {@link PolicyCache} when policies or policy links are changed.
+ * The notifications are sent by the database on every change in the POLICIES
+ * and POLICY_LINKS tables, including the changes made by other server instances.
+ */
+@Named
+@Singleton
+public class PolicyCacheListener implements DbNotificationListener.Handler {
+
+    private final PolicyCache policyCache;
+    private final Meter notificationsMeter;
+
+    private boolean reconnect;
+
+    @Inject
+    public PolicyCacheListener(PolicyCache policyCache, MetricRegistry metricRegistry) {
+        this.policyCache = policyCache;
+        this.notificationsMeter = metricRegistry.meter("policy-cache-notifications");
+    }
+
+    @Override
+    public String channel() {
+        return PolicyCache.CHANNEL;
+    }
+
+    @Override
+    public void onConnect() {
+        if (reconnect) {
+            // anything could've happened while we weren't listening
+            policyCache.requestRefresh();
+        }
+        reconnect = true;
+    }
+
+    @Override
+    public void onNotifications(List<String> payloads) {
+        notificationsMeter.mark(payloads.size());
+        policyCache.requestRefresh();
+    }
+}
@@ -33,6 +33,7 @@ import java.util.*;
 
 public class Payload {
 
+    public static final HeaderKey<Boolean> WORKSPACE_MODIFIED = HeaderKey.register("_workspaceModified", Boolean.class);
     public static final HeaderKey<HttpServletRequest> SERVLET_REQUEST = HeaderKey.register("_servletRequest", HttpServletRequest.class);
     public static final HeaderKey<Imports> IMPORTS = HeaderKey.register("_imports", Imports.class);
     public static final HeaderKey<List<String>> ACTIVE_PROFILES = HeaderKey.registerList("_activeProfiles");
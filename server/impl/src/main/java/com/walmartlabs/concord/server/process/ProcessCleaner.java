@@ -23,12 +23,10 @@ package com.walmartlabs.concord.server.process;
 import com.walmartlabs.concord.db.AbstractDao;
 import com.walmartlabs.concord.db.MainDB;
 import com.walmartlabs.concord.server.cfg.ProcessConfiguration;
+import com.walmartlabs.concord.server.process.state.StateBlobUtils;
 import com.walmartlabs.concord.server.sdk.ProcessStatus;
 import com.walmartlabs.concord.server.sdk.ScheduledTask;
-import org.jooq.Configuration;
-import org.jooq.Record1;
-import org.jooq.SelectConditionStep;
-import org.jooq.SelectJoinStep;
+import org.jooq.*;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -36,8 +34,11 @@ import javax.inject.Inject;
 import javax.inject.Named;
 import javax.inject.Singleton;
 import java.sql.Timestamp;
-import java.util.UUID;
+import java.util.*;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
+import static com.walmartlabs.concord.server.jooq.Tables.PROCESS_LOG_COMPACTION_QUEUE;
 import static com.walmartlabs.concord.server.jooq.Tables.PROCESS_LOG_DATA;
 import static com.walmartlabs.concord.server.jooq.Tables.PROCESS_LOG_SEGMENTS;
 import static com.walmartlabs.concord.server.jooq.tables.ProcessCheckpoints.PROCESS_CHECKPOINTS;
@@ -45,7 +46,16 @@ import static com.walmartlabs.concord.server.jooq.tables.ProcessEvents.PROCESS_E
 import static com.walmartlabs.concord.server.jooq.tables.ProcessLogs.PROCESS_LOGS;
 import static com.walmartlabs.concord.server.jooq.tables.ProcessQueue.PROCESS_QUEUE;
 import static com.walmartlabs.concord.server.jooq.tables.ProcessState.PROCESS_STATE;
-
+import static org.jooq.impl.DSL.*;
+
+/**
+ * Removes the data of old processes.
+ * <p/>
+ * The data is removed in batches of {@link ProcessConfiguration#getCleanupBatchSize()}
+ * processes, each batch in a separate transaction, with a delay between the batches.
+ * Optionally, the expired partitions of the process data tables are dropped
+ * instead (see {@link ProcessConfiguration#isCleanupDropPartitions()}).
+ */
 @Named("process-cleaner")
 @Singleton
 public class ProcessCleaner implements ScheduledTask {
@@ -58,6 +68,8 @@ public class ProcessCleaner implements ScheduledTask {
             ProcessStatus.RESUMING.toString()
     };
 
+    private static final long PROGRESS_LOG_INTERVAL = 60000;
+
     private final ProcessConfiguration cfg;
     private final CleanerDao cleanerDao;
 
@@ -73,122 +85,460 @@ public class ProcessCleaner implements ScheduledTask {
     }
 
     @Override
-    public void performTask() {
+    public void performTask() throws Exception {
         Timestamp cutoff = new Timestamp(System.currentTimeMillis() - cfg.getMaxStateAge());
-        cleanerDao.deleteOldState(cutoff, cfg);
-        cleanerDao.deleteOrphans(cfg);
+
+        if (cfg.isCleanupDropPartitions()) {
+            dropPartitions(cutoff);
+        }
+
+        deleteOldState(cutoff);
+        deleteOrphans();
+    }
+
+    private void dropPartitions(Timestamp cutoff) {
+        for (Table<?> t : dataTables()) {
+            List<Partition> partitions;
+            try {
+                partitions = cleanerDao.listPartitions(t);
+            } catch (Exception e) {
+                log.warn("dropPartitions -> error while listing the partitions of {}: {}", t.getName(), e.getMessage());
+                continue;
+            }
+
+            for (Partition p : partitions) {
+                if (p.to.after(cutoff)) {
+                    continue;
+                }
+
+                try {
+                    if (cleanerDao.dropPartition(t, p, cutoff)) {
+                        log.info("dropPartitions -> dropped {} ({} - {})", p.name, p.from, p.to);
+                    } else {
+                        log.info("dropPartitions -> {} ({} - {}) contains active processes, skipping", p.name, p.from, p.to);
+                    }
+                } catch (Exception e) {
+                    log.warn("dropPartitions -> error while dropping {}: {}", p.name, e.getMessage());
+                }
+            }
+        }
+    }
+
+    private void deleteOldState(Timestamp cutoff) throws InterruptedException {
+        long t1 = System.currentTimeMillis();
+        long lastLogAt = t1;
+
+        Stats stats = new Stats();
+        int batches = 0;
+
+        OldProcess last = null;
+        while (true) {
+            List<OldProcess> keys = cleanerDao.nextOldProcesses(cutoff, last, cfg.getCleanupBatchSize());
+            if (keys.isEmpty()) {
+                break;
+            }
+
+            cleanerDao.deleteOldState(keys, cfg, stats);
+            last = keys.get(keys.size() - 1);
+            batches++;
+
+            if (System.currentTimeMillis() - lastLogAt >= PROGRESS_LOG_INTERVAL) {
+                lastLogAt = System.currentTimeMillis();
+                log.info("deleteOldState -> in progress: {} process(es) in {} batch(es), last updated at {}, {}", stats.processes, batches, last.lastUpdatedAt, stats);
+            }
+
+            if (keys.size() < cfg.getCleanupBatchSize()) {
+                break;
+            }
+
+            throttle();
+        }
+
+        long t2 = System.currentTimeMillis();
+        log.info("deleteOldState -> removed older than {}: {} process(es) in {} batch(es), {}, took {}ms", cutoff, stats.processes, batches, stats, (t2 - t1));
+    }
+
+    private void deleteOrphans() throws InterruptedException {
+        long t1 = System.currentTimeMillis();
+
+        Stats stats = new Stats();
+        for (Table<?> t : orphanTables()) {
+            UUID last = null;
+            while (true) {
+                List<UUID> ids = cleanerDao.nextInstanceIds(t, last, cfg.getCleanupBatchSize());
+                if (ids.isEmpty()) {
+                    break;
+                }
+
+                cleanerDao.deleteOrphans(t, ids, stats);
+                last = ids.get(ids.size() - 1);
+
+                if (ids.size() < cfg.getCleanupBatchSize()) {
+                    break;
+                }
+
+                throttle();
+            }
+        }
+
+        long t2 = System.currentTimeMillis();
+        log.info("deleteOrphans -> removed orphan data: {}, took {}ms", stats, (t2 - t1));
+    }
+
+    private List<Table<?>> dataTables() {
+        List<Table<?>> result = new ArrayList<>();
+        if (cfg.isStateCleanup()) {
+            result.add(PROCESS_STATE);
+        }
+        if (cfg.isEventsCleanup()) {
+            result.add(PROCESS_EVENTS);
+        }
+        if (cfg.isLogsCleanup()) {
+            result.add(PROCESS_LOGS);
+            result.add(PROCESS_LOG_DATA);
+            result.add(PROCESS_LOG_SEGMENTS);
+        }
+        if (cfg.isCheckpointCleanup()) {
+            result.add(PROCESS_CHECKPOINTS);
+        }
+        return result;
+    }
+
+    private List<Table<?>> orphanTables() {
+        List<Table<?>> result = new ArrayList<>();
+        if (cfg.isStateCleanup()) {
+            result.add(PROCESS_STATE);
+        }
+        if (cfg.isEventsCleanup()) {
+            result.add(PROCESS_EVENTS);
+        }
+        if (cfg.isLogsCleanup()) {
+            result.add(PROCESS_LOGS);
+        }
+        if (cfg.isCheckpointCleanup()) {
+            result.add(PROCESS_CHECKPOINTS);
+        }
+        return result;
+    }
+
+    private void throttle() throws InterruptedException {
+        long delay = cfg.getCleanupBatchDelay();
+        if (delay > 0) {
+            Thread.sleep(delay);
+        }
+    }
+
+    private static Field<UUID> instanceId(Table<?> t) {
+        return t.field("instance_id", UUID.class);
+    }
+
+    private static Field<Timestamp> instanceCreatedAt(Table<?> t) {
+        return t.field("instance_created_at", Timestamp.class);
     }
 
     @Named
-    private static class CleanerDao extends AbstractDao {
+    static class CleanerDao extends AbstractDao {
+
+        /**
+         * Matches range partition bounds, e.g. {@code FOR VALUES FROM ('2020-01-01 00:00:00') TO ('2020-02-01 00:00:00')}
+         */
+        private static final Pattern RANGE_BOUNDS = Pattern.compile("^FOR VALUES FROM \\('([^']+)'\\) TO \\('([^']+)'\\)$");
 
         @Inject
         protected CleanerDao(@MainDB Configuration cfg) {
             super(cfg);
         }
 
-        void deleteOldState(Timestamp cutoff, ProcessConfiguration jobCfg) {
-            long t1 = System.currentTimeMillis();
+        List<OldProcess> nextOldProcesses(Timestamp cutoff, OldProcess after, int limit) {
+            return txResult(tx -> {
+                Condition c = PROCESS_QUEUE.LAST_UPDATED_AT.lessThan(cutoff)
+                        .and(PROCESS_QUEUE.CURRENT_STATUS.notIn(EXCLUDE_STATUSES));
 
-            tx(tx -> {
-                SelectConditionStep<Record1<UUID>> ids = tx.select(PROCESS_QUEUE.INSTANCE_ID)
-                        .from(PROCESS_QUEUE)
-                        .where(PROCESS_QUEUE.LAST_UPDATED_AT.lessThan(cutoff)
-                                .and(PROCESS_QUEUE.CURRENT_STATUS.notIn(EXCLUDE_STATUSES)));
-
-                int queueEntries = 0;
-                if (jobCfg.isQueueCleanup()) {
-                    queueEntries = tx.deleteFrom(PROCESS_QUEUE)
-                            .where(PROCESS_QUEUE.INSTANCE_ID.in(ids))
-                            .execute();
+                if (after != null) {
+                    c = c.and(row(PROCESS_QUEUE.LAST_UPDATED_AT, PROCESS_QUEUE.INSTANCE_ID).gt(after.lastUpdatedAt, after.instanceId));
                 }
 
-                int stateRecords = 0;
+                return tx.select(PROCESS_QUEUE.INSTANCE_ID, PROCESS_QUEUE.CREATED_AT, PROCESS_QUEUE.LAST_UPDATED_AT)
+                        .from(PROCESS_QUEUE)
+                        .where(c)
+                        .orderBy(PROCESS_QUEUE.LAST_UPDATED_AT, PROCESS_QUEUE.INSTANCE_ID)
+                        .limit(limit)
+                        .fetch(r -> new OldProcess(r.value1(), r.value2(), r.value3()));
+            });
+        }
+
+        void deleteOldState(List<OldProcess> keys, ProcessConfiguration jobCfg, Stats stats) {
+            tx(tx -> {
                 if (jobCfg.isStateCleanup()) {
-                    stateRecords = tx.deleteFrom(PROCESS_STATE)
-                            .where(PROCESS_STATE.INSTANCE_ID.in(ids))
-                            .execute();
+                    deleteState(tx, keysIn(PROCESS_STATE, keys), stats);
                 }
 
-                int events = 0;
                 if (jobCfg.isEventsCleanup()) {
-                    events = tx.deleteFrom(PROCESS_EVENTS)
-                            .where(PROCESS_EVENTS.INSTANCE_ID.in(ids))
+                    stats.events += tx.deleteFrom(PROCESS_EVENTS)
+                            .where(keysIn(PROCESS_EVENTS, keys))
                             .execute();
                 }
 
-                int logEntries = 0;
-                int logDataEntries = 0;
-                int logSegmentEntries = 0;
                 if (jobCfg.isLogsCleanup()) {
-                    logEntries = tx.deleteFrom(PROCESS_LOGS)
-                            .where(PROCESS_LOGS.INSTANCE_ID.in(ids))
+                    stats.logEntries += tx.deleteFrom(PROCESS_LOGS)
+                            .where(keysIn(PROCESS_LOGS, keys))
                             .execute();
 
-                    logDataEntries = tx.deleteFrom(PROCESS_LOG_DATA)
-                            .where(PROCESS_LOG_DATA.INSTANCE_ID.in(ids))
+                    stats.logDataEntries += tx.deleteFrom(PROCESS_LOG_DATA)
+                            .where(keysIn(PROCESS_LOG_DATA, keys))
                             .execute();
 
-                    logSegmentEntries = tx.deleteFrom(PROCESS_LOG_SEGMENTS)
-                            .where(PROCESS_LOG_SEGMENTS.INSTANCE_ID.in(ids))
+                    stats.logSegmentEntries += tx.deleteFrom(PROCESS_LOG_SEGMENTS)
+                            .where(keysIn(PROCESS_LOG_SEGMENTS, keys))
+                            .execute();
+
+                    tx.deleteFrom(PROCESS_LOG_COMPACTION_QUEUE)
+                            .where(keysIn(PROCESS_LOG_COMPACTION_QUEUE, keys))
                             .execute();
                 }
 
-                int checkpoints = 0;
                 if (jobCfg.isCheckpointCleanup()) {
-                    checkpoints = tx.deleteFrom(PROCESS_CHECKPOINTS)
-                            .where(PROCESS_CHECKPOINTS.INSTANCE_ID.in(ids))
+                    stats.checkpoints += tx.deleteFrom(PROCESS_CHECKPOINTS)
+                            .where(keysIn(PROCESS_CHECKPOINTS, keys))
                             .execute();
                 }
 
-                log.info("deleteOldState -> removed older than {}: {} queue entries, {} log entries, {} log data entries, {} log segments, {} state item(s), {} event(s), {} checkpoint(s)",
-                        cutoff, queueEntries, logEntries, logDataEntries, logSegmentEntries, stateRecords, events, checkpoints);
+                // the queue entries are removed last, so an interrupted
+                // cleanup doesn't leave any orphan data behind
+                if (jobCfg.isQueueCleanup()) {
+                    stats.queueEntries += tx.deleteFrom(PROCESS_QUEUE)
+                            .where(PROCESS_QUEUE.INSTANCE_ID.in(keys.stream().map(k -> k.instanceId).toArray(UUID[]::new)))
+                            .execute();
+                }
             });
 
-            long t2 = System.currentTimeMillis();
-            log.info("deleteOldState -> took {}ms", (t2 - t1));
+            stats.processes += keys.size();
         }
 
-        void deleteOrphans(ProcessConfiguration jobCfg) {
-            long t1 = System.currentTimeMillis();
+        /**
+         * Returns the next {@code limit} distinct instance IDs present in the table,
+         * in ascending order.
+         */
+        List<UUID> nextInstanceIds(Table<?> t, UUID after, int limit) {
+            return txResult(tx -> {
+                Field<UUID> id = instanceId(t);
+                return tx.selectDistinct(id)
+                        .from(t)
+                        .where(after != null ? id.gt(after) : noCondition())
+                        .orderBy(id)
+                        .limit(limit)
+                        .fetch(id);
+            });
+        }
 
+        void deleteOrphans(Table<?> t, List<UUID> ids, Stats stats) {
             tx(tx -> {
-                SelectJoinStep<Record1<UUID>> alive = tx.select(PROCESS_QUEUE.INSTANCE_ID).from(PROCESS_QUEUE);
+                Set<UUID> orphans = new HashSet<>(ids);
+                orphans.removeAll(tx.select(PROCESS_QUEUE.INSTANCE_ID)
+                        .from(PROCESS_QUEUE)
+                        .where(PROCESS_QUEUE.INSTANCE_ID.in(ids))
+                        .fetch(PROCESS_QUEUE.INSTANCE_ID));
 
-                int stateRecords = 0;
-                if (jobCfg.isStateCleanup()) {
-                    stateRecords = tx.deleteFrom(PROCESS_STATE)
-                            .where(PROCESS_STATE.INSTANCE_ID.notIn(alive))
-                            .execute();
+                if (orphans.isEmpty()) {
+                    return;
                 }
 
-                int events = 0;
-                if (jobCfg.isEventsCleanup()) {
-                    events = tx.deleteFrom(PROCESS_EVENTS)
-                            .where(PROCESS_EVENTS.INSTANCE_ID.notIn(alive))
-                            .execute();
+                Condition c = instanceId(t).in(orphans);
+                if (t == PROCESS_STATE) {
+                    deleteState(tx, c, stats);
+                    return;
                 }
 
-                int logEntries = 0;
-                if (jobCfg.isLogsCleanup()) {
-                    logEntries = tx.deleteFrom(PROCESS_LOGS)
-                            .where(PROCESS_LOGS.INSTANCE_ID.notIn(alive))
-                            .execute();
+                int rows = tx.deleteFrom(t)
+                        .where(c)
+                        .execute();
+
+                if (t == PROCESS_EVENTS) {
+                    stats.events += rows;
+                } else if (t == PROCESS_LOGS) {
+                    stats.logEntries += rows;
+                } else if (t == PROCESS_CHECKPOINTS) {
+                    stats.checkpoints += rows;
                 }
+            });
+        }
 
-                int checkpoints = 0;
-                if (jobCfg.isCheckpointCleanup()) {
-                    checkpoints = tx.deleteFrom(PROCESS_CHECKPOINTS)
-                            .where(PROCESS_CHECKPOINTS.INSTANCE_ID.notIn(alive))
-                            .execute();
+        /**
+         * Returns the range partitions of the specified table, if the table
+         * is partitioned by {@code INSTANCE_CREATED_AT}.
+         */
+        List<Partition> listPartitions(Table<?> t) {
+            return txResult(tx -> {
+                Record1<String> partKey = tx.select(field("pg_get_partkeydef(c.oid)", String.class))
+                        .from("pg_class c")
+                        .where(condition("c.oid = to_regclass({0})", inline(t.getName())))
+                        .and(condition("c.relkind = 'p'"))
+                        .fetchOne();
+
+                if (partKey == null || !"RANGE (instance_created_at)".equalsIgnoreCase(partKey.value1())) {
+                    return Collections.emptyList();
                 }
 
-                log.info("deleteOrphans -> removed orphan data: {} log entries, {} state item(s), {} event(s), {} checkpoint(s)",
-                        logEntries, stateRecords, events, checkpoints);
+                List<Partition> result = new ArrayList<>();
+
+                Result<Record2<String, String>> rows = tx.select(field("c.relname", String.class), field("pg_get_expr(c.relpartbound, c.oid)", String.class))
+                        .from("pg_inherits i join pg_class c on c.oid = i.inhrelid")
+                        .where(condition("i.inhparent = to_regclass({0})", inline(t.getName())))
+                        .and(condition("c.relispartition"))
+                        .fetch();
+
+                for (Record2<String, String> r : rows) {
+                    Partition p = Partition.parse(r.value1(), r.value2());
+                    if (p != null) {
+                        result.add(p);
+                    }
+                }
+
+                return result;
             });
+        }
+
+        /**
+         * Detaches and drops the partition, unless it contains data of
+         * the processes that shouldn't be removed yet.
+         *
+         * @return {@code true} if the partition was dropped
+         */
+        boolean dropPartition(Table<?> t, Partition p, Timestamp cutoff) {
+            return txResult(tx -> {
+                // don't block the normal operations for too long
+                tx.execute("set local lock_timeout = '10s'");
+
+                boolean active = tx.fetchExists(selectFrom(PROCESS_QUEUE)
+                        .where(PROCESS_QUEUE.CREATED_AT.greaterOrEqual(p.from)
+                                .and(PROCESS_QUEUE.CREATED_AT.lessThan(p.to))
+                                .and(PROCESS_QUEUE.LAST_UPDATED_AT.greaterOrEqual(cutoff)
+                                        .or(PROCESS_QUEUE.CURRENT_STATUS.in(EXCLUDE_STATUSES)))));
+
+                if (active) {
+                    return false;
+                }
+
+                if (t == PROCESS_STATE) {
+                    Condition items = PROCESS_STATE.INSTANCE_CREATED_AT.greaterOrEqual(p.from)
+                            .and(PROCESS_STATE.INSTANCE_CREATED_AT.lessThan(p.to));
+                    StateBlobUtils.releaseAll(tx, items);
+                }
+
+                tx.execute("alter table {0} detach partition {1}", name(t.getName()), name(p.name));
+                tx.execute("drop table {0}", name(p.name));
+
+                if (t == PROCESS_STATE) {
+                    StateBlobUtils.deleteUnreferenced(tx);
+                }
+
+                return true;
+            });
+        }
+
+        private static void deleteState(DSLContext tx, Condition items, Stats stats) {
+            List<String> released = StateBlobUtils.release(tx, items);
+
+            stats.stateRecords += tx.deleteFrom(PROCESS_STATE)
+                    .where(items)
+                    .execute();
+
+            stats.stateBlobs += StateBlobUtils.deleteUnreferenced(tx, released);
+        }
+
+        /**
+         * Uses both {@code INSTANCE_ID} and {@code INSTANCE_CREATED_AT},
+         * so the partitioned tables are scanned only in the relevant partitions.
+         */
+        private static Condition keysIn(Table<?> t, List<OldProcess> keys) {
+            List<Row2<UUID, Timestamp>> rows = new ArrayList<>(keys.size());
+            for (OldProcess k : keys) {
+                rows.add(row(k.instanceId, k.createdAt));
+            }
+            return row(instanceId(t), instanceCreatedAt(t)).in(rows);
+        }
+    }
+
+    /**
+     * A process to remove. Also used as the position of the last processed batch.
+     */
+    private static final class OldProcess {
+
+        private final UUID instanceId;
+        private final Timestamp createdAt;
+        private final Timestamp lastUpdatedAt;
+
+        private OldProcess(UUID instanceId, Timestamp createdAt, Timestamp lastUpdatedAt) {
+            this.instanceId = instanceId;
+            this.createdAt = createdAt;
+            this.lastUpdatedAt = lastUpdatedAt;
+        }
+    }
+
+    static final class Partition {
+
+        private final String name;
+        private final Timestamp from;
+        private final Timestamp to;
+
+        Partition(String name, Timestamp from, Timestamp to) {
+            this.name = name;
+            this.from = from;
+            this.to = to;
+        }
+
+        /**
+         * @return the partition or {@code null} if the bounds are not
+         * a simple range (e.g. a default partition)
+         */
+        static Partition parse(String name, String bounds) {
+            if (bounds == null) {
+                return null;
+            }
+
+            Matcher m = CleanerDao.RANGE_BOUNDS.matcher(bounds);
+            if (!m.matches()) {
+                return null;
+            }
+
+            try {
+                return new Partition(name, parseTimestamp(m.group(1)), parseTimestamp(m.group(2)));
+            } catch (IllegalArgumentException e) {
+                log.warn("parse -> invalid partition bounds: {} {}", name, bounds);
+                return null;
+            }
+        }
+
+        private static Timestamp parseTimestamp(String s) {
+            if (s.length() == 10) {
+                s = s + " 00:00:00";
+            }
+            return Timestamp.valueOf(s);
+        }
+    }
 
-            long t2 = System.currentTimeMillis();
-            log.info("deleteOrphans -> took {}ms", (t2 - t1));
+    private static final class Stats {
+
+        private int processes;
+        private int queueEntries;
+        private int logEntries;
+        private int logDataEntries;
+        private int logSegmentEntries;
+        private int stateRecords;
+        private int stateBlobs;
+        private int events;
+        private int checkpoints;
+
+        @Override
+        public String toString() {
+            return queueEntries + " queue entries, " +
+                    logEntries + " log entries, " +
+                    logDataEntries + " log data entries, " +
+                    logSegmentEntries + " log segments, " +
+                    stateRecords + " state item(s), " +
+                    stateBlobs + " state blob(s), " +
+                    events + " event(s), " +
+                    checkpoints + " checkpoint(s)";
         }
     }
 }
@@ -0,0 +1,335 @@
+package com.walmartlabs.concord.server.process;
+
+/*-
+ * *****
+ * Concord
+ * -----
+ * Copyright (C) 2017 - 2020 Walmart Inc.
+ * -----
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =====
+ */
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.walmartlabs.concord.imports.Imports;
+import com.walmartlabs.concord.process.loader.ProjectLoader;
+import com.walmartlabs.concord.process.loader.model.*;
+import com.walmartlabs.concord.repository.Snapshot;
+import com.walmartlabs.concord.server.cfg.ProcessConfiguration;
+import com.walmartlabs.concord.server.org.project.RepositoryEntry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+import java.io.Serializable;
+import java.nio.file.Path;
+import java.util.*;
+
+/**
+ * Loads process definitions using {@link ProjectLoader} and caches the results
+ * for repositories at a specific commit.
+ * <p/>
+ * Only the definitions without {@code imports} are cached: imports are
+ * materialized into the working directory and can point to moving targets
+ * (e.g. branches), so such definitions are always loaded from scratch.
+ * <p/>
+ * Cached definitions are shared between processes, so the callers get read-only
+ * views of them. The configuration maps are copied on each access: they are
+ * merged into the process configuration which can be modified later.
+ */
+@Named
+@Singleton
+public class ProcessDefinitionCache {
+
+    private static final Logger log = LoggerFactory.getLogger(ProcessDefinitionCache.class);
+
+    private final ProjectLoader projectLoader;
+    private final ImportsNormalizerFactory importsNormalizer;
+    private final Cache<Key, ProjectLoader.Result> cache;
+
+    private final Counter hits;
+    private final Counter misses;
+    private final Timer loadTimer;
+
+    @Inject
+    public ProcessDefinitionCache(ProjectLoader projectLoader,
+                                  ImportsNormalizerFactory importsNormalizer,
+                                  ProcessConfiguration cfg,
+                                  MetricRegistry metricRegistry) {
+
+        this.projectLoader = projectLoader;
+        this.importsNormalizer = importsNormalizer;
+        this.cache = CacheBuilder.newBuilder()
+                .maximumSize(cfg.getDefinitionCacheMaxSize())
+                .softValues()
+                .build();
+
+        this.hits = metricRegistry.counter("process-definition-cache-hits");
+        this.misses = metricRegistry.counter("process-definition-cache-misses");
+        this.loadTimer = metricRegistry.timer("process-definition-load");
+        metricRegistry.gauge("process-definition-cache-size", () -> cache::size);
+    }
+
+    /**
+     * Loads the process definition from the specified directory.
+     *
+     * @param projectId the project used to normalize {@code imports}
+     * @param workDir   the directory with the project's files
+     * @param runtime   the runtime type
+     * @param repoId    the ID of the repository the files are from. Can be {@code null}.
+     * @param commitId  the repository's commit ID. Can be {@code null}.
+     * @param repoPath  the repository's path. Can be {@code null}.
+     *                  If {@code repoId} or {@code commitId} are not specified, the cache is not used.
+     *                  Otherwise, {@code workDir} must contain only the repository's files.
+     */
+    public ProjectLoader.Result load(UUID projectId, Path workDir, String runtime,
+                                     UUID repoId, String commitId, String repoPath) throws Exception {
+
+        if (repoId == null || commitId == null) {
+            return doLoad(projectId, workDir, runtime);
+        }
+
+        Key key = new Key(repoId, commitId, repoPath, runtime);
+
+        ProjectLoader.Result result = cache.getIfPresent(key);
+        if (result != null) {
+            hits.inc();
+            return new ReadOnlyResult(result);
+        }
+
+        misses.inc();
+
+        result = doLoad(projectId, workDir, runtime);
+
+        Imports imports = result.projectDefinition().imports();
+        if (imports == null || imports.isEmpty()) {
+            cache.put(key, result);
+            return new ReadOnlyResult(result);
+        } else {
+            log.debug("load ['{}', '{}', '{}'] -> has imports, not cached", repoId, commitId, repoPath);
+        }
+
+        return result;
+    }
+
+    /**
+     * Loads the process definition from a copy of the repository's files.
+     */
+    public ProjectLoader.Result load(RepositoryEntry repo, Path repoPath, String commitId) throws Exception {
+        String runtime = ProjectLoader.getRuntimeType(repoPath, ProjectLoader.CONCORD_V1_RUNTIME_TYPE);
+        return load(repo.getProjectId(), repoPath, runtime, repo.getId(), commitId, repo.getPath());
+    }
+
+    private ProjectLoader.Result doLoad(UUID projectId, Path workDir, String runtime) throws Exception {
+        try (Timer.Context ignored = loadTimer.time()) {
+            return projectLoader.loadProject(workDir, runtime, importsNormalizer.forProject(projectId));
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T deepCopy(T o) {
+        if (o instanceof Map) {
+            Map<Object, Object> result = new LinkedHashMap<>();
+            ((Map<Object, Object>) o).forEach((k, v) -> result.put(k, deepCopy(v)));
+            return (T) result;
+        } else if (o instanceof List) {
+            List<Object> result = new ArrayList<>();
+            ((List<Object>) o).forEach(v -> result.add(deepCopy(v)));
+            return (T) result;
+        } else if (o instanceof Set) {
+            Set<Object> result = new LinkedHashSet<>();
+            ((Set<Object>) o).forEach(v -> result.add(deepCopy(v)));
+            return (T) result;
+        }
+        return o;
+    }
+
+    private static <K, V> Map<K, V> readOnly(Map<K, V> m) {
+        return m != null ? Collections.unmodifiableMap(m) : null;
+    }
+
+    private static Configuration readOnly(Configuration cfg) {
+        if (cfg == null) {
+            return null;
+        }
+        return new ReadOnlyConfiguration(cfg);
+    }
+
+    private static final class ReadOnlyResult implements ProjectLoader.Result {
+
+        private final ProjectLoader.Result delegate;
+
+        private ReadOnlyResult(ProjectLoader.Result delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public List<Snapshot> snapshots() {
+            List<Snapshot> l = delegate.snapshots();
+            return l != null ? Collections.unmodifiableList(l) : null;
+        }
+
+        @Override
+        public ProcessDefinition projectDefinition() {
+            ProcessDefinition pd = delegate.projectDefinition();
+            return pd != null ? new ReadOnlyProcessDefinition(pd) : null;
+        }
+    }
+
+    private static final class ReadOnlyProcessDefinition implements ProcessDefinition, Serializable {
+
+        private static final long serialVersionUID = 1L;
+
+        private final ProcessDefinition delegate;
+
+        private ReadOnlyProcessDefinition(ProcessDefinition delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public String runtime() {
+            return delegate.runtime();
+        }
+
+        @Override
+        public Configuration configuration() {
+            return readOnly(delegate.configuration());
+        }
+
+        @Override
+        public Map<String, FlowDefinition> flows() {
+            return readOnly(delegate.flows());
+        }
+
+        @Override
+        public Set<String> publicFlows() {
+            Set<String> s = delegate.publicFlows();
+            return s != null ? Collections.unmodifiableSet(s) : null;
+        }
+
+        @Override
+        public Map<String, Profile> profiles() {
+            Map<String, Profile> m = delegate.profiles();
+            if (m == null) {
+                return null;
+            }
+
+            Map<String, Profile> result = new LinkedHashMap<>();
+            m.forEach((k, v) -> result.put(k, v != null ? new ReadOnlyProfile(v) : null));
+            return Collections.unmodifiableMap(result);
+        }
+
+        @Override
+        public List<Trigger> triggers() {
+            // triggers are immutable
+            List<Trigger> l = delegate.triggers();
+            return l != null ? Collections.unmodifiableList(l) : null;
+        }
+
+        @Override
+        public Imports imports() {
+            return delegate.imports();
+        }
+
+        @Override
+        public List<Form> forms() {
+            // forms are immutable
+            List<Form> l = delegate.forms();
+            return l != null ? Collections.unmodifiableList(l) : null;
+        }
+    }
+
+    private static final class ReadOnlyProfile implements Profile, Serializable {
+
+        private static final long serialVersionUID = 1L;
+
+        private final Profile delegate;
+
+        private ReadOnlyProfile(Profile delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public Configuration configuration() {
+            return readOnly(delegate.configuration());
+        }
+
+        @Override
+        public Set<String> publicFlows() {
+            Set<String> s = delegate.publicFlows();
+            return s != null ? Collections.unmodifiableSet(s) : null;
+        }
+
+        @Override
+        public Map<String, FlowDefinition> flows() {
+            return readOnly(delegate.flows());
+        }
+    }
+
+    private static final class ReadOnlyConfiguration implements Configuration, Serializable {
+
+        private static final long serialVersionUID = 1L;
+
+        private final Configuration delegate;
+
+        private ReadOnlyConfiguration(Configuration delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public Map<String, Object> asMap() {
+            return deepCopy(delegate.asMap());
+        }
+    }
+
+    private static final class Key {
+
+        private final UUID repoId;
+        private final String commitId;
+        private final String repoPath;
+        private final String runtime;
+
+        private Key(UUID repoId, String commitId, String repoPath, String runtime) {
+            this.repoId = repoId;
+            this.commitId = commitId;
+            this.repoPath = repoPath;
+            this.runtime = runtime;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            Key key = (Key) o;
+            return repoId.equals(key.repoId)
+                    && commitId.equals(key.commitId)
+                    && Objects.equals(repoPath, key.repoPath)
+                    && Objects.equals(runtime, key.runtime);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(repoId, commitId, repoPath, runtime);
+        }
+    }
+}
@@ -21,6 +21,7 @@ package com.walmartlabs.concord.server.process;
  */
 
 import com.walmartlabs.concord.common.IOUtils;
+import com.walmartlabs.concord.common.LogSegmentBatch;
 import com.walmartlabs.concord.server.HttpUtils;
 import com.walmartlabs.concord.server.OperationResult;
 import com.walmartlabs.concord.server.cfg.ProcessConfiguration;
@@ -45,11 +46,12 @@ import javax.ws.rs.core.Response;
 import javax.ws.rs.core.StreamingOutput;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.UUID;
 
-import static com.walmartlabs.concord.server.process.logs.ProcessLogsDao.ProcessLog;
-import static com.walmartlabs.concord.server.process.logs.ProcessLogsDao.ProcessLogChunk;
+import static com.walmartlabs.concord.server.process.logs.ProcessLogsDao.ProcessLogStream;
+import static com.walmartlabs.concord.server.process.logs.ProcessLogsDao.SegmentChunk;
 
 /**
  * API to work with segmented process logs.
@@ -152,7 +154,7 @@ public class ProcessLogResourceV2 implements Resource {
 
         ProcessKey processKey = logAccessManager.assertLogAccess(instanceId);
         HttpUtils.Range range = HttpUtils.parseRangeHeaderValue(rangeHeader);
-        ProcessLog l = logManager.segmentData(processKey, segmentId, range.start(), range.end());
+        ProcessLogStream l = logManager.segmentDataStream(processKey, segmentId, range.start(), range.end());
         return toResponse(instanceId, l, range);
     }
 
@@ -172,38 +174,88 @@ public class ProcessLogResourceV2 implements Resource {
         try {
             byte[] ab = IOUtils.toByteArray(data);
             int upper = logManager.log(processKey, segmentId, ab);
-
-            int logSizeLimit = processCfg.getLogSizeLimit();
-            if (upper >= logSizeLimit) {
-                logManager.error(processKey, "Maximum log size reached: {}. Process cancelled.", logSizeLimit);
-                processManager.kill(processKey);
-            }
+            assertLogSize(processKey, upper);
         } catch (IOException e) {
             throw new ConcordApplicationException("Error while appending a log: " + e.getMessage());
         }
     }
 
-    public static Response toResponse(UUID instanceId, ProcessLog l, HttpUtils.Range range) {
-        List<ProcessLogChunk> data = l.getChunks();
-        if (data.isEmpty()) {
+    /**
+     * Appends data and updates the status of multiple log segments
+     * in a single request. See {@link LogSegmentBatch} for the format.
+     */
+    @POST
+    @Path("{id}/log/batch")
+    @Consumes(MediaType.APPLICATION_OCTET_STREAM)
+    @WithTimer
+    public void batch(@ApiParam @PathParam("id") UUID instanceId,
+                      InputStream data) {
+
+        List<SegmentChunk> chunks = new ArrayList<>();
+        List<SegmentUpdate> updates = new ArrayList<>();
+
+        try {
+            LogSegmentBatch.read(data, new LogSegmentBatch.Visitor() {
+                @Override
+                public void onData(long segmentId, byte[] ab) {
+                    if (ab.length > 0) {
+                        chunks.add(new SegmentChunk(segmentId, ab));
+                    }
+                }
+
+                @Override
+                public void onUpdate(long segmentId, String status, Integer warnings, Integer errors) {
+                    updates.add(new SegmentUpdate(segmentId, parseStatus(status), warnings, errors));
+                }
+            });
+        } catch (IOException e) {
+            throw new ConcordApplicationException("Error while reading a log batch: " + e.getMessage(), Response.Status.BAD_REQUEST);
+        }
+
+        ProcessKey processKey = updates.isEmpty() ? assertProcessKey(instanceId) : logAccessManager.assertLogAccess(instanceId);
+
+        if (!chunks.isEmpty()) {
+            int upper = logManager.log(processKey, chunks);
+            assertLogSize(processKey, upper);
+        }
+
+        for (SegmentUpdate u : updates) {
+            if (u.status == null && u.warnings == null && u.errors == null) {
+                continue;
+            }
+            logManager.updateSegment(processKey, u.segmentId, u.status, u.warnings, u.errors);
+        }
+    }
+
+    public static Response toResponse(UUID instanceId, ProcessLogStream l, HttpUtils.Range range) {
+        if (l.isEmpty()) {
             int actualStart = range.start() != null ? range.start() : 0;
             int actualEnd = range.end() != null ? range.end() : actualStart;
             return downloadableFile(instanceId, null, actualStart, actualEnd, l.getSize());
         }
 
-        ProcessLogChunk firstChunk = data.get(0);
-        int actualStart = firstChunk.getStart();
+        StreamingOutput out = l::writeTo;
+        return downloadableFile(instanceId, out, l.getStart(), l.getEnd(), l.getSize());
+    }
 
-        ProcessLogChunk lastChunk = data.get(data.size() - 1);
-        int actualEnd = lastChunk.getStart() + lastChunk.getData().length;
+    private void assertLogSize(ProcessKey processKey, int upper) {
+        int logSizeLimit = processCfg.getLogSizeLimit();
+        if (upper >= logSizeLimit) {
+            logManager.error(processKey, "Maximum log size reached: {}. Process cancelled.", logSizeLimit);
+            processManager.kill(processKey);
+        }
+    }
 
-        StreamingOutput out = output -> {
-            for (ProcessLogChunk e : data) {
-                output.write(e.getData());
-            }
-        };
+    private static LogSegment.Status parseStatus(String s) {
+        if (s == null) {
+            return null;
+        }
 
-        return downloadableFile(instanceId, out, actualStart, actualEnd, l.getSize());
+        try {
+            return LogSegment.Status.valueOf(s);
+        } catch (IllegalArgumentException e) {
+            throw new ValidationErrorsException("Invalid segment status: " + s);
+        }
     }
 
     private ProcessKey assertProcessKey(UUID instanceId) {
@@ -221,4 +273,19 @@ public class ProcessLogResourceV2 implements Resource {
                 .header("Content-Disposition", "attachment; filename=\"" + instanceId + ".log\"")
                 .build();
     }
+
+    private static final class SegmentUpdate {
+
+        private final long segmentId;
+        private final LogSegment.Status status;
+        private final Integer warnings;
+        private final Integer errors;
+
+        private SegmentUpdate(long segmentId, LogSegment.Status status, Integer warnings, Integer errors) {
+            this.segmentId = segmentId;
+            this.status = status;
+            this.warnings = warnings;
+            this.errors = errors;
+        }
+    }
 }
@@ -41,9 +41,10 @@ import com.walmartlabs.concord.server.process.ProcessManager.ProcessResult;
 import com.walmartlabs.concord.server.process.event.ProcessEventDao;
 import com.walmartlabs.concord.server.process.logs.ProcessLogAccessManager;
 import com.walmartlabs.concord.server.process.logs.ProcessLogManager;
-import com.walmartlabs.concord.server.process.logs.ProcessLogsDao.ProcessLog;
+import com.walmartlabs.concord.server.process.logs.ProcessLogsDao.ProcessLogStream;
 import com.walmartlabs.concord.server.process.queue.*;
 import com.walmartlabs.concord.server.process.state.ProcessStateManager;
+import com.walmartlabs.concord.server.process.state.StateManifestEntry;
 import com.walmartlabs.concord.server.sdk.ConcordApplicationException;
 import com.walmartlabs.concord.server.sdk.ProcessStatus;
 import com.walmartlabs.concord.server.sdk.metrics.WithTimer;
@@ -76,6 +77,8 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.StandardCopyOption;
 import java.util.*;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
 import static com.walmartlabs.concord.server.process.state.ProcessStateManager.path;
@@ -103,6 +106,7 @@ public class ProcessResource implements Resource {
     private final ProcessLogManager logManager;
     private final ProcessLogAccessManager logAccessManager;
     private final ProcessEventDao processEventDao;
+    private final ProcessCompletionNotifier completionNotifier;
 
     private final ProcessResourceV2 v2;
 
@@ -120,6 +124,7 @@ public class ProcessResource implements Resource {
                            ProcessConfiguration processCfg,
                            ProcessLogManager logManager,
                            ProcessLogAccessManager logAccessManager, ProcessEventDao processEventDao,
+                           ProcessCompletionNotifier completionNotifier,
                            ProcessResourceV2 v2) {
 
         this.processManager = processManager;
@@ -136,6 +141,7 @@ public class ProcessResource implements Resource {
         this.logManager = logManager;
         this.logAccessManager = logAccessManager;
         this.processEventDao = processEventDao;
+        this.completionNotifier = completionNotifier;
 
         this.v2 = v2;
     }
@@ -470,6 +476,9 @@ public class ProcessResource implements Resource {
 
     /**
      * Waits for completion of a process.
+     * <p/>
+     * Holds the request thread until the process is finished,
+     * see {@link ProcessWaitServlet} for the asynchronous version.
      *
      * @param instanceId
      * @param timeout
@@ -484,35 +493,34 @@ public class ProcessResource implements Resource {
 
         log.info("waitForCompletion ['{}', {}] -> waiting...", instanceId, timeout);
 
-        long t1 = System.currentTimeMillis();
+        CountDownLatch latch = new CountDownLatch(1);
+        Runnable callback = latch::countDown;
 
-        ProcessEntry r;
-        while (true) {
-            r = get(instanceId);
-
-            ProcessStatus s = r.status();
-            if (s == ProcessStatus.FINISHED ||
-                    s == ProcessStatus.FAILED ||
-                    s == ProcessStatus.CANCELLED ||
-                    s == ProcessStatus.TIMED_OUT) {
+        // register the callback before checking the status, otherwise we might miss the completion
+        completionNotifier.register(instanceId, callback);
+        try {
+            ProcessEntry r = get(instanceId);
+            if (ProcessCompletionNotifier.FINAL_STATUSES.contains(r.status())) {
                 return r;
             }
 
             if (timeout > 0) {
-                long t2 = System.currentTimeMillis();
-                if (t2 - t1 >= timeout) {
-                    log.warn("waitForCompletion ['{}', {}] -> timeout, last status: {}", instanceId, timeout, s);
+                if (!latch.await(timeout, TimeUnit.MILLISECONDS)) {
+                    r = get(instanceId);
+                    log.warn("waitForCompletion ['{}', {}] -> timeout, last status: {}", instanceId, timeout, r.status());
                     throw new ConcordApplicationException(Response.status(Status.REQUEST_TIMEOUT).entity(r).build());
                 }
+            } else {
+                latch.await();
             }
 
-            try {
-                Thread.sleep(1000);
-            } catch (InterruptedException e) { // NOSONAR
-                throw new ConcordApplicationException(Response.status(Status.INTERNAL_SERVER_ERROR)
-                        .entity("Request was interrputed")
-                        .build());
-            }
+            return get(instanceId);
+        } catch (InterruptedException e) { // NOSONAR
+            throw new ConcordApplicationException(Response.status(Status.INTERNAL_SERVER_ERROR)
+                    .entity("Request was interrputed")
+                    .build());
+        } finally {
+            completionNotifier.unregister(instanceId, callback);
         }
     }
 
@@ -806,7 +814,7 @@ public class ProcessResource implements Resource {
 
         HttpUtils.Range range = HttpUtils.parseRangeHeaderValue(rangeHeader);
 
-        ProcessLog l = logManager.get(processKey, range.start(), range.end());
+        ProcessLogStream l = logManager.stream(processKey, range.start(), range.end());
         return ProcessLogResourceV2.toResponse(instanceId, l, range);
     }
 
@@ -897,6 +905,55 @@ public class ProcessResource implements Resource {
                 .build();
     }
 
+    /**
+     * Lists the files of the current state snapshot of a process.
+     */
+    @GET
+    @ApiOperation(value = "List the files of a process state snapshot", responseContainer = "list", response = StateManifestEntry.class)
+    @javax.ws.rs.Path("/{id}/state/manifest")
+    @Produces(MediaType.APPLICATION_JSON)
+    public List<StateManifestEntry> stateManifest(@ApiParam @PathParam("id") UUID instanceId,
+                                                  @ApiParam @QueryParam("path") String path) {
+
+        ProcessEntry entry = assertProcess(PartialProcessKey.from(instanceId));
+        ProcessKey processKey = ProcessKey.from(entry);
+
+        assertProcessAccess(entry, "state");
+
+        return stateManager.manifest(processKey, path);
+    }
+
+    /**
+     * Downloads the current state snapshot of a process, skipping the files
+     * with the specified hashes (e.g. files already cached by the caller).
+     * Use {@link #stateManifest(UUID, String)} to get the complete list of files.
+     */
+    @POST
+    @ApiOperation(value = "Download a partial process state snapshot", response = File.class)
+    @javax.ws.rs.Path("/{id}/state/snapshot")
+    @Consumes(MediaType.APPLICATION_JSON)
+    @Produces("application/zip")
+    public Response downloadStateDelta(@ApiParam @PathParam("id") UUID instanceId,
+                                       @ApiParam List<String> skipHashes) {
+
+        ProcessEntry entry = assertProcess(PartialProcessKey.from(instanceId));
+        ProcessKey processKey = ProcessKey.from(entry);
+
+        assertProcessAccess(entry, "attachments");
+
+        Set<String> skip = skipHashes != null ? new HashSet<>(skipHashes) : Collections.emptySet();
+
+        StreamingOutput out = output -> {
+            try (ZipArchiveOutputStream dst = new ZipArchiveOutputStream(output)) {
+                stateManager.export(processKey, skip, zipTo(dst));
+            }
+        };
+
+        return Response.ok(out, "application/zip")
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + instanceId + ".zip\"")
+                .build();
+    }
+
     /**
      * Upload process attachments.
      *
@@ -922,12 +979,7 @@ public class ProcessResource implements Resource {
             stateManager.deleteDirectory(processKey, path(Constants.Files.JOB_ATTACHMENTS_DIR_NAME, Constants.Files.JOB_STATE_DIR_NAME));
             stateManager.importPath(processKey, Constants.Files.JOB_ATTACHMENTS_DIR_NAME, tmpDir);
 
-            Map<String, Object> out = OutVariablesUtils.read(tmpDir);
-            if (out.isEmpty()) {
-                queueDao.removeMeta(processKey, "out");
-            } else {
-                queueDao.updateMeta(processKey, Collections.singletonMap("out", out));
-            }
+            updateOutVariables(processKey, OutVariablesUtils.read(tmpDir));
         } catch (IOException e) {
             log.error("uploadAttachments ['{}'] -> error", processKey, e);
             throw new ConcordApplicationException("upload error: " + e.getMessage());
@@ -949,6 +1001,89 @@ public class ProcessResource implements Resource {
         }
     }
 
+    /**
+     * Upload changes in process attachments.
+     * <p>
+     * The {@code manifest} part must contain all current attachments as a JSON object
+     * of relative paths and SHA-256 hashes. The {@code data} part is a ZIP archive
+     * with the files that are new or changed compared to the process state
+     * (see {@link #stateManifest(UUID, String)}).
+     * If the process state doesn't match the manifest, the request is rejected with
+     * 409 and the caller is expected to upload the full attachments archive instead.
+     */
+    @POST
+    @javax.ws.rs.Path("{id}/attachment/delta")
+    @Consumes(MediaType.MULTIPART_FORM_DATA)
+    public void uploadAttachmentsDelta(@PathParam("id") UUID instanceId, MultipartInput input) {
+        ProcessEntry entry = assertProcess(PartialProcessKey.from(instanceId));
+        ProcessKey processKey = ProcessKey.from(entry);
+
+        Map<String, Object> manifest = MultipartUtils.getMap(input, "manifest");
+        if (manifest == null) {
+            throw new ValidationErrorsException("'manifest' is required");
+        }
+
+        String prefix = Constants.Files.JOB_ATTACHMENTS_DIR_NAME + "/";
+        String statePrefix = path(Constants.Files.JOB_ATTACHMENTS_DIR_NAME, Constants.Files.JOB_STATE_DIR_NAME) + "/";
+
+        Map<String, String> current = new HashMap<>();
+        stateManager.manifest(processKey, prefix)
+                .forEach(e -> current.put(e.name().substring(prefix.length()), e.hash()));
+
+        Path tmpDir = null;
+        try {
+            tmpDir = IOUtils.createTempDir("attachments");
+
+            InputStream data = MultipartUtils.getStream(input, "data");
+            if (data != null) {
+                IOUtils.unzip(data, tmpDir);
+            }
+
+            // unchanged files must be present in the state
+            for (Map.Entry<String, Object> e : manifest.entrySet()) {
+                String n = e.getKey();
+                if (Files.exists(tmpDir.resolve(n))) {
+                    continue;
+                }
+
+                String hash = current.get(n);
+                if (hash == null || !hash.equals(e.getValue())) {
+                    throw new ConcordApplicationException("Process state mismatch, the file must be uploaded: " + n, Status.CONFLICT);
+                }
+            }
+
+            // same as the full upload: the process state directory is replaced completely
+            List<String> stale = current.keySet().stream()
+                    .map(n -> prefix + n)
+                    .filter(n -> n.startsWith(statePrefix) && !manifest.containsKey(n.substring(prefix.length())))
+                    .collect(Collectors.toList());
+
+            stateManager.deleteFiles(processKey, stale);
+            stateManager.importPath(processKey, Constants.Files.JOB_ATTACHMENTS_DIR_NAME, tmpDir);
+
+            Map<String, Object> out;
+            if (!Files.exists(tmpDir.resolve(Constants.Files.OUT_VALUES_FILE_NAME)) && manifest.containsKey(Constants.Files.OUT_VALUES_FILE_NAME)) {
+                out = stateManager.get(processKey, prefix + Constants.Files.OUT_VALUES_FILE_NAME, this::readMap)
+                        .orElse(Collections.emptyMap());
+            } else {
+                out = OutVariablesUtils.read(tmpDir);
+            }
+
+            updateOutVariables(processKey, out);
+        } catch (IOException e) {
+            log.error("uploadAttachmentsDelta ['{}'] -> error", processKey, e);
+            throw new ConcordApplicationException("upload error: " + e.getMessage());
+        } finally {
+            if (tmpDir != null) {
+                try {
+                    IOUtils.deleteRecursively(tmpDir);
+                } catch (IOException e) {
+                    log.warn("uploadAttachmentsDelta -> cleanup error: {}", e.getMessage());
+                }
+            }
+        }
+    }
+
     /**
      * Decrypt a base64 string previosly encrypted with the process' project key.
      *
@@ -1106,6 +1241,23 @@ public class ProcessResource implements Resource {
         }
     }
 
+    private void updateOutVariables(ProcessKey processKey, Map<String, Object> out) {
+        if (out.isEmpty()) {
+            queueDao.removeMeta(processKey, "out");
+        } else {
+            queueDao.updateMeta(processKey, Collections.singletonMap("out", out));
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private Optional<Map<String, Object>> readMap(InputStream in) {
+        try {
+            return Optional.of(objectMapper.readValue(in, Map.class));
+        } catch (IOException e) {
+            throw new ConcordApplicationException("Error while reading a state file: " + e.getMessage(), e);
+        }
+    }
+
     private static Optional<Path> copyToTmp(InputStream in) {
         try {
             Path p = IOUtils.createTempFile("state", ".bin");
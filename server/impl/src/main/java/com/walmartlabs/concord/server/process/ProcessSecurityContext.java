@@ -39,6 +39,7 @@ import org.apache.shiro.util.ThreadContext;
 
 import javax.inject.Inject;
 import javax.inject.Named;
+import javax.inject.Singleton;
 import java.util.Collection;
 import java.util.UUID;
 import java.util.concurrent.Callable;
@@ -46,6 +47,7 @@ import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
 
 @Named
+@Singleton
 public class ProcessSecurityContext {
 
     private static final String PRINCIPAL_FILE_PATH = ".concord/current_user";
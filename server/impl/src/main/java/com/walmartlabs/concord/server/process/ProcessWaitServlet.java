@@ -0,0 +1,261 @@
+package com.walmartlabs.concord.server.process;
+
+/*-
+ * *****
+ * Concord
+ * -----
+ * Copyright (C) 2017 - 2020 Walmart Inc.
+ * -----
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =====
+ */
+
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.walmartlabs.concord.server.process.queue.ProcessCompletionNotifier;
+import com.walmartlabs.concord.server.process.queue.ProcessQueueDao;
+import com.walmartlabs.concord.server.sdk.ProcessStatus;
+import com.walmartlabs.concord.server.security.UserPrincipal;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.annotation.WebServlet;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.ws.rs.core.MediaType;
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
+
+/**
+ * Waits for completion of one or more processes without holding a request thread.
+ * <p/>
+ * {@code GET /api/v2/process/wait?instanceId=...&instanceId=...&timeout=...}
+ * <p/>
+ * Responds with the list of {@link ProcessEntry} once all specified processes
+ * are finished. If the {@code timeout} (ms) is reached, responds with
+ * {@code 408 Request Timeout} and the current state of the processes.
+ * <p/>
+ * Implemented as a plain servlet because RESTEasy's dispatcher
+ * used by Siesta doesn't support truly asynchronous responses.
+ */
+@Named
+@WebServlet(value = "/api/v2/process/wait", asyncSupported = true)
+public class ProcessWaitServlet extends HttpServlet {
+
+    private static final Logger log = LoggerFactory.getLogger(ProcessWaitServlet.class);
+
+    private static final int MAX_INSTANCE_IDS = 1000;
+
+    private final ProcessQueueDao queueDao;
+    private final ProcessCompletionNotifier notifier;
+    private final ObjectMapper objectMapper;
+    private final Timer waitTimer;
+
+    @Inject
+    public ProcessWaitServlet(ProcessQueueDao queueDao,
+                              ProcessCompletionNotifier notifier,
+                              ObjectMapper objectMapper,
+                              MetricRegistry metricRegistry) {
+
+        this.queueDao = queueDao;
+        this.notifier = notifier;
+        this.objectMapper = objectMapper;
+        this.waitTimer = metricRegistry.timer("process-wait-servlet");
+    }
+
+    @Override
+    protected void doGet(HttpServletRequest req, HttpServletResponse resp) throws IOException {
+        if (UserPrincipal.getCurrent() == null) {
+            resp.sendError(HttpServletResponse.SC_UNAUTHORIZED);
+            return;
+        }
+
+        Set<UUID> instanceIds;
+        long timeout;
+        try {
+            instanceIds = parseInstanceIds(req.getParameterValues("instanceId"));
+            String s = req.getParameter("timeout");
+            timeout = s != null ? Long.parseLong(s) : -1;
+        } catch (IllegalArgumentException e) {
+            resp.sendError(HttpServletResponse.SC_BAD_REQUEST, e.getMessage());
+            return;
+        }
+
+        if (instanceIds.isEmpty()) {
+            resp.sendError(HttpServletResponse.SC_BAD_REQUEST, "'instanceId' is required");
+            return;
+        }
+
+        if (instanceIds.size() > MAX_INSTANCE_IDS) {
+            resp.sendError(HttpServletResponse.SC_BAD_REQUEST, "Too many instance IDs, max: " + MAX_INSTANCE_IDS);
+            return;
+        }
+
+        AsyncContext ctx = req.startAsync();
+        ctx.setTimeout(timeout > 0 ? timeout : 0);
+
+        Waiter w = new Waiter(ctx, instanceIds);
+        ctx.addListener(w);
+
+        // register the callbacks first, then check the current status
+        // otherwise we might miss the completion
+        for (UUID id : instanceIds) {
+            notifier.register(id, w.callback(id));
+        }
+
+        Map<UUID, ProcessStatus> statuses = queueDao.getStatuses(instanceIds);
+        for (UUID id : instanceIds) {
+            ProcessStatus s = statuses.get(id);
+            if (s == null) {
+                log.warn("doGet ['{}'] -> not found", id);
+                w.finish(HttpServletResponse.SC_NOT_FOUND, "Process instance not found: " + id);
+                return;
+            }
+
+            if (ProcessCompletionNotifier.FINAL_STATUSES.contains(s)) {
+                w.callback(id).run();
+            }
+        }
+    }
+
+    private static Set<UUID> parseInstanceIds(String[] values) {
+        if (values == null) {
+            return Collections.emptySet();
+        }
+
+        Set<UUID> result = new LinkedHashSet<>();
+        for (String v : values) {
+            for (String s : v.split(",")) {
+                s = s.trim();
+                if (!s.isEmpty()) {
+                    result.add(UUID.fromString(s));
+                }
+            }
+        }
+        return result;
+    }
+
+    private final class Waiter implements AsyncListener {
+
+        private final AsyncContext ctx;
+        private final Set<UUID> instanceIds;
+        private final Set<UUID> remaining;
+        private final Map<UUID, Runnable> callbacks;
+        private final AtomicBoolean done = new AtomicBoolean(false);
+        private final Timer.Context timerCtx;
+
+        private Waiter(AsyncContext ctx, Set<UUID> instanceIds) {
+            this.ctx = ctx;
+            this.instanceIds = instanceIds;
+            this.remaining = ConcurrentHashMap.newKeySet();
+            this.remaining.addAll(instanceIds);
+            this.callbacks = new HashMap<>();
+            for (UUID id : instanceIds) {
+                callbacks.put(id, () -> onCompletion(id));
+            }
+            this.timerCtx = waitTimer.time();
+        }
+
+        Runnable callback(UUID instanceId) {
+            return callbacks.get(instanceId);
+        }
+
+        @Override
+        public void onTimeout(AsyncEvent event) {
+            // must be completed before returning from the listener
+            if (done(HttpServletResponse.SC_REQUEST_TIMEOUT)) {
+                respond(HttpServletResponse.SC_REQUEST_TIMEOUT, null);
+            }
+        }
+
+        @Override
+        public void onError(AsyncEvent event) {
+            unregister();
+        }
+
+        @Override
+        public void onComplete(AsyncEvent event) {
+            unregister();
+        }
+
+        @Override
+        public void onStartAsync(AsyncEvent event) {
+            // do nothing
+        }
+
+        private void onCompletion(UUID instanceId) {
+            remaining.remove(instanceId);
+            if (remaining.isEmpty()) {
+                finish(HttpServletResponse.SC_OK, null);
+            }
+        }
+
+        private void finish(int status, String error) {
+            if (done(status)) {
+                // the callbacks are called on the listener's thread, send the response using the container's pool
+                ctx.start(() -> respond(status, error));
+            }
+        }
+
+        private boolean done(int status) {
+            if (!done.compareAndSet(false, true)) {
+                return false;
+            }
+
+            unregister();
+            timerCtx.stop();
+
+            if (status == HttpServletResponse.SC_REQUEST_TIMEOUT) {
+                log.warn("done {} -> timeout, still waiting for {}", instanceIds, remaining);
+            }
+
+            return true;
+        }
+
+        private void respond(int status, String error) {
+            HttpServletResponse resp = (HttpServletResponse) ctx.getResponse();
+            try {
+                if (error != null) {
+                    resp.sendError(status, error);
+                    return;
+                }
+
+                List<PartialProcessKey> keys = instanceIds.stream()
+                        .map(PartialProcessKey::from)
+                        .collect(Collectors.toList());
+
+                resp.setStatus(status);
+                resp.setContentType(MediaType.APPLICATION_JSON);
+                objectMapper.writeValue(resp.getOutputStream(), queueDao.get(keys));
+            } catch (Exception e) {
+                log.warn("respond {} -> error while sending the response: {}", instanceIds, e.getMessage());
+            } finally {
+                ctx.complete();
+            }
+        }
+
+        private void unregister() {
+            callbacks.forEach(notifier::unregister);
+        }
+    }
+}
@@ -0,0 +1,342 @@
+package com.walmartlabs.concord.server.process.logs;
+
+/*-
+ * *****
+ * Concord
+ * -----
+ * Copyright (C) 2017 - 2020 Walmart Inc.
+ * -----
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =====
+ */
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.MetricRegistry;
+import com.walmartlabs.concord.db.AbstractDao;
+import com.walmartlabs.concord.db.MainDB;
+import com.walmartlabs.concord.server.cfg.ProcessConfiguration;
+import com.walmartlabs.concord.server.jooq.tables.records.ProcessLogCompactionQueueRecord;
+import com.walmartlabs.concord.server.process.ProcessKey;
+import com.walmartlabs.concord.server.process.queue.ProcessCompletionNotifier;
+import com.walmartlabs.concord.server.sdk.ProcessStatus;
+import com.walmartlabs.concord.server.sdk.ScheduledTask;
+import org.jooq.*;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+import java.io.ByteArrayOutputStream;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+
+import static com.walmartlabs.concord.db.PgUtils.interval;
+import static com.walmartlabs.concord.db.PgUtils.lowerRange;
+import static com.walmartlabs.concord.db.PgUtils.upperRange;
+import static com.walmartlabs.concord.server.jooq.Tables.PROCESS_LOG_COMPACTION_QUEUE;
+import static com.walmartlabs.concord.server.jooq.Tables.PROCESS_LOG_DATA;
+import static org.jooq.impl.DSL.*;
+
+/**
+ * Merges the log chunks of finished processes into larger compressed blocks.
+ * <p/>
+ * Only the consecutive chunks of the same segment are merged, i.e. the chunks
+ * that are adjacent in both {@code LOG_RANGE} and {@code SEGMENT_RANGE}.
+ * The merged block covers the union of the ranges, so the range reads work
+ * the same way for compacted and non-compacted logs.
+ */
+@Named("process-log-compactor")
+@Singleton
+public class ProcessLogCompactor implements ScheduledTask {
+
+    private static final Logger log = LoggerFactory.getLogger(ProcessLogCompactor.class);
+
+    private final ProcessConfiguration cfg;
+    private final CompactorDao dao;
+    private final Counter bytesSaved;
+    private final Counter chunksRemoved;
+    private final Histogram lagHistogram;
+
+    @Inject
+    public ProcessLogCompactor(ProcessConfiguration cfg, CompactorDao dao, MetricRegistry metricRegistry) {
+        this.cfg = cfg;
+        this.dao = dao;
+        this.bytesSaved = metricRegistry.counter("process-log-compaction-bytes-saved");
+        this.chunksRemoved = metricRegistry.counter("process-log-compaction-chunks-removed");
+        this.lagHistogram = metricRegistry.histogram("process-log-compaction-lag");
+    }
+
+    @Override
+    public long getIntervalInSec() {
+        return cfg.getLogCompactionInterval();
+    }
+
+    @Override
+    public void performTask() {
+        long t1 = System.currentTimeMillis();
+
+        int processes = 0;
+        int chunks = 0;
+        long saved = 0;
+        for (int i = 0; i < cfg.getLogCompactionBatchSize(); i++) {
+            Result r = dao.compactNext(cfg.getLogCompactionDelay(), cfg.getLogCompactionBlockSize());
+            if (r == null) {
+                break;
+            }
+
+            processes++;
+            chunks += r.chunksRemoved;
+            saved += r.bytesSaved;
+
+            chunksRemoved.inc(r.chunksRemoved);
+            bytesSaved.inc(r.bytesSaved);
+            lagHistogram.update(r.lag);
+        }
+
+        if (processes > 0) {
+            long t2 = System.currentTimeMillis();
+            log.info("performTask -> compacted {} process log(s): {} chunk(s) removed, {} byte(s) saved, took {}ms",
+                    processes, chunks, saved, (t2 - t1));
+        }
+    }
+
+    /**
+     * Schedules the compaction of the process' logs once the specified transaction
+     * is committed and the process is in one of the final statuses.
+     */
+    public void onStatusChange(DSLContext tx, ProcessKey processKey, ProcessStatus status) {
+        onStatusChange(tx, Collections.singletonList(processKey), status);
+    }
+
+    /**
+     * @see #onStatusChange(DSLContext, ProcessKey, ProcessStatus)
+     */
+    public void onStatusChange(DSLContext tx, List<ProcessKey> processKeys, ProcessStatus status) {
+        if (cfg.getLogCompactionInterval() <= 0 || processKeys.isEmpty()) {
+            return;
+        }
+
+        if (!ProcessCompletionNotifier.FINAL_STATUSES.contains(status)) {
+            return;
+        }
+
+        dao.enqueue(tx, processKeys);
+    }
+
+    private static final class Result {
+
+        private final int chunksRemoved;
+        private final long bytesSaved;
+        private final long lag;
+
+        private Result(int chunksRemoved, long bytesSaved, long lag) {
+            this.chunksRemoved = chunksRemoved;
+            this.bytesSaved = bytesSaved;
+            this.lag = lag;
+        }
+    }
+
+    /**
+     * A run of consecutive chunks of the same segment.
+     */
+    private static final class Block {
+
+        private final long segmentId;
+        private final int logStart;
+        private final int segmentStart;
+        private final List<Long> seqs = new ArrayList<>();
+        private final ByteArrayOutputStream data = new ByteArrayOutputStream();
+
+        private int logEnd;
+        private int segmentEnd;
+        private int storedBytes;
+
+        private Block(long segmentId, int logStart, int segmentStart) {
+            this.segmentId = segmentId;
+            this.logStart = logStart;
+            this.logEnd = logStart;
+            this.segmentStart = segmentStart;
+            this.segmentEnd = segmentStart;
+        }
+
+        private boolean accepts(long segmentId, int logStart, int segmentStart, int len, int maxSize) {
+            return this.segmentId == segmentId
+                    && this.logEnd == logStart
+                    && this.segmentEnd == segmentStart
+                    && data.size() + len <= maxSize;
+        }
+
+        private void add(long seq, int len, byte[] chunk) {
+            seqs.add(seq);
+            data.write(chunk, 0, chunk.length);
+            storedBytes += chunk.length;
+            logEnd += len;
+            segmentEnd += len;
+        }
+    }
+
+    @Named
+    static class CompactorDao extends AbstractDao {
+
+        private static final int FETCH_SIZE = 100;
+
+        @Inject
+        protected CompactorDao(@MainDB Configuration cfg) {
+            super(cfg);
+        }
+
+        void enqueue(DSLContext tx, List<ProcessKey> processKeys) {
+            InsertValuesStep2<ProcessLogCompactionQueueRecord, UUID, Timestamp> q = tx.insertInto(PROCESS_LOG_COMPACTION_QUEUE)
+                    .columns(PROCESS_LOG_COMPACTION_QUEUE.INSTANCE_ID, PROCESS_LOG_COMPACTION_QUEUE.INSTANCE_CREATED_AT);
+
+            for (ProcessKey pk : processKeys) {
+                q.values(pk.getInstanceId(), pk.getCreatedAt());
+            }
+
+            q.onConflictDoNothing()
+                    .execute();
+        }
+
+        /**
+         * Compacts the logs of the next process in the queue.
+         *
+         * @return {@code null} if there are no processes ready for compaction
+         */
+        Result compactNext(long delay, int blockSize) {
+            return txResult(tx -> {
+                Field<Timestamp> now = currentTimestamp();
+                Record3<UUID, Timestamp, Timestamp> r = tx.select(PROCESS_LOG_COMPACTION_QUEUE.INSTANCE_ID,
+                        PROCESS_LOG_COMPACTION_QUEUE.INSTANCE_CREATED_AT,
+                        PROCESS_LOG_COMPACTION_QUEUE.ENQUEUED_AT)
+                        .from(PROCESS_LOG_COMPACTION_QUEUE)
+                        .where(PROCESS_LOG_COMPACTION_QUEUE.ENQUEUED_AT.le(now.minus(interval(delay + " milliseconds"))))
+                        .orderBy(PROCESS_LOG_COMPACTION_QUEUE.ENQUEUED_AT)
+                        .limit(1)
+                        .forUpdate()
+                        .skipLocked()
+                        .fetchOne();
+
+                if (r == null) {
+                    return null;
+                }
+
+                ProcessKey processKey = new ProcessKey(r.value1(), r.value2());
+                long[] stats = compact(tx, processKey, blockSize);
+
+                tx.deleteFrom(PROCESS_LOG_COMPACTION_QUEUE)
+                        .where(PROCESS_LOG_COMPACTION_QUEUE.INSTANCE_ID.eq(processKey.getInstanceId())
+                                .and(PROCESS_LOG_COMPACTION_QUEUE.INSTANCE_CREATED_AT.eq(processKey.getCreatedAt())))
+                        .execute();
+
+                Timestamp dbNow = tx.select(now).fetchOne(now);
+                long lag = dbNow.getTime() - r.value3().getTime();
+
+                return new Result((int) stats[0], stats[1], lag);
+            });
+        }
+
+        /**
+         * @return the number of removed chunks and the number of saved bytes
+         */
+        private long[] compact(DSLContext tx, ProcessKey processKey, int blockSize) {
+            Field<Integer> logStart = lowerRange(PROCESS_LOG_DATA.LOG_RANGE);
+            Field<Integer> logEnd = upperRange(PROCESS_LOG_DATA.LOG_RANGE);
+            Field<Integer> segmentStart = lowerRange(PROCESS_LOG_DATA.SEGMENT_RANGE);
+
+            long[] stats = new long[2];
+
+            try (Cursor<Record6<Long, Long, Integer, Integer, Integer, byte[]>> cursor = tx.select(PROCESS_LOG_DATA.LOG_SEQ,
+                    PROCESS_LOG_DATA.SEGMENT_ID,
+                    logStart,
+                    logEnd,
+                    segmentStart,
+                    PROCESS_LOG_DATA.CHUNK_DATA)
+                    .from(PROCESS_LOG_DATA)
+                    .where(PROCESS_LOG_DATA.INSTANCE_ID.eq(processKey.getInstanceId())
+                            .and(PROCESS_LOG_DATA.INSTANCE_CREATED_AT.eq(processKey.getCreatedAt()))
+                            .and(PROCESS_LOG_DATA.CHUNK_ENCODING.isNull()))
+                    .orderBy(PROCESS_LOG_DATA.LOG_RANGE)
+                    .fetchSize(FETCH_SIZE)
+                    .fetchLazy()) {
+
+                Block block = null;
+                for (Record6<Long, Long, Integer, Integer, Integer, byte[]> r : cursor) {
+                    long segmentId = r.value2();
+                    int len = r.value4() - r.value3();
+
+                    if (block == null || !block.accepts(segmentId, r.value3(), r.value5(), len, blockSize)) {
+                        write(tx, processKey, block, stats);
+                        block = new Block(segmentId, r.value3(), r.value5());
+                    }
+
+                    block.add(r.value1(), len, r.value6());
+                }
+
+                write(tx, processKey, block, stats);
+            }
+
+            return stats;
+        }
+
+        private static void write(DSLContext tx, ProcessKey processKey, Block block, long[] stats) {
+            if (block == null || block.seqs.size() < 2) {
+                return;
+            }
+
+            byte[] raw = block.data.toByteArray();
+            byte[] data = ProcessLogEncoding.encode(ProcessLogEncoding.GZIP, raw);
+            String encoding = ProcessLogEncoding.GZIP;
+            if (data.length >= raw.length) {
+                // incompressible, merge the chunks anyway
+                data = raw;
+                encoding = null;
+            }
+
+            tx.insertInto(PROCESS_LOG_DATA)
+                    .columns(PROCESS_LOG_DATA.INSTANCE_ID,
+                            PROCESS_LOG_DATA.INSTANCE_CREATED_AT,
+                            PROCESS_LOG_DATA.SEGMENT_ID,
+                            PROCESS_LOG_DATA.SEGMENT_RANGE,
+                            PROCESS_LOG_DATA.LOG_RANGE,
+                            PROCESS_LOG_DATA.CHUNK_DATA,
+                            PROCESS_LOG_DATA.CHUNK_ENCODING)
+                    .values(value(processKey.getInstanceId()),
+                            value(processKey.getCreatedAt()),
+                            value(block.segmentId),
+                            int4range(block.segmentStart, block.segmentEnd),
+                            int4range(block.logStart, block.logEnd),
+                            value(data),
+                            value(encoding))
+                    .execute();
+
+            tx.deleteFrom(PROCESS_LOG_DATA)
+                    .where(PROCESS_LOG_DATA.INSTANCE_ID.eq(processKey.getInstanceId())
+                            .and(PROCESS_LOG_DATA.INSTANCE_CREATED_AT.eq(processKey.getCreatedAt()))
+                            .and(PROCESS_LOG_DATA.SEGMENT_ID.eq(block.segmentId))
+                            .and(PROCESS_LOG_DATA.LOG_SEQ.in(block.seqs)))
+                    .execute();
+
+            stats[0] += block.seqs.size() - 1;
+            stats[1] += block.storedBytes - data.length;
+        }
+
+        private static Field<Object> int4range(int lower, int upper) {
+            return field("int4range({0}, {1})", Object.class, value(lower), value(upper));
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package com.walmartlabs.concord.server.process.logs;
+
+/*-
+ * *****
+ * Concord
+ * -----
+ * Copyright (C) 2017 - 2020 Walmart Inc.
+ * -----
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =====
+ */
+
+import com.google.common.io.ByteStreams;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Encodings of {@code PROCESS_LOG_DATA.CHUNK_DATA}.
+ */
+public final class ProcessLogEncoding {
+
+    public static final String GZIP = "gzip";
+
+    public static byte[] encode(String encoding, byte[] data) {
+        assertSupported(encoding);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream(data.length / 4);
+        try (OutputStream gz = new GZIPOutputStream(out)) {
+            gz.write(data);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * @param encoding the chunk's encoding, {@code null} for uncompressed data
+     */
+    public static byte[] decode(String encoding, byte[] data) {
+        if (encoding == null) {
+            return data;
+        }
+
+        assertSupported(encoding);
+
+        try (InputStream in = new GZIPInputStream(new ByteArrayInputStream(data))) {
+            return ByteStreams.toByteArray(in);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static void assertSupported(String encoding) {
+        if (!GZIP.equals(encoding)) {
+            throw new IllegalArgumentException("Unsupported log chunk encoding: " + encoding);
+        }
+    }
+
+    private ProcessLogEncoding() {
+    }
+}
@@ -39,6 +39,8 @@ import java.util.UUID;
 
 import static com.walmartlabs.concord.common.LogUtils.LogLevel;
 import static com.walmartlabs.concord.server.process.logs.ProcessLogsDao.ProcessLog;
+import static com.walmartlabs.concord.server.process.logs.ProcessLogsDao.ProcessLogStream;
+import static com.walmartlabs.concord.server.process.logs.ProcessLogsDao.SegmentChunk;
 
 @Named
 @Singleton
@@ -50,6 +52,7 @@ public class ProcessLogManager {
     private final ProcessConfiguration processConfiguration;
     private final ProcessLogsDao logsDao;
     private final Listeners listeners;
+    private final ProcessLogTailManager tailManager;
 
     @InjectCounter
     private final Counter logBytesAppended;
@@ -58,11 +61,13 @@ public class ProcessLogManager {
     public ProcessLogManager(ProcessConfiguration processConfiguration,
                              ProcessLogsDao logsDao,
                              Listeners listeners,
+                             ProcessLogTailManager tailManager,
                              Counter logBytesAppended) {
 
         this.processConfiguration = processConfiguration;
         this.logsDao = logsDao;
         this.listeners = listeners;
+        this.tailManager = tailManager;
         this.logBytesAppended = logBytesAppended;
     }
 
@@ -109,6 +114,19 @@ public class ProcessLogManager {
         return logsDao.segmentData(processKey, segmentId, start, end);
     }
 
+    public ProcessLogStream segmentDataStream(ProcessKey processKey, long segmentId, Integer start, Integer end) {
+        return logsDao.segmentDataStream(processKey, segmentId, start, end);
+    }
+
+    public ProcessLogStream stream(ProcessKey processKey, Integer start, Integer end) {
+        if (isNewLog(processKey)) {
+            return logsDao.dataStream(processKey, start, end);
+        }
+
+        // the legacy logs are loaded into memory
+        return ProcessLogStream.of(logsDao.get(processKey, start, end));
+    }
+
     public ProcessLog get(ProcessKey processKey, Integer start, Integer end) {
         ProcessLog logs;
         if (isNewLog(processKey)) {
@@ -122,7 +140,7 @@ public class ProcessLogManager {
     public int log(ProcessKey processKey, long segmentId, byte[] msg) {
         PgIntRange range;
         if (isNewLog(processKey)) {
-            range = logsDao.append(processKey, segmentId, msg);
+            range = logsDao.append(processKey, segmentId, msg, tailListener(processKey));
         } else {
             range = logsDao.append(processKey, msg);
         }
@@ -131,10 +149,35 @@ public class ProcessLogManager {
         return range.getUpper();
     }
 
+    /**
+     * Appends data to multiple segments at once.
+     * @return the new size of the process log.
+     */
+    public int log(ProcessKey processKey, List<SegmentChunk> chunks) {
+        if (!isNewLog(processKey)) {
+            int upper = 0;
+            for (SegmentChunk c : chunks) {
+                upper = log(processKey, c.getSegmentId(), c.getData());
+            }
+            return upper;
+        }
+
+        PgIntRange range = logsDao.append(processKey, chunks, tailListener(processKey));
+        for (SegmentChunk c : chunks) {
+            logBytesAppended.inc(c.getData().length);
+            listeners.onProcessLogAppend(processKey, c.getData());
+        }
+        return range.getUpper();
+    }
+
     private void log(ProcessKey processKey, LogLevel level, String msg, Object... args) {
         log(processKey, LogUtils.formatMessage(level, msg, args));
     }
 
+    private ProcessLogsDao.AppendListener tailListener(ProcessKey processKey) {
+        return (segmentId, segmentStart, data) -> tailManager.onAppend(processKey, segmentId, segmentStart, data);
+    }
+
     private boolean isNewLog(ProcessKey processKey) {
         return processConfiguration.getNewLogsActivationDate() == null
                 || processConfiguration.getNewLogsActivationDate().isBefore(processKey.getCreatedAt().toInstant());
@@ -0,0 +1,477 @@
+package com.walmartlabs.concord.server.process.logs;
+
+/*-
+ * *****
+ * Concord
+ * -----
+ * Copyright (C) 2017 - 2020 Walmart Inc.
+ * -----
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =====
+ */
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.walmartlabs.concord.server.cfg.ProcessConfiguration;
+import com.walmartlabs.concord.server.process.ProcessKey;
+import com.walmartlabs.concord.server.sdk.BackgroundTask;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+import java.util.*;
+import java.util.concurrent.*;
+
+import static com.walmartlabs.concord.server.process.logs.ProcessLogsDao.ProcessLog;
+import static com.walmartlabs.concord.server.process.logs.ProcessLogsDao.ProcessLogChunk;
+
+/**
+ * Pushes new data of process log segments to the subscribers.
+ * <p/>
+ * The most recent data of each watched segment is kept in a small in-memory
+ * buffer which is populated by the appends made on this server instance.
+ * The DB is used only to catch up: when a subscriber starts from an earlier
+ * position, when there's a gap in the buffer or when the data is appended
+ * on another server instance (see {@link ProcessConfiguration#getLogTailPollInterval()}).
+ * <p/>
+ * The subscribers must not block: a subscriber that can't accept more data
+ * returns {@code false} from {@link Subscriber#isReady()} and calls
+ * {@link Subscription#resume()} once it's ready again.
+ */
+@Named
+@Singleton
+public class ProcessLogTailManager implements BackgroundTask {
+
+    private static final Logger log = LoggerFactory.getLogger(ProcessLogTailManager.class);
+
+    private static final int WORKER_THREADS = 4;
+    private static final int MAX_READ_SIZE = 1024 * 1024;
+    private static final long HEARTBEAT_INTERVAL = TimeUnit.SECONDS.toMillis(15);
+
+    private final ProcessLogsDao logsDao;
+    private final int bufferSize;
+    private final long pollInterval;
+    private final Map<SegmentKey, Tail> tails = new ConcurrentHashMap<>();
+    private final Meter dbReadsMeter;
+
+    private ScheduledExecutorService executor;
+
+    @Inject
+    public ProcessLogTailManager(ProcessConfiguration cfg,
+                                 ProcessLogsDao logsDao,
+                                 MetricRegistry metricRegistry) {
+
+        this.logsDao = logsDao;
+        this.bufferSize = cfg.getLogTailBufferSize();
+        this.pollInterval = cfg.getLogTailPollInterval();
+        this.dbReadsMeter = metricRegistry.meter("process-log-tail-db-reads");
+
+        metricRegistry.register("process-log-tail-segments", (Gauge<Integer>) tails::size);
+        metricRegistry.register("process-log-tail-subscribers", (Gauge<Integer>) () -> tails.values().stream()
+                .mapToInt(t -> t.subscriptions.size())
+                .sum());
+    }
+
+    @Override
+    public void start() {
+        this.executor = Executors.newScheduledThreadPool(WORKER_THREADS, new ThreadFactoryBuilder()
+                .setNameFormat("log-tail-%d")
+                .setDaemon(true)
+                .build());
+
+        this.executor.scheduleWithFixedDelay(this::poll, pollInterval, pollInterval, TimeUnit.MILLISECONDS);
+        log.info("start -> done");
+    }
+
+    @Override
+    public void stop() {
+        if (executor != null) {
+            executor.shutdownNow();
+            executor = null;
+        }
+        log.info("stop -> done");
+    }
+
+    /**
+     * Subscribes to the data of the specified segment.
+     *
+     * @param start the initial position in the segment, {@code null} to receive only the new data
+     */
+    public Subscription subscribe(ProcessKey processKey, long segmentId, Integer start, Subscriber subscriber) {
+        SegmentKey key = new SegmentKey(processKey.getInstanceId(), segmentId);
+
+        while (true) {
+            Tail t = tails.computeIfAbsent(key, k -> new Tail(processKey, segmentId));
+
+            Subscription s = new Subscription(t, subscriber, start != null ? start : -1);
+            synchronized (t) {
+                if (t.removed) {
+                    // the tail was removed concurrently by the last subscriber
+                    continue;
+                }
+                t.subscriptions.add(s);
+            }
+
+            executor.execute(() -> {
+                refresh(t);
+                deliver(s);
+            });
+
+            return s;
+        }
+    }
+
+    /**
+     * Called when the data is appended on this server instance.
+     */
+    public void onAppend(ProcessKey processKey, long segmentId, int start, byte[] data) {
+        Tail t = tails.get(new SegmentKey(processKey.getInstanceId(), segmentId));
+        if (t == null) {
+            return;
+        }
+
+        boolean gap;
+        synchronized (t) {
+            if (t.upper < 0) {
+                // not initialized yet, the initial read will get the data
+                return;
+            }
+
+            gap = start > t.upper;
+            if (!gap) {
+                t.add(start, data);
+                t.lastAppendAt = System.currentTimeMillis();
+            }
+        }
+
+        if (gap) {
+            // the missing data was appended on another server instance
+            executor.execute(() -> {
+                refresh(t);
+                deliverAll(t);
+            });
+        } else {
+            executor.execute(() -> deliverAll(t));
+        }
+    }
+
+    private void poll() {
+        long now = System.currentTimeMillis();
+
+        for (Tail t : tails.values()) {
+            boolean idle;
+            boolean heartbeat;
+            synchronized (t) {
+                idle = now - t.lastAppendAt >= pollInterval;
+                heartbeat = now - t.lastHeartbeatAt >= HEARTBEAT_INTERVAL;
+                if (heartbeat) {
+                    t.lastHeartbeatAt = now;
+                }
+            }
+
+            if (idle) {
+                executor.execute(() -> {
+                    refresh(t);
+                    deliverAll(t);
+                });
+            }
+
+            if (heartbeat) {
+                for (Subscription s : t.subscriptions) {
+                    executor.execute(s::heartbeat);
+                }
+            }
+        }
+    }
+
+    /**
+     * Reads the data appended since the last known position of the segment.
+     */
+    private void refresh(Tail t) {
+        int from;
+        synchronized (t) {
+            from = t.upper;
+        }
+
+        try {
+            dbReadsMeter.mark();
+
+            if (from < 0) {
+                // an empty range, returns only the current size of the segment
+                ProcessLog l = logsDao.segmentData(t.processKey, t.segmentId, 0, 0);
+                synchronized (t) {
+                    if (t.upper < 0) {
+                        t.upper = l.getSize();
+                    }
+                }
+                return;
+            }
+
+            ProcessLog l = logsDao.segmentData(t.processKey, t.segmentId, from, null);
+            synchronized (t) {
+                for (ProcessLogChunk c : l.getChunks()) {
+                    t.add(c.getStart(), c.getData());
+                }
+            }
+        } catch (Exception e) {
+            log.warn("refresh ['{}', {}] -> error: {}", t.processKey, t.segmentId, e.getMessage());
+        }
+    }
+
+    private void deliverAll(Tail t) {
+        for (Subscription s : t.subscriptions) {
+            deliver(s);
+        }
+    }
+
+    /**
+     * Sends all data available after the subscription's current position.
+     * The data that is no longer in the buffer is read from the DB.
+     * Stops when the subscriber is not ready to accept more data.
+     */
+    private void deliver(Subscription s) {
+        Tail t = s.tail;
+
+        Runnable onFinish;
+        synchronized (s) {
+            if (s.closed) {
+                return;
+            }
+
+            try {
+                List<ProcessLogChunk> buffered;
+                int bufferStart;
+                synchronized (t) {
+                    if (t.upper < 0) {
+                        return;
+                    }
+
+                    if (s.pos < 0) {
+                        s.pos = t.upper;
+                    }
+
+                    buffered = new ArrayList<>(t.buffer);
+                    bufferStart = buffered.isEmpty() ? t.upper : buffered.get(0).getStart();
+                }
+
+                while (s.pos < bufferStart) {
+                    if (!s.subscriber.isReady()) {
+                        return;
+                    }
+
+                    dbReadsMeter.mark();
+                    int end = Math.min(bufferStart, s.pos + MAX_READ_SIZE);
+                    ProcessLog l = logsDao.segmentData(t.processKey, t.segmentId, s.pos, end);
+                    int pos = s.pos;
+                    for (ProcessLogChunk c : l.getChunks()) {
+                        s.send(c.getStart(), c.getData(), end);
+                    }
+
+                    if (s.pos == pos) {
+                        // no data in the range
+                        break;
+                    }
+                }
+
+                for (ProcessLogChunk c : buffered) {
+                    if (!s.subscriber.isReady()) {
+                        return;
+                    }
+
+                    s.send(c.getStart(), c.getData(), Integer.MAX_VALUE);
+                }
+
+                // all data is delivered
+                onFinish = s.onFinish;
+                s.onFinish = null;
+            } catch (Exception e) {
+                log.warn("deliver ['{}', {}] -> error: {}", t.processKey, t.segmentId, e.getMessage());
+                s.close();
+                s.subscriber.onError(e);
+                return;
+            }
+        }
+
+        if (onFinish != null) {
+            onFinish.run();
+        }
+    }
+
+    public interface Subscriber {
+
+        /**
+         * Called with the next portion of the segment's data, in order.
+         */
+        void onData(int start, byte[] data) throws Exception;
+
+        /**
+         * Called periodically to keep the connection alive.
+         */
+        void onHeartbeat() throws Exception;
+
+        /**
+         * @return {@code false} if the subscriber can't accept more data at
+         * the moment. The delivery continues after {@link Subscription#resume()}.
+         */
+        boolean isReady();
+
+        void onError(Exception e);
+    }
+
+    public final class Subscription {
+
+        private final Tail tail;
+        private final Subscriber subscriber;
+
+        private int pos;
+        private boolean closed;
+        private Runnable onFinish;
+
+        private Subscription(Tail tail, Subscriber subscriber, int pos) {
+            this.tail = tail;
+            this.subscriber = subscriber;
+            this.pos = pos;
+        }
+
+        /**
+         * Sends the remaining data of the segment and calls the callback
+         * once all of it is delivered. Should be used when the process is finished.
+         */
+        public void finish(Runnable callback) {
+            executor.execute(() -> {
+                refresh(tail);
+                synchronized (this) {
+                    onFinish = callback;
+                }
+                deliver(this);
+            });
+        }
+
+        /**
+         * Continues the delivery after the subscriber becomes ready again.
+         */
+        public void resume() {
+            executor.execute(() -> deliver(this));
+        }
+
+        public void close() {
+            synchronized (this) {
+                closed = true;
+            }
+
+            Tail t = tail;
+            synchronized (t) {
+                t.subscriptions.remove(this);
+                if (t.subscriptions.isEmpty()) {
+                    t.removed = true;
+                    tails.remove(new SegmentKey(t.processKey.getInstanceId(), t.segmentId), t);
+                }
+            }
+        }
+
+        private synchronized void heartbeat() {
+            if (closed) {
+                return;
+            }
+
+            try {
+                subscriber.onHeartbeat();
+            } catch (Exception e) {
+                close();
+                subscriber.onError(e);
+            }
+        }
+
+        private void send(int start, byte[] data, int end) throws Exception {
+            int from = Math.max(start, pos);
+            int to = Math.min(start + data.length, end);
+            if (from != pos || to <= from) {
+                return;
+            }
+
+            subscriber.onData(from, Arrays.copyOfRange(data, from - start, to - start));
+            pos = to;
+        }
+    }
+
+    private final class Tail {
+
+        private final ProcessKey processKey;
+        private final long segmentId;
+        private final Set<Subscription> subscriptions = new CopyOnWriteArraySet<>();
+        private final Deque<ProcessLogChunk> buffer = new ArrayDeque<>();
+
+        private int bufferBytes;
+        private int upper = -1;
+        private long lastAppendAt;
+        private long lastHeartbeatAt = System.currentTimeMillis();
+        private boolean removed;
+
+        private Tail(ProcessKey processKey, long segmentId) {
+            this.processKey = processKey;
+            this.segmentId = segmentId;
+        }
+
+        /**
+         * Adds the part of the chunk that follows the current upper bound.
+         * Must be called while holding the tail's lock.
+         */
+        private void add(int start, byte[] data) {
+            int end = start + data.length;
+            if (start > upper || end <= upper) {
+                return;
+            }
+
+            byte[] d = start == upper ? data : Arrays.copyOfRange(data, upper - start, data.length);
+            buffer.addLast(new ProcessLogChunk(upper, d));
+            bufferBytes += d.length;
+            upper = end;
+
+            while (bufferBytes > bufferSize && buffer.size() > 1) {
+                bufferBytes -= buffer.removeFirst().getData().length;
+            }
+        }
+    }
+
+    private static final class SegmentKey {
+
+        private final UUID instanceId;
+        private final long segmentId;
+
+        private SegmentKey(UUID instanceId, long segmentId) {
+            this.instanceId = instanceId;
+            this.segmentId = segmentId;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            SegmentKey that = (SegmentKey) o;
+            return segmentId == that.segmentId && instanceId.equals(that.instanceId);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(instanceId, segmentId);
+        }
+    }
+}
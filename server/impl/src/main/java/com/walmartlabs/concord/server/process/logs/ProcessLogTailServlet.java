@@ -0,0 +1,386 @@
+package com.walmartlabs.concord.server.process.logs;
+
+/*-
+ * *****
+ * Concord
+ * -----
+ * Copyright (C) 2017 - 2020 Walmart Inc.
+ * -----
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =====
+ */
+
+import com.walmartlabs.concord.server.process.ProcessKey;
+import com.walmartlabs.concord.server.process.queue.ProcessCompletionNotifier;
+import com.walmartlabs.concord.server.process.queue.ProcessQueueDao;
+import com.walmartlabs.concord.server.sdk.ProcessStatus;
+import com.walmartlabs.concord.server.security.UserPrincipal;
+import org.apache.shiro.authz.UnauthorizedException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import javax.servlet.annotation.WebServlet;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.ws.rs.WebApplicationException;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Streams the data of a process log segment as it is appended.
+ * <p/>
+ * {@code GET /api/v2/process/log/tail?instanceId=...&segmentId=...&start=...}
+ * <p/>
+ * Responds with a stream of Server-Sent Events. Each {@code data} event contains
+ * a Base64-encoded portion of the segment, the event's ID is the position in
+ * the segment after the portion. The standard {@code Last-Event-ID} header
+ * can be used to resume the stream. The {@code end} event is sent once the
+ * process is finished and all of its data is delivered.
+ * <p/>
+ * The response is written using the non-blocking I/O. The events are kept
+ * in a bounded per-client buffer, the delivery is paused while the buffer is
+ * full. Clients that don't read the stream for too long are disconnected.
+ * <p/>
+ * Implemented as a plain servlet because RESTEasy's dispatcher
+ * used by Siesta doesn't support truly asynchronous responses.
+ */
+@Named
+@WebServlet(value = "/api/v2/process/log/tail", asyncSupported = true)
+public class ProcessLogTailServlet extends HttpServlet {
+
+    private static final Logger log = LoggerFactory.getLogger(ProcessLogTailServlet.class);
+
+    private static final String LAST_EVENT_ID_HEADER = "Last-Event-ID";
+
+    /**
+     * Max size of the not yet written events, per client.
+     */
+    private static final int MAX_PENDING_BYTES = 1024 * 1024;
+
+    /**
+     * Max time the client's connection can stay not writable.
+     */
+    private static final long MAX_STALL_TIME = TimeUnit.MINUTES.toMillis(1);
+
+    private final ProcessLogAccessManager logAccessManager;
+    private final ProcessLogTailManager tailManager;
+    private final ProcessQueueDao queueDao;
+    private final ProcessCompletionNotifier notifier;
+
+    @Inject
+    public ProcessLogTailServlet(ProcessLogAccessManager logAccessManager,
+                                 ProcessLogTailManager tailManager,
+                                 ProcessQueueDao queueDao,
+                                 ProcessCompletionNotifier notifier) {
+
+        this.logAccessManager = logAccessManager;
+        this.tailManager = tailManager;
+        this.queueDao = queueDao;
+        this.notifier = notifier;
+    }
+
+    @Override
+    protected void doGet(HttpServletRequest req, HttpServletResponse resp) throws IOException {
+        if (UserPrincipal.getCurrent() == null) {
+            resp.sendError(HttpServletResponse.SC_UNAUTHORIZED);
+            return;
+        }
+
+        UUID instanceId;
+        long segmentId;
+        Integer start;
+        try {
+            instanceId = UUID.fromString(required(req, "instanceId"));
+            segmentId = Long.parseLong(required(req, "segmentId"));
+
+            String s = req.getHeader(LAST_EVENT_ID_HEADER);
+            if (s == null) {
+                s = req.getParameter("start");
+            }
+            start = s != null ? Integer.parseInt(s) : null;
+        } catch (IllegalArgumentException e) {
+            resp.sendError(HttpServletResponse.SC_BAD_REQUEST, e.getMessage());
+            return;
+        }
+
+        if (start != null && start < 0) {
+            resp.sendError(HttpServletResponse.SC_BAD_REQUEST, "'start' must be a positive number");
+            return;
+        }
+
+        ProcessKey processKey;
+        try {
+            processKey = logAccessManager.assertLogAccess(instanceId);
+        } catch (UnauthorizedException e) {
+            resp.sendError(HttpServletResponse.SC_FORBIDDEN, e.getMessage());
+            return;
+        } catch (WebApplicationException e) {
+            resp.sendError(e.getResponse().getStatus(), e.getMessage());
+            return;
+        }
+
+        resp.setStatus(HttpServletResponse.SC_OK);
+        resp.setContentType("text/event-stream");
+        resp.setCharacterEncoding(StandardCharsets.UTF_8.name());
+        resp.setHeader("Cache-Control", "no-cache");
+        resp.flushBuffer();
+
+        AsyncContext ctx = req.startAsync();
+        // the stream is closed when the process is finished or when the client stops reading it
+        ctx.setTimeout(0);
+
+        Stream stream = new Stream(ctx, resp.getOutputStream(), processKey, segmentId);
+        ctx.addListener(stream);
+        stream.out.setWriteListener(stream);
+
+        stream.subscription = tailManager.subscribe(processKey, segmentId, start, stream);
+
+        // register the callback first, then check the current status
+        // otherwise we might miss the completion
+        notifier.register(instanceId, stream.completionCallback);
+
+        ProcessStatus status = queueDao.getStatuses(Collections.singleton(instanceId)).get(instanceId);
+        if (status == null || ProcessCompletionNotifier.FINAL_STATUSES.contains(status)) {
+            stream.completionCallback.run();
+        }
+    }
+
+    private static String required(HttpServletRequest req, String name) {
+        String s = req.getParameter(name);
+        if (s == null || s.trim().isEmpty()) {
+            throw new IllegalArgumentException("'" + name + "' is required");
+        }
+        return s.trim();
+    }
+
+    private final class Stream implements ProcessLogTailManager.Subscriber, AsyncListener, WriteListener {
+
+        private final AsyncContext ctx;
+        private final ServletOutputStream out;
+        private final ProcessKey processKey;
+        private final long segmentId;
+        private final AtomicBoolean done = new AtomicBoolean(false);
+        private final Runnable completionCallback = this::onCompletion;
+
+        private volatile ProcessLogTailManager.Subscription subscription;
+
+        // guarded by "this"
+        private final Deque<byte[]> pending = new ArrayDeque<>();
+        private int pendingBytes;
+        private boolean needsFlush;
+        private boolean paused;
+        private boolean ending;
+        private long stalledSince;
+
+        private Stream(AsyncContext ctx, ServletOutputStream out, ProcessKey processKey, long segmentId) {
+            this.ctx = ctx;
+            this.out = out;
+            this.processKey = processKey;
+            this.segmentId = segmentId;
+        }
+
+        @Override
+        public void onData(int start, byte[] data) throws IOException {
+            int end = start + data.length;
+            write("id: " + end + "\nevent: data\ndata: " + Base64.getEncoder().encodeToString(data) + "\n\n");
+        }
+
+        @Override
+        public void onHeartbeat() throws IOException {
+            synchronized (this) {
+                if (stalledSince > 0 && System.currentTimeMillis() - stalledSince >= MAX_STALL_TIME) {
+                    throw new IOException("The client is not reading the stream");
+                }
+            }
+
+            write(": ping\n\n");
+        }
+
+        @Override
+        public synchronized boolean isReady() {
+            if (pendingBytes < MAX_PENDING_BYTES) {
+                return true;
+            }
+
+            paused = true;
+            return false;
+        }
+
+        @Override
+        public void onWritePossible() throws IOException {
+            boolean resume;
+            boolean finished;
+            synchronized (this) {
+                if (done.get()) {
+                    return;
+                }
+
+                boolean drained = drain();
+                resume = paused && pendingBytes < MAX_PENDING_BYTES;
+                if (resume) {
+                    paused = false;
+                }
+                finished = drained && ending;
+            }
+
+            if (finished) {
+                complete();
+            } else if (resume && subscription != null) {
+                subscription.resume();
+            }
+        }
+
+        @Override
+        public void onError(Throwable t) {
+            log.warn("onError ['{}', {}] -> error while sending the response: {}", processKey, segmentId, t.getMessage());
+            complete();
+        }
+
+        @Override
+        public void onError(Exception e) {
+            log.warn("onError ['{}', {}] -> {}", processKey, segmentId, e.getMessage());
+            complete();
+        }
+
+        @Override
+        public void onTimeout(AsyncEvent event) {
+            complete();
+        }
+
+        @Override
+        public void onError(AsyncEvent event) {
+            unsubscribe();
+        }
+
+        @Override
+        public void onComplete(AsyncEvent event) {
+            unsubscribe();
+        }
+
+        @Override
+        public void onStartAsync(AsyncEvent event) {
+            // do nothing
+        }
+
+        private void onCompletion() {
+            // deliver the remaining data, then close the stream
+            subscription.finish(() -> {
+                if (done.get()) {
+                    return;
+                }
+
+                boolean drained;
+                try {
+                    synchronized (this) {
+                        ending = true;
+                        drained = enqueue("event: end\ndata: \n\n");
+                    }
+                } catch (IOException e) {
+                    log.warn("onCompletion ['{}', {}] -> error while sending the response: {}", processKey, segmentId, e.getMessage());
+                    drained = true;
+                }
+
+                // otherwise the stream is completed by onWritePossible
+                if (drained) {
+                    complete();
+                }
+            });
+        }
+
+        private void write(String s) throws IOException {
+            synchronized (this) {
+                enqueue(s);
+            }
+        }
+
+        /**
+         * Adds the data to the buffer and writes as much as possible without blocking.
+         * Must be called while holding the stream's lock.
+         *
+         * @return {@code true} if all data is written
+         */
+        private boolean enqueue(String s) throws IOException {
+            if (done.get()) {
+                throw new IOException("The stream is closed");
+            }
+
+            byte[] ab = s.getBytes(StandardCharsets.UTF_8);
+            pending.add(ab);
+            pendingBytes += ab.length;
+            return drain();
+        }
+
+        /**
+         * Writes the buffered data while the output is ready.
+         * Must be called while holding the stream's lock.
+         *
+         * @return {@code true} if all data is written
+         */
+        private boolean drain() throws IOException {
+            while (out.isReady()) {
+                byte[] ab = pending.poll();
+                if (ab != null) {
+                    pendingBytes -= ab.length;
+                    out.write(ab);
+                    needsFlush = true;
+                    stalledSince = 0;
+                    continue;
+                }
+
+                if (needsFlush) {
+                    needsFlush = false;
+                    out.flush();
+                    continue;
+                }
+
+                stalledSince = 0;
+                return true;
+            }
+
+            // onWritePossible will be called once the output is ready again
+            if (stalledSince == 0) {
+                stalledSince = System.currentTimeMillis();
+            }
+            return false;
+        }
+
+        private void complete() {
+            if (done.compareAndSet(false, true)) {
+                unsubscribe();
+                ctx.complete();
+            }
+        }
+
+        private void unsubscribe() {
+            notifier.unregister(processKey.getInstanceId(), completionCallback);
+            if (subscription != null) {
+                subscription.close();
+            }
+        }
+    }
+}
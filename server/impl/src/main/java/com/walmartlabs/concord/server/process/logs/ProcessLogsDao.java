@@ -29,16 +29,18 @@ import com.walmartlabs.concord.server.jooq.tables.records.ProcessLogsRecord;
 import com.walmartlabs.concord.server.process.LogSegment;
 import com.walmartlabs.concord.server.process.ProcessKey;
 import org.jooq.*;
+import org.jooq.exception.DataAccessException;
 import org.jooq.impl.DSL;
 
 import javax.inject.Inject;
 import javax.inject.Named;
+import java.io.IOException;
+import java.io.OutputStream;
 import java.io.Serializable;
 import java.sql.Timestamp;
-import java.util.Date;
-import java.util.List;
-import java.util.UUID;
+import java.util.*;
 
+import static com.walmartlabs.concord.db.PgUtils.lowerRange;
 import static com.walmartlabs.concord.db.PgUtils.upperRange;
 import static com.walmartlabs.concord.server.jooq.Routines.*;
 import static com.walmartlabs.concord.server.jooq.Tables.*;
@@ -47,6 +49,8 @@ import static org.jooq.impl.DSL.*;
 @Named
 public class ProcessLogsDao extends AbstractDao {
 
+    private static final int STREAM_FETCH_SIZE = 16;
+
     @Inject
     public ProcessLogsDao(@MainDB Configuration cfg) {
         super(cfg);
@@ -78,6 +82,14 @@ public class ProcessLogsDao extends AbstractDao {
     }
 
     public PgIntRange append(ProcessKey processKey, long segmentId, byte[] data) {
+        return append(processKey, segmentId, data, null);
+    }
+
+    /**
+     * Appends a chunk to the specified segment. The listener is called after
+     * the data is committed.
+     */
+    public PgIntRange append(ProcessKey processKey, long segmentId, byte[] data, AppendListener listener) {
         UUID instanceId = processKey.getInstanceId();
         Timestamp createdAt = processKey.getCreatedAt();
 
@@ -94,12 +106,94 @@ public class ProcessLogsDao extends AbstractDao {
                         processLogDataSegmentNextRange(instanceId, createdAt, segmentId, data.length),
                         processLogDataNextRange(instanceId, createdAt, data.length),
                         value(data))
-                .returning(PROCESS_LOG_DATA.LOG_RANGE)
+                .returning(PROCESS_LOG_DATA.LOG_RANGE, PROCESS_LOG_DATA.SEGMENT_RANGE)
                 .fetchOne());
 
+        if (listener != null) {
+            PgIntRange segmentRange = PgIntRange.parse(r.getSegmentRange().toString());
+            listener.onAppend(segmentId, segmentRange.getLower(), data);
+        }
+
         return PgIntRange.parse(r.getLogRange().toString());
     }
 
+    /**
+     * Appends multiple chunks using a single insert. The chunks are appended
+     * in the specified order. The next ranges are calculated once for the whole
+     * batch and once per segment.
+     * @return the range of the appended data in the process log.
+     */
+    public PgIntRange append(ProcessKey processKey, List<SegmentChunk> chunks) {
+        return append(processKey, chunks, null);
+    }
+
+    /**
+     * Same as {@link #append(ProcessKey, List)}. The listener is called for each
+     * chunk after the data is committed.
+     */
+    public PgIntRange append(ProcessKey processKey, List<SegmentChunk> chunks, AppendListener listener) {
+        UUID instanceId = processKey.getInstanceId();
+        Timestamp createdAt = processKey.getCreatedAt();
+
+        int totalLen = 0;
+        Map<Long, Integer> segmentLens = new LinkedHashMap<>();
+        for (SegmentChunk c : chunks) {
+            totalLen += c.getData().length;
+            segmentLens.merge(c.getSegmentId(), c.getData().length, Integer::sum);
+        }
+
+        int dataLen = totalLen;
+        int[] chunkPositions = new int[chunks.size()];
+        PgIntRange result = txResult(tx -> {
+            PgIntRange logRange = nextRange(tx, processLogDataNextRange(instanceId, createdAt, dataLen));
+
+            Map<Long, Integer> segmentPositions = new HashMap<>();
+            for (Map.Entry<Long, Integer> e : segmentLens.entrySet()) {
+                PgIntRange r = nextRange(tx, processLogDataSegmentNextRange(instanceId, createdAt, e.getKey(), e.getValue()));
+                segmentPositions.put(e.getKey(), r.getLower());
+            }
+
+            InsertValuesStep6<ProcessLogDataRecord, UUID, Timestamp, Long, Object, Object, byte[]> q = tx.insertInto(PROCESS_LOG_DATA)
+                    .columns(PROCESS_LOG_DATA.INSTANCE_ID,
+                            PROCESS_LOG_DATA.INSTANCE_CREATED_AT,
+                            PROCESS_LOG_DATA.SEGMENT_ID,
+                            PROCESS_LOG_DATA.SEGMENT_RANGE,
+                            PROCESS_LOG_DATA.LOG_RANGE,
+                            PROCESS_LOG_DATA.CHUNK_DATA);
+
+            int logPos = logRange.getLower();
+            for (int i = 0; i < chunks.size(); i++) {
+                SegmentChunk c = chunks.get(i);
+                int len = c.getData().length;
+                int segmentPos = segmentPositions.get(c.getSegmentId());
+                chunkPositions[i] = segmentPos;
+
+                q.values(value(instanceId),
+                        value(createdAt),
+                        value(c.getSegmentId()),
+                        int4range(segmentPos, segmentPos + len),
+                        int4range(logPos, logPos + len),
+                        value(c.getData()));
+
+                segmentPositions.put(c.getSegmentId(), segmentPos + len);
+                logPos += len;
+            }
+
+            q.execute();
+
+            return logRange;
+        });
+
+        if (listener != null) {
+            for (int i = 0; i < chunks.size(); i++) {
+                SegmentChunk c = chunks.get(i);
+                listener.onAppend(c.getSegmentId(), chunkPositions[i], c.getData());
+            }
+        }
+
+        return result;
+    }
+
     /**
      * @deprecated remove after process_logs is no longer in use
      */
@@ -224,6 +318,95 @@ public class ProcessLogsDao extends AbstractDao {
         }
     }
 
+    /**
+     * Same as {@link #segmentData(ProcessKey, long, Integer, Integer)}, but the data
+     * is not loaded into memory. The chunks are read using a DB cursor when
+     * the returned stream is written.
+     */
+    public ProcessLogStream segmentDataStream(ProcessKey processKey, long segmentId, Integer start, Integer end) {
+        Condition c = PROCESS_LOG_DATA.INSTANCE_ID.eq(processKey.getInstanceId())
+                .and(PROCESS_LOG_DATA.INSTANCE_CREATED_AT.eq(processKey.getCreatedAt()))
+                .and(PROCESS_LOG_DATA.SEGMENT_ID.eq(segmentId));
+
+        return stream(PROCESS_LOG_DATA.SEGMENT_RANGE, c, start, end);
+    }
+
+    /**
+     * Same as {@link #data(ProcessKey, Integer, Integer)}, but the data
+     * is not loaded into memory. The chunks are read using a DB cursor when
+     * the returned stream is written.
+     */
+    public ProcessLogStream dataStream(ProcessKey processKey, Integer start, Integer end) {
+        Condition c = PROCESS_LOG_DATA.INSTANCE_ID.eq(processKey.getInstanceId())
+                .and(PROCESS_LOG_DATA.INSTANCE_CREATED_AT.eq(processKey.getCreatedAt()));
+
+        return stream(PROCESS_LOG_DATA.LOG_RANGE, c, start, end);
+    }
+
+    private ProcessLogStream stream(Field<Object> rangeField, Condition c, Integer start, Integer end) {
+        int size;
+        try (DSLContext tx = DSL.using(cfg)) {
+            Field<Integer> upperRange = max(upperRange(rangeField));
+            size = tx.select(upperRange)
+                    .from(PROCESS_LOG_DATA)
+                    .where(c)
+                    .fetchOptional(upperRange)
+                    .orElse(0);
+        }
+
+        int from;
+        int to;
+        if (start != null) {
+            from = start;
+            to = end != null ? Math.min(end, size) : size;
+        } else if (end != null) {
+            // the last N bytes
+            from = Math.max(size - end, 0);
+            to = size;
+        } else {
+            from = 0;
+            to = size;
+        }
+
+        if (from >= to) {
+            return ProcessLogStream.empty(size);
+        }
+
+        return new ProcessLogStream(size, from, to, out -> writeChunks(rangeField, c, from, to, out));
+    }
+
+    private void writeChunks(Field<Object> rangeField, Condition c, int from, int to, OutputStream out) throws IOException {
+        try {
+            // cursors require a transaction
+            tx(tx -> {
+                try (Cursor<Record3<Integer, byte[], String>> cursor = tx.select(lowerRange(rangeField), PROCESS_LOG_DATA.CHUNK_DATA, PROCESS_LOG_DATA.CHUNK_ENCODING)
+                        .from(PROCESS_LOG_DATA)
+                        .where(c.and(rangeField.getName() + " && int4range(?, ?)", from, to))
+                        .orderBy(rangeField)
+                        .fetchSize(STREAM_FETCH_SIZE)
+                        .fetchLazy()) {
+
+                    for (Record3<Integer, byte[], String> r : cursor) {
+                        int chunkStart = r.value1();
+                        byte[] data = ProcessLogEncoding.decode(r.value3(), r.value2());
+
+                        int s = Math.max(chunkStart, from);
+                        int e = Math.min(chunkStart + data.length, to);
+                        if (s < e) {
+                            out.write(data, s - chunkStart, e - s);
+                        }
+                    }
+                }
+            });
+        } catch (DataAccessException e) {
+            if (e.getCause() instanceof IOException) {
+                // most likely the client went away
+                throw (IOException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
     private List<ProcessLogChunk> getChunks(DSLContext tx, ProcessKey processKey, Integer start, Integer end) {
         UUID instanceId = processKey.getInstanceId();
         Timestamp createdAt = processKey.getCreatedAt();
@@ -270,41 +453,44 @@ public class ProcessLogsDao extends AbstractDao {
 
         String lowerBoundExpr = "lower(" + PROCESS_LOG_DATA.SEGMENT_RANGE + ")";
 
+        List<EncodedChunk> rows;
         if (start == null && end == null) {
             // entire file
-            return tx.select(field(lowerBoundExpr), PROCESS_LOG_DATA.CHUNK_DATA)
+            rows = tx.select(field(lowerBoundExpr), PROCESS_LOG_DATA.CHUNK_DATA, PROCESS_LOG_DATA.CHUNK_ENCODING)
                     .from(PROCESS_LOG_DATA)
                     .where(PROCESS_LOG_DATA.INSTANCE_ID.eq(instanceId)
                             .and(PROCESS_LOG_DATA.INSTANCE_CREATED_AT.eq(createdAt))
                             .and(PROCESS_LOG_DATA.SEGMENT_ID.eq(segmentId)))
                     .orderBy(PROCESS_LOG_DATA.SEGMENT_RANGE)
-                    .fetch(ProcessLogsDao::toChunk);
+                    .fetch(ProcessLogsDao::toEncodedChunk);
 
         } else if (start != null) {
             // ranges && [start, end)
             String rangeExpr = PROCESS_LOG_DATA.SEGMENT_RANGE.getName() + " && int4range(?, ?)";
-            return tx.select(field(lowerBoundExpr), PROCESS_LOG_DATA.CHUNK_DATA)
+            rows = tx.select(field(lowerBoundExpr), PROCESS_LOG_DATA.CHUNK_DATA, PROCESS_LOG_DATA.CHUNK_ENCODING)
                     .from(PROCESS_LOG_DATA)
                     .where(PROCESS_LOG_DATA.INSTANCE_ID.eq(instanceId)
                             .and(PROCESS_LOG_DATA.INSTANCE_CREATED_AT.eq(createdAt))
                             .and(PROCESS_LOG_DATA.SEGMENT_ID.eq(segmentId))
                             .and(rangeExpr, start, end))
                     .orderBy(PROCESS_LOG_DATA.SEGMENT_RANGE)
-                    .fetch(ProcessLogsDao::toChunk);
+                    .fetch(ProcessLogsDao::toEncodedChunk);
 
         } else {
             // ranges && [upper_bound - end, upper_bound)
             String rangeExpr = PROCESS_LOG_DATA.SEGMENT_RANGE.getName() + " && (select range from x)";
-            return tx.with("x").as(select(processLogDataSegmentLastNBytes(instanceId, createdAt, segmentId, end).as("range")))
-                    .select(field(lowerBoundExpr), PROCESS_LOG_DATA.CHUNK_DATA)
+            rows = tx.with("x").as(select(processLogDataSegmentLastNBytes(instanceId, createdAt, segmentId, end).as("range")))
+                    .select(field(lowerBoundExpr), PROCESS_LOG_DATA.CHUNK_DATA, PROCESS_LOG_DATA.CHUNK_ENCODING)
                     .from(PROCESS_LOG_DATA)
                     .where(PROCESS_LOG_DATA.INSTANCE_ID.eq(instanceId)
                             .and(PROCESS_LOG_DATA.INSTANCE_CREATED_AT.eq(createdAt))
                             .and(PROCESS_LOG_DATA.SEGMENT_ID.eq(segmentId))
                             .and(rangeExpr, instanceId, end))
                     .orderBy(PROCESS_LOG_DATA.SEGMENT_RANGE)
-                    .fetch(ProcessLogsDao::toChunk);
+                    .fetch(ProcessLogsDao::toEncodedChunk);
         }
+
+        return decode(rows, start, end);
     }
 
     private List<ProcessLogChunk> getDataChunks(DSLContext tx, ProcessKey processKey, Integer start, Integer end) {
@@ -313,44 +499,91 @@ public class ProcessLogsDao extends AbstractDao {
 
         String lowerBoundExpr = "lower(" + PROCESS_LOG_DATA.LOG_RANGE + ")";
 
+        List<EncodedChunk> rows;
         if (start == null && end == null) {
             // entire file
-            return tx.select(field(lowerBoundExpr), PROCESS_LOG_DATA.CHUNK_DATA)
+            rows = tx.select(field(lowerBoundExpr), PROCESS_LOG_DATA.CHUNK_DATA, PROCESS_LOG_DATA.CHUNK_ENCODING)
                     .from(PROCESS_LOG_DATA)
                     .where(PROCESS_LOG_DATA.INSTANCE_ID.eq(instanceId)
                             .and(PROCESS_LOG_DATA.INSTANCE_CREATED_AT.eq(createdAt)))
                     .orderBy(PROCESS_LOG_DATA.LOG_RANGE)
-                    .fetch(ProcessLogsDao::toChunk);
+                    .fetch(ProcessLogsDao::toEncodedChunk);
 
         } else if (start != null) {
             // ranges && [start, end)
             String rangeExpr = PROCESS_LOG_DATA.LOG_RANGE.getName() + " && int4range(?, ?)";
-            return tx.select(field(lowerBoundExpr), PROCESS_LOG_DATA.CHUNK_DATA)
+            rows = tx.select(field(lowerBoundExpr), PROCESS_LOG_DATA.CHUNK_DATA, PROCESS_LOG_DATA.CHUNK_ENCODING)
                     .from(PROCESS_LOG_DATA)
                     .where(PROCESS_LOG_DATA.INSTANCE_ID.eq(instanceId)
                             .and(PROCESS_LOG_DATA.INSTANCE_CREATED_AT.eq(createdAt))
                             .and(rangeExpr, start, end))
                     .orderBy(PROCESS_LOG_DATA.LOG_RANGE)
-                    .fetch(ProcessLogsDao::toChunk);
+                    .fetch(ProcessLogsDao::toEncodedChunk);
 
         } else {
             // ranges && [upper_bound - end, upper_bound)
             String rangeExpr = PROCESS_LOG_DATA.LOG_RANGE.getName() + " && (select range from x)";
-            return tx.with("x").as(select(processLogDataLastNBytes(instanceId, createdAt, end).as("range")))
-                    .select(field(lowerBoundExpr), PROCESS_LOG_DATA.CHUNK_DATA)
+            rows = tx.with("x").as(select(processLogDataLastNBytes(instanceId, createdAt, end).as("range")))
+                    .select(field(lowerBoundExpr), PROCESS_LOG_DATA.CHUNK_DATA, PROCESS_LOG_DATA.CHUNK_ENCODING)
                     .from(PROCESS_LOG_DATA)
                     .where(PROCESS_LOG_DATA.INSTANCE_ID.eq(instanceId)
                             .and(PROCESS_LOG_DATA.INSTANCE_CREATED_AT.eq(createdAt))
                             .and(rangeExpr, instanceId, end))
                     .orderBy(PROCESS_LOG_DATA.LOG_RANGE)
-                    .fetch(ProcessLogsDao::toChunk);
+                    .fetch(ProcessLogsDao::toEncodedChunk);
         }
+
+        return decode(rows, start, end);
     }
 
     private static ProcessLogChunk toChunk(Record2<Object, byte[]> r) {
         return new ProcessLogChunk((Integer) r.value1(), r.value2());
     }
 
+    private static EncodedChunk toEncodedChunk(Record3<Object, byte[], String> r) {
+        return new EncodedChunk((Integer) r.value1(), r.value2(), r.value3());
+    }
+
+    /**
+     * Decompresses the chunks if necessary. Compacted chunks can be much larger
+     * than the requested range, so the data is trimmed to the range.
+     */
+    private static List<ProcessLogChunk> decode(List<EncodedChunk> rows, Integer start, Integer end) {
+        List<ProcessLogChunk> chunks = new ArrayList<>(rows.size());
+        for (EncodedChunk r : rows) {
+            chunks.add(new ProcessLogChunk(r.start, ProcessLogEncoding.decode(r.encoding, r.data)));
+        }
+
+        if (chunks.isEmpty() || (start == null && end == null)) {
+            return chunks;
+        }
+
+        int from;
+        int to;
+        if (start != null) {
+            from = start;
+            to = end != null ? end : Integer.MAX_VALUE;
+        } else {
+            // the last N bytes
+            ProcessLogChunk last = chunks.get(chunks.size() - 1);
+            to = last.getStart() + last.getData().length;
+            from = to - end;
+        }
+
+        List<ProcessLogChunk> result = new ArrayList<>(chunks.size());
+        for (ProcessLogChunk c : chunks) {
+            int chunkEnd = c.getStart() + c.getData().length;
+            int s = Math.max(c.getStart(), from);
+            int e = Math.min(chunkEnd, to);
+            if (s == c.getStart() && e == chunkEnd) {
+                result.add(c);
+            } else if (s < e) {
+                result.add(new ProcessLogChunk(s, Arrays.copyOfRange(c.getData(), s - c.getStart(), e - c.getStart())));
+            }
+        }
+        return result;
+    }
+
     private static LogSegment toSegment(Record7<Long, UUID, String, Timestamp, String, Integer, Integer> r) {
         String status = r.get(PROCESS_LOG_SEGMENTS.SEGMENT_STATUS);
         return LogSegment.builder()
@@ -364,6 +597,119 @@ public class ProcessLogsDao extends AbstractDao {
                 .build();
     }
 
+    private static PgIntRange nextRange(DSLContext tx, Field<Object> f) {
+        return PgIntRange.parse(tx.select(f).fetchOne(f).toString());
+    }
+
+    private static Field<Object> int4range(int lower, int upper) {
+        return field("int4range({0}, {1})", Object.class, value(lower), value(upper));
+    }
+
+    private static final class EncodedChunk {
+
+        private final int start;
+        private final byte[] data;
+        private final String encoding;
+
+        private EncodedChunk(int start, byte[] data, String encoding) { // NOSONAR
+            this.start = start;
+            this.data = data;
+            this.encoding = encoding;
+        }
+    }
+
+    /**
+     * Log data that is written directly into the specified output.
+     */
+    public static final class ProcessLogStream {
+
+        private static final ChunkWriter NOOP = out -> {
+        };
+
+        private final int size;
+        private final int start;
+        private final int end;
+        private final ChunkWriter writer;
+
+        public static ProcessLogStream empty(int size) {
+            return new ProcessLogStream(size, 0, 0, NOOP);
+        }
+
+        /**
+         * Wraps already loaded data.
+         */
+        public static ProcessLogStream of(ProcessLog l) {
+            List<ProcessLogChunk> chunks = l.getChunks();
+            if (chunks.isEmpty()) {
+                return empty(l.getSize());
+            }
+
+            ProcessLogChunk first = chunks.get(0);
+            ProcessLogChunk last = chunks.get(chunks.size() - 1);
+            return new ProcessLogStream(l.getSize(), first.getStart(), last.getStart() + last.getData().length, out -> {
+                for (ProcessLogChunk c : chunks) {
+                    out.write(c.getData());
+                }
+            });
+        }
+
+        private ProcessLogStream(int size, int start, int end, ChunkWriter writer) {
+            this.size = size;
+            this.start = start;
+            this.end = end;
+            this.writer = writer;
+        }
+
+        public int getSize() {
+            return size;
+        }
+
+        public int getStart() {
+            return start;
+        }
+
+        public int getEnd() {
+            return end;
+        }
+
+        public boolean isEmpty() {
+            return start >= end;
+        }
+
+        public void writeTo(OutputStream out) throws IOException {
+            writer.write(out);
+        }
+
+        private interface ChunkWriter {
+
+            void write(OutputStream out) throws IOException;
+        }
+    }
+
+    public interface AppendListener {
+
+        void onAppend(long segmentId, int segmentStart, byte[] data);
+    }
+
+    public static final class SegmentChunk implements Serializable {
+
+        private final long segmentId;
+        private final byte[] data;
+
+        public SegmentChunk(long segmentId, byte[] data) { // NOSONAR
+            this.segmentId = segmentId;
+            this.data = data;
+        }
+
+        public long getSegmentId() {
+            return segmentId;
+        }
+
+        public byte[] getData() {
+            return data;
+        }
+    }
+
     public static final class ProcessLogChunk implements Serializable {
 
         private final int start;
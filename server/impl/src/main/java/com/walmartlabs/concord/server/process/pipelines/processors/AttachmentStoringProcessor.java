@@ -81,7 +81,8 @@ public class AttachmentStoringProcessor implements PayloadProcessor {
             try {
                 Files.createDirectories(dst.getParent());
                 Files.move(src, dst, StandardCopyOption.REPLACE_EXISTING);
-                payload = payload.removeAttachment(name);
+                payload = payload.removeAttachment(name)
+                        .putHeader(Payload.WORKSPACE_MODIFIED, true);
             } catch (IOException e) {
                 throw new ProcessException(payload.getProcessKey(), "Error while copying an attachment: " + src, e);
             }
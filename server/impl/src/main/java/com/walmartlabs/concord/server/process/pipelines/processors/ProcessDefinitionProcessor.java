@@ -25,8 +25,8 @@ import com.walmartlabs.concord.process.loader.model.ProcessDefinition;
 import com.walmartlabs.concord.repository.Snapshot;
 import com.walmartlabs.concord.sdk.Constants;
 import com.walmartlabs.concord.sdk.MapUtils;
-import com.walmartlabs.concord.server.process.ImportsNormalizerFactory;
 import com.walmartlabs.concord.server.process.Payload;
+import com.walmartlabs.concord.server.process.ProcessDefinitionCache;
 import com.walmartlabs.concord.server.process.ProcessException;
 import com.walmartlabs.concord.server.process.ProcessKey;
 import org.slf4j.Logger;
@@ -48,15 +48,11 @@ public class ProcessDefinitionProcessor implements PayloadProcessor {
 
     private static final Logger log = LoggerFactory.getLogger(ProcessDefinitionProcessor.class);
 
-    private final ProjectLoader projectLoader;
-    private final ImportsNormalizerFactory importsNormalizer;
+    private final ProcessDefinitionCache processDefinitionCache;
 
     @Inject
-    public ProcessDefinitionProcessor(ProjectLoader projectLoader,
-                                      ImportsNormalizerFactory importsNormalizer) {
-
-        this.projectLoader = projectLoader;
-        this.importsNormalizer = importsNormalizer;
+    public ProcessDefinitionProcessor(ProcessDefinitionCache processDefinitionCache) {
+        this.processDefinitionCache = processDefinitionCache;
     }
 
     @Override
@@ -72,7 +68,7 @@ public class ProcessDefinitionProcessor implements PayloadProcessor {
 
         try {
             String runtime = getRuntimeType(payload);
-            ProjectLoader.Result result = projectLoader.loadProject(workDir, runtime, importsNormalizer.forProject(projectId));
+            ProjectLoader.Result result = load(payload, projectId, workDir, runtime);
 
             List<Snapshot> snapshots = result.snapshots();
             for (Snapshot s : snapshots) {
@@ -96,6 +92,19 @@ public class ProcessDefinitionProcessor implements PayloadProcessor {
         }
     }
 
+    private ProjectLoader.Result load(Payload payload, UUID projectId, Path workDir, String runtime) throws Exception {
+        RepositoryProcessor.RepositoryInfo repo = payload.getHeader(RepositoryProcessor.REPOSITORY_INFO_KEY);
+
+        // the cached definitions can be used only if the working directory
+        // contains nothing but the repository's files
+        boolean modified = payload.getHeader(Payload.WORKSPACE_MODIFIED, false);
+        if (repo == null || repo.getCommitInfo() == null || modified) {
+            return processDefinitionCache.load(projectId, workDir, runtime, null, null, null);
+        }
+
+        return processDefinitionCache.load(projectId, workDir, runtime, repo.getId(), repo.getCommitInfo().getId(), repo.getPath());
+    }
+
     private static Payload addSnapshot(Payload payload, Snapshot s) {
         List<Snapshot> result = new ArrayList<>();
 
@@ -124,6 +133,6 @@ public class ProcessDefinitionProcessor implements PayloadProcessor {
         }
 
         Path workDir = payload.getHeader(Payload.WORKSPACE_DIR);
-        return ProjectLoader.getRuntimeType(workDir, "concord-v1"); // TODO constants or configuration
+        return ProjectLoader.getRuntimeType(workDir, ProjectLoader.CONCORD_V1_RUNTIME_TYPE);
     }
 }
@@ -31,6 +31,7 @@ import com.walmartlabs.concord.server.process.ProcessException;
 import com.walmartlabs.concord.server.process.ProcessKey;
 import com.walmartlabs.concord.server.process.keys.HeaderKey;
 import com.walmartlabs.concord.server.process.logs.ProcessLogManager;
+import com.walmartlabs.concord.server.repository.ReadOnlyRepository;
 import com.walmartlabs.concord.server.repository.RepositoryManager;
 import com.walmartlabs.concord.server.sdk.metrics.WithTimer;
 import org.slf4j.Logger;
@@ -89,37 +90,47 @@ public class RepositoryProcessor implements PayloadProcessor {
                 repo.getCommitId() != null ? repo.getCommitId() : repo.getBranch(),
                 repo.getPath());
 
+        Repository repository = payload.getHeader(Payload.REPOSITORY);
+
+        Payload newPayload;
+        if (repository instanceof ReadOnlyRepository) {
+            // read-only copies are never updated, no need to lock
+            newPayload = export(payload, projectId, repo, repository);
+        } else {
+            newPayload = repositoryManager.withLock(repo.getUrl(), () -> export(payload, projectId, repo, repository));
+        }
+
+        return chain.process(newPayload);
+    }
+
+    private Payload export(Payload payload, UUID projectId, RepositoryEntry repo, Repository repository) {
+        ProcessKey processKey = payload.getProcessKey();
         Path dst = payload.getHeader(Payload.WORKSPACE_DIR);
 
-        Payload newPayload = repositoryManager.withLock(repo.getUrl(), () -> {
-            try {
-                Repository repository = payload.getHeader(Payload.REPOSITORY);
-                if (repository == null) {
-                    repository = repositoryManager.fetch(projectId, repo);
-                }
-
-                Snapshot snapshot = repository.export(dst);
-                com.walmartlabs.concord.repository.RepositoryInfo info = repository.info();
-                String branch = repository.branch();
-
-                CommitInfo ci = null;
-                if (info != null) {
-                    ci = new CommitInfo(info.getCommitId(), info.getAuthor(), info.getMessage());
-                }
-
-                RepositoryInfo i = new RepositoryInfo(repo.getId(), repo.getName(), repo.getUrl(), repo.getPath(), branch, repo.getCommitId(), ci);
-                return payload
-                        .putHeader(REPOSITORY_INFO_KEY, i)
-                        .putHeader(Payload.REPOSITORY, repository)
-                        .putHeader(REPOSITORY_SNAPSHOT, Collections.singletonList(snapshot));
-            } catch (Exception e) {
-                log.error("process -> repository error", e);
-                logManager.error(processKey, "Error while processing a repository: " + repo.getUrl(), e);
-                throw new ProcessException(processKey, "Error while processing a repository: " + repo.getUrl(), e);
+        try {
+            if (repository == null) {
+                repository = repositoryManager.fetch(projectId, repo);
             }
-        });
 
-        return chain.process(newPayload);
+            Snapshot snapshot = repository.export(dst);
+            com.walmartlabs.concord.repository.RepositoryInfo info = repository.info();
+            String branch = repository.branch();
+
+            CommitInfo ci = null;
+            if (info != null) {
+                ci = new CommitInfo(info.getCommitId(), info.getAuthor(), info.getMessage());
+            }
+
+            RepositoryInfo i = new RepositoryInfo(repo.getId(), repo.getName(), repo.getUrl(), repo.getPath(), branch, repo.getCommitId(), ci);
+            return payload
+                    .putHeader(REPOSITORY_INFO_KEY, i)
+                    .putHeader(Payload.REPOSITORY, repository)
+                    .putHeader(REPOSITORY_SNAPSHOT, Collections.singletonList(snapshot));
+        } catch (Exception e) {
+            log.error("process -> repository error", e);
+            logManager.error(processKey, "Error while processing a repository: " + repo.getUrl(), e);
+            throw new ProcessException(processKey, "Error while processing a repository: " + repo.getUrl(), e);
+        }
     }
 
     private RepositoryEntry getRepositoryEntry(Payload payload) {
@@ -69,7 +69,9 @@ public class WorkspaceArchiveProcessor implements PayloadProcessor {
             throw new ProcessException(processKey, "Error while unpacking an archive: " + archive, e);
         }
 
-        payload = payload.removeAttachment(Payload.WORKSPACE_ARCHIVE);
+        payload = payload.removeAttachment(Payload.WORKSPACE_ARCHIVE)
+                .putHeader(Payload.WORKSPACE_MODIFIED, true);
+
         return chain.process(payload);
     }
 }
@@ -22,6 +22,7 @@ package com.walmartlabs.concord.server.process.queue;
 
 import com.codahale.metrics.Histogram;
 import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
 import com.walmartlabs.concord.db.AbstractDao;
 import com.walmartlabs.concord.db.MainDB;
 import com.walmartlabs.concord.repository.Repository;
@@ -33,6 +34,7 @@ import com.walmartlabs.concord.server.process.PayloadBuilder;
 import com.walmartlabs.concord.server.process.ProcessKey;
 import com.walmartlabs.concord.server.process.pipelines.EnqueueProcessPipeline;
 import com.walmartlabs.concord.server.process.pipelines.processors.Pipeline;
+import com.walmartlabs.concord.server.repository.ReadOnlyRepository;
 import com.walmartlabs.concord.server.repository.RepositoryManager;
 import com.walmartlabs.concord.server.sdk.ProcessStatus;
 import com.walmartlabs.concord.server.sdk.metrics.WithTimer;
@@ -46,6 +48,7 @@ import org.slf4j.LoggerFactory;
 import javax.annotation.Nullable;
 import javax.inject.Inject;
 import javax.inject.Named;
+import java.io.IOException;
 import java.util.*;
 import java.util.concurrent.*;
 import java.util.concurrent.atomic.AtomicInteger;
@@ -56,6 +59,16 @@ import static com.walmartlabs.concord.server.jooq.tables.ProcessQueue.PROCESS_QU
 import static org.jooq.impl.DSL.select;
 import static org.jooq.impl.DSL.value;
 
+/**
+ * Handles NEW processes in batches. Processes that use the same repository
+ * are grouped together. The processing is done in two stages:
+ * <ul>
+ *     <li>the repository is fetched (under the repository lock) by one of
+ *     the batch's processes and then copied into a {@link ReadOnlyRepository};</li>
+ *     <li>the rest of the batch's processes are processed concurrently
+ *     using the read-only copy.</li>
+ * </ul>
+ */
 public class EnqueuedBatchTask extends PeriodicTask {
 
     private static final Logger log = LoggerFactory.getLogger(EnqueuedBatchTask.class);
@@ -68,9 +81,14 @@ public class EnqueuedBatchTask extends PeriodicTask {
 
     private final ExecutorService executor;
     private final BlockingQueue<Batch> queue;
+    private final ThreadPoolExecutor processExecutor;
 
     private final AtomicInteger freeWorkersCount;
 
+    private final Timer fetchStageTimer;
+    private final Timer processStageTimer;
+    private final Timer processStageWaitTimer;
+
     @Inject
     public EnqueuedBatchTask(Dao dao,
                              EnqueueWorkersConfiguration cfg,
@@ -84,21 +102,35 @@ public class EnqueuedBatchTask extends PeriodicTask {
         this.dao = dao;
         this.batchHistogram = metricRegistry.histogram("enqueued-task-batches-histogram");
 
+        this.fetchStageTimer = metricRegistry.timer("enqueued-batch-fetch-stage");
+        this.processStageTimer = metricRegistry.timer("enqueued-batch-process-stage");
+        this.processStageWaitTimer = metricRegistry.timer("enqueued-batch-process-stage-wait");
+
         this.queue = new ArrayBlockingQueue<>(cfg.getWorkersCount());
         this.freeWorkersCount = new AtomicInteger(cfg.getWorkersCount());
 
+        // the process stage's queue is bounded
+        // the batch workers are blocked until there's some space in the queue
+        int parallelism = cfg.getBatchParallelism();
+        this.processExecutor = new ThreadPoolExecutor(parallelism, parallelism, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(cfg.getBatchSize()), EnqueuedBatchTask::enqueueBlocking);
+
         this.executor = Executors.newFixedThreadPool(cfg.getWorkersCount());
         for (int i = 0; i < cfg.getWorkersCount(); i++) {
             this.executor.submit(new Worker(pipeline, repositoryManager, queue));
         }
 
         metricRegistry.gauge("enqueued-workers-available", () -> freeWorkersCount::get);
+        metricRegistry.gauge("enqueued-batch-fetch-queue-size", () -> queue::size);
+        metricRegistry.gauge("enqueued-batch-process-queue-size", () -> () -> processExecutor.getQueue().size());
+        metricRegistry.gauge("enqueued-batch-process-active", () -> processExecutor::getActiveCount);
     }
 
     @Override
     public void stop() {
         super.stop();
         executor.shutdown();
+        processExecutor.shutdown();
     }
 
     @Override
@@ -156,6 +188,19 @@ public class EnqueuedBatchTask extends PeriodicTask {
         freeWorkersCount.incrementAndGet();
     }
 
+    private static void enqueueBlocking(Runnable r, ThreadPoolExecutor executor) {
+        if (executor.isShutdown()) {
+            throw new RejectedExecutionException("Executor is shut down");
+        }
+
+        try {
+            executor.getQueue().put(r);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RejectedExecutionException("Interrupted while waiting for the queue", e);
+        }
+    }
+
     private class Worker implements Runnable {
 
         private final Pipeline pipeline;
@@ -186,16 +231,52 @@ public class EnqueuedBatchTask extends PeriodicTask {
         private void startProcessBatch(Batch batch) {
             try {
                 if (batch.repoUrl() != null && batch.keys().size() > 1) {
-                    repositoryManager.withLock(batch.repoUrl(), () -> {
-                        Repository repository = null;
-                        for (ProcessKey key : batch.keys()) {
-                            Payload payload = startProcess(key, repository);
-                            if (payload != null && repository == null) {
-                                repository = payload.getHeader(Payload.REPOSITORY);
-                            }
+                    List<ProcessKey> remaining = new ArrayList<>(batch.keys());
+
+                    ReadOnlyRepository repository;
+                    try (Timer.Context ignored = fetchStageTimer.time()) {
+                        repository = repositoryManager.withLock(batch.repoUrl(), () -> fetch(remaining));
+                    }
+
+                    if (repository == null) {
+                        return;
+                    }
+
+                    if (remaining.isEmpty()) {
+                        repository.close();
+                        return;
+                    }
+
+                    // the lock is released, process the rest of the batch concurrently
+                    AtomicInteger pending = new AtomicInteger(remaining.size());
+                    int submitted = 0;
+                    try {
+                        for (ProcessKey key : remaining) {
+                            long submittedAt = System.currentTimeMillis();
+                            processExecutor.execute(() -> {
+                                processStageWaitTimer.update(System.currentTimeMillis() - submittedAt, TimeUnit.MILLISECONDS);
+                                try (Timer.Context ignored = processStageTimer.time()) {
+                                    startProcess(key, repository);
+                                } finally {
+                                    if (pending.decrementAndGet() == 0) {
+                                        repository.close();
+                                    }
+                                }
+                            });
+                            submitted++;
                         }
-                        return null;
-                    });
+                    } catch (Exception e) {
+                        // e.g. the executor is shut down or the worker is interrupted
+                        List<ProcessKey> skipped = remaining.subList(submitted, remaining.size());
+                        log.warn("startProcessBatch ['{}'] -> can't submit {} process(es), returning them to the queue: {}",
+                                batch.repoUrl(), skipped.size(), e.getMessage());
+
+                        requeue(skipped);
+
+                        if (pending.addAndGet(-skipped.size()) == 0) {
+                            repository.close();
+                        }
+                    }
                 } else {
                     for (ProcessKey key : batch.keys()) {
                         startProcess(key, null);
@@ -206,6 +287,52 @@ public class EnqueuedBatchTask extends PeriodicTask {
             }
         }
 
+        /**
+         * Returns the processes back to the NEW status, so they can be picked up again.
+         * If that fails, the processes are eventually marked as failed by {@link ProcessQueueWatchdog}.
+         */
+        private void requeue(List<ProcessKey> keys) {
+            try {
+                dao.toNew(keys.stream()
+                        .map(PartialProcessKey::getInstanceId)
+                        .collect(Collectors.toList()));
+            } catch (Exception e) {
+                log.error("requeue [{}] -> error", keys, e);
+            }
+        }
+
+        /**
+         * Processes the batch's entries one by one until the repository is fetched.
+         * Must be called while holding the repository lock.
+         *
+         * @return a read-only copy of the fetched repository or {@code null}
+         * if all entries were processed
+         */
+        private ReadOnlyRepository fetch(List<ProcessKey> keys) {
+            while (!keys.isEmpty()) {
+                Payload payload = startProcess(keys.remove(0), null);
+                Repository repository = payload != null ? payload.getHeader(Payload.REPOSITORY) : null;
+                if (repository == null) {
+                    continue;
+                }
+
+                try {
+                    return ReadOnlyRepository.copyOf(repository);
+                } catch (IOException e) {
+                    log.warn("fetch -> can't create a copy of the repository, processing the batch sequentially: {}", e.getMessage());
+
+                    for (ProcessKey k : keys) {
+                        startProcess(k, repository);
+                    }
+                    keys.clear();
+
+                    return null;
+                }
+            }
+
+            return null;
+        }
+
         private Payload startProcess(ProcessKey key, Repository repository) {
             try {
                 Payload payload = PayloadBuilder.start(key).build();
@@ -329,6 +456,14 @@ public class EnqueuedBatchTask extends PeriodicTask {
             });
         }
 
+        public void toNew(List<UUID> processes) {
+            tx(tx -> tx.update(PROCESS_QUEUE)
+                    .set(PROCESS_QUEUE.CURRENT_STATUS, value(ProcessStatus.NEW.name()))
+                    .where(PROCESS_QUEUE.INSTANCE_ID.in(processes)
+                            .and(PROCESS_QUEUE.CURRENT_STATUS.eq(ProcessStatus.PREPARING.name())))
+                    .execute());
+        }
+
         private void toPreparing(DSLContext tx, List<UUID> processes) {
             tx.update(PROCESS_QUEUE)
                     .set(PROCESS_QUEUE.CURRENT_STATUS, value(ProcessStatus.PREPARING.name()))
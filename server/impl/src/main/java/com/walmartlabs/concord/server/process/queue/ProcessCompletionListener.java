@@ -0,0 +1,129 @@
+package com.walmartlabs.concord.server.process.queue;
+
+/*-
+ * *****
+ * Concord
+ * -----
+ * Copyright (C) 2017 - 2020 Walmart Inc.
+ * -----
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =====
+ */
+
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.walmartlabs.concord.server.DbNotificationListener;
+import com.walmartlabs.concord.server.sdk.ProcessStatus;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Receives {@link ProcessCompletionNotifier} notifications and calls
+ * the registered callbacks once the process' status is confirmed.
+ * Periodically re-checks all waiting processes in case some of the
+ * notifications were missed (e.g. while reconnecting) or the status
+ * was updated without sending a notification.
+ */
+@Named
+@Singleton
+public class ProcessCompletionListener implements DbNotificationListener.Handler {
+
+    private static final Logger log = LoggerFactory.getLogger(ProcessCompletionListener.class);
+
+    private static final long RECHECK_INTERVAL = TimeUnit.SECONDS.toMillis(10);
+
+    private final ProcessQueueDao queueDao;
+    private final ProcessCompletionNotifier notifier;
+    private final Meter notificationsMeter;
+
+    private long lastCheckAt;
+
+    @Inject
+    public ProcessCompletionListener(ProcessQueueDao queueDao,
+                                     ProcessCompletionNotifier notifier,
+                                     MetricRegistry metricRegistry) {
+
+        this.queueDao = queueDao;
+        this.notifier = notifier;
+        this.notificationsMeter = metricRegistry.meter("process-completion-notifications");
+
+        metricRegistry.gauge("process-completion-waiting", () -> () -> notifier.getWaitingInstanceIds().size());
+    }
+
+    @Override
+    public String channel() {
+        return ProcessCompletionNotifier.CHANNEL;
+    }
+
+    @Override
+    public void onConnect() {
+        // anything could've happened while we weren't listening
+        checkAll();
+    }
+
+    @Override
+    public void onNotifications(List<String> payloads) {
+        notificationsMeter.mark(payloads.size());
+        check(parse(payloads));
+    }
+
+    @Override
+    public void onPoll() {
+        if (System.currentTimeMillis() - lastCheckAt >= RECHECK_INTERVAL) {
+            checkAll();
+        }
+    }
+
+    private void checkAll() {
+        check(notifier.getWaitingInstanceIds());
+        lastCheckAt = System.currentTimeMillis();
+    }
+
+    private Set<UUID> parse(List<String> payloads) {
+        Set<UUID> waiting = notifier.getWaitingInstanceIds();
+
+        Set<UUID> result = new HashSet<>();
+        for (String p : payloads) {
+            try {
+                UUID instanceId = UUID.fromString(p);
+                if (waiting.contains(instanceId)) {
+                    result.add(instanceId);
+                }
+            } catch (IllegalArgumentException e) {
+                log.warn("parse -> invalid notification: {}", p);
+            }
+        }
+        return result;
+    }
+
+    private void check(Set<UUID> instanceIds) {
+        if (instanceIds.isEmpty()) {
+            return;
+        }
+
+        Map<UUID, ProcessStatus> statuses = queueDao.getStatuses(instanceIds);
+        for (UUID instanceId : instanceIds) {
+            ProcessStatus s = statuses.get(instanceId);
+            // the process might be removed by the time we check it, no reason to wait any longer
+            if (s == null || ProcessCompletionNotifier.FINAL_STATUSES.contains(s)) {
+                notifier.complete(instanceId);
+            }
+        }
+    }
+}
@@ -0,0 +1,129 @@
+package com.walmartlabs.concord.server.process.queue;
+
+/*-
+ * *****
+ * Concord
+ * -----
+ * Copyright (C) 2017 - 2020 Walmart Inc.
+ * -----
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =====
+ */
+
+import com.google.common.collect.ImmutableSet;
+import com.walmartlabs.concord.server.process.ProcessKey;
+import com.walmartlabs.concord.server.sdk.ProcessStatus;
+import org.jooq.DSLContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.inject.Named;
+import javax.inject.Singleton;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Keeps track of the callbacks waiting for processes to finish.
+ * <p/>
+ * Terminal status transitions are broadcast to all server instances
+ * using Postgres' LISTEN/NOTIFY (see {@link ProcessCompletionListener}).
+ * The notifications are treated as hints: the callbacks are called only
+ * after the process' status is confirmed with the DB.
+ */
+@Named
+@Singleton
+public class ProcessCompletionNotifier {
+
+    private static final Logger log = LoggerFactory.getLogger(ProcessCompletionNotifier.class);
+
+    static final String CHANNEL = "concord_process_finished";
+
+    public static final Set<ProcessStatus> FINAL_STATUSES = ImmutableSet.of(
+            ProcessStatus.FINISHED,
+            ProcessStatus.FAILED,
+            ProcessStatus.CANCELLED,
+            ProcessStatus.TIMED_OUT);
+
+    private final Map<UUID, Set<Runnable>> callbacks = new ConcurrentHashMap<>();
+
+    /**
+     * Registers a callback which is called (once) when the specified process
+     * reaches one of the {@link #FINAL_STATUSES}. The callbacks are called
+     * on the listener's thread and must not block.
+     * <p/>
+     * The caller is responsible for checking the process' status after
+     * registering the callback, the callbacks are not called for processes
+     * that were already finished.
+     */
+    public void register(UUID instanceId, Runnable callback) {
+        callbacks.compute(instanceId, (k, v) -> {
+            Set<Runnable> s = v != null ? v : ConcurrentHashMap.newKeySet();
+            s.add(callback);
+            return s;
+        });
+    }
+
+    public void unregister(UUID instanceId, Runnable callback) {
+        callbacks.computeIfPresent(instanceId, (k, v) -> {
+            v.remove(callback);
+            return v.isEmpty() ? null : v;
+        });
+    }
+
+    /**
+     * Notifies waiters on all server instances (including the local one)
+     * once the specified transaction is committed.
+     */
+    public void onStatusChange(DSLContext tx, ProcessKey processKey, ProcessStatus status) {
+        if (!FINAL_STATUSES.contains(status)) {
+            return;
+        }
+
+        tx.execute("NOTIFY " + CHANNEL + ", '" + processKey.getInstanceId() + "'");
+    }
+
+    /**
+     * @see #onStatusChange(DSLContext, ProcessKey, ProcessStatus)
+     */
+    public void onStatusChange(DSLContext tx, List<ProcessKey> processKeys, ProcessStatus status) {
+        for (ProcessKey pk : processKeys) {
+            onStatusChange(tx, pk, status);
+        }
+    }
+
+    /**
+     * @return IDs of the processes with at least one registered callback.
+     */
+    Set<UUID> getWaitingInstanceIds() {
+        return new HashSet<>(callbacks.keySet());
+    }
+
+    /**
+     * Calls the callbacks registered for the specified process.
+     * The process' status must be verified by the caller.
+     */
+    void complete(UUID instanceId) {
+        Set<Runnable> s = callbacks.remove(instanceId);
+        if (s == null) {
+            return;
+        }
+
+        for (Runnable r : s) {
+            try {
+                r.run();
+            } catch (Exception e) {
+                log.warn("complete ['{}'] -> callback error: {}", instanceId, e.getMessage(), e);
+            }
+        }
+    }
+}
@@ -349,6 +349,15 @@ public class ProcessQueueDao extends AbstractDao {
         return txResult(tx -> get(tx, processKey, includes));
     }
 
+    public UUID getProjectId(UUID instanceId) {
+        try (DSLContext tx = DSL.using(cfg)) {
+            return tx.select(PROCESS_QUEUE.PROJECT_ID)
+                    .from(PROCESS_QUEUE)
+                    .where(PROCESS_QUEUE.INSTANCE_ID.eq(instanceId))
+                    .fetchOne(PROCESS_QUEUE.PROJECT_ID);
+        }
+    }
+
     public ProcessStatus getStatus(UUID instanceId) {
         try (DSLContext tx = DSL.using(cfg)) {
             String status = tx.select(PROCESS_QUEUE.CURRENT_STATUS)
@@ -362,6 +371,25 @@ public class ProcessQueueDao extends AbstractDao {
         }
     }
 
+    /**
+     * Returns the current statuses of the specified processes.
+     * Unknown processes are omitted from the result.
+     */
+    public Map<UUID, ProcessStatus> getStatuses(Collection<UUID> instanceIds) {
+        if (instanceIds.isEmpty()) {
+            return Collections.emptyMap();
+        }
+
+        try (DSLContext tx = DSL.using(cfg)) {
+            Map<UUID, ProcessStatus> result = new HashMap<>();
+            tx.select(PROCESS_QUEUE.INSTANCE_ID, PROCESS_QUEUE.CURRENT_STATUS)
+                    .from(PROCESS_QUEUE)
+                    .where(PROCESS_QUEUE.INSTANCE_ID.in(instanceIds))
+                    .forEach(r -> result.put(r.value1(), ProcessStatus.valueOf(r.value2())));
+            return result;
+        }
+    }
+
     public List<ProcessEntry> get(List<PartialProcessKey> processKeys) {
         try (DSLContext tx = DSL.using(cfg)) {
             List<UUID> instanceIds = processKeys.stream()
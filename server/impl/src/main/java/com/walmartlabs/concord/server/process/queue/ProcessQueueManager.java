@@ -28,7 +28,9 @@ import com.walmartlabs.concord.server.ConcordObjectMapper;
 import com.walmartlabs.concord.server.RequestUtils;
 import com.walmartlabs.concord.server.process.*;
 import com.walmartlabs.concord.server.process.event.ProcessEventManager;
+import com.walmartlabs.concord.server.process.logs.ProcessLogCompactor;
 import com.walmartlabs.concord.server.process.logs.ProcessLogManager;
+import com.walmartlabs.concord.server.process.queue.dispatcher.DispatcherSignal;
 import com.walmartlabs.concord.server.sdk.ProcessStatus;
 import com.walmartlabs.concord.server.sdk.events.ProcessEvent;
 import org.jooq.DSLContext;
@@ -48,19 +50,28 @@ public class ProcessQueueManager {
     private final ProcessKeyCache keyCache;
     private final ProcessEventManager eventManager;
     private final ProcessLogManager processLogManager;
+    private final DispatcherSignal dispatcherSignal;
+    private final ProcessCompletionNotifier completionNotifier;
+    private final ProcessLogCompactor logCompactor;
 
     @Inject
     public ProcessQueueManager(ProcessQueueDao queueDao,
                                ConcordObjectMapper objectMapper,
                                ProcessKeyCache keyCache,
                                ProcessEventManager eventManager,
-                               ProcessLogManager processLogManager) {
+                               ProcessLogManager processLogManager,
+                               DispatcherSignal dispatcherSignal,
+                               ProcessCompletionNotifier completionNotifier,
+                               ProcessLogCompactor logCompactor) {
 
         this.queueDao = queueDao;
         this.eventManager = eventManager;
         this.objectMapper = objectMapper;
         this.keyCache = keyCache;
         this.processLogManager = processLogManager;
+        this.dispatcherSignal = dispatcherSignal;
+        this.completionNotifier = completionNotifier;
+        this.logCompactor = logCompactor;
     }
 
     /**
@@ -112,6 +123,7 @@ public class ProcessQueueManager {
         queueDao.tx(tx -> {
             queueDao.enqueue(tx, processKey, tags, startAt, requirements, processTimeout, handlers, meta, imports, exclusive, runtime);
             eventManager.insertStatusHistory(tx, processKey, ProcessStatus.ENQUEUED, Collections.emptyMap());
+            dispatcherSignal.signal(tx);
         });
     }
 
@@ -142,6 +154,8 @@ public class ProcessQueueManager {
     public void updateStatus(DSLContext tx, ProcessKey processKey, ProcessStatus status, Map<String, Object> statusPayload) {
         queueDao.updateStatus(tx, processKey, status);
         eventManager.insertStatusHistory(tx, processKey, status, statusPayload);
+        completionNotifier.onStatusChange(tx, processKey, status);
+        logCompactor.onStatusChange(tx, processKey, status);
     }
 
     /**
@@ -153,6 +167,10 @@ public class ProcessQueueManager {
         return queueDao.txResult(tx -> {
             boolean success = queueDao.updateStatus(tx, processKey, expected, status);
             eventManager.insertStatusHistory(tx, processKey, status, Collections.emptyMap());
+            if (success) {
+                completionNotifier.onStatusChange(tx, processKey, status);
+                logCompactor.onStatusChange(tx, processKey, status);
+            }
             return success;
         });
     }
@@ -167,6 +185,8 @@ public class ProcessQueueManager {
         return queueDao.txResult(tx -> {
             boolean success = queueDao.updateStatus(processKeys, expected, status);
             eventManager.insertStatusHistory(tx, processKeys, status);
+            completionNotifier.onStatusChange(tx, processKeys, status);
+            logCompactor.onStatusChange(tx, processKeys, status);
             return success;
         });
     }
@@ -184,6 +204,8 @@ public class ProcessQueueManager {
     public void updateAgentId(DSLContext tx, ProcessKey processKey, String agentId, ProcessStatus status) {
         queueDao.updateAgentId(tx, processKey, agentId, status);
         eventManager.insertStatusHistory(tx, processKey, status, Collections.emptyMap());
+        completionNotifier.onStatusChange(tx, processKey, status);
+        logCompactor.onStatusChange(tx, processKey, status);
     }
 
     /**
@@ -199,6 +221,11 @@ public class ProcessQueueManager {
     public void updateWait(DSLContext tx, ProcessKey processKey, AbstractWaitCondition wait) {
         queueDao.updateWait(tx, processKey, wait);
 
+        if (wait == null) {
+            // the process might be ready to be dispatched
+            dispatcherSignal.signal(tx);
+        }
+
         Map<String, Object> eventData = objectMapper.convertToMap(wait != null ? wait : new NoneCondition());
         ProcessEvent e = new ProcessEvent(processKey, EventType.PROCESS_WAIT.name(), null, eventData);
         eventManager.event(tx, Collections.singletonList(e));
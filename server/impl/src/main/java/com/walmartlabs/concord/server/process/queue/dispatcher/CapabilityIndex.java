@@ -0,0 +1,113 @@
+package com.walmartlabs.concord.server.process.queue.dispatcher;
+
+/*-
+ * *****
+ * Concord
+ * -----
+ * Copyright (C) 2017 - 2020 Walmart Inc.
+ * -----
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =====
+ */
+
+import com.walmartlabs.concord.common.MapMatcher;
+
+import java.util.*;
+import java.util.function.Function;
+
+/**
+ * Groups agent requests by their capabilities. The matching of process
+ * requirements is performed once per group and the results are cached
+ * per distinct requirements map. Typically, there are only a handful of
+ * distinct capabilities (flavors, regions, etc) and requirements, so
+ * the number of {@link MapMatcher} calls doesn't depend on the number
+ * of agents or processes.
+ * <p/>
+ * Not thread-safe, intended to be used within a single dispatch cycle.
+ */
+final class CapabilityIndex<T> {
+
+    private final Function<T, Map<String, Object>> capabilitiesFn;
+
+    private final Map<Map<String, Object>, Group<T>> groups = new LinkedHashMap<>();
+    private final Map<Map<String, Object>, List<Group<T>>> matches = new HashMap<>();
+
+    private int size;
+
+    CapabilityIndex(Collection<T> items, Function<T, Map<String, Object>> capabilitiesFn) {
+        this.capabilitiesFn = capabilitiesFn;
+
+        for (T i : items) {
+            Map<String, Object> capabilities = capabilitiesFn.apply(i);
+            groups.computeIfAbsent(capabilities, Group::new).items.add(i);
+            size++;
+        }
+    }
+
+    /**
+     * @return the first available item which capabilities match the specified
+     * requirements or {@code null} if there's no such item.
+     */
+    T find(Map<String, Object> requirements) {
+        if (size == 0) {
+            return null;
+        }
+
+        List<Group<T>> l = matches.computeIfAbsent(requirements, this::matchGroups);
+        for (Group<T> g : l) {
+            T i = g.items.peekFirst();
+            if (i != null) {
+                return i;
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Removes the item from the index, i.e. the item won't be returned by
+     * the subsequent {@link #find(Map)} calls.
+     */
+    void remove(T item) {
+        Group<T> g = groups.get(capabilitiesFn.apply(item));
+        if (g != null && g.items.remove(item)) {
+            size--;
+        }
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    private List<Group<T>> matchGroups(Map<String, Object> requirements) {
+        MapMatcher.Compiled matcher = MapMatcher.compile(requirements);
+
+        List<Group<T>> result = new ArrayList<>();
+        for (Group<T> g : groups.values()) {
+            if (matcher.matches(g.capabilities)) {
+                result.add(g);
+            }
+        }
+        return result;
+    }
+
+    private static final class Group<T> {
+
+        private final Map<String, Object> capabilities;
+        private final Deque<T> items = new ArrayDeque<>();
+
+        private Group(Map<String, Object> capabilities) {
+            this.capabilities = capabilities;
+        }
+    }
+}
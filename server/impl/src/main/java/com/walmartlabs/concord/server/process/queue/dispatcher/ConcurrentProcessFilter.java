@@ -29,8 +29,10 @@ import com.walmartlabs.concord.server.process.queue.ProcessCompletionCondition;
 import com.walmartlabs.concord.server.process.queue.ProcessQueueEntry;
 import com.walmartlabs.concord.server.process.queue.ProcessQueueManager;
 import com.walmartlabs.concord.server.sdk.ProcessStatus;
+import org.immutables.value.Value;
 import org.jooq.DSLContext;
 
+import javax.annotation.Nullable;
 import javax.inject.Inject;
 import javax.inject.Named;
 import java.util.*;
@@ -62,9 +64,20 @@ public class ConcurrentProcessFilter extends WaitProcessFinishFilter {
 
     @Override
     public void cleanup() {
+        super.cleanup();
         dao.cleanup();
     }
 
+    @Override
+    protected Object getCacheKey(ProcessQueueEntry item) {
+        if (item.projectId() == null || item.parentInstanceId() != null) {
+            return null;
+        }
+
+        // the result depends only on the effective policy and the number of running processes
+        return PolicyKey.of(item.orgId(), item.projectId(), item.initiatorId());
+    }
+
     @Override
     protected List<UUID> findProcess(DSLContext tx, ProcessQueueEntry item, List<ProcessQueueEntry> startingProcesses) {
         PolicyEngine pe = getPolicyEngine(item.orgId(), item.projectId(), item.initiatorId(), item.parentInstanceId());
@@ -137,4 +150,24 @@ public class ConcurrentProcessFilter extends WaitProcessFinishFilter {
         }
         return result;
     }
+
+    @Value.Immutable
+    interface PolicyKey {
+
+        @Nullable
+        UUID orgId();
+
+        UUID projectId();
+
+        @Nullable
+        UUID initiatorId();
+
+        static PolicyKey of(UUID orgId, UUID projectId, UUID initiatorId) {
+            return ImmutablePolicyKey.builder()
+                    .orgId(orgId)
+                    .projectId(projectId)
+                    .initiatorId(initiatorId)
+                    .build();
+        }
+    }
 }
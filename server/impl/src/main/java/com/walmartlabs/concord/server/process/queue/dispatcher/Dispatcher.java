@@ -21,9 +21,9 @@ package com.walmartlabs.concord.server.process.queue.dispatcher;
  */
 
 import com.codahale.metrics.Histogram;
+import com.codahale.metrics.Meter;
 import com.codahale.metrics.MetricRegistry;
 import com.codahale.metrics.Timer;
-import com.walmartlabs.concord.common.MapMatcher;
 import com.walmartlabs.concord.db.AbstractDao;
 import com.walmartlabs.concord.db.MainDB;
 import com.walmartlabs.concord.imports.Imports;
@@ -67,6 +67,10 @@ import static org.jooq.impl.DSL.*;
 
 /**
  * Dispatches processes to agents.
+ * <p/>
+ * Wakes up when a new agent request or a new ENQUEUED process is signalled
+ * via {@link DispatcherSignal}. The {@code queue.dispatcher.pollDelay} is
+ * used as a fallback (e.g. for processes with {@code startAt}).
  */
 @Named
 @Singleton
@@ -84,11 +88,18 @@ public class Dispatcher extends PeriodicTask {
     private final ProcessQueueManager queueManager;
     private final Set<Filter> filters;
     private final ImportsNormalizerFactory importsNormalizerFactory;
+    private final DispatcherSignal signal;
 
     private final int batchSize;
 
     private final Histogram dispatchedCountHistogram;
+    private final Histogram offsetHistogram;
     private final Timer responseTimer;
+    private final Timer latencyTimer;
+    private final Meter requestsMeter;
+    private final Meter matchesMeter;
+
+    private long signalledAt = -1;
 
     @Inject
     public Dispatcher(Locks locks,
@@ -98,6 +109,7 @@ public class Dispatcher extends PeriodicTask {
                       ProcessQueueManager queueManager,
                       Set<Filter> filters,
                       ImportsNormalizerFactory importsNormalizerFactory,
+                      DispatcherSignal signal,
                       ProcessQueueConfiguration cfg,
                       MetricRegistry metricRegistry) {
 
@@ -110,21 +122,25 @@ public class Dispatcher extends PeriodicTask {
         this.queueManager = queueManager;
         this.filters = filters;
         this.importsNormalizerFactory = importsNormalizerFactory;
+        this.signal = signal;
 
         this.batchSize = cfg.getDispatcherBatchSize();
 
         this.dispatchedCountHistogram = metricRegistry.histogram("process-queue-dispatcher-dispatched-count");
+        this.offsetHistogram = metricRegistry.histogram("process-queue-dispatcher-offset");
         this.responseTimer = metricRegistry.timer("process-queue-dispatcher-response-timer");
+        this.latencyTimer = metricRegistry.timer("process-queue-dispatcher-latency");
+        this.requestsMeter = metricRegistry.meter("process-queue-dispatcher-requests");
+        this.matchesMeter = metricRegistry.meter("process-queue-dispatcher-matches");
     }
 
     @Override
     @WithTimer
     protected boolean performTask() {
-        // TODO the WebSocketChannelManager business can be replaced with an async jax-rs endpoint and an "inbox" queue
-
         // grab the requests w/o responses
         Map<WebSocketChannel, ProcessRequest> requests = this.channelManager.getRequests(MessageType.PROCESS_REQUEST);
         if (requests.isEmpty()) {
+            signalledAt = -1;
             return false;
         }
 
@@ -144,9 +160,12 @@ public class Dispatcher extends PeriodicTask {
         });
 
         dispatchedCountHistogram.update(matches.size());
+        requestsMeter.mark(l.size());
+        matchesMeter.mark(matches.size());
 
-        // no matches, retry after a delay
+        // no matches, wait for the next signal
         if (matches.isEmpty()) {
+            signalledAt = -1;
             return false;
         }
 
@@ -155,36 +174,60 @@ public class Dispatcher extends PeriodicTask {
                 .parallel()
                 .forEach(this::sendResponse));
 
+        if (signalledAt > 0) {
+            latencyTimer.update(System.currentTimeMillis() - signalledAt, TimeUnit.MILLISECONDS);
+            signalledAt = -1;
+        }
+
         return true;
     }
 
+    @Override
+    protected void await(long interval) {
+        try {
+            long t = signal.await(interval);
+            if (t > 0 && signalledAt < 0) {
+                signalledAt = t;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
     private List<Match> match(DSLContext tx, List<Request> requests) {
-        // we need it modifiable
-        List<Request> inbox = new ArrayList<>(requests);
+        // group the requests by the agent's capabilities
+        CapabilityIndex<Request> inbox = new CapabilityIndex<>(requests, r -> r.request.getCapabilities());
+
+        // "startingProcesses" are the currently collected "matches"
+        // we keep them in a separate collection to simplify the filtering
+        List<ProcessQueueEntry> startingProcesses = new ArrayList<>();
 
         int offset = 0;
+        ProcessQueueEntry last = null;
         List<Match> matches = new ArrayList<>();
         while (true) {
+            offsetHistogram.update(offset);
+
             // fetch the next few ENQUEUED processes from the DB
-            List<ProcessQueueEntry> candidates = dao.next(tx, offset, batchSize);
+            // use the last fetched entry as the starting point
+            List<ProcessQueueEntry> candidates = dao.next(tx, last, batchSize);
             if (candidates.isEmpty()) {
                 break;
             }
 
+            last = candidates.get(candidates.size() - 1);
+
             // filter out the candidates that shouldn't be dispatched at the moment (e.g. due to concurrency limits)
             for (ProcessQueueEntry e : candidates) {
                 // find request/agent who can handle process
-                Request req = findRequest(e, inbox);
+                Request req = inbox.find(getAgentRequirements(e));
                 if (req == null) {
                     continue;
                 }
 
-                // "startingProcesses" are the currently collected "matches"
-                // we keep them in a separate collection to simplify the filtering
-                List<ProcessQueueEntry> startingProcesses = matches.stream().map(m -> m.response).collect(Collectors.toList());
-
                 if (pass(tx, e, startingProcesses)) {
                     matches.add(new Match(req, e));
+                    startingProcesses.add(e);
                     inbox.remove(req);
 
                     if (inbox.isEmpty()) {
@@ -197,7 +240,7 @@ public class Dispatcher extends PeriodicTask {
                 break;
             }
 
-            offset += batchSize;
+            offset += candidates.size();
         }
 
         for (Match m : matches) {
@@ -210,18 +253,6 @@ public class Dispatcher extends PeriodicTask {
         return matches;
     }
 
-    private static Request findRequest(ProcessQueueEntry candidate, List<Request> requests) {
-        for (Request req : requests) {
-            Map<String, Object> capabilities = req.request.getCapabilities();
-            Map<String, Object> m = getAgentRequirements(candidate);
-            if (MapMatcher.matches(capabilities, m)) {
-                return req;
-            }
-        }
-
-        return null;
-    }
-
     @SuppressWarnings("unchecked")
     private static Map<String, Object> getAgentRequirements(ProcessQueueEntry entry) {
         Map<String, Object> requirements = entry.requirements();
@@ -285,16 +316,13 @@ public class Dispatcher extends PeriodicTask {
     public static class DispatcherDao extends AbstractDao {
 
         private final ConcordObjectMapper objectMapper;
-        private final Histogram offsetHistogram;
 
         @Inject
         public DispatcherDao(@MainDB Configuration cfg,
-                             ConcordObjectMapper objectMapper,
-                             MetricRegistry metricRegistry) {
+                             ConcordObjectMapper objectMapper) {
 
             super(cfg);
             this.objectMapper = objectMapper;
-            this.offsetHistogram = metricRegistry.histogram("process-queue-dispatcher-offset");
         }
 
         @Override
@@ -302,18 +330,24 @@ public class Dispatcher extends PeriodicTask {
             return super.txResult(t);
         }
 
+        /**
+         * Returns the next batch of ENQUEUED processes ordered by
+         * {@code (last_updated_at, instance_id)}.
+         *
+         * @param after the last entry of the previous batch or {@code null}
+         *              to start from the beginning of the queue
+         */
         @WithTimer
-        public List<ProcessQueueEntry> next(DSLContext tx, int offset, int limit) {
-            offsetHistogram.update(offset);
-
+        public List<ProcessQueueEntry> next(DSLContext tx, ProcessQueueEntry after, int limit) {
             ProcessQueue q = PROCESS_QUEUE.as("q");
 
             Field<UUID> orgIdField = select(PROJECTS.ORG_ID).from(PROJECTS).where(PROJECTS.PROJECT_ID.eq(q.PROJECT_ID)).asField();
 
-            SelectJoinStep<Record13<UUID, Timestamp, UUID, UUID, UUID, UUID, String, String, String, UUID, JSONB, JSONB, JSONB>> s =
+            SelectJoinStep<Record14<UUID, Timestamp, Timestamp, UUID, UUID, UUID, UUID, String, String, String, UUID, JSONB, JSONB, JSONB>> s =
                     tx.select(
                             q.INSTANCE_ID,
                             q.CREATED_AT,
+                            q.LAST_UPDATED_AT,
                             q.PROJECT_ID,
                             orgIdField,
                             q.INITIATOR_ID,
@@ -332,25 +366,29 @@ public class Dispatcher extends PeriodicTask {
                             q.START_AT.le(currentTimestamp())))
                     .and(q.WAIT_CONDITIONS.isNull()));
 
-            return s.orderBy(q.LAST_UPDATED_AT)
-                    .offset(offset)
+            if (after != null) {
+                s.where(row(q.LAST_UPDATED_AT, q.INSTANCE_ID).gt(after.lastUpdatedAt(), after.key().getInstanceId()));
+            }
+
+            return s.orderBy(q.LAST_UPDATED_AT, q.INSTANCE_ID)
                     .limit(limit)
                     .forUpdate()
                     .of(q)
                     .skipLocked()
                     .fetch(r -> ProcessQueueEntry.builder()
                             .key(new ProcessKey(r.value1(), r.value2()))
-                            .projectId(r.value3())
-                            .orgId(r.value4())
-                            .initiatorId(r.value5())
-                            .parentInstanceId(r.value6())
-                            .repoPath(r.value7())
-                            .repoUrl(r.value8())
-                            .commitId(r.value9())
-                            .repoId(r.value10())
-                            .imports(objectMapper.fromJSONB(r.value11(), Imports.class))
-                            .requirements(objectMapper.fromJSONB(r.value12()))
-                            .exclusive(objectMapper.fromJSONB(r.value13()))
+                            .lastUpdatedAt(r.value3())
+                            .projectId(r.value4())
+                            .orgId(r.value5())
+                            .initiatorId(r.value6())
+                            .parentInstanceId(r.value7())
+                            .repoPath(r.value8())
+                            .repoUrl(r.value9())
+                            .commitId(r.value10())
+                            .repoId(r.value11())
+                            .imports(objectMapper.fromJSONB(r.value12(), Imports.class))
+                            .requirements(objectMapper.fromJSONB(r.value13()))
+                            .exclusive(objectMapper.fromJSONB(r.value14()))
                             .build());
         }
 
@@ -0,0 +1,82 @@
+package com.walmartlabs.concord.server.process.queue.dispatcher;
+
+/*-
+ * *****
+ * Concord
+ * -----
+ * Copyright (C) 2017 - 2020 Walmart Inc.
+ * -----
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =====
+ */
+
+import org.jooq.DSLContext;
+
+import javax.inject.Named;
+import javax.inject.Singleton;
+
+/**
+ * Wakes up the {@link Dispatcher} when there's a chance to match a process
+ * with an agent: a new agent request arrived or a process became ENQUEUED.
+ * <p/>
+ * Local signals are delivered directly, signals from other server instances
+ * are delivered using Postgres' LISTEN/NOTIFY (see {@link DispatcherSignalListener}).
+ */
+@Named
+@Singleton
+public class DispatcherSignal {
+
+    static final String CHANNEL = "concord_dispatcher";
+
+    private final Object mutex = new Object();
+
+    private long signalledAt = -1;
+
+    /**
+     * Wakes up the local dispatcher.
+     */
+    public void signal() {
+        synchronized (mutex) {
+            if (signalledAt < 0) {
+                signalledAt = System.currentTimeMillis();
+            }
+            mutex.notifyAll();
+        }
+    }
+
+    /**
+     * Wakes up dispatchers on all server instances (including the local one)
+     * once the specified transaction is committed.
+     */
+    public void signal(DSLContext tx) {
+        tx.execute("NOTIFY " + CHANNEL);
+    }
+
+    /**
+     * Waits for a signal or until the specified timeout is elapsed.
+     *
+     * @return the time of the first signal received since the previous call
+     * or {@code -1} if there were no signals.
+     */
+    public long await(long timeout) throws InterruptedException {
+        synchronized (mutex) {
+            if (signalledAt < 0) {
+                mutex.wait(timeout);
+            }
+
+            long result = signalledAt;
+            signalledAt = -1;
+            return result;
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package com.walmartlabs.concord.server.process.queue.dispatcher;
+
+/*-
+ * *****
+ * Concord
+ * -----
+ * Copyright (C) 2017 - 2020 Walmart Inc.
+ * -----
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =====
+ */
+
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.walmartlabs.concord.server.DbNotificationListener;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+import java.util.List;
+
+/**
+ * Receives {@link DispatcherSignal} notifications sent by other server instances.
+ */
+@Named
+@Singleton
+public class DispatcherSignalListener implements DbNotificationListener.Handler {
+
+    private final DispatcherSignal signal;
+    private final Meter notificationsMeter;
+
+    @Inject
+    public DispatcherSignalListener(DispatcherSignal signal, MetricRegistry metricRegistry) {
+        this.signal = signal;
+        this.notificationsMeter = metricRegistry.meter("process-queue-dispatcher-notifications");
+    }
+
+    @Override
+    public String channel() {
+        return DispatcherSignal.CHANNEL;
+    }
+
+    @Override
+    public void onConnect() {
+        // the notifications sent while we weren't listening are lost
+        signal.signal();
+    }
+
+    @Override
+    public void onNotifications(List<String> payloads) {
+        notificationsMeter.mark(payloads.size());
+        signal.signal();
+    }
+}
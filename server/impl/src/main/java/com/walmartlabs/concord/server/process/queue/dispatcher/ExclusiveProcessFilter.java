@@ -52,18 +52,33 @@ public class ExclusiveProcessFilter extends WaitProcessFinishFilter {
 
     @Override
     public void cleanup() {
+        super.cleanup();
         dao.cleanup();
     }
 
+    @Override
+    protected Object getCacheKey(ProcessQueueEntry item) {
+        String group = getGroup(item);
+        if (item.projectId() == null || group == null) {
+            return null;
+        }
+
+        // only "wait" processes can be blocked, the result must not be reused for other modes
+        if (!isWaitMode(item)) {
+            return null;
+        }
+
+        return ExclusiveProcessFilterDao.CacheKey.of(group, item.projectId(), item.parentInstanceId());
+    }
+
     @Override
     protected List<UUID> findProcess(DSLContext tx, ProcessQueueEntry item, List<ProcessQueueEntry> startingProcesses) {
         if (item.projectId() == null) {
             return Collections.emptyList();
         }
 
-        boolean isWaitMode = WAIT_MODE.equals(MapUtils.getString(item.exclusive(), "mode"));
         String group = getGroup(item);
-        if (group == null || !isWaitMode) {
+        if (group == null || !isWaitMode(item)) {
             return Collections.emptyList();
         }
 
@@ -76,6 +91,10 @@ public class ExclusiveProcessFilter extends WaitProcessFinishFilter {
         return result;
     }
 
+    private static boolean isWaitMode(ProcessQueueEntry entry) {
+        return WAIT_MODE.equals(MapUtils.getString(entry.exclusive(), "mode"));
+    }
+
     private static String getGroup(ProcessQueueEntry entry) {
         return MapUtils.getString(entry.exclusive(), "group");
     }
@@ -27,7 +27,9 @@ import com.walmartlabs.concord.server.process.queue.ProcessQueueManager;
 import com.walmartlabs.concord.server.sdk.ProcessStatus;
 import org.jooq.DSLContext;
 
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.UUID;
 
@@ -44,15 +46,32 @@ public abstract class WaitProcessFinishFilter implements Filter {
 
     private final ProcessQueueManager processQueueManager;
 
+    /**
+     * Processes that are blocking the entries with the same cache key.
+     * Valid only during a single dispatch cycle: the "starting" processes
+     * can only add new blockers, so an entry which is blocked once
+     * will stay blocked until the end of the cycle.
+     */
+    private final Map<Object, List<UUID>> blockedBy = new HashMap<>();
+
     protected WaitProcessFinishFilter(ProcessQueueManager processQueueManager) {
         this.processQueueManager = processQueueManager;
     }
 
     @Override
     public boolean apply(DSLContext tx, ProcessQueueEntry e, List<ProcessQueueEntry> startingProcesses) {
-        List<UUID> processes = findProcess(tx, e, startingProcesses);
-        if (processes.isEmpty()) {
-            return true;
+        Object cacheKey = getCacheKey(e);
+
+        List<UUID> processes = cacheKey != null ? blockedBy.get(cacheKey) : null;
+        if (processes == null) {
+            processes = findProcess(tx, e, startingProcesses);
+            if (processes.isEmpty()) {
+                return true;
+            }
+
+            if (cacheKey != null) {
+                blockedBy.put(cacheKey, processes);
+            }
         }
 
         processQueueManager.updateWait(tx, e.key(), ProcessCompletionCondition.builder()
@@ -65,8 +84,20 @@ public abstract class WaitProcessFinishFilter implements Filter {
         return false;
     }
 
+    @Override
+    public void cleanup() {
+        blockedBy.clear();
+    }
+
     protected abstract List<UUID> findProcess(DSLContext tx, ProcessQueueEntry item, List<ProcessQueueEntry> startingProcesses);
 
+    /**
+     * @return a key that identifies the entries blocked by the same set
+     * of processes or {@code null} if the result of {@link #findProcess(DSLContext, ProcessQueueEntry, List)}
+     * shouldn't be reused.
+     */
+    protected abstract Object getCacheKey(ProcessQueueEntry item);
+
     protected Set<ProcessStatus> getFinalStatuses() {
         return FINAL_STATUSES;
     }
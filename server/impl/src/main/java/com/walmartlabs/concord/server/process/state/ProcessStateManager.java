@@ -20,6 +20,8 @@ package com.walmartlabs.concord.server.process.state;
  * =====
  */
 
+import com.google.common.hash.Hashing;
+import com.google.common.io.MoreFiles;
 import com.walmartlabs.concord.common.IOUtils;
 import com.walmartlabs.concord.common.Posix;
 import com.walmartlabs.concord.db.AbstractDao;
@@ -32,8 +34,12 @@ import com.walmartlabs.concord.server.process.ProcessKey;
 import com.walmartlabs.concord.server.sdk.metrics.WithTimer;
 import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
 import org.apache.commons.compress.archivers.zip.ZipArchiveOutputStream;
+import org.jooq.Condition;
 import org.jooq.Configuration;
 import org.jooq.DSLContext;
+import org.jooq.Field;
+import org.jooq.Select;
+import org.jooq.Table;
 import org.jooq.impl.DSL;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -47,17 +53,21 @@ import java.io.OutputStream;
 import java.nio.file.*;
 import java.nio.file.attribute.BasicFileAttributes;
 import java.nio.file.attribute.PosixFilePermission;
+import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Timestamp;
+import java.sql.Types;
 import java.util.*;
 import java.util.function.BiFunction;
 import java.util.function.Function;
+import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
 import static com.walmartlabs.concord.server.jooq.tables.ProcessQueue.PROCESS_QUEUE;
 import static com.walmartlabs.concord.server.jooq.tables.ProcessState.PROCESS_STATE;
+import static com.walmartlabs.concord.server.jooq.tables.ProcessStateBlobs.PROCESS_STATE_BLOBS;
 
 @Named
 @Singleton
@@ -68,6 +78,15 @@ public class ProcessStateManager extends AbstractDao {
     private static final String PATH_SEPARATOR = "/";
     private static final int INSERT_BATCH_SIZE = 10;
 
+    /**
+     * Imported files are stored in {@code PROCESS_STATE_BLOBS} and shared between processes,
+     * encrypted files and single values are stored "inline" in {@code PROCESS_STATE}.
+     */
+    private static final Table<?> STATE_ITEMS = PROCESS_STATE.leftJoin(PROCESS_STATE_BLOBS)
+            .on(PROCESS_STATE_BLOBS.BLOB_HASH.eq(PROCESS_STATE.BLOB_HASH));
+
+    private static final Field<byte[]> STATE_ITEM_DATA = DSL.coalesce(PROCESS_STATE.ITEM_DATA, PROCESS_STATE_BLOBS.BLOB_DATA);
+
     private final SecretStoreConfiguration secretCfg;
     private final Set<String> secureFiles = new HashSet<>();
 
@@ -96,8 +115,8 @@ public class ProcessStateManager extends AbstractDao {
     }
 
     private <T> Optional<T> get(DSLContext tx, ProcessKey processKey, String path, Function<InputStream, Optional<T>> converter) {
-        String sql = tx.select(PROCESS_STATE.IS_ENCRYPTED, PROCESS_STATE.ITEM_DATA)
-                .from(PROCESS_STATE)
+        String sql = tx.select(PROCESS_STATE.IS_ENCRYPTED, STATE_ITEM_DATA)
+                .from(STATE_ITEMS)
                 .where(PROCESS_STATE.INSTANCE_ID.eq((UUID) null)
                         .and(PROCESS_STATE.INSTANCE_CREATED_AT.eq((Timestamp) null))
                         .and(PROCESS_STATE.ITEM_PATH.eq((String) null)))
@@ -129,8 +148,8 @@ public class ProcessStateManager extends AbstractDao {
      */
     public <T> List<T> forEach(ProcessKey processKey, String path, Function<InputStream, Optional<T>> converter) {
         try (DSLContext tx = DSL.using(cfg)) {
-            String sql = tx.select(PROCESS_STATE.IS_ENCRYPTED, PROCESS_STATE.ITEM_DATA)
-                    .from(PROCESS_STATE)
+            String sql = tx.select(PROCESS_STATE.IS_ENCRYPTED, STATE_ITEM_DATA)
+                    .from(STATE_ITEMS)
                     .where(PROCESS_STATE.INSTANCE_ID.eq((UUID) null)
                             .and(PROCESS_STATE.INSTANCE_CREATED_AT.eq((Timestamp) null))
                             .and(PROCESS_STATE.ITEM_PATH.startsWith((String) null)))
@@ -212,21 +231,57 @@ public class ProcessStateManager extends AbstractDao {
     }
 
     private void delete(DSLContext tx, UUID instanceId, Timestamp instanceCreatedAt) {
-        tx.deleteFrom(PROCESS_STATE)
-                .where(PROCESS_STATE.INSTANCE_ID.eq(instanceId)
-                        .and(PROCESS_STATE.INSTANCE_CREATED_AT.eq(instanceCreatedAt)))
-                .execute();
+        deleteItems(tx, PROCESS_STATE.INSTANCE_ID.eq(instanceId)
+                .and(PROCESS_STATE.INSTANCE_CREATED_AT.eq(instanceCreatedAt)));
+    }
+
+    /**
+     * Returns the list of items whose path begins with the specified value.
+     * If the path is {@code null}, returns all items of the process.
+     */
+    public List<StateManifestEntry> manifest(ProcessKey processKey, String path) {
+        Condition c = PROCESS_STATE.INSTANCE_ID.eq(processKey.getInstanceId())
+                .and(PROCESS_STATE.INSTANCE_CREATED_AT.eq(processKey.getCreatedAt()));
+
+        if (path != null) {
+            c = c.and(PROCESS_STATE.ITEM_PATH.startsWith(path));
+        }
+
+        Field<Long> size = DSL.field("octet_length({0})", Long.class, STATE_ITEM_DATA);
+
+        try (DSLContext tx = DSL.using(cfg)) {
+            return tx.select(PROCESS_STATE.ITEM_PATH, PROCESS_STATE.UNIX_MODE, PROCESS_STATE.BLOB_HASH, size)
+                    .from(STATE_ITEMS)
+                    .where(c)
+                    .fetch(r -> StateManifestEntry.builder()
+                            .name(r.value1())
+                            .unixMode(r.value2())
+                            .hash(r.value3())
+                            .size(r.value4())
+                            .build());
+        }
+    }
+
+    /**
+     * Removes multiple values.
+     */
+    public void deleteFiles(ProcessKey processKey, Collection<String> paths) {
+        if (paths.isEmpty()) {
+            return;
+        }
+
+        tx(tx -> deleteItems(tx, PROCESS_STATE.INSTANCE_ID.eq(processKey.getInstanceId())
+                .and(PROCESS_STATE.INSTANCE_CREATED_AT.eq(processKey.getCreatedAt()))
+                .and(PROCESS_STATE.ITEM_PATH.in(paths))));
     }
 
     /**
      * Removes a single value.
      */
     public void deleteFile(ProcessKey processKey, String path) {
-        tx(tx -> tx.deleteFrom(PROCESS_STATE)
-                .where(PROCESS_STATE.INSTANCE_ID.eq(processKey.getInstanceId())
-                        .and(PROCESS_STATE.INSTANCE_CREATED_AT.eq(processKey.getCreatedAt()))
-                        .and(PROCESS_STATE.ITEM_PATH.eq(path)))
-                .execute());
+        tx(tx -> deleteItems(tx, PROCESS_STATE.INSTANCE_ID.eq(processKey.getInstanceId())
+                .and(PROCESS_STATE.INSTANCE_CREATED_AT.eq(processKey.getCreatedAt()))
+                .and(PROCESS_STATE.ITEM_PATH.eq(path))));
     }
 
     /**
@@ -242,12 +297,16 @@ public class ProcessStateManager extends AbstractDao {
     }
 
     private void deleteDirectory(DSLContext tx, UUID instanceId, Timestamp instanceCreatedAt, String path) {
-        tx.deleteFrom(PROCESS_STATE)
-                .where(PROCESS_STATE.INSTANCE_ID.eq(instanceId)
-                        .and(PROCESS_STATE.INSTANCE_CREATED_AT.eq(instanceCreatedAt)))
+        deleteItems(tx, PROCESS_STATE.INSTANCE_ID.eq(instanceId)
+                .and(PROCESS_STATE.INSTANCE_CREATED_AT.eq(instanceCreatedAt))
                 .and(PROCESS_STATE.ITEM_PATH.eq(path)
-                        .or(PROCESS_STATE.ITEM_PATH.startsWith(fixPath(path))))
-                .execute();
+                        .or(PROCESS_STATE.ITEM_PATH.startsWith(fixPath(path)))));
+    }
+
+    private static void deleteItems(DSLContext tx, Condition items) {
+        List<String> unreferenced = StateBlobUtils.release(tx, items);
+        tx.deleteFrom(PROCESS_STATE).where(items).execute();
+        StateBlobUtils.deleteUnreferenced(tx, unreferenced);
     }
 
     /**
@@ -342,12 +401,10 @@ public class ProcessStateManager extends AbstractDao {
                     int unixMode = Posix.unixMode(permissions);
                     boolean needsEncryption = secureFiles.contains(n);
 
-                    tx.deleteFrom(PROCESS_STATE).where(PROCESS_STATE.INSTANCE_ID.eq(instanceId)
-                            .and(PROCESS_STATE.INSTANCE_CREATED_AT.eq(instanceCreatedAt))
-                            .and(PROCESS_STATE.ITEM_PATH.eq(n)))
-                            .execute();
+                    // secure files are encrypted with a random salt and stored per-process
+                    String blobHash = needsEncryption ? null : hash(file);
 
-                    batch.add(new BatchItem(n, file, unixMode, needsEncryption));
+                    batch.add(new BatchItem(n, file, unixMode, needsEncryption, blobHash));
                     if (batch.size() >= INSERT_BATCH_SIZE) {
                         insert(tx, instanceId, instanceCreatedAt, batch);
                         batch.clear();
@@ -366,14 +423,33 @@ public class ProcessStateManager extends AbstractDao {
     }
 
     private void insert(DSLContext tx, UUID instanceId, Timestamp instanceCreatedAt, Collection<BatchItem> batch) {
+        List<String> paths = batch.stream()
+                .map(i -> i.itemPath)
+                .collect(Collectors.toList());
+
+        // replace the existing items, if any
+        deleteItems(tx, PROCESS_STATE.INSTANCE_ID.eq(instanceId)
+                .and(PROCESS_STATE.INSTANCE_CREATED_AT.eq(instanceCreatedAt))
+                .and(PROCESS_STATE.ITEM_PATH.in(paths)));
+
+        // sorted to lock the blob records in the same order in concurrent transactions
+        Map<String, List<BatchItem>> blobs = new TreeMap<>();
+        for (BatchItem item : batch) {
+            if (item.blobHash != null) {
+                blobs.computeIfAbsent(item.blobHash, k -> new ArrayList<>()).add(item);
+            }
+        }
+
         String sql = tx.insertInto(PROCESS_STATE)
-                .columns(PROCESS_STATE.INSTANCE_ID, PROCESS_STATE.INSTANCE_CREATED_AT, PROCESS_STATE.ITEM_PATH, PROCESS_STATE.UNIX_MODE, PROCESS_STATE.ITEM_DATA, PROCESS_STATE.IS_ENCRYPTED)
-                .values((UUID) null, null, null, null, null, null)
+                .columns(PROCESS_STATE.INSTANCE_ID, PROCESS_STATE.INSTANCE_CREATED_AT, PROCESS_STATE.ITEM_PATH, PROCESS_STATE.UNIX_MODE, PROCESS_STATE.ITEM_DATA, PROCESS_STATE.IS_ENCRYPTED, PROCESS_STATE.BLOB_HASH)
+                .values((UUID) null, null, null, null, null, null, null)
                 .getSQL();
 
         List<InputStream> streams = new LinkedList<>();
         try {
             tx.connection(conn -> {
+                insertBlobs(tx, conn, blobs, streams);
+
                 try (PreparedStatement ps = conn.prepareStatement(sql)) {
                     for (BatchItem item : batch) {
                         // INSTANCE_ID
@@ -388,19 +464,26 @@ public class ProcessStateManager extends AbstractDao {
                         // UNIX_MODE
                         ps.setInt(4, item.unixMode);
 
-                        InputStream in = Files.newInputStream(item.path);
-                        streams.add(in); // keep the streams open until the batch is committed
+                        // ITEM_DATA
+                        if (item.blobHash != null) {
+                            ps.setNull(5, Types.BINARY);
+                        } else {
+                            InputStream in = Files.newInputStream(item.path);
+                            streams.add(in); // keep the streams open until the batch is committed
+
+                            if (item.needsEncryption) {
+                                in = encrypt(in);
+                            }
 
-                        if (item.needsEncryption) {
-                            in = encrypt(in);
+                            ps.setBinaryStream(5, in);
                         }
 
-                        // ITEM_DATA
-                        ps.setBinaryStream(5, in);
-
                         // IS_ENCRYPTED
                         ps.setBoolean(6, item.needsEncryption);
 
+                        // BLOB_HASH
+                        ps.setString(7, item.blobHash);
+
                         ps.addBatch();
                     }
 
@@ -414,14 +497,76 @@ public class ProcessStateManager extends AbstractDao {
         }
     }
 
+    /**
+     * Increments the reference counters of the specified blobs. The blobs that don't exist yet
+     * are inserted using the content of the first file with the same hash.
+     */
+    private static void insertBlobs(DSLContext tx, Connection conn, Map<String, List<BatchItem>> blobs, List<InputStream> streams) throws SQLException, IOException {
+        if (blobs.isEmpty()) {
+            return;
+        }
+
+        String updateSql = tx.update(PROCESS_STATE_BLOBS)
+                .set(PROCESS_STATE_BLOBS.REF_COUNT, PROCESS_STATE_BLOBS.REF_COUNT.plus(DSL.val(null, Integer.class)))
+                .where(PROCESS_STATE_BLOBS.BLOB_HASH.eq((String) null))
+                .getSQL();
+
+        List<String> missing = new ArrayList<>();
+        try (PreparedStatement ps = conn.prepareStatement(updateSql)) {
+            for (Map.Entry<String, List<BatchItem>> e : blobs.entrySet()) {
+                ps.setInt(1, e.getValue().size());
+                ps.setString(2, e.getKey());
+                ps.addBatch();
+            }
+
+            int[] updated = ps.executeBatch();
+
+            int i = 0;
+            for (String hash : blobs.keySet()) {
+                if (updated[i++] == 0) {
+                    missing.add(hash);
+                }
+            }
+        }
+
+        if (missing.isEmpty()) {
+            return;
+        }
+
+        // the blob might've been inserted by a concurrent transaction
+        String insertSql = tx.insertInto(PROCESS_STATE_BLOBS)
+                .columns(PROCESS_STATE_BLOBS.BLOB_HASH, PROCESS_STATE_BLOBS.BLOB_DATA, PROCESS_STATE_BLOBS.REF_COUNT)
+                .values((String) null, null, null)
+                .onConflict(PROCESS_STATE_BLOBS.BLOB_HASH)
+                .doUpdate().set(PROCESS_STATE_BLOBS.REF_COUNT, PROCESS_STATE_BLOBS.REF_COUNT.plus(DSL.val(null, Integer.class)))
+                .getSQL();
+
+        try (PreparedStatement ps = conn.prepareStatement(insertSql)) {
+            for (String hash : missing) {
+                List<BatchItem> items = blobs.get(hash);
+
+                InputStream in = Files.newInputStream(items.get(0).path);
+                streams.add(in);
+
+                ps.setString(1, hash);
+                ps.setBinaryStream(2, in);
+                ps.setInt(3, items.size());
+                ps.setInt(4, items.size());
+                ps.addBatch();
+            }
+
+            ps.executeBatch();
+        }
+    }
+
     /**
      * Exports all data of a process instance.
      */
     public boolean export(ProcessKey processKey, ItemConsumer consumer) {
         try (DSLContext tx = DSL.using(cfg)) {
             String sql = tx
-                    .select(PROCESS_STATE.ITEM_PATH, PROCESS_STATE.UNIX_MODE, PROCESS_STATE.IS_ENCRYPTED, PROCESS_STATE.ITEM_DATA)
-                    .from(PROCESS_STATE)
+                    .select(PROCESS_STATE.ITEM_PATH, PROCESS_STATE.UNIX_MODE, PROCESS_STATE.IS_ENCRYPTED, STATE_ITEM_DATA)
+                    .from(STATE_ITEMS)
                     .where(PROCESS_STATE.INSTANCE_ID.eq((UUID) null).and(PROCESS_STATE.INSTANCE_CREATED_AT.eq((Timestamp) null)))
                     .getSQL();
 
@@ -451,6 +596,52 @@ public class ProcessStateManager extends AbstractDao {
         }
     }
 
+    /**
+     * Exports all data of a process instance except the items with the specified hashes,
+     * i.e. the data already available to the caller.
+     */
+    public boolean export(ProcessKey processKey, Collection<String> skipHashes, ItemConsumer consumer) {
+        try (DSLContext tx = DSL.using(cfg)) {
+            Condition c = PROCESS_STATE.INSTANCE_ID.eq(processKey.getInstanceId())
+                    .and(PROCESS_STATE.INSTANCE_CREATED_AT.eq(processKey.getCreatedAt()));
+
+            if (!skipHashes.isEmpty()) {
+                c = c.and(PROCESS_STATE.BLOB_HASH.isNull()
+                        .or(PROCESS_STATE.BLOB_HASH.notIn(skipHashes)));
+            }
+
+            Select<?> q = tx.select(PROCESS_STATE.ITEM_PATH, PROCESS_STATE.UNIX_MODE, PROCESS_STATE.IS_ENCRYPTED, STATE_ITEM_DATA)
+                    .from(STATE_ITEMS)
+                    .where(c);
+
+            return tx.connectionResult(conn -> {
+                try (PreparedStatement ps = conn.prepareStatement(q.getSQL())) {
+                    List<Object> params = q.getBindValues();
+                    for (int i = 0; i < params.size(); i++) {
+                        ps.setObject(i + 1, params.get(i));
+                    }
+
+                    boolean found = false;
+                    try (ResultSet rs = ps.executeQuery()) {
+                        while (rs.next()) {
+                            found = true;
+
+                            String n = rs.getString(1);
+                            int unixMode = rs.getInt(2);
+                            boolean encrypted = rs.getBoolean(3);
+                            try (InputStream in = rs.getBinaryStream(4);
+                                 InputStream processed = encrypted ? decrypt(in) : in) {
+                                consumer.accept(n, unixMode, processed);
+                            }
+                        }
+                    }
+
+                    return found;
+                }
+            });
+        }
+    }
+
     /**
      * Exports elements whose path begins with the specified value.
      */
@@ -459,8 +650,8 @@ public class ProcessStateManager extends AbstractDao {
 
         try (DSLContext tx = DSL.using(cfg)) {
             String sql = tx
-                    .select(PROCESS_STATE.ITEM_PATH, PROCESS_STATE.UNIX_MODE, PROCESS_STATE.IS_ENCRYPTED, PROCESS_STATE.ITEM_DATA)
-                    .from(PROCESS_STATE)
+                    .select(PROCESS_STATE.ITEM_PATH, PROCESS_STATE.UNIX_MODE, PROCESS_STATE.IS_ENCRYPTED, STATE_ITEM_DATA)
+                    .from(STATE_ITEMS)
                     .where(PROCESS_STATE.INSTANCE_ID.eq((UUID) null)
                             .and(PROCESS_STATE.INSTANCE_CREATED_AT.eq((Timestamp) null))
                             .and(PROCESS_STATE.ITEM_PATH.startsWith((String) null)))
@@ -595,6 +786,12 @@ public class ProcessStateManager extends AbstractDao {
         return t;
     }
 
+    private static String hash(Path file) throws IOException {
+        return MoreFiles.asByteSource(file)
+                .hash(Hashing.sha256())
+                .toString();
+    }
+
     private static void closeSilently(AutoCloseable c) {
         if (c == null) {
             return;
@@ -700,12 +897,14 @@ public class ProcessStateManager extends AbstractDao {
         private final Path path;
         private final int unixMode;
         private final boolean needsEncryption;
+        private final String blobHash;
 
-        private BatchItem(String itemPath, Path path, int unixMode, boolean needsEncryption) {
+        private BatchItem(String itemPath, Path path, int unixMode, boolean needsEncryption, String blobHash) {
             this.itemPath = itemPath;
             this.path = path;
             this.unixMode = unixMode;
             this.needsEncryption = needsEncryption;
+            this.blobHash = blobHash;
         }
     }
 }
@@ -0,0 +1,108 @@
+package com.walmartlabs.concord.server.process.state;
+
+/*-
+ * *****
+ * Concord
+ * -----
+ * Copyright (C) 2017 - 2020 Walmart Inc.
+ * -----
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =====
+ */
+
+import com.walmartlabs.concord.server.jooq.tables.records.ProcessStateBlobsRecord;
+import org.jooq.*;
+import org.jooq.impl.DSL;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static com.walmartlabs.concord.server.jooq.tables.ProcessState.PROCESS_STATE;
+import static com.walmartlabs.concord.server.jooq.tables.ProcessStateBlobs.PROCESS_STATE_BLOBS;
+
+/**
+ * Reference counting of the deduplicated process state data.
+ * Any code that removes {@code PROCESS_STATE} records must release the blobs
+ * referenced by those records in the same transaction.
+ */
+public final class StateBlobUtils {
+
+    /**
+     * Decrements the reference counters of the blobs used by the specified
+     * {@code PROCESS_STATE} records. Must be called before the records are removed.
+     *
+     * @return hashes of the blobs that are no longer referenced
+     */
+    public static List<String> release(DSLContext tx, Condition items) {
+        return releaseQuery(tx, items)
+                .returning(PROCESS_STATE_BLOBS.BLOB_HASH, PROCESS_STATE_BLOBS.REF_COUNT)
+                .fetch()
+                .stream()
+                .filter(r -> r.getRefCount() <= 0)
+                .map(ProcessStateBlobsRecord::getBlobHash)
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Same as {@link #release(DSLContext, Condition)}, but doesn't collect the hashes.
+     * Intended for bulk removals, the unreferenced blobs are expected to be removed
+     * with {@link #deleteUnreferenced(DSLContext)}.
+     *
+     * @return number of updated blobs
+     */
+    public static int releaseAll(DSLContext tx, Condition items) {
+        return releaseQuery(tx, items).execute();
+    }
+
+    /**
+     * Removes the specified blobs if they are no longer referenced.
+     */
+    public static int deleteUnreferenced(DSLContext tx, Collection<String> hashes) {
+        if (hashes.isEmpty()) {
+            return 0;
+        }
+
+        return tx.deleteFrom(PROCESS_STATE_BLOBS)
+                .where(PROCESS_STATE_BLOBS.BLOB_HASH.in(hashes)
+                        .and(PROCESS_STATE_BLOBS.REF_COUNT.le(0)))
+                .execute();
+    }
+
+    /**
+     * Removes all blobs that are no longer referenced.
+     */
+    public static int deleteUnreferenced(DSLContext tx) {
+        return tx.deleteFrom(PROCESS_STATE_BLOBS)
+                .where(PROCESS_STATE_BLOBS.REF_COUNT.le(0))
+                .execute();
+    }
+
+    private static UpdateConditionStep<ProcessStateBlobsRecord> releaseQuery(DSLContext tx, Condition items) {
+        Field<Integer> cnt = DSL.count().as("REF_CNT");
+
+        Table<?> released = DSL.select(PROCESS_STATE.BLOB_HASH, cnt)
+                .from(PROCESS_STATE)
+                .where(items.and(PROCESS_STATE.BLOB_HASH.isNotNull()))
+                .groupBy(PROCESS_STATE.BLOB_HASH)
+                .asTable("released");
+
+        return tx.update(PROCESS_STATE_BLOBS)
+                .set(PROCESS_STATE_BLOBS.REF_COUNT, PROCESS_STATE_BLOBS.REF_COUNT.minus(released.field(cnt)))
+                .from(released)
+                .where(PROCESS_STATE_BLOBS.BLOB_HASH.eq(released.field(PROCESS_STATE.BLOB_HASH)));
+    }
+
+    private StateBlobUtils() {
+    }
+}
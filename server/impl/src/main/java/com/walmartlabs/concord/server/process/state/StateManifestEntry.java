@@ -0,0 +1,56 @@
+package com.walmartlabs.concord.server.process.state;
+
+/*-
+ * *****
+ * Concord
+ * -----
+ * Copyright (C) 2017 - 2020 Walmart Inc.
+ * -----
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =====
+ */
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import org.immutables.value.Value;
+
+import javax.annotation.Nullable;
+
+/**
+ * A single item of the process state. Used by the agents to determine
+ * which files must be transferred between the agent and the server.
+ */
+@Value.Immutable
+@JsonInclude(JsonInclude.Include.NON_NULL)
+@JsonSerialize(as = ImmutableStateManifestEntry.class)
+@JsonDeserialize(as = ImmutableStateManifestEntry.class)
+public interface StateManifestEntry {
+
+    String name();
+
+    long size();
+
+    int unixMode();
+
+    /**
+     * SHA-256 of the content. {@code null} for the items stored per-process
+     * (e.g. encrypted files), such items must always be transferred.
+     */
+    @Nullable
+    String hash();
+
+    static ImmutableStateManifestEntry.Builder builder() {
+        return ImmutableStateManifestEntry.builder();
+    }
+}
@@ -0,0 +1,136 @@
+package com.walmartlabs.concord.server.qos;
+
+/*-
+ * *****
+ * Concord
+ * -----
+ * Copyright (C) 2017 - 2020 Walmart Inc.
+ * -----
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =====
+ */
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * Weighted fair queue. Each tenant has its own FIFO queue, the items
+ * of different tenants are polled in proportion to the tenants' weights,
+ * regardless of how many items each tenant has queued.
+ * <p/>
+ * Each item is assigned a virtual finish time, {@code max(V, F) + 1 / weight},
+ * where {@code V} is the current virtual time (the finish time of the last
+ * polled item) and {@code F} is the finish time of the tenant's previous item.
+ * The item with the smallest finish time is polled first.
+ */
+public class FairQueue<T> {
+
+    private final Map<String, TenantQueue<T>> queues = new HashMap<>();
+
+    private double virtualTime;
+    private int size;
+
+    public synchronized void add(String tenant, double weight, T item) {
+        if (weight <= 0) {
+            throw new IllegalArgumentException("Invalid weight: " + weight);
+        }
+
+        TenantQueue<T> q = queues.computeIfAbsent(tenant, k -> new TenantQueue<>());
+
+        double start = Math.max(virtualTime, q.lastFinish);
+        q.lastFinish = start + 1 / weight;
+        q.items.addLast(new Entry<>(item, q.lastFinish));
+
+        size++;
+    }
+
+    /**
+     * @return the next item or {@code null} if the queue is empty.
+     */
+    public synchronized T poll() {
+        String tenant = null;
+        TenantQueue<T> next = null;
+
+        for (Map.Entry<String, TenantQueue<T>> e : queues.entrySet()) {
+            TenantQueue<T> q = e.getValue();
+            if (next == null || q.items.peekFirst().finish < next.items.peekFirst().finish) {
+                tenant = e.getKey();
+                next = q;
+            }
+        }
+
+        if (next == null) {
+            return null;
+        }
+
+        Entry<T> e = next.items.pollFirst();
+        virtualTime = e.finish;
+        size--;
+
+        if (next.items.isEmpty()) {
+            queues.remove(tenant);
+        }
+
+        return e.item;
+    }
+
+    public synchronized boolean remove(String tenant, T item) {
+        TenantQueue<T> q = queues.get(tenant);
+        if (q == null) {
+            return false;
+        }
+
+        for (Iterator<Entry<T>> i = q.items.iterator(); i.hasNext(); ) {
+            if (i.next().item == item) {
+                i.remove();
+                size--;
+
+                if (q.items.isEmpty()) {
+                    queues.remove(tenant);
+                }
+
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    public synchronized int size(String tenant) {
+        TenantQueue<T> q = queues.get(tenant);
+        return q != null ? q.items.size() : 0;
+    }
+
+    private static final class TenantQueue<T> {
+
+        private final Deque<Entry<T>> items = new ArrayDeque<>();
+        private double lastFinish;
+    }
+
+    private static final class Entry<T> {
+
+        private final T item;
+        private final double finish;
+
+        private Entry(T item, double finish) {
+            this.item = item;
+            this.finish = finish;
+        }
+    }
+}
@@ -0,0 +1,115 @@
+package com.walmartlabs.concord.server.qos;
+
+/*-
+ * *****
+ * Concord
+ * -----
+ * Copyright (C) 2017 - 2020 Walmart Inc.
+ * -----
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =====
+ */
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Keeps the buckets in memory, i.e. each server instance enforces
+ * the limits independently.
+ */
+public class LocalTokenBuckets implements TokenBuckets {
+
+    /**
+     * Full buckets are removed when the number of buckets exceeds the limit.
+     * A new bucket is always full, so it doesn't affect the rate limiting.
+     */
+    private static final int MAX_BUCKETS = 10000;
+
+    private final Map<String, Bucket> buckets = new ConcurrentHashMap<>();
+
+    @Override
+    public long take(String key, double rate, int burst) {
+        long now = System.currentTimeMillis();
+
+        if (buckets.size() > MAX_BUCKETS) {
+            removeFull(now);
+        }
+
+        Bucket b = buckets.computeIfAbsent(key, k -> new Bucket(burst, now));
+        synchronized (b) {
+            b.rate = rate;
+            b.burst = burst;
+            b.refill(now);
+
+            if (b.tokens >= 1) {
+                b.tokens -= 1;
+                return 0;
+            }
+
+            return waitTime(b.tokens, rate);
+        }
+    }
+
+    @Override
+    public void refund(String key, int burst) {
+        Bucket b = buckets.get(key);
+        if (b == null) {
+            return;
+        }
+
+        synchronized (b) {
+            b.tokens = Math.min(burst, b.tokens + 1);
+        }
+    }
+
+    int size() {
+        return buckets.size();
+    }
+
+    private void removeFull(long now) {
+        for (Iterator<Bucket> i = buckets.values().iterator(); i.hasNext(); ) {
+            Bucket b = i.next();
+            synchronized (b) {
+                b.refill(now);
+                if (b.tokens >= b.burst) {
+                    i.remove();
+                }
+            }
+        }
+    }
+
+    static long waitTime(double tokens, double rate) {
+        return Math.max(1, (long) Math.ceil((1 - tokens) / rate * 1000));
+    }
+
+    private static final class Bucket {
+
+        private double tokens;
+        private long updatedAt;
+        private double rate;
+        private int burst;
+
+        private Bucket(int burst, long updatedAt) {
+            this.tokens = burst;
+            this.updatedAt = updatedAt;
+            this.burst = burst;
+        }
+
+        private void refill(long now) {
+            if (now > updatedAt) {
+                tokens = Math.min(burst, tokens + (now - updatedAt) / 1000.0 * rate);
+                updatedAt = now;
+            }
+        }
+    }
+}
@@ -0,0 +1,123 @@
+package com.walmartlabs.concord.server.qos;
+
+/*-
+ * *****
+ * Concord
+ * -----
+ * Copyright (C) 2017 - 2020 Walmart Inc.
+ * -----
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =====
+ */
+import com.walmartlabs.concord.db.AbstractDao;
+import com.walmartlabs.concord.db.MainDB;
+import org.jooq.Configuration;
+import org.jooq.Field;
+import org.jooq.Record1;
+import org.jooq.Record2;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import java.sql.Timestamp;
+import java.util.concurrent.TimeUnit;
+
+import static com.walmartlabs.concord.server.jooq.Tables.QOS_TOKEN_BUCKETS;
+import static org.jooq.impl.DSL.*;
+
+/**
+ * Keeps {@link TokenBuckets} in the DB, i.e. the limits are shared by all
+ * server instances. Each token is taken using a single "upsert" statement.
+ */
+@Named
+public class TokenBucketDao extends AbstractDao {
+
+    private static final Logger log = LoggerFactory.getLogger(TokenBucketDao.class);
+
+    private static final long CLEANUP_INTERVAL = TimeUnit.MINUTES.toMillis(10);
+    private static final String MAX_IDLE_TIME = "1 hour";
+
+    private volatile long lastCleanupAt = System.currentTimeMillis();
+
+    @Inject
+    public TokenBucketDao(@MainDB Configuration cfg) {
+        super(cfg);
+    }
+
+    /**
+     * @see TokenBuckets#take(String, double, int)
+     */
+    public long take(String key, double rate, int burst) {
+        cleanupIfNeeded();
+
+        return txResult(tx -> {
+            Field<Double> available = available(QOS_TOKEN_BUCKETS.TOKENS, QOS_TOKEN_BUCKETS.UPDATED_AT, rate, burst);
+
+            Record1<Double> r = tx.insertInto(QOS_TOKEN_BUCKETS)
+                    .columns(QOS_TOKEN_BUCKETS.BUCKET_KEY, QOS_TOKEN_BUCKETS.TOKENS, QOS_TOKEN_BUCKETS.UPDATED_AT)
+                    .values(value(key), value((double) (burst - 1)), currentTimestamp())
+                    .onConflict(QOS_TOKEN_BUCKETS.BUCKET_KEY)
+                    .doUpdate()
+                    .set(QOS_TOKEN_BUCKETS.TOKENS, available.minus(1))
+                    .set(QOS_TOKEN_BUCKETS.UPDATED_AT, currentTimestamp())
+                    .where(available.ge(1.0))
+                    .returningResult(QOS_TOKEN_BUCKETS.TOKENS)
+                    .fetchOne();
+
+            if (r != null) {
+                return 0L;
+            }
+
+            Record2<Double, Timestamp> b = tx.select(available, QOS_TOKEN_BUCKETS.UPDATED_AT)
+                    .from(QOS_TOKEN_BUCKETS)
+                    .where(QOS_TOKEN_BUCKETS.BUCKET_KEY.eq(key))
+                    .fetchOne();
+
+            double tokens = b != null ? b.value1() : 0;
+            return LocalTokenBuckets.waitTime(tokens, rate);
+        });
+    }
+
+    /**
+     * @see TokenBuckets#refund(String, int)
+     */
+    public void refund(String key, int burst) {
+        tx(tx -> tx.update(QOS_TOKEN_BUCKETS)
+                .set(QOS_TOKEN_BUCKETS.TOKENS, least(value((double) burst), QOS_TOKEN_BUCKETS.TOKENS.plus(1.0)))
+                .where(QOS_TOKEN_BUCKETS.BUCKET_KEY.eq(key))
+                .execute());
+    }
+
+    private void cleanupIfNeeded() {
+        long now = System.currentTimeMillis();
+        if (now - lastCleanupAt < CLEANUP_INTERVAL) {
+            return;
+        }
+        lastCleanupAt = now;
+
+        try {
+            int rows = txResult(tx -> tx.deleteFrom(QOS_TOKEN_BUCKETS)
+                    .where(QOS_TOKEN_BUCKETS.UPDATED_AT.lessThan(currentTimestamp().minus(field("interval '" + MAX_IDLE_TIME + "'"))))
+                    .execute());
+            log.info("cleanupIfNeeded -> removed {} idle bucket(s)", rows);
+        } catch (Exception e) {
+            log.warn("cleanupIfNeeded -> error: {}", e.getMessage());
+        }
+    }
+
+    private static Field<Double> available(Field<Double> tokens, Field<Timestamp> updatedAt, double rate, int burst) {
+        Field<Double> elapsed = field("extract(epoch from ({0} - {1}))", Double.class, currentTimestamp(), updatedAt);
+        return least(value((double) burst), tokens.plus(elapsed.mul(rate)));
+    }
+}
@@ -0,0 +1,47 @@
+package com.walmartlabs.concord.server.qos;
+
+/*-
+ * *****
+ * Concord
+ * -----
+ * Copyright (C) 2017 - 2020 Walmart Inc.
+ * -----
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =====
+ */
+/**
+ * Token bucket rate limiters, one bucket per key. The buckets are created
+ * on demand and refilled continuously at the specified rate.
+ */
+public interface TokenBuckets {
+
+    /**
+     * Takes a token from the specified bucket.
+     *
+     * @param key   bucket's key
+     * @param rate  refill rate, tokens per second
+     * @param burst bucket's capacity
+     * @return 0 if the token was taken or the estimated number of
+     * milliseconds until the next token becomes available
+     */
+    long take(String key, double rate, int burst);
+
+    /**
+     * Returns a previously taken token back to the specified bucket,
+     * e.g. when the request was rejected by another limit.
+     *
+     * @param key   bucket's key
+     * @param burst bucket's capacity
+     */
+    void refund(String key, int burst);
+}
@@ -0,0 +1,61 @@
+package com.walmartlabs.concord.server.qos;
+
+/*-
+ * *****
+ * Concord
+ * -----
+ * Copyright (C) 2017 - 2020 Walmart Inc.
+ * -----
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =====
+ */
+import com.walmartlabs.concord.server.cfg.QosConfiguration;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Provider;
+import javax.inject.Singleton;
+
+@Named
+@Singleton
+public class TokenBucketsProvider implements Provider<TokenBuckets> {
+
+    private final TokenBuckets buckets;
+
+    @Inject
+    public TokenBucketsProvider(QosConfiguration cfg, TokenBucketDao dao) {
+        String store = cfg.getRateLimitStore();
+        if ("db".equalsIgnoreCase(store)) {
+            this.buckets = new TokenBuckets() {
+                @Override
+                public long take(String key, double rate, int burst) {
+                    return dao.take(key, rate, burst);
+                }
+
+                @Override
+                public void refund(String key, int burst) {
+                    dao.refund(key, burst);
+                }
+            };
+        } else if ("local".equalsIgnoreCase(store)) {
+            this.buckets = new LocalTokenBuckets();
+        } else {
+            throw new IllegalArgumentException("Invalid qos.rateLimitStore value: '" + store + "'. Expected 'local' or 'db'");
+        }
+    }
+
+    @Override
+    public TokenBuckets get() {
+        return buckets;
+    }
+}
@@ -0,0 +1,93 @@
+package com.walmartlabs.concord.server.repository;
+
+/*-
+ * *****
+ * Concord
+ * -----
+ * Copyright (C) 2017 - 2020 Walmart Inc.
+ * -----
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =====
+ */
+
+import com.walmartlabs.concord.common.IOUtils;
+import com.walmartlabs.concord.repository.LastModifiedSnapshot;
+import com.walmartlabs.concord.repository.Repository;
+import com.walmartlabs.concord.repository.RepositoryInfo;
+import com.walmartlabs.concord.repository.Snapshot;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A private copy of a repository's working tree. Unlike the repositories
+ * in the {@link RepositoryManager}'s cache, the copy is never updated,
+ * so it can be exported concurrently and without holding the repository lock.
+ */
+public class ReadOnlyRepository extends Repository implements AutoCloseable {
+
+    private static final Logger log = LoggerFactory.getLogger(ReadOnlyRepository.class);
+
+    /**
+     * Creates a copy of the specified repository. The caller must hold
+     * the repository's lock.
+     */
+    public static ReadOnlyRepository copyOf(Repository src) throws IOException {
+        Path dst = IOUtils.createTempDir("repository");
+        try {
+            src.export(dst);
+            return new ReadOnlyRepository(src.branch(), dst, src.fetchedCommitId(), src.info());
+        } catch (IOException | RuntimeException e) {
+            IOUtils.deleteRecursively(dst);
+            throw e;
+        }
+    }
+
+    private final RepositoryInfo info;
+
+    private ReadOnlyRepository(String branch, Path path, String fetchedCommitId, RepositoryInfo info) {
+        super(branch, path, path, fetchedCommitId, null);
+        this.info = info;
+    }
+
+    @Override
+    public RepositoryInfo info() {
+        return info;
+    }
+
+    @Override
+    public Snapshot export(Path dst) throws IOException {
+        return export(dst, Collections.emptyList());
+    }
+
+    @Override
+    public Snapshot export(Path dst, List<String> ignorePatterns) throws IOException {
+        LastModifiedSnapshot snapshot = new LastModifiedSnapshot();
+        IOUtils.copy(path(), dst, ignorePatterns, snapshot, StandardCopyOption.REPLACE_EXISTING);
+        return snapshot;
+    }
+
+    @Override
+    public void close() {
+        try {
+            IOUtils.deleteRecursively(path());
+        } catch (IOException e) {
+            log.warn("close -> error while removing {}: {}", path(), e.getMessage());
+        }
+    }
+}
@@ -24,6 +24,7 @@ import com.walmartlabs.concord.common.IOUtils;
 import com.walmartlabs.concord.db.AbstractDao;
 import com.walmartlabs.concord.db.MainDB;
 import com.walmartlabs.concord.repository.Repository;
+import com.walmartlabs.concord.repository.RepositoryInfo;
 import com.walmartlabs.concord.server.events.ExternalEventResource;
 import com.walmartlabs.concord.server.org.OrganizationManager;
 import com.walmartlabs.concord.server.org.ResourceAccessLevel;
@@ -120,17 +121,20 @@ public class RepositoryRefresher extends AbstractDao {
             return;
         }
 
-        Path repoPath = repositoryManager.withLock(repositoryEntry.getUrl(), () -> {
+        RefreshedRepository refreshed = repositoryManager.withLock(repositoryEntry.getUrl(), () -> {
             Repository repo = repositoryManager.fetch(projectId, repositoryEntry);
             Path refreshRepoPath = IOUtils.createTempDir("refreshRepo_");
             IOUtils.copy(repo.path(), refreshRepoPath);
-            return refreshRepoPath;
+
+            RepositoryInfo info = repo.info();
+            return new RefreshedRepository(refreshRepoPath, info != null ? info.getCommitId() : null);
         });
 
+        Path repoPath = refreshed.path;
         try {
             tx(tx -> {
                 for (RepositoryRefreshListener l : listeners) {
-                    l.onRefresh(tx, repositoryEntry, repoPath);
+                    l.onRefresh(tx, repositoryEntry, repoPath, refreshed.commitId);
                 }
             });
         } catch (Exception e) {
@@ -156,4 +160,15 @@ public class RepositoryRefresher extends AbstractDao {
             log.warn("cleanUp ['{}'] -> error: {}", repoPath, e.getMessage());
         }
     }
+
+    private static final class RefreshedRepository {
+
+        private final Path path;
+        private final String commitId;
+
+        private RefreshedRepository(Path path, String commitId) {
+            this.path = path;
+            this.commitId = commitId;
+        }
+    }
 }
@@ -20,11 +20,10 @@ package com.walmartlabs.concord.server.repository.listeners;
  * =====
  */
 
-import com.walmartlabs.concord.process.loader.ProjectLoader;
 import com.walmartlabs.concord.process.loader.model.ProcessDefinition;
 import com.walmartlabs.concord.server.org.project.RepositoryDao;
 import com.walmartlabs.concord.server.org.project.RepositoryEntry;
-import com.walmartlabs.concord.server.process.ImportsNormalizerFactory;
+import com.walmartlabs.concord.server.process.ProcessDefinitionCache;
 import org.jooq.DSLContext;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -41,23 +40,19 @@ public class ProcessDefinitionRefreshListener implements RepositoryRefreshListen
     private static final Logger log = LoggerFactory.getLogger(ProcessDefinitionRefreshListener.class);
 
     private final RepositoryDao repositoryDao;
-    private final ProjectLoader projectLoader;
-    private final ImportsNormalizerFactory importsNormalizer;
+    private final ProcessDefinitionCache processDefinitionCache;
 
     @Inject
     public ProcessDefinitionRefreshListener(RepositoryDao repositoryDao,
-                                            ProjectLoader projectLoader,
-                                            ImportsNormalizerFactory importsNormalizer) {
+                                            ProcessDefinitionCache processDefinitionCache) {
 
         this.repositoryDao = repositoryDao;
-        this.projectLoader = projectLoader;
-        this.importsNormalizer = importsNormalizer;
+        this.processDefinitionCache = processDefinitionCache;
     }
 
     @Override
-    public void onRefresh(DSLContext ctx, RepositoryEntry repo, Path repoPath) throws Exception {
-        ProcessDefinition pd = projectLoader.loadProject(repoPath, importsNormalizer.forProject(repo.getProjectId()))
-                .projectDefinition();
+    public void onRefresh(DSLContext ctx, RepositoryEntry repo, Path repoPath, String commitId) throws Exception {
+        ProcessDefinition pd = processDefinitionCache.load(repo, repoPath, commitId).projectDefinition();
 
         Set<String> pf = pd.publicFlows();
         if (pf == null || pf.isEmpty()) {
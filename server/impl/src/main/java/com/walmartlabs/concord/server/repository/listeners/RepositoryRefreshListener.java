@@ -27,5 +27,9 @@ import java.nio.file.Path;
 
 public interface RepositoryRefreshListener {
 
-    void onRefresh(DSLContext ctx, RepositoryEntry repo, Path repoPath) throws Exception;
+    /**
+     * @param repoPath a copy of the repository's files
+     * @param commitId the repository's commit ID. Can be {@code null} if not available
+     */
+    void onRefresh(DSLContext ctx, RepositoryEntry repo, Path repoPath, String commitId) throws Exception;
 }
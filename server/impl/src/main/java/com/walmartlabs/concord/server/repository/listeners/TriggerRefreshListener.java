@@ -25,7 +25,7 @@ import com.walmartlabs.concord.process.loader.model.ProcessDefinition;
 import com.walmartlabs.concord.server.org.project.ProjectValidator;
 import com.walmartlabs.concord.server.org.project.RepositoryEntry;
 import com.walmartlabs.concord.server.org.triggers.TriggerManager;
-import com.walmartlabs.concord.server.process.ImportsNormalizerFactory;
+import com.walmartlabs.concord.server.process.ProcessDefinitionCache;
 import org.jooq.DSLContext;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -41,24 +41,21 @@ public class TriggerRefreshListener implements RepositoryRefreshListener {
     private static final Logger log = LoggerFactory.getLogger(TriggerRefreshListener.class);
 
     private final TriggerManager triggerManager;
-    private final ProjectLoader projectLoader;
-    private final ImportsNormalizerFactory importsNormalizer;
+    private final ProcessDefinitionCache processDefinitionCache;
 
     @Inject
     public TriggerRefreshListener(TriggerManager triggerManager,
-                                  ProjectLoader projectLoader,
-                                  ImportsNormalizerFactory importsNormalizer) {
+                                  ProcessDefinitionCache processDefinitionCache) {
 
         this.triggerManager = triggerManager;
-        this.projectLoader = projectLoader;
-        this.importsNormalizer = importsNormalizer;
+        this.processDefinitionCache = processDefinitionCache;
     }
 
     @Override
-    public void onRefresh(DSLContext ctx, RepositoryEntry repo, Path repoPath) throws Exception {
+    public void onRefresh(DSLContext ctx, RepositoryEntry repo, Path repoPath, String commitId) throws Exception {
         log.info("refresh ['{}'] ->  triggers", repo.getId());
 
-        ProjectLoader.Result result = projectLoader.loadProject(repoPath, importsNormalizer.forProject(repo.getProjectId()));
+        ProjectLoader.Result result = processDefinitionCache.load(repo, repoPath, commitId);
 
         ProcessDefinition pd = result.projectDefinition();
         ProjectValidator.Result validationResult = ProjectValidator.validate(pd);
@@ -0,0 +1,195 @@
+package com.walmartlabs.concord.server.security;
+
+/*-
+ * *****
+ * Concord
+ * -----
+ * Copyright (C) 2017 - 2020 Walmart Inc.
+ * -----
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =====
+ */
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.RemovalListener;
+import com.google.common.hash.Hashing;
+import com.walmartlabs.concord.server.cfg.AuthenticationCacheConfiguration;
+import com.walmartlabs.concord.server.process.queue.ProcessCompletionNotifier;
+import com.walmartlabs.concord.server.security.apikey.ApiKeyEntry;
+import com.walmartlabs.concord.server.user.UserEntry;
+import org.apache.shiro.subject.PrincipalCollection;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+import java.nio.charset.StandardCharsets;
+import java.util.Date;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Short-lived cache of the data required to authenticate API and session keys.
+ * Allows the steady-state authentication path to skip the DB.
+ * <p/>
+ * API keys are cached by their SHA-256 hashes. The entries are invalidated
+ * explicitly when the keys, the users or the roles are modified on this server
+ * instance. Changes made on other instances become visible after the configured TTL.
+ * Session keys are invalidated when the process finishes.
+ * <p/>
+ * Only the successful lookups are cached.
+ */
+@Named
+@Singleton
+public class AuthenticationCache {
+
+    private final ProcessCompletionNotifier completionNotifier;
+    private final boolean enabled;
+
+    private final Cache<String, ApiKeyEntry> apiKeys;
+    private final Cache<UUID, UserEntry> users;
+    private final Cache<UUID, SessionEntry> sessions;
+
+    @Inject
+    public AuthenticationCache(AuthenticationCacheConfiguration cfg,
+                               ProcessCompletionNotifier completionNotifier,
+                               MetricRegistry metricRegistry) {
+
+        this.completionNotifier = completionNotifier;
+        this.enabled = cfg.getTtl() > 0;
+
+        this.apiKeys = newCache(cfg, n -> {});
+        this.users = newCache(cfg, n -> {});
+        this.sessions = newCache(cfg, n -> completionNotifier.unregister(n.getKey(), n.getValue().onCompletion));
+
+        register(metricRegistry, "api-keys", apiKeys);
+        register(metricRegistry, "users", users);
+        register(metricRegistry, "sessions", sessions);
+    }
+
+    /**
+     * Returns an active API key, using the loader if the key is not in the cache.
+     */
+    public ApiKeyEntry getApiKey(String key, Supplier<ApiKeyEntry> loader) {
+        if (!enabled) {
+            return loader.get();
+        }
+
+        String hash = Hashing.sha256().hashString(key, StandardCharsets.UTF_8).toString();
+
+        ApiKeyEntry e = apiKeys.getIfPresent(hash);
+        if (e != null) {
+            Date expiredAt = e.getExpiredAt();
+            if (expiredAt == null || expiredAt.after(new Date())) {
+                return e;
+            }
+
+            apiKeys.invalidate(hash);
+        }
+
+        e = loader.get();
+        if (e != null) {
+            apiKeys.put(hash, e);
+        }
+        return e;
+    }
+
+    public UserEntry getUser(UUID userId, Supplier<UserEntry> loader) {
+        if (!enabled) {
+            return loader.get();
+        }
+
+        UserEntry e = users.getIfPresent(userId);
+        if (e != null) {
+            return e;
+        }
+
+        e = loader.get();
+        if (e != null) {
+            users.put(userId, e);
+        }
+        return e;
+    }
+
+    /**
+     * Returns the principals of a running process.
+     */
+    public PrincipalCollection getSessionPrincipals(UUID instanceId, Supplier<PrincipalCollection> loader) {
+        if (!enabled) {
+            return loader.get();
+        }
+
+        SessionEntry e = sessions.getIfPresent(instanceId);
+        if (e != null) {
+            return e.principals;
+        }
+
+        PrincipalCollection principals = loader.get();
+        if (principals == null) {
+            return null;
+        }
+
+        // the process might finish before the callback is registered,
+        // in which case the entry is removed after the TTL
+        e = new SessionEntry(principals, () -> sessions.invalidate(instanceId));
+        completionNotifier.register(instanceId, e.onCompletion);
+        sessions.put(instanceId, e);
+
+        return principals;
+    }
+
+    public void invalidateApiKey(UUID keyId) {
+        apiKeys.asMap().values().removeIf(e -> e.getId().equals(keyId));
+    }
+
+    public void invalidateUser(UUID userId) {
+        users.invalidate(userId);
+    }
+
+    /**
+     * Should be used when a change can affect multiple users, e.g. when
+     * the permissions of a role are modified.
+     */
+    public void invalidateUsers() {
+        users.invalidateAll();
+    }
+
+    private static <K, V> Cache<K, V> newCache(AuthenticationCacheConfiguration cfg, RemovalListener<K, V> removalListener) {
+        return CacheBuilder.newBuilder()
+                .expireAfterWrite(cfg.getTtl(), TimeUnit.MILLISECONDS)
+                .maximumSize(cfg.getMaxSize())
+                .recordStats()
+                .removalListener(removalListener)
+                .build();
+    }
+
+    private static void register(MetricRegistry metricRegistry, String name, Cache<?, ?> cache) {
+        metricRegistry.register("auth-cache-" + name + "-hits", (Gauge<Long>) () -> cache.stats().hitCount());
+        metricRegistry.register("auth-cache-" + name + "-misses", (Gauge<Long>) () -> cache.stats().missCount());
+        metricRegistry.register("auth-cache-" + name + "-size", (Gauge<Long>) cache::size);
+    }
+
+    private static final class SessionEntry {
+
+        private final PrincipalCollection principals;
+        private final Runnable onCompletion;
+
+        private SessionEntry(PrincipalCollection principals, Runnable onCompletion) {
+            this.principals = principals;
+            this.onCompletion = onCompletion;
+        }
+    }
+}
@@ -28,6 +28,7 @@ import com.walmartlabs.concord.server.org.team.TeamDao;
 import com.walmartlabs.concord.server.org.team.TeamManager;
 import com.walmartlabs.concord.server.org.team.TeamRole;
 import com.walmartlabs.concord.server.sdk.ConcordApplicationException;
+import com.walmartlabs.concord.server.security.AuthenticationCache;
 import com.walmartlabs.concord.server.security.UserPrincipal;
 
 import javax.inject.Inject;
@@ -43,12 +44,19 @@ public class UserManager {
     private final TeamDao teamDao;
     private final AuditLog auditLog;
     private final Map<UserType, UserInfoProvider> userInfoProviders;
+    private final AuthenticationCache authCache;
 
     @Inject
-    public UserManager(UserDao userDao, TeamDao teamDao, AuditLog auditLog, List<UserInfoProvider> providers) {
+    public UserManager(UserDao userDao,
+                       TeamDao teamDao,
+                       AuditLog auditLog,
+                       List<UserInfoProvider> providers,
+                       AuthenticationCache authCache) {
+
         this.userDao = userDao;
         this.teamDao = teamDao;
         this.auditLog = auditLog;
+        this.authCache = authCache;
 
         this.userInfoProviders = new HashMap<>();
         providers.forEach(p -> this.userInfoProviders.put(p.getUserType(), p));
@@ -104,6 +112,7 @@ public class UserManager {
         }
 
         UserEntry newEntry = userDao.update(userId, displayName, email, userType, isDisabled, roles);
+        authCache.invalidateUser(userId);
         if (newEntry == null) {
             return Optional.empty();
         }
@@ -175,6 +184,7 @@ public class UserManager {
         }
 
         userDao.enable(userId);
+        authCache.invalidateUser(userId);
 
         auditLog.add(AuditObject.USER, AuditAction.UPDATE)
                 .field("userId", userId)
@@ -191,6 +201,7 @@ public class UserManager {
         }
 
         userDao.disable(userId);
+        authCache.invalidateUser(userId);
 
         auditLog.add(AuditObject.USER, AuditAction.UPDATE)
                 .field("userId", userId)
@@ -24,6 +24,7 @@ import com.walmartlabs.concord.common.validation.ConcordUsername;
 import com.walmartlabs.concord.server.GenericOperationResult;
 import com.walmartlabs.concord.server.OperationResult;
 import com.walmartlabs.concord.server.sdk.ConcordApplicationException;
+import com.walmartlabs.concord.server.security.AuthenticationCache;
 import com.walmartlabs.concord.server.security.Roles;
 import com.walmartlabs.concord.server.security.UserPrincipal;
 import io.swagger.annotations.Api;
@@ -55,10 +56,13 @@ public class UserResource implements Resource {
     private final UserManager userManager;
     private final UserDao userDao;
 
+    private final AuthenticationCache authCache;
+
     @Inject
-    public UserResource(UserManager userManager, UserDao userDao) {
+    public UserResource(UserManager userManager, UserDao userDao, AuthenticationCache authCache) {
         this.userManager = userManager;
         this.userDao = userDao;
+        this.authCache = authCache;
     }
 
     /**
@@ -130,6 +134,7 @@ public class UserResource implements Resource {
         }
 
         userDao.delete(id);
+        authCache.invalidateUser(id);
         return new DeleteUserResponse();
     }
 
@@ -151,6 +156,7 @@ public class UserResource implements Resource {
                 .orElseThrow(() -> new ConcordApplicationException("User not found: " + username, Status.NOT_FOUND));
 
         userDao.updateRoles(id, req.getRoles());
+        authCache.invalidateUser(id);
         return new GenericOperationResult(OperationResult.UPDATED);
     }
 
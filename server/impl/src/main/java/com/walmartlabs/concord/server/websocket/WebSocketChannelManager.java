@@ -20,11 +20,13 @@ package com.walmartlabs.concord.server.websocket;
  * =====
  */
 
+import com.walmartlabs.concord.server.process.queue.dispatcher.DispatcherSignal;
 import com.walmartlabs.concord.server.queueclient.message.Message;
 import com.walmartlabs.concord.server.queueclient.message.MessageType;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import javax.inject.Inject;
 import javax.inject.Named;
 import javax.inject.Singleton;
 import java.util.HashMap;
@@ -39,9 +41,15 @@ public class WebSocketChannelManager {
     private static final Logger log = LoggerFactory.getLogger(WebSocketChannelManager.class);
 
     private final Map<UUID, WebSocketChannel> channels = new ConcurrentHashMap<>();
+    private final DispatcherSignal dispatcherSignal;
 
     private volatile boolean isShutdown;
 
+    @Inject
+    public WebSocketChannelManager(DispatcherSignal dispatcherSignal) {
+        this.dispatcherSignal = dispatcherSignal;
+    }
+
     public boolean isShutdown() {
         return isShutdown;
     }
@@ -73,6 +81,10 @@ public class WebSocketChannelManager {
         }
 
         channel.onRequest(message);
+
+        if (message.getMessageType() == MessageType.PROCESS_REQUEST) {
+            dispatcherSignal.signal();
+        }
     }
 
     /**
@@ -0,0 +1,125 @@
+package com.walmartlabs.concord.server.audit;
+
+/*-
+ * *****
+ * Concord
+ * -----
+ * Copyright (C) 2017 - 2020 Walmart Inc.
+ * -----
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =====
+ */
+
+import com.codahale.metrics.MetricRegistry;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.walmartlabs.concord.server.cfg.AuditConfiguration;
+import org.junit.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.UUID;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.mockito.Mockito.*;
+
+public class AuditLogWriterTest {
+
+    @Test
+    public void testSpill() throws Exception {
+        Path spillDir = Files.createTempDirectory("audit");
+        AuditDao auditDao = mock(AuditDao.class);
+
+        AuditLogWriter writer = new AuditLogWriter(cfg("spill", spillDir), auditDao, new ObjectMapper(), new MetricRegistry());
+
+        QueuedAuditLogEntry a = entry("a");
+        QueuedAuditLogEntry b = entry("b");
+        QueuedAuditLogEntry c = entry("c");
+
+        writer.add(a);
+        writer.add(b);
+        // the queue is full
+        writer.add(c);
+
+        writer.start();
+        try {
+            verify(auditDao, timeout(5000)).insert(Arrays.asList(a, b));
+            verify(auditDao, timeout(5000)).insert(Collections.singletonList(c));
+        } finally {
+            writer.stop();
+        }
+
+        try (Stream<Path> s = Files.list(spillDir)) {
+            assertEquals(0, s.count());
+        }
+    }
+
+    @Test
+    public void testDrop() throws Exception {
+        AuditDao auditDao = mock(AuditDao.class);
+        MetricRegistry metricRegistry = new MetricRegistry();
+
+        AuditLogWriter writer = new AuditLogWriter(cfg("drop", Files.createTempDirectory("audit")), auditDao, new ObjectMapper(), metricRegistry);
+
+        QueuedAuditLogEntry a = entry("a");
+        QueuedAuditLogEntry b = entry("b");
+
+        writer.add(a);
+        writer.add(b);
+        writer.add(entry("c"));
+
+        assertEquals(1, metricRegistry.meter("audit-log-dropped").getCount());
+
+        // the remaining entries are written on stop
+        writer.stop();
+        verify(auditDao).insert(Arrays.asList(a, b));
+    }
+
+    @Test
+    public void testBatches() throws Exception {
+        AuditDao auditDao = mock(AuditDao.class);
+
+        AuditConfiguration cfg = cfg("block", Files.createTempDirectory("audit"));
+        when(cfg.getBatchSize()).thenReturn(1);
+
+        AuditLogWriter writer = new AuditLogWriter(cfg, auditDao, new ObjectMapper(), new MetricRegistry());
+        writer.add(entry("a"));
+        writer.add(entry("b"));
+        writer.stop();
+
+        verify(auditDao, times(2)).insert(anyList());
+        assertFalse(Files.exists(cfg.getSpillDir().resolve("audit.spill")));
+    }
+
+    private static AuditConfiguration cfg(String overflowPolicy, Path spillDir) {
+        AuditConfiguration cfg = mock(AuditConfiguration.class);
+        when(cfg.getQueueSize()).thenReturn(2);
+        when(cfg.getBatchSize()).thenReturn(10);
+        when(cfg.getOverflowPolicy()).thenReturn(overflowPolicy);
+        when(cfg.getSpillDir()).thenReturn(spillDir);
+        return cfg;
+    }
+
+    private static QueuedAuditLogEntry entry(String name) {
+        return QueuedAuditLogEntry.builder()
+                .entryDate(System.currentTimeMillis())
+                .userId(UUID.randomUUID())
+                .object(AuditObject.PROJECT)
+                .action(AuditAction.CREATE)
+                .details("{\"name\": \"" + name + "\"}")
+                .build();
+    }
+}
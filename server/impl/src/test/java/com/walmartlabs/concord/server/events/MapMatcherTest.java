@@ -27,6 +27,7 @@ import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.regex.PatternSyntaxException;
 
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
@@ -141,4 +142,38 @@ public class MapMatcherTest {
         boolean result = MapMatcher.matches(event, conditions);
         assertFalse(result);
     }
+
+    @Test
+    public void testCompiled() {
+        Map<String, Object> conditions = new HashMap<>();
+        conditions.put("a", "a-v.*");
+        conditions.put("b", Arrays.asList("b-.*", "x"));
+        conditions.put("c", 123);
+        conditions.put("obj", Collections.singletonMap("o1", "o1v\\d"));
+
+        MapMatcher.Compiled matcher = MapMatcher.compile(conditions);
+
+        Map<String, Object> event = new HashMap<>();
+        event.put("a", "a-value");
+        event.put("b", "x");
+        event.put("c", 123);
+        event.put("obj", Collections.singletonMap("o1", "o1v1"));
+
+        assertTrue(MapMatcher.matches(event, conditions));
+        assertTrue(matcher.matches(event));
+
+        event.put("obj", Collections.singletonMap("o1", "o1vX"));
+
+        assertFalse(MapMatcher.matches(event, conditions));
+        assertFalse(matcher.matches(event));
+
+        assertTrue(MapMatcher.compile(null).matches(event));
+        assertTrue(MapMatcher.compile(Collections.emptyMap()).matches(event));
+    }
+
+    @Test(expected = PatternSyntaxException.class)
+    public void testCompiledInvalidPattern() {
+        MapMatcher.Compiled matcher = MapMatcher.compile(Collections.singletonMap("a", "["));
+        matcher.matches(Collections.singletonMap("a", "a-value"));
+    }
 }
@@ -0,0 +1,157 @@
+package com.walmartlabs.concord.server.events.github;
+
+/*-
+ * *****
+ * Concord
+ * -----
+ * Copyright (C) 2017 - 2020 Walmart Inc.
+ * -----
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =====
+ */
+import com.codahale.metrics.MetricRegistry;
+import com.walmartlabs.concord.server.cfg.TriggersConfiguration;
+import com.walmartlabs.concord.server.org.triggers.TriggerEntry;
+import com.walmartlabs.concord.server.org.triggers.TriggersDao;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.time.Duration;
+import java.util.*;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+public class GithubTriggerIndexTest {
+
+    private TriggersDao dao;
+    private GithubTriggerIndex index;
+
+    @Before
+    public void init() {
+        TriggersConfiguration cfg = mock(TriggersConfiguration.class);
+        when(cfg.getGithubIndexMaxAge()).thenReturn(Duration.ofMinutes(10));
+
+        dao = mock(TriggersDao.class);
+        index = new GithubTriggerIndex(dao, cfg, new MetricRegistry());
+    }
+
+    @Test
+    public void testMatching() {
+        UUID projectA = UUID.randomUUID();
+        UUID projectB = UUID.randomUUID();
+
+        TriggerEntry exact = trigger(projectA, "org", "repo", "push");
+        TriggerEntry regexRepo = trigger(projectA, "org", "repo-.*", null);
+        TriggerEntry anyRepo = trigger(projectB, "org", null, "pull_request");
+        TriggerEntry list = trigger(projectB, "other", Arrays.asList("a", "b.*"), null);
+        TriggerEntry invalid = trigger(projectB, "org", "[", null);
+
+        when(dao.list(isNull(), eq(Constants.EVENT_SOURCE), eq(2), isNull()))
+                .thenReturn(Arrays.asList(exact, regexRepo, anyRepo, list, invalid));
+
+        assertEquals(ids(exact), ids(index.find(null, "org", "repo", "push")));
+        assertEquals(ids(), ids(index.find(null, "org", "repo", "issues")));
+        assertEquals(ids(regexRepo, anyRepo), ids(index.find(null, "org", "repo-x", "pull_request")));
+        assertEquals(ids(regexRepo), ids(index.find(projectA, "org", "repo-x", "pull_request")));
+        // lists of values are checked by the event filter
+        assertEquals(ids(list), ids(index.find(null, "other", "bar", "push")));
+        assertEquals(ids(list), ids(index.find(null, "other", "xb", "push")));
+
+        // literal conditions are not regular expressions
+        assertEquals(ids(), ids(index.find(null, "org", "repoX", "push")));
+
+        // missing values are treated as empty strings
+        assertEquals(ids(), ids(index.find(null, null, null, "push")));
+
+        verify(dao, times(1)).list(any(), anyString(), any(), any());
+    }
+
+    @Test
+    public void testInvalidation() {
+        UUID projectA = UUID.randomUUID();
+        UUID projectB = UUID.randomUUID();
+
+        TriggerEntry a1 = trigger(projectA, "org", "repo", null);
+        TriggerEntry a2 = trigger(projectA, "org", "repo", null);
+        TriggerEntry b1 = trigger(projectB, "org", "repo", null);
+
+        when(dao.list(isNull(), eq(Constants.EVENT_SOURCE), eq(2), isNull()))
+                .thenReturn(Arrays.asList(a1, b1));
+        when(dao.list(eq(projectA), eq(Constants.EVENT_SOURCE), eq(2), isNull()))
+                .thenReturn(Arrays.asList(a1, a2));
+        when(dao.list(eq(projectB), eq(Constants.EVENT_SOURCE), eq(2), isNull()))
+                .thenReturn(Collections.emptyList());
+
+        assertEquals(ids(a1, b1), ids(index.find(null, "org", "repo", "push")));
+        assertEquals(2, index.size());
+
+        index.invalidate(projectA);
+        index.invalidate(projectB);
+        assertEquals(ids(a1, a2), ids(index.find(null, "org", "repo", "push")));
+        assertEquals(2, index.size());
+
+        verify(dao, times(1)).list(isNull(), anyString(), any(), any());
+        verify(dao, times(1)).list(eq(projectA), anyString(), any(), any());
+
+        index.invalidateAll();
+        assertEquals(ids(a1, b1), ids(index.find(null, "org", "repo", "push")));
+        verify(dao, times(2)).list(isNull(), anyString(), any(), any());
+    }
+
+    @Test
+    public void testValueMatcher() {
+        assertTrue(GithubTriggerIndex.ValueMatcher.of(null).matches("anything"));
+        assertTrue(GithubTriggerIndex.ValueMatcher.of(123).matches("anything"));
+        assertTrue(GithubTriggerIndex.ValueMatcher.of("my-repo").matches("my-repo"));
+        assertTrue(GithubTriggerIndex.ValueMatcher.of("my.repo").matches("myXrepo"));
+        assertTrue(GithubTriggerIndex.ValueMatcher.of(Arrays.asList("a", "b")).matches("c"));
+        assertFalse(GithubTriggerIndex.ValueMatcher.of("[").matches("["));
+    }
+
+    private static Set<UUID> ids(TriggerEntry... triggers) {
+        Set<UUID> result = new HashSet<>();
+        for (TriggerEntry t : triggers) {
+            result.add(t.getId());
+        }
+        return result;
+    }
+
+    private static Set<UUID> ids(List<GithubTriggerIndex.IndexedTrigger> triggers) {
+        Set<UUID> result = new HashSet<>();
+        for (GithubTriggerIndex.IndexedTrigger t : triggers) {
+            result.add(t.getEntry().getId());
+        }
+        return result;
+    }
+
+    private static TriggerEntry trigger(UUID projectId, Object org, Object repo, Object type) {
+        Map<String, Object> conditions = new HashMap<>();
+        conditions.put(Constants.VERSION_KEY, 2);
+        if (org != null) {
+            conditions.put(Constants.GITHUB_ORG_KEY, org);
+        }
+        if (repo != null) {
+            conditions.put(Constants.GITHUB_REPO_KEY, repo);
+        }
+        if (type != null) {
+            conditions.put(Constants.TYPE_KEY, type);
+        }
+
+        return new TriggerEntry(UUID.randomUUID(), null, null, projectId, null, null, null,
+                Constants.EVENT_SOURCE, null, null, conditions, null);
+    }
+}
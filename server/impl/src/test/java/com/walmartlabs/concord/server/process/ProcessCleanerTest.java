@@ -0,0 +1,108 @@
+package com.walmartlabs.concord.server.process;
+
+/*-
+ * *****
+ * Concord
+ * -----
+ * Copyright (C) 2017 - 2020 Walmart Inc.
+ * -----
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =====
+ */
+import com.walmartlabs.concord.server.AbstractDaoTest;
+import com.walmartlabs.concord.server.cfg.ProcessConfiguration;
+import com.walmartlabs.concord.server.sdk.ProcessStatus;
+import org.jooq.JSONB;
+import org.junit.Ignore;
+import org.junit.Test;
+
+import java.sql.Timestamp;
+import java.util.UUID;
+
+import static com.walmartlabs.concord.server.jooq.tables.ProcessEvents.PROCESS_EVENTS;
+import static com.walmartlabs.concord.server.jooq.tables.ProcessQueue.PROCESS_QUEUE;
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+@Ignore("requires a local DB instance")
+public class ProcessCleanerTest extends AbstractDaoTest {
+
+    private static final long DAY = 24 * 60 * 60 * 1000;
+
+    @Test
+    public void testCleanup() throws Exception {
+        Timestamp old = new Timestamp(System.currentTimeMillis() - 2 * DAY);
+
+        UUID finishedA = insertProcess(old, ProcessStatus.FINISHED);
+        UUID finishedB = insertProcess(old, ProcessStatus.FAILED);
+        UUID running = insertProcess(old, ProcessStatus.RUNNING);
+        UUID recent = insertProcess(new Timestamp(System.currentTimeMillis()), ProcessStatus.FINISHED);
+
+        UUID orphan = UUID.randomUUID();
+        insertEvent(orphan, old);
+
+        ProcessConfiguration cfg = mock(ProcessConfiguration.class);
+        when(cfg.getMaxStateAge()).thenReturn(DAY);
+        when(cfg.isQueueCleanup()).thenReturn(true);
+        when(cfg.isEventsCleanup()).thenReturn(true);
+        when(cfg.getCleanupBatchSize()).thenReturn(1);
+
+        ProcessCleaner cleaner = new ProcessCleaner(cfg, new ProcessCleaner.CleanerDao(getConfiguration()));
+        cleaner.performTask();
+
+        assertProcess(finishedA, 0);
+        assertProcess(finishedB, 0);
+        assertProcess(running, 1);
+        assertProcess(recent, 1);
+        assertEquals(0, countEvents(orphan));
+    }
+
+    private UUID insertProcess(Timestamp t, ProcessStatus status) {
+        UUID instanceId = UUID.randomUUID();
+
+        tx(tx -> {
+            tx.insertInto(PROCESS_QUEUE)
+                    .set(PROCESS_QUEUE.INSTANCE_ID, instanceId)
+                    .set(PROCESS_QUEUE.CREATED_AT, t)
+                    .set(PROCESS_QUEUE.LAST_UPDATED_AT, t)
+                    .set(PROCESS_QUEUE.CURRENT_STATUS, status.toString())
+                    .set(PROCESS_QUEUE.IS_DISABLED, false)
+                    .execute();
+        });
+
+        insertEvent(instanceId, t);
+        return instanceId;
+    }
+
+    private void insertEvent(UUID instanceId, Timestamp createdAt) {
+        tx(tx -> tx.insertInto(PROCESS_EVENTS)
+                .set(PROCESS_EVENTS.INSTANCE_ID, instanceId)
+                .set(PROCESS_EVENTS.INSTANCE_CREATED_AT, createdAt)
+                .set(PROCESS_EVENTS.EVENT_TYPE, "TEST")
+                .set(PROCESS_EVENTS.EVENT_DATE, createdAt)
+                .set(PROCESS_EVENTS.EVENT_DATA, JSONB.valueOf("{}"))
+                .execute());
+    }
+
+    private void assertProcess(UUID instanceId, int expected) {
+        tx(tx -> assertEquals(expected, tx.fetchCount(PROCESS_QUEUE, PROCESS_QUEUE.INSTANCE_ID.eq(instanceId))));
+        assertEquals(expected, countEvents(instanceId));
+    }
+
+    private int countEvents(UUID instanceId) {
+        int[] result = new int[1];
+        tx(tx -> result[0] = tx.fetchCount(PROCESS_EVENTS, PROCESS_EVENTS.INSTANCE_ID.eq(instanceId)));
+        return result[0];
+    }
+}
@@ -0,0 +1,154 @@
+package com.walmartlabs.concord.server.process;
+
+/*-
+ * *****
+ * Concord
+ * -----
+ * Copyright (C) 2017 - 2020 Walmart Inc.
+ * -----
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =====
+ */
+
+import com.codahale.metrics.MetricRegistry;
+import com.walmartlabs.concord.imports.Import;
+import com.walmartlabs.concord.imports.Imports;
+import com.walmartlabs.concord.process.loader.ProjectLoader;
+import com.walmartlabs.concord.process.loader.model.ProcessDefinition;
+import com.walmartlabs.concord.server.cfg.ProcessConfiguration;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.junit.Assert.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+public class ProcessDefinitionCacheTest {
+
+    private static final Path WORK_DIR = Paths.get("/tmp/workDir");
+
+    private ProjectLoader projectLoader;
+    private ProcessDefinitionCache cache;
+
+    @Before
+    public void init() {
+        projectLoader = mock(ProjectLoader.class);
+
+        ImportsNormalizerFactory importsNormalizer = mock(ImportsNormalizerFactory.class);
+
+        ProcessConfiguration cfg = mock(ProcessConfiguration.class);
+        when(cfg.getDefinitionCacheMaxSize()).thenReturn(10);
+
+        cache = new ProcessDefinitionCache(projectLoader, importsNormalizer, cfg, new MetricRegistry());
+    }
+
+    @Test
+    public void testSameCommit() throws Exception {
+        ProjectLoader.Result r = result(Imports.builder().build());
+        when(projectLoader.loadProject(any(), anyString(), any())).thenReturn(r);
+
+        UUID projectId = UUID.randomUUID();
+        UUID repoId = UUID.randomUUID();
+
+        assertSame(r.projectDefinition().imports(), cache.load(projectId, WORK_DIR, "concord-v1", repoId, "abc", null).projectDefinition().imports());
+        assertSame(r.projectDefinition().imports(), cache.load(projectId, WORK_DIR, "concord-v1", repoId, "abc", null).projectDefinition().imports());
+        verify(projectLoader, times(1)).loadProject(any(), anyString(), any());
+
+        // different commit, path or runtime
+        cache.load(projectId, WORK_DIR, "concord-v1", repoId, "def", null);
+        cache.load(projectId, WORK_DIR, "concord-v1", repoId, "abc", "subdir");
+        cache.load(projectId, WORK_DIR, "concord-v2", repoId, "abc", null);
+        verify(projectLoader, times(4)).loadProject(any(), anyString(), any());
+    }
+
+    @Test
+    public void testNoCommit() throws Exception {
+        ProjectLoader.Result r = result(Imports.builder().build());
+        when(projectLoader.loadProject(any(), anyString(), any())).thenReturn(r);
+
+        UUID projectId = UUID.randomUUID();
+
+        cache.load(projectId, WORK_DIR, "concord-v1", null, null, null);
+        cache.load(projectId, WORK_DIR, "concord-v1", null, null, null);
+        verify(projectLoader, times(2)).loadProject(any(), anyString(), any());
+    }
+
+    @Test
+    public void testImports() throws Exception {
+        Import i = Import.GitDefinition.builder()
+                .url("https://example.com/repo.git")
+                .build();
+
+        ProjectLoader.Result r = result(Imports.of(Collections.singletonList(i)));
+        when(projectLoader.loadProject(any(), anyString(), any())).thenReturn(r);
+
+        UUID projectId = UUID.randomUUID();
+        UUID repoId = UUID.randomUUID();
+
+        cache.load(projectId, WORK_DIR, "concord-v1", repoId, "abc", null);
+        cache.load(projectId, WORK_DIR, "concord-v1", repoId, "abc", null);
+        verify(projectLoader, times(2)).loadProject(any(), anyString(), any());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testReadOnly() throws Exception {
+        Map<String, Object> args = new HashMap<>();
+        args.put("x", 1);
+        Map<String, Object> cfg = new HashMap<>();
+        cfg.put("arguments", args);
+
+        ProjectLoader.Result r = result(Imports.builder().build());
+        ProcessDefinition pd = r.projectDefinition();
+        when(pd.configuration()).thenReturn(() -> cfg);
+        when(pd.flows()).thenReturn(new HashMap<>());
+        when(projectLoader.loadProject(any(), anyString(), any())).thenReturn(r);
+
+        UUID projectId = UUID.randomUUID();
+        UUID repoId = UUID.randomUUID();
+
+        ProcessDefinition a = cache.load(projectId, WORK_DIR, "concord-v1", repoId, "abc", null).projectDefinition();
+        ((Map<String, Object>) a.configuration().asMap().get("arguments")).put("x", 2);
+
+        try {
+            a.flows().put("test", null);
+            fail("exception expected");
+        } catch (UnsupportedOperationException e) {
+            // expected
+        }
+
+        // the cached definition is not affected
+        ProcessDefinition b = cache.load(projectId, WORK_DIR, "concord-v1", repoId, "abc", null).projectDefinition();
+        assertEquals(1, ((Map<String, Object>) b.configuration().asMap().get("arguments")).get("x"));
+        assertEquals(1, args.get("x"));
+        verify(projectLoader, times(1)).loadProject(any(), anyString(), any());
+    }
+
+    private static ProjectLoader.Result result(Imports imports) {
+        ProcessDefinition pd = mock(ProcessDefinition.class);
+        when(pd.imports()).thenReturn(imports);
+
+        ProjectLoader.Result r = mock(ProjectLoader.Result.class);
+        when(r.projectDefinition()).thenReturn(pd);
+        when(r.snapshots()).thenReturn(Collections.emptyList());
+        return r;
+    }
+}
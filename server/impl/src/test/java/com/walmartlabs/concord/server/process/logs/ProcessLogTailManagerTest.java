@@ -0,0 +1,192 @@
+package com.walmartlabs.concord.server.process.logs;
+
+/*-
+ * *****
+ * Concord
+ * -----
+ * Copyright (C) 2017 - 2020 Walmart Inc.
+ * -----
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =====
+ */
+
+import com.codahale.metrics.MetricRegistry;
+import com.walmartlabs.concord.server.cfg.ProcessConfiguration;
+import com.walmartlabs.concord.server.process.ProcessKey;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.sql.Timestamp;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static com.walmartlabs.concord.server.process.logs.ProcessLogsDao.ProcessLog;
+import static com.walmartlabs.concord.server.process.logs.ProcessLogsDao.ProcessLogChunk;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.*;
+
+public class ProcessLogTailManagerTest {
+
+    private static final long SEGMENT_ID = 1;
+
+    private final ProcessKey processKey = new ProcessKey(UUID.randomUUID(), new Timestamp(System.currentTimeMillis()));
+
+    private ProcessLogsDao logsDao;
+    private ProcessLogTailManager tailManager;
+
+    @Before
+    public void init() {
+        logsDao = mock(ProcessLogsDao.class);
+
+        ProcessConfiguration cfg = mock(ProcessConfiguration.class);
+        when(cfg.getLogTailBufferSize()).thenReturn(4);
+        when(cfg.getLogTailPollInterval()).thenReturn(TimeUnit.MINUTES.toMillis(1));
+
+        tailManager = new ProcessLogTailManager(cfg, logsDao, new MetricRegistry());
+        tailManager.start();
+    }
+
+    @After
+    public void tearDown() {
+        tailManager.stop();
+    }
+
+    @Test
+    public void testCatchUpAndAppend() throws Exception {
+        when(logsDao.segmentData(processKey, SEGMENT_ID, 0, 0))
+                .thenReturn(new ProcessLog(6, Collections.emptyList()));
+        when(logsDao.segmentData(processKey, SEGMENT_ID, 2, 6))
+                .thenReturn(log(6, new ProcessLogChunk(0, "abcdef".getBytes())));
+        when(logsDao.segmentData(processKey, SEGMENT_ID, 8, null))
+                .thenReturn(log(14, new ProcessLogChunk(8, "ijklmn".getBytes())));
+
+        Collector c = new Collector("cdefghijklmn");
+        ProcessLogTailManager.Subscription s = tailManager.subscribe(processKey, SEGMENT_ID, 2, c);
+
+        // the initial data is read from the DB
+        c.await(4);
+
+        // local appends go directly to the subscriber
+        tailManager.onAppend(processKey, SEGMENT_ID, 6, "gh".getBytes());
+        c.await(6);
+
+        // a gap, the missing data was appended somewhere else
+        tailManager.onAppend(processKey, SEGMENT_ID, 12, "mn".getBytes());
+        c.await(12);
+
+        // duplicates are ignored
+        tailManager.onAppend(processKey, SEGMENT_ID, 10, "kl".getBytes());
+
+        s.close();
+
+        assertEquals("cdefghijklmn", c.data());
+        verify(logsDao, times(1)).segmentData(processKey, SEGMENT_ID, 8, null);
+    }
+
+    @Test
+    public void testBackpressure() throws Exception {
+        when(logsDao.segmentData(processKey, SEGMENT_ID, 0, 0))
+                .thenReturn(new ProcessLog(3, Collections.emptyList()));
+        when(logsDao.segmentData(processKey, SEGMENT_ID, 0, 3))
+                .thenReturn(log(3, new ProcessLogChunk(0, "abc".getBytes())));
+        when(logsDao.segmentData(processKey, SEGMENT_ID, 6, null))
+                .thenReturn(new ProcessLog(6, Collections.emptyList()));
+
+        Collector c = new Collector("abcdef");
+        ProcessLogTailManager.Subscription s = tailManager.subscribe(processKey, SEGMENT_ID, 0, c);
+        c.await(3);
+
+        // the subscriber is busy, the new data waits in the buffer
+        c.setReady(false);
+        tailManager.onAppend(processKey, SEGMENT_ID, 3, "def".getBytes());
+
+        CountDownLatch finished = new CountDownLatch(1);
+        s.finish(finished::countDown);
+        assertFalse(finished.await(500, TimeUnit.MILLISECONDS));
+        assertEquals("abc", c.data());
+
+        // the remaining data is delivered before the finish callback
+        c.setReady(true);
+        s.resume();
+        assertTrue(finished.await(5, TimeUnit.SECONDS));
+        assertEquals("abcdef", c.data());
+
+        s.close();
+    }
+
+    @Test
+    public void testNoSubscribers() {
+        tailManager.onAppend(processKey, SEGMENT_ID, 0, "abc".getBytes());
+        verifyZeroInteractions(logsDao);
+    }
+
+    private static ProcessLog log(int size, ProcessLogChunk... chunks) {
+        return new ProcessLog(size, Arrays.asList(chunks));
+    }
+
+    private static class Collector implements ProcessLogTailManager.Subscriber {
+
+        private final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        private final String expected;
+        private int received;
+        private volatile boolean ready = true;
+
+        private Collector(String expected) {
+            this.expected = expected;
+        }
+
+        @Override
+        public synchronized void onData(int start, byte[] data) {
+            out.write(data, 0, data.length);
+            received += data.length;
+            notifyAll();
+        }
+
+        @Override
+        public void onHeartbeat() {
+        }
+
+        @Override
+        public boolean isReady() {
+            return ready;
+        }
+
+        @Override
+        public void onError(Exception e) {
+            throw new RuntimeException(e);
+        }
+
+        void setReady(boolean ready) {
+            this.ready = ready;
+        }
+
+        synchronized void await(int bytes) throws InterruptedException {
+            long deadline = System.currentTimeMillis() + 5000;
+            while (received < bytes && System.currentTimeMillis() < deadline) {
+                wait(100);
+            }
+            assertTrue("expected " + bytes + " bytes of '" + expected + "', got: " + out, received >= bytes);
+        }
+
+        synchronized String data() {
+            return out.toString();
+        }
+    }
+}
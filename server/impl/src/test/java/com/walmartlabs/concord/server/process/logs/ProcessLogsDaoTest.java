@@ -20,15 +20,27 @@ package com.walmartlabs.concord.server.process.logs;
  * =====
  */
 
+import com.walmartlabs.concord.db.PgIntRange;
 import com.walmartlabs.concord.server.AbstractDaoTest;
 import com.walmartlabs.concord.server.process.ProcessKey;
+import org.jooq.impl.DSL;
 import org.junit.Ignore;
 import org.junit.Test;
 
+import java.io.OutputStream;
 import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
 import java.util.UUID;
 import java.util.concurrent.ThreadLocalRandom;
 
+import static com.walmartlabs.concord.server.process.logs.ProcessLogsDao.ProcessLog;
+import static com.walmartlabs.concord.server.process.logs.ProcessLogsDao.ProcessLogChunk;
+import static com.walmartlabs.concord.server.process.logs.ProcessLogsDao.SegmentChunk;
+import static org.junit.Assert.*;
+
 @Ignore
 public class ProcessLogsDaoTest extends AbstractDaoTest {
 
@@ -56,4 +68,147 @@ public class ProcessLogsDaoTest extends AbstractDaoTest {
             }
         }
     }
+
+    @Test
+    public void testBatchAppend() throws Exception {
+        ProcessLogsDao processLogsDao = new ProcessLogsDao(getConfiguration());
+
+        ProcessKey processKey = new ProcessKey(UUID.randomUUID(), new Timestamp(System.currentTimeMillis()));
+        processLogsDao.append(processKey, 1, "a".getBytes());
+
+        PgIntRange range = processLogsDao.append(processKey, Arrays.asList(
+                new SegmentChunk(1, "bb".getBytes()),
+                new SegmentChunk(2, "ccc".getBytes()),
+                new SegmentChunk(1, "dddd".getBytes())));
+
+        assertEquals(1, range.getLower());
+        assertEquals(10, range.getUpper());
+
+        assertEquals("abbdddd", toString(processLogsDao.segmentData(processKey, 1, null, null)));
+        assertEquals("ccc", toString(processLogsDao.segmentData(processKey, 2, null, null)));
+        assertEquals("abbcccdddd", toString(processLogsDao.data(processKey, null, null)));
+    }
+
+    @Test
+    public void testCompaction() throws Exception {
+        ProcessLogsDao processLogsDao = new ProcessLogsDao(getConfiguration());
+        ProcessLogCompactor.CompactorDao compactorDao = new ProcessLogCompactor.CompactorDao(getConfiguration());
+
+        ProcessKey processKey = new ProcessKey(UUID.randomUUID(), new Timestamp(System.currentTimeMillis()));
+        processLogsDao.append(processKey, 1, "a".getBytes());
+        processLogsDao.append(processKey, Arrays.asList(
+                new SegmentChunk(1, "bb".getBytes()),
+                new SegmentChunk(2, "ccc".getBytes()),
+                new SegmentChunk(1, "dddd".getBytes())));
+        processLogsDao.append(processKey, 1, "ee".getBytes());
+        processLogsDao.append(processKey, 1, "ff".getBytes());
+
+        // compressible data
+        byte[] xs = new byte[500];
+        Arrays.fill(xs, (byte) 'x');
+        processLogsDao.append(processKey, 3, xs);
+        processLogsDao.append(processKey, 3, xs);
+
+        DSL.using(getConfiguration()).transaction(cfg -> compactorDao.enqueue(DSL.using(cfg), Collections.singletonList(processKey)));
+        assertNotNull(compactorDao.compactNext(0, 1024));
+        assertNull(compactorDao.compactNext(0, 1024));
+
+        assertEquals("abbddddeeff", toString(processLogsDao.segmentData(processKey, 1, null, null)));
+        assertEquals("ccc", toString(processLogsDao.segmentData(processKey, 2, null, null)));
+        assertEquals(1000, toString(processLogsDao.segmentData(processKey, 3, null, null)).length());
+
+        // compacted blocks are trimmed to the requested range
+        assertEquals("dd", toString(processLogsDao.data(processKey, 7, 9)));
+        assertEquals("ef", toString(processLogsDao.segmentData(processKey, 1, 8, 10)));
+        assertEquals("eff", toString(processLogsDao.segmentData(processKey, 1, null, 3)));
+        assertEquals(100, toString(processLogsDao.segmentData(processKey, 3, 450, 550)).length());
+        assertEquals(1014, processLogsDao.data(processKey, 7, 9).getSize());
+
+        // appends after the compaction continue the ranges
+        processLogsDao.append(processKey, 1, "g".getBytes());
+        assertEquals("abbddddeeffg", toString(processLogsDao.segmentData(processKey, 1, null, null)));
+    }
+
+    /**
+     * Downloads a large synthetic log and reports the heap usage
+     * of the streaming and the materialized reads.
+     */
+    @Test
+    public void testStreamingHeapUsage() throws Exception {
+        ProcessLogsDao processLogsDao = new ProcessLogsDao(getConfiguration());
+
+        int logSize = 128 * 1024 * 1024;
+        int chunkSize = 64 * 1024;
+        int chunksPerBatch = 16;
+
+        byte[] data = new byte[chunkSize];
+        ThreadLocalRandom.current().nextBytes(data);
+
+        ProcessKey processKey = new ProcessKey(UUID.randomUUID(), new Timestamp(System.currentTimeMillis()));
+        for (int i = 0; i < logSize / (chunkSize * chunksPerBatch); i++) {
+            List<SegmentChunk> batch = new ArrayList<>();
+            for (int j = 0; j < chunksPerBatch; j++) {
+                batch.add(new SegmentChunk(1, data));
+            }
+            processLogsDao.append(processKey, batch);
+        }
+
+        HeapSampler streaming = new HeapSampler();
+        processLogsDao.dataStream(processKey, null, null).writeTo(streaming);
+        assertEquals(logSize, streaming.count);
+
+        HeapSampler materialized = new HeapSampler();
+        for (ProcessLogChunk c : processLogsDao.data(processKey, null, null).getChunks()) {
+            materialized.write(c.getData());
+        }
+        assertEquals(logSize, materialized.count);
+
+        System.out.println("log size: " + logSize / (1024 * 1024) + "MB");
+        System.out.println("streaming read, peak heap growth: " + streaming.peak / (1024 * 1024) + "MB");
+        System.out.println("materialized read, peak heap growth: " + materialized.peak / (1024 * 1024) + "MB");
+    }
+
+    private static String toString(ProcessLog l) {
+        StringBuilder sb = new StringBuilder();
+        l.getChunks().forEach(c -> sb.append(new String(c.getData())));
+        return sb.toString();
+    }
+
+    /**
+     * Counts the written bytes and samples the heap usage.
+     */
+    private static class HeapSampler extends OutputStream {
+
+        private static final int SAMPLE_INTERVAL = 1024 * 1024;
+
+        private final Runtime rt = Runtime.getRuntime();
+        private final long baseline;
+
+        private long count;
+        private long nextSample;
+        private long peak;
+
+        private HeapSampler() {
+            System.gc();
+            this.baseline = used();
+        }
+
+        @Override
+        public void write(int b) {
+            write(new byte[]{(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            count += len;
+            if (count >= nextSample) {
+                peak = Math.max(peak, used() - baseline);
+                nextSample = count + SAMPLE_INTERVAL;
+            }
+        }
+
+        private long used() {
+            return rt.totalMemory() - rt.freeMemory();
+        }
+    }
 }
@@ -0,0 +1,133 @@
+package com.walmartlabs.concord.server.process.queue.dispatcher;
+
+/*-
+ * *****
+ * Concord
+ * -----
+ * Copyright (C) 2017 - 2020 Walmart Inc.
+ * -----
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =====
+ */
+
+import com.walmartlabs.concord.common.MapMatcher;
+import org.junit.Test;
+
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+public class CapabilityIndexTest {
+
+    @Test
+    public void testSimple() {
+        Agent a = new Agent("a", capabilities("default", null));
+        Agent b = new Agent("b", capabilities("large", "us-east"));
+        Agent c = new Agent("c", capabilities("large", "us-west"));
+        Agent d = new Agent("d", null);
+
+        CapabilityIndex<Agent> index = new CapabilityIndex<>(Arrays.asList(a, b, c, d), Agent::getCapabilities);
+
+        assertSame(a, index.find(Collections.emptyMap()));
+        assertSame(b, index.find(capabilities("large", null)));
+        assertSame(c, index.find(capabilities("large", "us-w.*")));
+        assertNull(index.find(capabilities("xlarge", null)));
+
+        index.remove(b);
+        assertSame(c, index.find(capabilities("large", null)));
+
+        index.remove(c);
+        assertNull(index.find(capabilities("large", null)));
+
+        index.remove(a);
+        assertSame(d, index.find(Collections.emptyMap()));
+        assertFalse(index.isEmpty());
+
+        index.remove(d);
+        assertTrue(index.isEmpty());
+    }
+
+    @Test
+    public void testSameAsMapMatcher() {
+        String[] flavors = {"default", "large", "xlarge", null};
+        String[] regions = {"us-east", "us-west", "eu-central", null};
+        String[] requirementFlavors = {"default", "large", "x?large", ".*", null};
+        String[] requirementRegions = {"us-.*", "eu-central", null};
+
+        Random rnd = new Random(42);
+
+        List<Agent> agents = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            agents.add(new Agent("agent-" + i, capabilities(pick(rnd, flavors), pick(rnd, regions))));
+        }
+
+        List<Agent> inbox = new ArrayList<>(agents);
+        CapabilityIndex<Agent> index = new CapabilityIndex<>(agents, Agent::getCapabilities);
+
+        for (int i = 0; i < 1000 && !inbox.isEmpty(); i++) {
+            Map<String, Object> requirements = capabilities(pick(rnd, requirementFlavors), pick(rnd, requirementRegions));
+
+            boolean expected = inbox.stream()
+                    .anyMatch(a -> MapMatcher.matches(a.getCapabilities(), requirements));
+
+            Agent actual = index.find(requirements);
+            assertEquals(expected, actual != null);
+            if (actual != null) {
+                assertTrue(inbox.contains(actual));
+                assertTrue(MapMatcher.matches(actual.getCapabilities(), requirements));
+            }
+
+            if (actual != null && rnd.nextBoolean()) {
+                inbox.remove(actual);
+                index.remove(actual);
+            }
+        }
+
+        assertEquals(inbox.isEmpty(), index.isEmpty());
+    }
+
+    private static String pick(Random rnd, String[] values) {
+        return values[rnd.nextInt(values.length)];
+    }
+
+    private static Map<String, Object> capabilities(String flavor, String region) {
+        Map<String, Object> m = new HashMap<>();
+        if (flavor != null) {
+            m.put("flavor", flavor);
+        }
+        if (region != null) {
+            m.put("region", region);
+        }
+        return m;
+    }
+
+    private static final class Agent {
+
+        private final String id;
+        private final Map<String, Object> capabilities;
+
+        private Agent(String id, Map<String, Object> capabilities) {
+            this.id = id;
+            this.capabilities = capabilities;
+        }
+
+        public Map<String, Object> getCapabilities() {
+            return capabilities;
+        }
+
+        @Override
+        public String toString() {
+            return id;
+        }
+    }
+}
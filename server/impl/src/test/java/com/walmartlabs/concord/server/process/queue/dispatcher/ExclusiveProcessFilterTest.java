@@ -0,0 +1,59 @@
+package com.walmartlabs.concord.server.process.queue.dispatcher;
+
+/*-
+ * *****
+ * Concord
+ * -----
+ * Copyright (C) 2017 - 2020 Walmart Inc.
+ * -----
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =====
+ */
+import com.walmartlabs.concord.server.process.queue.ProcessQueueEntry;
+import com.walmartlabs.concord.server.process.queue.ProcessQueueManager;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class ExclusiveProcessFilterTest {
+
+    @Test
+    public void testCacheKeyDependsOnMode() {
+        ExclusiveProcessFilter filter = new ExclusiveProcessFilter(mock(ProcessQueueManager.class), mock(ExclusiveProcessFilterDao.class));
+
+        UUID projectId = UUID.randomUUID();
+
+        assertNotNull(filter.getCacheKey(entry(projectId, "g", "wait")));
+        assertNull(filter.getCacheKey(entry(projectId, "g", "cancel")));
+        assertNull(filter.getCacheKey(entry(projectId, "g", null)));
+        assertNull(filter.getCacheKey(entry(projectId, null, "wait")));
+    }
+
+    private static ProcessQueueEntry entry(UUID projectId, String group, String mode) {
+        Map<String, Object> exclusive = new HashMap<>();
+        exclusive.put("group", group);
+        exclusive.put("mode", mode);
+
+        ProcessQueueEntry e = mock(ProcessQueueEntry.class);
+        when(e.projectId()).thenReturn(projectId);
+        when(e.exclusive()).thenReturn(exclusive);
+        return e;
+    }
+}
@@ -21,11 +21,13 @@ package com.walmartlabs.concord.server.process.state;
  */
 
 import com.google.common.base.Charsets;
+import com.google.common.hash.Hashing;
 import com.walmartlabs.concord.sdk.Constants;
 import com.walmartlabs.concord.server.AbstractDaoTest;
 import com.walmartlabs.concord.server.cfg.ProcessConfiguration;
 import com.walmartlabs.concord.server.cfg.SecretStoreConfiguration;
 import com.walmartlabs.concord.server.process.ProcessKey;
+import org.jooq.impl.DSL;
 import org.junit.Ignore;
 import org.junit.Test;
 
@@ -37,10 +39,15 @@ import java.nio.file.StandardOpenOption;
 import java.sql.Timestamp;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.Map;
 import java.util.UUID;
+import java.util.stream.Collectors;
 
+import static com.walmartlabs.concord.server.jooq.tables.ProcessStateBlobs.PROCESS_STATE_BLOBS;
 import static com.walmartlabs.concord.server.process.state.ProcessStateManager.copyTo;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.Mockito.mock;
 
@@ -80,6 +87,77 @@ public class ProcessStateManagerTest extends AbstractDaoTest {
         assertFileContent("456", tmpDir.resolve("file-2"));
     }
 
+    @Test
+    public void testSharedBlobs() throws Exception {
+        ProcessKey processA = new ProcessKey(UUID.randomUUID(), new Timestamp(System.currentTimeMillis()));
+        ProcessKey processB = new ProcessKey(UUID.randomUUID(), new Timestamp(System.currentTimeMillis()));
+
+        String content = "shared-" + UUID.randomUUID();
+
+        Path baseDir = Files.createTempDirectory("testImport");
+        writeTempFile(baseDir.resolve("file-1"), content.getBytes());
+        writeTempFile(baseDir.resolve("file-2"), content.getBytes());
+
+        ProcessConfiguration stateCfg = new ProcessConfiguration(24 * 60 * 60 * 1000, Collections.singletonList(Constants.Files.CONFIGURATION_FILE_NAME));
+        ProcessStateManager stateManager = new ProcessStateManager(getConfiguration(), mock(SecretStoreConfiguration.class), stateCfg);
+        stateManager.importPath(processA, null, baseDir);
+        stateManager.importPath(processB, null, baseDir);
+
+        String hash = com.google.common.io.Files.asByteSource(baseDir.resolve("file-1").toFile()).hash(Hashing.sha256()).toString();
+        assertEquals(Integer.valueOf(4), refCount(hash));
+
+        // --- re-importing the same files doesn't change the counter
+
+        stateManager.importPath(processA, null, baseDir);
+        assertEquals(Integer.valueOf(4), refCount(hash));
+
+        // --- the data is still available after the other process' state is removed
+
+        stateManager.delete(processA);
+        assertEquals(Integer.valueOf(2), refCount(hash));
+
+        Path tmpDir = Files.createTempDirectory("testExport");
+        assertTrue(stateManager.export(processB, copyTo(tmpDir)));
+        assertFileContent(content, tmpDir.resolve("file-1"));
+        assertFileContent(content, tmpDir.resolve("file-2"));
+
+        // --- unreferenced blobs are removed
+
+        stateManager.deleteFile(processB, "file-1");
+        stateManager.deleteFile(processB, "file-2");
+        assertNull(refCount(hash));
+    }
+
+    @Test
+    public void testManifest() throws Exception {
+        ProcessKey processKey = new ProcessKey(UUID.randomUUID(), new Timestamp(System.currentTimeMillis()));
+
+        Path baseDir = Files.createTempDirectory("testImport");
+        writeTempFile(baseDir.resolve("file-1"), "123".getBytes());
+        writeTempFile(baseDir.resolve("file-2"), "4567".getBytes());
+
+        ProcessConfiguration stateCfg = new ProcessConfiguration(24 * 60 * 60 * 1000, Collections.singletonList(Constants.Files.CONFIGURATION_FILE_NAME));
+        ProcessStateManager stateManager = new ProcessStateManager(getConfiguration(), mock(SecretStoreConfiguration.class), stateCfg);
+        stateManager.importPath(processKey, null, baseDir);
+
+        Map<String, StateManifestEntry> manifest = stateManager.manifest(processKey, null).stream()
+                .collect(Collectors.toMap(StateManifestEntry::name, e -> e));
+
+        assertEquals(2, manifest.size());
+        assertEquals(3, manifest.get("file-1").size());
+        assertEquals(4, manifest.get("file-2").size());
+
+        String hash = com.google.common.io.Files.asByteSource(baseDir.resolve("file-1").toFile()).hash(Hashing.sha256()).toString();
+        assertEquals(hash, manifest.get("file-1").hash());
+
+        // --- export only the files unknown to the caller
+
+        Path tmpDir = Files.createTempDirectory("testExport");
+        assertTrue(stateManager.export(processKey, Collections.singleton(hash), copyTo(tmpDir)));
+        assertFalse(Files.exists(tmpDir.resolve("file-1")));
+        assertFileContent("4567", tmpDir.resolve("file-2"));
+    }
+
     @Ignore
     @Test
     public void testLargeImport() throws Exception {
@@ -107,6 +185,14 @@ public class ProcessStateManagerTest extends AbstractDaoTest {
         stateManager.importPath(processKey, "/", baseDir);
     }
 
+    private Integer refCount(String hash) {
+        return DSL.using(getConfiguration())
+                .select(PROCESS_STATE_BLOBS.REF_COUNT)
+                .from(PROCESS_STATE_BLOBS)
+                .where(PROCESS_STATE_BLOBS.BLOB_HASH.eq(hash))
+                .fetchOne(PROCESS_STATE_BLOBS.REF_COUNT);
+    }
+
     private static void assertFileContent(String expected, Path f) throws IOException {
         String str = com.google.common.io.Files.asCharSource(f.toFile(), Charsets.UTF_8).read();
         assertEquals(expected, str);
@@ -0,0 +1,108 @@
+package com.walmartlabs.concord.server.qos;
+
+/*-
+ * *****
+ * Concord
+ * -----
+ * Copyright (C) 2017 - 2020 Walmart Inc.
+ * -----
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =====
+ */
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class FairQueueTest {
+
+    @Test
+    public void testFifoWithinTenant() {
+        FairQueue<String> q = new FairQueue<>();
+        q.add("a", 1, "a1");
+        q.add("a", 1, "a2");
+        q.add("a", 1, "a3");
+
+        assertEquals(3, q.size());
+        assertEquals("a1", q.poll());
+        assertEquals("a2", q.poll());
+        assertEquals("a3", q.poll());
+        assertNull(q.poll());
+        assertEquals(0, q.size());
+    }
+
+    @Test
+    public void testFairness() {
+        FairQueue<String> q = new FairQueue<>();
+
+        // a noisy tenant enqueues a lot of items first
+        for (int i = 0; i < 10; i++) {
+            q.add("noisy", 1, "n" + i);
+        }
+        q.add("quiet", 1, "q0");
+        q.add("quiet", 1, "q1");
+
+        List<String> order = drain(q);
+        assertTrue(order.indexOf("q0") <= 1);
+        assertTrue(order.indexOf("q1") <= 3);
+        assertEquals(12, order.size());
+    }
+
+    @Test
+    public void testWeights() {
+        FairQueue<String> q = new FairQueue<>();
+        for (int i = 0; i < 30; i++) {
+            q.add("heavy", 3, "h");
+            q.add("light", 1, "l");
+        }
+
+        List<String> order = drain(q).subList(0, 20);
+        long heavy = order.stream().filter("h"::equals).count();
+        assertEquals(15, heavy);
+    }
+
+    @Test
+    public void testRemove() {
+        FairQueue<String> q = new FairQueue<>();
+        q.add("a", 1, "a1");
+        q.add("a", 1, "a2");
+        q.add("b", 1, "b1");
+
+        assertTrue(q.remove("a", "a1"));
+        assertFalse(q.remove("a", "a1"));
+        assertFalse(q.remove("c", "a2"));
+
+        assertEquals(1, q.size("a"));
+        assertEquals(2, q.size());
+
+        assertTrue(q.remove("b", "b1"));
+        assertEquals(0, q.size("b"));
+        assertEquals("a2", q.poll());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidWeight() {
+        new FairQueue<String>().add("a", 0, "a1");
+    }
+
+    private static List<String> drain(FairQueue<String> q) {
+        List<String> result = new ArrayList<>();
+        String s;
+        while ((s = q.poll()) != null) {
+            result.add(s);
+        }
+        return result;
+    }
+}
@@ -0,0 +1,86 @@
+package com.walmartlabs.concord.server.qos;
+
+/*-
+ * *****
+ * Concord
+ * -----
+ * Copyright (C) 2017 - 2020 Walmart Inc.
+ * -----
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =====
+ */
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class LocalTokenBucketsTest {
+
+    @Test
+    public void testBurst() {
+        LocalTokenBuckets b = new LocalTokenBuckets();
+
+        for (int i = 0; i < 5; i++) {
+            assertEquals(0, b.take("a", 0.1, 5));
+        }
+
+        long wait = b.take("a", 0.1, 5);
+        assertTrue(wait > 0 && wait <= 10_000);
+
+        // other buckets are not affected
+        assertEquals(0, b.take("b", 0.1, 5));
+        assertEquals(2, b.size());
+    }
+
+    @Test
+    public void testRefill() throws Exception {
+        LocalTokenBuckets b = new LocalTokenBuckets();
+
+        assertEquals(0, b.take("a", 100, 1));
+        assertTrue(b.take("a", 100, 1) > 0);
+
+        Thread.sleep(50);
+        assertEquals(0, b.take("a", 100, 1));
+    }
+
+    @Test
+    public void testRefund() {
+        LocalTokenBuckets b = new LocalTokenBuckets();
+
+        assertEquals(0, b.take("a", 0.1, 2));
+        assertEquals(0, b.take("a", 0.1, 2));
+        assertTrue(b.take("a", 0.1, 2) > 0);
+
+        b.refund("a", 2);
+        assertEquals(0, b.take("a", 0.1, 2));
+
+        // refunds can't overflow the bucket
+        b.refund("a", 2);
+        b.refund("a", 2);
+        b.refund("a", 2);
+        assertEquals(0, b.take("a", 0.1, 2));
+        assertEquals(0, b.take("a", 0.1, 2));
+        assertTrue(b.take("a", 0.1, 2) > 0);
+
+        // unknown buckets are ignored
+        b.refund("b", 2);
+        assertEquals(1, b.size());
+    }
+
+    @Test
+    public void testWaitTime() {
+        assertEquals(1000, LocalTokenBuckets.waitTime(0, 1));
+        assertEquals(500, LocalTokenBuckets.waitTime(0.5, 1));
+        assertEquals(1, LocalTokenBuckets.waitTime(0.9999, 1));
+    }
+}
@@ -0,0 +1,70 @@
+package com.walmartlabs.concord.server.qos;
+
+/*-
+ * *****
+ * Concord
+ * -----
+ * Copyright (C) 2017 - 2020 Walmart Inc.
+ * -----
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =====
+ */
+import com.walmartlabs.concord.server.AbstractDaoTest;
+import org.junit.Ignore;
+import org.junit.Test;
+
+import java.util.UUID;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+@Ignore("requires a local DB instance")
+public class TokenBucketDaoTest extends AbstractDaoTest {
+
+    @Test
+    public void testTake() throws Exception {
+        TokenBucketDao dao = new TokenBucketDao(getConfiguration());
+
+        String key = "test:" + UUID.randomUUID();
+        for (int i = 0; i < 3; i++) {
+            assertEquals(0, dao.take(key, 0.01, 3));
+        }
+
+        long wait = dao.take(key, 0.01, 3);
+        assertTrue(wait > 0 && wait <= 100_000);
+
+        key = "test:" + UUID.randomUUID();
+        assertEquals(0, dao.take(key, 100, 1));
+
+        Thread.sleep(50);
+        assertEquals(0, dao.take(key, 100, 1));
+    }
+
+    @Test
+    public void testRefund() {
+        TokenBucketDao dao = new TokenBucketDao(getConfiguration());
+
+        String key = "test:" + UUID.randomUUID();
+        assertEquals(0, dao.take(key, 0.01, 1));
+        assertTrue(dao.take(key, 0.01, 1) > 0);
+
+        dao.refund(key, 1);
+        assertEquals(0, dao.take(key, 0.01, 1));
+
+        // refunds can't overflow the bucket
+        dao.refund(key, 1);
+        dao.refund(key, 1);
+        assertEquals(0, dao.take(key, 0.01, 1));
+        assertTrue(dao.take(key, 0.01, 1) > 0);
+    }
+}
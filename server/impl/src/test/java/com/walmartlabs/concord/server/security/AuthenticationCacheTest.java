@@ -0,0 +1,137 @@
+package com.walmartlabs.concord.server.security;
+
+/*-
+ * *****
+ * Concord
+ * -----
+ * Copyright (C) 2017 - 2020 Walmart Inc.
+ * -----
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =====
+ */
+
+import com.codahale.metrics.MetricRegistry;
+import com.walmartlabs.concord.server.cfg.AuthenticationCacheConfiguration;
+import com.walmartlabs.concord.server.process.queue.ProcessCompletionNotifier;
+import com.walmartlabs.concord.server.security.apikey.ApiKeyEntry;
+import com.walmartlabs.concord.server.user.UserEntry;
+import org.apache.shiro.subject.PrincipalCollection;
+import org.apache.shiro.subject.SimplePrincipalCollection;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+import java.util.Date;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static org.junit.Assert.*;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+public class AuthenticationCacheTest {
+
+    private ProcessCompletionNotifier notifier;
+    private AuthenticationCache cache;
+
+    @Before
+    public void init() {
+        AuthenticationCacheConfiguration cfg = mock(AuthenticationCacheConfiguration.class);
+        when(cfg.getTtl()).thenReturn(60000L);
+        when(cfg.getMaxSize()).thenReturn(100L);
+
+        notifier = mock(ProcessCompletionNotifier.class);
+        cache = new AuthenticationCache(cfg, notifier, new MetricRegistry());
+    }
+
+    @Test
+    public void testApiKeys() {
+        UUID keyId = UUID.randomUUID();
+        Counting<ApiKeyEntry> loader = new Counting<>(() -> new ApiKeyEntry(keyId, UUID.randomUUID(), "test", null));
+
+        assertEquals(keyId, cache.getApiKey("abc", loader).getId());
+        assertEquals(keyId, cache.getApiKey("abc", loader).getId());
+        assertEquals(1, loader.count.get());
+
+        cache.invalidateApiKey(keyId);
+        cache.getApiKey("abc", loader);
+        assertEquals(2, loader.count.get());
+
+        // expired keys are reloaded
+        Counting<ApiKeyEntry> expired = new Counting<>(() -> new ApiKeyEntry(keyId, UUID.randomUUID(), "test", new Date(System.currentTimeMillis() - 1000)));
+        cache.getApiKey("xyz", expired);
+        cache.getApiKey("xyz", expired);
+        assertEquals(2, expired.count.get());
+
+        // unknown keys are not cached
+        Counting<ApiKeyEntry> missing = new Counting<>(() -> null);
+        assertNull(cache.getApiKey("123", missing));
+        assertNull(cache.getApiKey("123", missing));
+        assertEquals(2, missing.count.get());
+    }
+
+    @Test
+    public void testUsers() {
+        UUID userId = UUID.randomUUID();
+        Counting<UserEntry> loader = new Counting<>(() -> mock(UserEntry.class));
+
+        cache.getUser(userId, loader);
+        cache.getUser(userId, loader);
+        assertEquals(1, loader.count.get());
+
+        cache.invalidateUser(userId);
+        cache.getUser(userId, loader);
+        assertEquals(2, loader.count.get());
+
+        cache.invalidateUsers();
+        cache.getUser(userId, loader);
+        assertEquals(3, loader.count.get());
+    }
+
+    @Test
+    public void testSessions() {
+        UUID instanceId = UUID.randomUUID();
+        PrincipalCollection principals = new SimplePrincipalCollection("test", "test");
+        Counting<PrincipalCollection> loader = new Counting<>(() -> principals);
+
+        assertSame(principals, cache.getSessionPrincipals(instanceId, loader));
+        assertSame(principals, cache.getSessionPrincipals(instanceId, loader));
+        assertEquals(1, loader.count.get());
+
+        // the entry is removed when the process finishes
+        ArgumentCaptor<Runnable> callback = ArgumentCaptor.forClass(Runnable.class);
+        verify(notifier).register(eq(instanceId), callback.capture());
+        callback.getValue().run();
+        verify(notifier).unregister(instanceId, callback.getValue());
+
+        cache.getSessionPrincipals(instanceId, loader);
+        assertEquals(2, loader.count.get());
+    }
+
+    private static final class Counting<T> implements Supplier<T> {
+
+        private final Supplier<T> delegate;
+        private final AtomicInteger count = new AtomicInteger();
+
+        private Counting(Supplier<T> delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public T get() {
+            count.incrementAndGet();
+            return delegate.get();
+        }
+    }
+}